@@ -0,0 +1,94 @@
+-- Data versions: one counter per table, bumped by triggers inside the transaction of every write to the table.
+-- The API derives the ETags of its GET endpoints from these counters, so it can answer If-None-Match requests with
+-- 304 Not Modified without querying the versioned tables.
+--
+-- Writes cascaded through foreign keys don't fire triggers. Every cascade starts with a direct write to a versioned
+-- table (e.g. deleting a route), which bumps the version of that table.
+
+CREATE TABLE IF NOT EXISTS data_versions
+(
+    name    VARCHAR(64)     NOT NULL PRIMARY KEY,
+    version BIGINT UNSIGNED NOT NULL DEFAULT 0
+);
+
+INSERT IGNORE INTO data_versions(name)
+VALUES ('routes'),
+       ('routekudosregistry'),
+       ('users'),
+       ('routecategories'),
+       ('routetocategoriesmapping');
+
+CREATE TRIGGER routes_after_insert_bump_version
+    AFTER INSERT
+    ON routes
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'routes';
+
+CREATE TRIGGER routes_after_update_bump_version
+    AFTER UPDATE
+    ON routes
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'routes';
+
+CREATE TRIGGER routes_after_delete_bump_version
+    AFTER DELETE
+    ON routes
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'routes';
+
+CREATE TRIGGER routekudosregistry_after_insert_bump_version
+    AFTER INSERT
+    ON routekudosregistry
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'routekudosregistry';
+
+CREATE TRIGGER routekudosregistry_after_update_bump_version
+    AFTER UPDATE
+    ON routekudosregistry
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'routekudosregistry';
+
+CREATE TRIGGER routekudosregistry_after_delete_bump_version
+    AFTER DELETE
+    ON routekudosregistry
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'routekudosregistry';
+
+CREATE TRIGGER users_after_insert_bump_version
+    AFTER INSERT
+    ON users
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'users';
+
+CREATE TRIGGER users_after_update_bump_version
+    AFTER UPDATE
+    ON users
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'users';
+
+CREATE TRIGGER users_after_delete_bump_version
+    AFTER DELETE
+    ON users
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'users';
+
+CREATE TRIGGER routecategories_after_insert_bump_version
+    AFTER INSERT
+    ON routecategories
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'routecategories';
+
+CREATE TRIGGER routecategories_after_update_bump_version
+    AFTER UPDATE
+    ON routecategories
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'routecategories';
+
+CREATE TRIGGER routecategories_after_delete_bump_version
+    AFTER DELETE
+    ON routecategories
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'routecategories';
+
+CREATE TRIGGER routetocategoriesmapping_after_insert_bump_version
+    AFTER INSERT
+    ON routetocategoriesmapping
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'routetocategoriesmapping';
+
+CREATE TRIGGER routetocategoriesmapping_after_update_bump_version
+    AFTER UPDATE
+    ON routetocategoriesmapping
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'routetocategoriesmapping';
+
+CREATE TRIGGER routetocategoriesmapping_after_delete_bump_version
+    AFTER DELETE
+    ON routetocategoriesmapping
+    FOR EACH ROW UPDATE data_versions SET version = version + 1 WHERE name = 'routetocategoriesmapping';
@@ -0,0 +1,18 @@
+-- Range filters: indexes for the duration, elevation and average grade ranges of /rutas/filtro, so a query such as
+-- "under 2 hours with under 500 m of climbing" is resolved through an index range scan instead of a full scan.
+--
+-- Duration and elevation get a composite index in each column order, so the optimizer can lead with whichever range
+-- is more selective and check the other one from the index entries.
+--
+-- The average grade is a stored generated column with the same expression the API filters by (SQLRouteFilterBuilder),
+-- elevation per 100 meters of distance rounded to two decimals. MySQL replaces matching expressions in WHERE clauses
+-- with the indexed generated column, so the API doesn't need to know about the column.
+
+ALTER TABLE routes
+    ADD COLUMN grade DECIMAL(10, 2) AS (ROUND(IF(distance > 0, elevation * 100 / distance, 0), 2)) STORED;
+
+CREATE INDEX routes_duration_elevation ON routes (duration, elevation);
+
+CREATE INDEX routes_elevation_duration ON routes (elevation, duration);
+
+CREATE INDEX routes_grade ON routes (grade);
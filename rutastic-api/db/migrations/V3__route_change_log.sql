@@ -0,0 +1,110 @@
+-- Route change log: the latest change of each route, numbered with a sequence that increases with every write to the
+-- routes and their kudo entries. Clients keep a local replica of the routes by asking for the changes after the last
+-- sequence they saw (GET /rutas/cambios), instead of downloading whole route lists again.
+--
+-- Each route has at most two entries: its latest change of kind 'route' (created, updated, blocked or deleted) and
+-- its latest change of kind 'kudos' (its kudos total changed). Writing a route again moves its entry to the end of the
+-- sequence, so the log never holds more entries than routes. Deleted routes keep their entry as a tombstone.
+--
+-- The sequence is a counter in data_versions. Triggers bump it inside the transaction of the write, so it's locked
+-- until the write commits and changes become visible in sequence order. Writes cascaded through foreign keys don't
+-- fire triggers: kudo entries deleted along with their route don't need an entry, since the route itself is deleted.
+
+CREATE TABLE IF NOT EXISTS route_changes
+(
+    route    BIGINT                                                     NOT NULL,
+    kind     ENUM ('route', 'kudos')                                    NOT NULL,
+    type     ENUM ('created', 'updated', 'blocked', 'deleted', 'kudos') NOT NULL,
+    sequence BIGINT UNSIGNED                                            NOT NULL,
+    PRIMARY KEY (route, kind),
+    UNIQUE INDEX route_changes_sequence (sequence)
+);
+
+INSERT IGNORE INTO data_versions(name)
+VALUES ('route_changes');
+
+-- Routes created before the log existed are logged as created, so a replica can start from the beginning of the log
+
+SET @sequence = (SELECT version FROM data_versions WHERE name = 'route_changes');
+
+INSERT IGNORE INTO route_changes(route, kind, type, sequence)
+SELECT id, 'route', 'created', @sequence := @sequence + 1
+FROM routes
+ORDER BY id;
+
+UPDATE data_versions
+SET version = GREATEST(version, @sequence)
+WHERE name = 'route_changes';
+
+DELIMITER $$
+
+CREATE TRIGGER routes_after_insert_log_change
+    AFTER INSERT
+    ON routes
+    FOR EACH ROW
+BEGIN
+    UPDATE data_versions SET version = version + 1 WHERE name = 'route_changes';
+    INSERT INTO route_changes(route, kind, type, sequence)
+    SELECT NEW.id, 'route', 'created', version FROM data_versions WHERE name = 'route_changes'
+    ON DUPLICATE KEY UPDATE type = VALUES(type), sequence = VALUES(sequence);
+END$$
+
+CREATE TRIGGER routes_after_update_log_change
+    AFTER UPDATE
+    ON routes
+    FOR EACH ROW
+BEGIN
+    UPDATE data_versions SET version = version + 1 WHERE name = 'route_changes';
+    INSERT INTO route_changes(route, kind, type, sequence)
+    SELECT NEW.id, 'route', IF(NEW.blocked AND NOT OLD.blocked, 'blocked', 'updated'), version
+    FROM data_versions
+    WHERE name = 'route_changes'
+    ON DUPLICATE KEY UPDATE type = VALUES(type), sequence = VALUES(sequence);
+END$$
+
+CREATE TRIGGER routes_after_delete_log_change
+    AFTER DELETE
+    ON routes
+    FOR EACH ROW
+BEGIN
+    UPDATE data_versions SET version = version + 1 WHERE name = 'route_changes';
+    DELETE FROM route_changes WHERE route = OLD.id AND kind = 'kudos';
+    INSERT INTO route_changes(route, kind, type, sequence)
+    SELECT OLD.id, 'route', 'deleted', version FROM data_versions WHERE name = 'route_changes'
+    ON DUPLICATE KEY UPDATE type = VALUES(type), sequence = VALUES(sequence);
+END$$
+
+CREATE TRIGGER routekudosregistry_after_insert_log_change
+    AFTER INSERT
+    ON routekudosregistry
+    FOR EACH ROW
+BEGIN
+    UPDATE data_versions SET version = version + 1 WHERE name = 'route_changes';
+    INSERT INTO route_changes(route, kind, type, sequence)
+    SELECT NEW.route, 'kudos', 'kudos', version FROM data_versions WHERE name = 'route_changes'
+    ON DUPLICATE KEY UPDATE sequence = VALUES(sequence);
+END$$
+
+CREATE TRIGGER routekudosregistry_after_update_log_change
+    AFTER UPDATE
+    ON routekudosregistry
+    FOR EACH ROW
+BEGIN
+    UPDATE data_versions SET version = version + 1 WHERE name = 'route_changes';
+    INSERT INTO route_changes(route, kind, type, sequence)
+    SELECT NEW.route, 'kudos', 'kudos', version FROM data_versions WHERE name = 'route_changes'
+    ON DUPLICATE KEY UPDATE sequence = VALUES(sequence);
+END$$
+
+CREATE TRIGGER routekudosregistry_after_delete_log_change
+    AFTER DELETE
+    ON routekudosregistry
+    FOR EACH ROW
+BEGIN
+    UPDATE data_versions SET version = version + 1 WHERE name = 'route_changes';
+    INSERT INTO route_changes(route, kind, type, sequence)
+    SELECT OLD.route, 'kudos', 'kudos', version FROM data_versions WHERE name = 'route_changes'
+    ON DUPLICATE KEY UPDATE sequence = VALUES(sequence);
+END$$
+
+DELIMITER ;
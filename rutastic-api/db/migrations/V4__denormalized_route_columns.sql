@@ -0,0 +1,61 @@
+-- Denormalized route columns: the kudos total and the category names of each route, kept in the routes table itself,
+-- so reading routes doesn't aggregate the kudo entries and concatenate the category names of every row of every query.
+--
+-- The API keeps both columns up to date inside the transaction of every write to the kudo entries (JDBCKudoEntryDAO),
+-- the route to categories mappings (JDBCRouteToCategoriesMappingDAO) and the categories (JDBCRouteCategoryDAO). Writes
+-- that bypass the API, or cascades through foreign keys (e.g. the kudo entries of a deleted user), can leave them
+-- drifting from the source tables. A scheduled maintenance function (see RouteReconciliationHandler) finds and repairs
+-- the drifted routes with the backfill statements below.
+--
+-- The API reads routes, along with both columns, from the routes table directly. The view routes_expandedinfo, which
+-- the statistics views build on, is left untouched.
+--
+-- Category names are kept comma-separated and ordered by name, the format the API parses them in, instead of a
+-- bitmask of category IDs: categories are created at runtime, and filters match them by name (FIND_IN_SET).
+
+ALTER TABLE routes
+    ADD COLUMN kudos      INT           NOT NULL DEFAULT 0,
+    ADD COLUMN categories VARCHAR(1024) NULL;
+
+CREATE INDEX routes_kudos ON routes (kudos);
+
+-- Kudos changes are already logged as changes of kind 'kudos' (V3), so updating only the kudos total of a route
+-- doesn't log an update of the route
+
+DROP TRIGGER IF EXISTS routes_after_update_log_change;
+
+DELIMITER $$
+
+CREATE TRIGGER routes_after_update_log_change
+    AFTER UPDATE
+    ON routes
+    FOR EACH ROW
+BEGIN
+    IF NOT (NEW.created_by_user <=> OLD.created_by_user AND NEW.title <=> OLD.title AND
+            NEW.description <=> OLD.description AND NEW.distance <=> OLD.distance AND
+            NEW.duration <=> OLD.duration AND NEW.elevation <=> OLD.elevation AND
+            NEW.skill_level <=> OLD.skill_level AND NEW.blocked <=> OLD.blocked AND
+            NEW.categories <=> OLD.categories AND NEW.creation_date <=> OLD.creation_date) THEN
+        UPDATE data_versions SET version = version + 1 WHERE name = 'route_changes';
+        INSERT INTO route_changes(route, kind, type, sequence)
+        SELECT NEW.id, 'route', IF(NEW.blocked AND NOT OLD.blocked, 'blocked', 'updated'), version
+        FROM data_versions
+        WHERE name = 'route_changes'
+        ON DUPLICATE KEY UPDATE type = VALUES(type), sequence = VALUES(sequence);
+    END IF;
+END$$
+
+DELIMITER ;
+
+-- Backfill from the source tables. The same statements repair drift later on
+
+UPDATE routes r
+    LEFT JOIN (SELECT route, SUM(modifier) AS total FROM routekudosregistry GROUP BY route) k ON k.route = r.id
+SET r.kudos = IFNULL(k.total, 0);
+
+UPDATE routes r
+    LEFT JOIN (SELECT rcm.route, GROUP_CONCAT(rc.name ORDER BY rc.name SEPARATOR ',') AS names
+               FROM routetocategoriesmapping rcm
+                        JOIN routecategories rc ON rc.id = rcm.category
+               GROUP BY rcm.route) c ON c.route = r.id
+SET r.categories = c.names;
@@ -0,0 +1,22 @@
+package dao;
+
+import model.DataVersion;
+
+import java.util.Map;
+
+/**
+ * Extended public interface for all DAO implementations for model class {@code DataVersion}. Specifies additional
+ * methods all DAO implementations should support. Data versions are bumped by the data source itself on every write,
+ * so this DAO is read-only
+ *
+ * @see dao.implementations.DAOImplementation
+ * @see DataVersion
+ */
+public interface DataVersionDAO extends DAO<DataVersion> {
+
+    /**
+     * @return Map of table names to their current data version, or null on error
+     */
+    Map<String, Long> getVersionsByTable();
+
+}
@@ -0,0 +1,158 @@
+package dao;
+
+import dao.implementations.DAOImplJDBC;
+import model.DataVersion;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * JDBC Implementation for the {@code DataVersion} DAO. Data versions are stored in the table data_versions, and bumped
+ * by triggers on each versioned table, so they're bumped inside the same transaction as the write, whichever DAO or
+ * client performs it
+ *
+ * @see DAOImplJDBC
+ * @see DataVersionDAO
+ * @see DataVersion
+ */
+public class JDBCDataVersionDAO implements DataVersionDAO, DAOImplJDBC {
+
+    private static final Logger logger = Logger.getLogger(JDBCDataVersionDAO.class.getName());
+    private boolean dependenciesConfigured;
+    private Connection connection;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<DataVersion> getAll() {
+        if (!dependenciesConfigured()) return null;
+
+        List<DataVersion> allVersions = new ArrayList<>();
+
+        try {
+            Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery("SELECT name, version FROM data_versions");
+
+            while (rs.next()) {
+                DataVersion dataVersion = new DataVersion();
+                dataVersion.setName(rs.getString("name"));
+                dataVersion.setVersion(rs.getLong("version"));
+                allVersions.add(dataVersion);
+            }
+
+            st.close();
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+            return null;
+        }
+
+        return allVersions;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getVersionsByTable() {
+        List<DataVersion> allVersions = getAll();
+
+        if (allVersions == null) return null;
+
+        Map<String, Long> versionsByTable = new HashMap<>();
+        for (DataVersion dataVersion : allVersions)
+            versionsByTable.put(dataVersion.getName(), dataVersion.getVersion());
+
+        logger.fine("[FETCHED DATA VERSIONS] " + versionsByTable);
+
+        return versionsByTable;
+    }
+
+    /**
+     * @throws UnsupportedOperationException Not supported. Data versions are identified by name, use
+     *                                       getVersionsByTable()
+     */
+    @Override
+    public DataVersion getById(long... id) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException Not supported. Data versions are bumped by the database
+     */
+    @Override
+    public long[] add(DataVersion instance) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException Not supported. Data versions are bumped by the database
+     */
+    @Override
+    public long[] add(DataVersion instance, boolean isAtomic) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException Not supported. Data versions are bumped by the database
+     */
+    @Override
+    public boolean save(DataVersion instance) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException Not supported. Data versions are bumped by the database
+     */
+    @Override
+    public boolean save(DataVersion instance, boolean isAtomic) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException Not supported. Data versions are bumped by the database
+     */
+    @Override
+    public boolean deleteById(long... id) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException Not supported. Data versions are bumped by the database
+     */
+    @Override
+    public boolean deleteById(boolean isAtomic, long... id) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean dependenciesConfigured() {
+        return dependenciesConfigured;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDependenciesConfigured(boolean status) {
+        dependenciesConfigured = status;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setConnection(Connection connection) {
+        this.connection = connection;
+    }
+}
@@ -4,9 +4,11 @@ import dao.implementations.DAOImplJDBC;
 import helper.DateTimeUtils;
 import helper.model.ModelMapper;
 import helper.model.ModelMapperFactory;
+import kudoindex.UserKudoIndex;
 import model.KudoEntry;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -18,6 +20,8 @@ import java.util.stream.Collectors;
 
 /**
  * JDBC Implementation for the {@code KudoEntry} DAO
+ * <p></p>
+ * Every write to a kudo entry also updates the denormalized kudos total of its route, within the same transaction
  *
  * @see KudoEntry
  * @see KudoEntryDAO
@@ -223,6 +227,10 @@ public class JDBCKudoEntryDAO implements KudoEntryDAO, DAOImplJDBC {
                     instance.getUser(),
                     instance.getRoute(),
                     instance.getModifier()));
+            // Keep the kudos total of the route in the same transaction
+            st.executeUpdate(String.format("UPDATE routes SET kudos = kudos + %d WHERE id = %d",
+                    instance.getModifier(),
+                    instance.getRoute()));
 
             if (isAtomic) connection.commit();
             st.close();
@@ -267,6 +275,12 @@ public class JDBCKudoEntryDAO implements KudoEntryDAO, DAOImplJDBC {
 
         try {
             Statement st = connection.createStatement();
+            // Swap the previous modifier for the new one in the kudos total of the route, before it's overwritten
+            st.executeUpdate(String.format("UPDATE routes r JOIN routekudosregistry k ON k.route = r.id " +
+                            "SET r.kudos = r.kudos - k.modifier + %d WHERE k.user = '%s' AND k.route = %d",
+                    instance.getModifier(),
+                    instance.getUser(),
+                    instance.getRoute()));
             st.executeUpdate(String.format("UPDATE routekudosregistry SET modifier = %d WHERE user = '%s' AND route = %d",
                     instance.getModifier(),
                     instance.getUser(),
@@ -318,6 +332,9 @@ public class JDBCKudoEntryDAO implements KudoEntryDAO, DAOImplJDBC {
 
         try {
             Statement st = connection.createStatement();
+            // Take the modifier out of the kudos total of the route, before the entry is gone
+            st.executeUpdate(String.format("UPDATE routes r JOIN routekudosregistry k ON k.route = r.id " +
+                    "SET r.kudos = r.kudos - k.modifier WHERE k.user = '%s' AND k.route = %d", username, routeId));
             st.executeUpdate(String.format("DELETE FROM routekudosregistry WHERE user = '%s' AND route = %d", username, routeId));
 
             if (isAtomic) connection.commit();
@@ -354,6 +371,37 @@ public class JDBCKudoEntryDAO implements KudoEntryDAO, DAOImplJDBC {
                 .collect(Collectors.toMap(KudoEntry::getRoute, kudoEntry -> kudoEntry));
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UserKudoIndex getKudoIndexForUser(String username) {
+        if (!dependenciesConfigured()) return null;
+
+        UserKudoIndex.Builder indexBuilder = new UserKudoIndex.Builder();
+        long loadedAt = System.currentTimeMillis();
+
+        try {
+            PreparedStatement st = connection.prepareStatement(
+                    "SELECT route, modifier FROM routekudosregistry WHERE user = ? ORDER BY route");
+            st.setString(1, username);
+            ResultSet rs = st.executeQuery();
+
+            while (rs.next())
+                indexBuilder.add(rs.getLong("route"), rs.getInt("modifier"));
+
+            st.close();
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+            return null;
+        }
+
+        UserKudoIndex index = indexBuilder.build(loadedAt);
+        logger.info("[FETCHED Kudo index] user: " + username + " | kudo entries: " + index.size());
+
+        return index;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -234,6 +234,7 @@ public class JDBCRouteCategoryDAO implements RouteCategoryDAO, DAOImplJDBC {
                     instance.getName(),
                     instance.getDescription(),
                     instance.getId()));
+            refreshCategoryNamesOfRoutes(st, instance.getId(), false); // The category may have been renamed
 
             if (isAtomic) connection.commit();
             updateSuccessful = true;
@@ -282,6 +283,8 @@ public class JDBCRouteCategoryDAO implements RouteCategoryDAO, DAOImplJDBC {
 
         try {
             Statement st = connection.createStatement();
+            // Mappings are deleted along with the category, so drop its name from the routes beforehand
+            refreshCategoryNamesOfRoutes(st, id[0], true);
             st.executeUpdate("DELETE FROM routecategories WHERE id = " + id[0]);
 
             if (isAtomic) connection.commit();
@@ -303,6 +306,24 @@ public class JDBCRouteCategoryDAO implements RouteCategoryDAO, DAOImplJDBC {
         return deletionSuccessful;
     }
 
+    /**
+     * Refresh the denormalized category names of the routes mapped to a category
+     *
+     * @param st         Statement of the transaction of the category write
+     * @param categoryId ID of the category
+     * @param excluded   If the category is left out of the names, as it's about to be deleted
+     * @throws SQLException On error updating the routes
+     */
+    private void refreshCategoryNamesOfRoutes(Statement st, long categoryId, boolean excluded) throws SQLException {
+        st.executeUpdate(String.format("UPDATE routes r SET r.categories = " +
+                        "(SELECT GROUP_CONCAT(rc.name ORDER BY rc.name SEPARATOR ',') " +
+                        "FROM routetocategoriesmapping rcm JOIN routecategories rc ON rc.id = rcm.category " +
+                        "WHERE rcm.route = r.id%s) " +
+                        "WHERE r.id IN (SELECT route FROM routetocategoriesmapping WHERE category = %d)",
+                excluded ? " AND rcm.category <> " + categoryId : "",
+                categoryId));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,182 @@
+package dao;
+
+import dao.implementations.DAOImplJDBC;
+import model.RouteChange;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * JDBC Implementation for the {@code RouteChange} DAO. Route changes are stored in the table route_changes, and logged
+ * by triggers on the routes and kudo entries tables, so they're logged inside the same transaction as the write,
+ * whichever DAO or client performs it.
+ * <p></p>
+ * Triggers take their sequence number from a counter in data_versions, which stays locked until the write commits or
+ * rolls back. Writes are then numbered in the order they commit: the change still in flight, if any, is always the one
+ * right after the latest committed sequence
+ *
+ * @see DAOImplJDBC
+ * @see RouteChangeDAO
+ * @see RouteChange
+ */
+public class JDBCRouteChangeDAO implements RouteChangeDAO, DAOImplJDBC {
+
+    private static final Logger logger = Logger.getLogger(JDBCRouteChangeDAO.class.getName());
+    private boolean dependenciesConfigured;
+    private Connection connection;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<RouteChange> getAll() {
+        return getAfter(0, Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCommittedSequence() {
+        if (!dependenciesConfigured()) return -1;
+
+        long sequence = -1;
+
+        try {
+            PreparedStatement st = connection.prepareStatement(
+                    "SELECT version FROM data_versions WHERE name = 'route_changes'");
+
+            ResultSet rs = st.executeQuery();
+            if (rs.next()) sequence = rs.getLong("version");
+
+            st.close();
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+        }
+
+        return sequence;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<RouteChange> getAfter(long sequence, long upTo, int limit) {
+        if (!dependenciesConfigured()) return null;
+
+        List<RouteChange> routeChanges = new ArrayList<>();
+
+        try {
+            PreparedStatement st = connection.prepareStatement("SELECT route, kind, type, sequence " +
+                    "FROM route_changes WHERE sequence > ? AND sequence <= ? ORDER BY sequence LIMIT ?");
+            st.setLong(1, sequence);
+            st.setLong(2, upTo);
+            st.setInt(3, limit);
+
+            ResultSet rs = st.executeQuery();
+            while (rs.next()) {
+                RouteChange routeChange = new RouteChange();
+                routeChange.setRoute(rs.getLong("route"));
+                routeChange.setKind(rs.getString("kind"));
+                routeChange.setType(rs.getString("type"));
+                routeChange.setSequence(rs.getLong("sequence"));
+                routeChanges.add(routeChange);
+            }
+
+            st.close();
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+            return null;
+        }
+
+        logger.info("[FETCHED ROUTE CHANGES] after: " + sequence + " | count: " + routeChanges.size());
+
+        return routeChanges;
+    }
+
+    /**
+     * @throws UnsupportedOperationException Not supported. Route changes are identified by their sequence number, use
+     *                                       getAfter()
+     */
+    @Override
+    public RouteChange getById(long... id) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException Not supported. Route changes are logged by the database
+     */
+    @Override
+    public long[] add(RouteChange instance) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException Not supported. Route changes are logged by the database
+     */
+    @Override
+    public long[] add(RouteChange instance, boolean isAtomic) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException Not supported. Route changes are logged by the database
+     */
+    @Override
+    public boolean save(RouteChange instance) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException Not supported. Route changes are logged by the database
+     */
+    @Override
+    public boolean save(RouteChange instance, boolean isAtomic) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException Not supported. Route changes are logged by the database
+     */
+    @Override
+    public boolean deleteById(long... id) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @throws UnsupportedOperationException Not supported. Route changes are logged by the database
+     */
+    @Override
+    public boolean deleteById(boolean isAtomic, long... id) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean dependenciesConfigured() {
+        return dependenciesConfigured;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDependenciesConfigured(boolean status) {
+        dependenciesConfigured = status;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setConnection(Connection connection) {
+        this.connection = connection;
+    }
+}
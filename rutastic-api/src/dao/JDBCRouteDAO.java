@@ -9,21 +9,28 @@ import helper.model.ModelMapperFactory;
 import model.Route;
 import model.RouteCategory;
 import model.RouteToCategoriesMapping;
+import routefilter.FilterResultCache;
 import routefilter.SQLRouteFilter;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 import java.util.logging.Logger;
 
 /**
- * JDBC Implementation for the {@code Route} DAO. To retrieve all info about a route the view
- * route_expandedinfo is used, and the table routes for DDL operations
+ * JDBC Implementation for the {@code Route} DAO. All info about a route is retrieved from the table routes, which keeps
+ * the kudos and categories of each route denormalized, and the same table is used for DDL operations
  * (ALTER TABLE, INSERT INTO, UPDATE, DELETE FROM)
  *
  * @see DAOImplJDBC
@@ -33,6 +40,7 @@ import java.util.logging.Logger;
 public class JDBCRouteDAO implements RouteDAO, RouteDAOImplJDBC {
 
     private static final Logger logger = Logger.getLogger(JDBCRouteDAO.class.getName());
+    private static final int MAX_IN_PARAMETERS = 500; // Maximum number of IDs bound to a single IN list
     private boolean dependenciesConfigured;
     private Connection connection;
 
@@ -51,7 +59,7 @@ public class JDBCRouteDAO implements RouteDAO, RouteDAOImplJDBC {
 
         try {
             Statement st = connection.createStatement();
-            ResultSet rs = st.executeQuery("SELECT * FROM routes_expandedinfo");
+            ResultSet rs = st.executeQuery("SELECT * FROM routes");
 
             while (rs.next()) {
                 currentRoute = routeModelMapper.parseFromResultSet(rs);
@@ -93,7 +101,7 @@ public class JDBCRouteDAO implements RouteDAO, RouteDAOImplJDBC {
 
         try {
             Statement st = connection.createStatement();
-            ResultSet rs = st.executeQuery("SELECT * FROM routes_expandedinfo WHERE id = " + id[0]);
+            ResultSet rs = st.executeQuery("SELECT * FROM routes WHERE id = " + id[0]);
 
             if (rs.next()) {
                 route = routeModelMapper.parseFromResultSet(rs);
@@ -116,6 +124,69 @@ public class JDBCRouteDAO implements RouteDAO, RouteDAOImplJDBC {
         return route;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p></p>
+     * The routes are queried with one {@code WHERE id IN (...)} statement per chunk of {@link #MAX_IN_PARAMETERS} IDs
+     */
+    @Override
+    public List<Route> getByIds(Collection<Long> ids) {
+        return getByIds(ids, "*");
+    }
+
+    /**
+     * Get routes by their IDs, retrieving only some columns
+     *
+     * @param ids     Route IDs
+     * @param columns Comma separated columns to retrieve, or {@code *} to retrieve all of them. Must include the ID
+     * @return The routes in the same order as the first occurrence of their IDs, or null if they couldn't be loaded
+     */
+    private List<Route> getByIds(Collection<Long> ids, String columns) {
+        if (!dependenciesConfigured()) return null;
+
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<Long, Route> routesById = new HashMap<>();
+        ModelMapper<Route> routeModelMapper = ModelMapperFactory.get().forModel(Route.class);
+
+        logger.info("FETCHING " + distinctIds.size() + " ROUTES BY ID");
+
+        try {
+            for (int from = 0; from < distinctIds.size(); from += MAX_IN_PARAMETERS) {
+                List<Long> chunk = distinctIds.subList(from, Math.min(from + MAX_IN_PARAMETERS, distinctIds.size()));
+                String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+
+                PreparedStatement st = connection.prepareStatement(
+                        "SELECT " + columns + " FROM routes WHERE id IN (" + placeholders + ")");
+                for (int i = 0; i < chunk.size(); i++)
+                    st.setLong(i + 1, chunk.get(i));
+
+                ResultSet rs = st.executeQuery();
+                while (rs.next()) {
+                    Route route = routeModelMapper.parseFromResultSet(rs);
+                    if (route != null)
+                        routesById.put(route.getId(), route);
+                    else
+                        logger.warning("Attempted to read a NULL route");
+                }
+
+                st.close();
+            }
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+            return null;
+        }
+
+        // Restore the requested order, skipping the IDs that weren't found
+
+        List<Route> routes = new ArrayList<>(routesById.size());
+        for (long id : distinctIds) {
+            Route route = routesById.get(id);
+            if (route != null) routes.add(route);
+        }
+
+        return routes;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -332,6 +403,201 @@ public class JDBCRouteDAO implements RouteDAO, RouteDAOImplJDBC {
         return deletionSuccessful;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p></p>
+     * The categories of the route are replaced in the same transaction, only if the route was updated
+     */
+    @Override
+    public MutationOutcome saveByAuthor(Route instance, String username) {
+        if (!dependenciesConfigured()) return null;
+
+        try {
+            PreparedStatement st = connection.prepareStatement("UPDATE routes " +
+                    "SET title = ?, description = ?, distance = ?, duration = ?, elevation = ?, skill_level = ?, " +
+                    "blocked = ? WHERE id = ? AND BINARY created_by_user = ?");
+            st.setString(1, instance.getTitle());
+            st.setString(2, instance.getDescription());
+            st.setInt(3, instance.getDistance());
+            st.setInt(4, instance.getDuration());
+            st.setInt(5, instance.getElevation());
+            st.setString(6, instance.getSkillLevel());
+            st.setBoolean(7, instance.isBlocked());
+            st.setLong(8, instance.getId());
+            st.setString(9, username);
+
+            // Rows matched, whether their values changed or not
+
+            int updatedRoutes = st.executeUpdate();
+            st.close();
+
+            if (updatedRoutes == 0) {
+                connection.rollback();
+                return diagnoseUnmatchedWrite(instance.getId(), username);
+            }
+
+            // Update route categories by removing all of them and adding the newly specified ones
+
+            List<RouteCategory> routeCategoriesObjects = parseRouteCategoriesFromString(instance.getCategories());
+            List<RouteToCategoriesMapping> newMappings =
+                    generateRouteCategoryMappings(instance.getId(), routeCategoriesObjects);
+            RouteToCategoriesMappingDAO categoriesMappingDAO =
+                    DAOAbstractFactory.get().impl(DAOImplJDBC.class).forModel(RouteToCategoriesMapping.class);
+
+            List<RouteToCategoriesMapping> oldMappings = categoriesMappingDAO.getAllByRoute(instance.getId());
+            boolean updateSuccessful = categoriesMappingDAO.deleteInBulk(oldMappings, false) &&
+                    categoriesMappingDAO.addInBulk(newMappings, false);
+
+            if (!updateSuccessful) {
+                connection.rollback();
+                return null;
+            }
+
+            connection.commit();
+
+            logger.info(String.format("[ROUTE UPDATED] id: %d | updated by: %s | title: %s | categories: %s",
+                    instance.getId(), username, instance.getTitle(), instance.getCategories()));
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+            rollback();
+            return null;
+        }
+
+        return MutationOutcome.UPDATED;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MutationOutcome saveBlockedState(long id, String username, boolean blocked) {
+        if (!dependenciesConfigured()) return null;
+
+        try {
+            PreparedStatement st = connection.prepareStatement("UPDATE routes SET blocked = ? " +
+                    "WHERE id = ? AND BINARY created_by_user = ? AND blocked <> ?");
+            st.setBoolean(1, blocked);
+            st.setLong(2, id);
+            st.setString(3, username);
+            st.setBoolean(4, blocked);
+
+            int updatedRoutes = st.executeUpdate();
+            st.close();
+            connection.commit();
+
+            if (updatedRoutes == 0) return diagnoseUnmatchedWrite(id, username);
+
+            logger.info("[route with the id (" + id + ") has been " + (blocked ? "blocked" : "unblocked") + "]");
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+            rollback();
+            return null;
+        }
+
+        return MutationOutcome.UPDATED;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MutationOutcome deleteByAuthor(long id, String username) {
+        if (!dependenciesConfigured()) return null;
+
+        try {
+            PreparedStatement st = connection.prepareStatement(
+                    "DELETE FROM routes WHERE id = ? AND BINARY created_by_user = ?");
+            st.setLong(1, id);
+            st.setString(2, username);
+
+            int deletedRoutes = st.executeUpdate();
+            st.close();
+            connection.commit();
+
+            if (deletedRoutes == 0) return diagnoseUnmatchedWrite(id, username);
+
+            logger.info("[route with the id (" + id + ") has been deleted by " + username + "]");
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+            rollback();
+            return null;
+        }
+
+        return MutationOutcome.UPDATED;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p></p>
+     * Only drifted routes match the updates, so routes whose columns are in step aren't written, and don't show up in
+     * the route change log
+     */
+    @Override
+    public int saveReconciledColumns() {
+        if (!dependenciesConfigured()) return -1;
+
+        try {
+            Statement st = connection.createStatement();
+            int driftedKudos = st.executeUpdate("UPDATE routes r " +
+                    "LEFT JOIN (SELECT route, SUM(modifier) AS total FROM routekudosregistry GROUP BY route) k " +
+                    "ON k.route = r.id SET r.kudos = IFNULL(k.total, 0) WHERE r.kudos <> IFNULL(k.total, 0)");
+            int driftedCategories = st.executeUpdate("UPDATE routes r " +
+                    "LEFT JOIN (SELECT rcm.route, GROUP_CONCAT(rc.name ORDER BY rc.name SEPARATOR ',') AS names " +
+                    "FROM routetocategoriesmapping rcm JOIN routecategories rc ON rc.id = rcm.category " +
+                    "GROUP BY rcm.route) c ON c.route = r.id SET r.categories = c.names " +
+                    "WHERE NOT (r.categories <=> c.names)");
+            st.close();
+            connection.commit();
+
+            if (driftedKudos > 0 || driftedCategories > 0)
+                logger.warning(String.format("[REPAIRED DENORMALIZED ROUTE COLUMNS] kudos: %d | categories: %d",
+                        driftedKudos, driftedCategories));
+
+            return driftedKudos + driftedCategories;
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+            rollback();
+            return -1;
+        }
+    }
+
+    /**
+     * Find out why a conditional write didn't match any route. Only the routes table is read, by its primary key
+     *
+     * @param id       ID of the route
+     * @param username Username of the user performing the write
+     * @return {@link MutationOutcome#NOT_FOUND} if there's no route with that ID, {@link MutationOutcome#FORBIDDEN} if
+     * the route was created by another user, or else {@link MutationOutcome#UNCHANGED}. Null on error
+     */
+    private MutationOutcome diagnoseUnmatchedWrite(long id, String username) {
+        try {
+            PreparedStatement st = connection.prepareStatement("SELECT created_by_user FROM routes WHERE id = ?");
+            st.setLong(1, id);
+
+            ResultSet rs = st.executeQuery();
+            MutationOutcome outcome = !rs.next() ? MutationOutcome.NOT_FOUND :
+                    !username.equals(rs.getString("created_by_user")) ? MutationOutcome.FORBIDDEN :
+                            MutationOutcome.UNCHANGED;
+
+            st.close();
+            return outcome;
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Roll back the current transaction after a failed write
+     */
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override
     public List<Route> getTopRoutesOfTheMonth() {
         if (!dependenciesConfigured()) return null;
@@ -414,14 +680,48 @@ public class JDBCRouteDAO implements RouteDAO, RouteDAOImplJDBC {
 
     /**
      * {@inheritDoc}
+     * <p></p>
+     * The IDs of the retrieved routes are cached by the fingerprint of the filter, so running again a filter whose
+     * tables weren't written since only loads its routes by ID. Filters whose criteria contradict each other retrieve
+     * no route without querying the database
+     *
+     * @see FilterResultCache
      */
     @Override
     public List<Route> executeFilter(SQLRouteFilter sqlRouteFilter) {
+        return executeFilter(sqlRouteFilter, FilterResultCache.get().currentVersionStamp());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Route> executeFilter(SQLRouteFilter sqlRouteFilter, String versionStamp) {
         ModelMapper<Route> routeModelMapper = ModelMapperFactory.get().forModel(Route.class);
+        FilterResultCache filterResultCache = FilterResultCache.get();
         List<Route> filteredRoutes = new ArrayList<>();
         Route currentRoute;
 
+        if (sqlRouteFilter.isValid() && sqlRouteFilter.isUnsatisfiable()) {
+            logger.info("Route filter can't retrieve any route (" + sqlRouteFilter.getFingerprint() + ")");
+            return filteredRoutes;
+        }
+
         if (sqlRouteFilter.isValid()) {
+            long[] cachedIds = filterResultCache.getIds(sqlRouteFilter.getFingerprint(), versionStamp);
+
+            if (cachedIds != null) {
+                List<Long> routeIds = new ArrayList<>(cachedIds.length);
+                for (long routeId : cachedIds)
+                    routeIds.add(routeId);
+
+                List<Route> cachedRoutes = getByIds(routeIds, sqlRouteFilter.getColumns());
+                if (cachedRoutes != null) {
+                    logger.info("Served route filter from cache (" + sqlRouteFilter.getFingerprint() + ")");
+                    return cachedRoutes;
+                }
+            }
+
             try {
                 logger.info("Executing route filter (" + sqlRouteFilter.consume() + ")");
 
@@ -451,7 +751,14 @@ public class JDBCRouteDAO implements RouteDAO, RouteDAOImplJDBC {
                 st.close();
             } catch (SQLException throwables) {
                 throwables.printStackTrace();
+                return filteredRoutes; // Don't cache a partial result
             }
+
+            long[] filteredIds = new long[filteredRoutes.size()];
+            for (int i = 0; i < filteredIds.length; i++)
+                filteredIds[i] = filteredRoutes.get(i).getId();
+
+            filterResultCache.putIds(sqlRouteFilter.getFingerprint(), versionStamp, filteredIds);
         }
 
         return filteredRoutes;
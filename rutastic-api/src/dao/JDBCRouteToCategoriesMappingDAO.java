@@ -17,6 +17,8 @@ import java.util.logging.Logger;
 
 /**
  * JDBC Implementation for the {@code RouteToCategoriesMapping} DAO
+ * <p></p>
+ * Every write to a mapping also refreshes the denormalized category names of its route, within the same transaction
  *
  * @see DAOImplJDBC
  * @see RouteToCategoriesMappingDAO
@@ -217,6 +219,7 @@ public class JDBCRouteToCategoriesMappingDAO implements RouteToCategoriesMapping
             st.executeUpdate(String.format("INSERT INTO routetocategoriesmapping(route, category) VALUES (%d, %d)",
                     instance.getRoute(),
                     instance.getCategory()));
+            refreshCategoryNames(st, instance.getRoute());
 
             if (isAtomic) connection.commit();
             st.close();
@@ -324,6 +327,7 @@ public class JDBCRouteToCategoriesMappingDAO implements RouteToCategoriesMapping
             Statement st = connection.createStatement();
             st.executeUpdate(String.format("DELETE FROM routetocategoriesmapping WHERE route = %d AND category = %d",
                     id[0], id[1]));
+            refreshCategoryNames(st, id[0]);
 
             if (isAtomic) connection.commit();
             deletionSuccessful = true;
@@ -379,6 +383,22 @@ public class JDBCRouteToCategoriesMappingDAO implements RouteToCategoriesMapping
         return success;
     }
 
+    /**
+     * Refresh the denormalized category names of a route from its mappings, so they stay in step with the mapping
+     * just written. Names are comma-separated and ordered by name, NULL if the route has no categories
+     *
+     * @param st      Statement of the transaction of the mapping write
+     * @param routeId ID of the route
+     * @throws SQLException On error updating the route
+     */
+    private void refreshCategoryNames(Statement st, long routeId) throws SQLException {
+        st.executeUpdate(String.format("UPDATE routes SET categories = " +
+                        "(SELECT GROUP_CONCAT(rc.name ORDER BY rc.name SEPARATOR ',') " +
+                        "FROM routetocategoriesmapping rcm JOIN routecategories rc ON rc.id = rcm.category " +
+                        "WHERE rcm.route = %d) WHERE id = %d",
+                routeId, routeId));
+    }
+
     /**
      * {@inheritDoc}
      */
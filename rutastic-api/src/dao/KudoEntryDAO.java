@@ -1,5 +1,6 @@
 package dao;
 
+import kudoindex.UserKudoIndex;
 import model.KudoEntry;
 
 import java.util.List;
@@ -40,4 +41,12 @@ public interface KudoEntryDAO extends DAO<KudoEntry> {
      */
     Map<Long, KudoEntry> getRouteIDMappedKudoEntriesForUser(String username);
 
+    /**
+     * Request a compact index of the kudos given by a certain user, without building a kudo entry for each of them
+     *
+     * @param username The username of the user to who the kudo entries belong
+     * @return The index of the kudos given by the user, or null on error
+     */
+    UserKudoIndex getKudoIndexForUser(String username);
+
 }
@@ -0,0 +1,12 @@
+package dao;
+
+/**
+ * Enumeration of the outcomes of a conditional write, which only takes place if the authorization and state
+ * preconditions of the write hold when it's executed
+ */
+public enum MutationOutcome {
+    UPDATED, // The preconditions held and the write took place
+    NOT_FOUND, // There's nothing to write with that identifier
+    FORBIDDEN, // The user isn't allowed to perform the write
+    UNCHANGED // The user is allowed, but the write wouldn't change anything
+}
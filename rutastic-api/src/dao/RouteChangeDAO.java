@@ -0,0 +1,38 @@
+package dao;
+
+import model.RouteChange;
+
+import java.util.List;
+
+/**
+ * Extended public interface for all DAO implementations for model class {@code RouteChange}. Specifies additional
+ * methods all DAO implementations should support. Route changes are logged by the data source itself on every write
+ * to the routes and their kudo entries, so this DAO is read-only.
+ * <p></p>
+ * Route changes must be read at READ COMMITTED isolation or stricter: changes of transactions that could still roll
+ * back must never be handed to clients
+ *
+ * @see dao.implementations.DAOImplementation
+ * @see RouteChange
+ */
+public interface RouteChangeDAO extends DAO<RouteChange> {
+
+    /**
+     * Retrieve the latest committed sequence number. Every change up to it is committed, and every change still in
+     * flight gets a later sequence number
+     *
+     * @return The latest committed sequence number, or -1 on error
+     */
+    long getCommittedSequence();
+
+    /**
+     * Retrieve the route changes after a sequence number, in sequence order
+     *
+     * @param sequence Sequence number. Only later changes are retrieved
+     * @param upTo     Sequence number. Only changes up to it are retrieved (see {@link #getCommittedSequence()})
+     * @param limit    Maximum number of changes to retrieve
+     * @return The route changes after the sequence number, or null on error
+     */
+    List<RouteChange> getAfter(long sequence, long upTo, int limit);
+
+}
@@ -2,6 +2,7 @@ package dao;
 
 import model.Route;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -25,4 +26,56 @@ public interface RouteDAO extends DAO<Route> {
      */
     List<Route> getTopRoutesOfTheMonth();
 
+    /**
+     * Retrieve several routes by their IDs at once
+     *
+     * @param ids IDs of the routes
+     * @return The routes found, in the same order as their first occurrence in {@code ids}. IDs that don't identify any
+     * route are skipped. Null on error
+     */
+    List<Route> getByIds(Collection<Long> ids);
+
+    /**
+     * Update a route only if it was created by a user, checking the author in the same statement as the update
+     *
+     * @param instance Route with the ID of the route to update and its new data
+     * @param username Username of the user performing the update
+     * @return {@link MutationOutcome#UPDATED} if the route was updated, {@link MutationOutcome#NOT_FOUND} if there's
+     * no route with that ID, {@link MutationOutcome#FORBIDDEN} if the route was created by another user. Null on error
+     */
+    MutationOutcome saveByAuthor(Route instance, String username);
+
+    /**
+     * Block or unblock a route only if it was created by a user and it isn't in that state already, checking both in
+     * the same statement as the update
+     *
+     * @param id       ID of the route
+     * @param username Username of the user performing the update
+     * @param blocked  If the route must be blocked or unblocked
+     * @return {@link MutationOutcome#UPDATED} if the blocked state of the route changed,
+     * {@link MutationOutcome#UNCHANGED} if the route was in that state already, {@link MutationOutcome#NOT_FOUND} if
+     * there's no route with that ID, {@link MutationOutcome#FORBIDDEN} if the route was created by another user. Null
+     * on error
+     */
+    MutationOutcome saveBlockedState(long id, String username, boolean blocked);
+
+    /**
+     * Delete a route only if it was created by a user, checking the author in the same statement as the deletion
+     *
+     * @param id       ID of the route
+     * @param username Username of the user performing the deletion
+     * @return {@link MutationOutcome#UPDATED} if the route was deleted, {@link MutationOutcome#NOT_FOUND} if there's
+     * no route with that ID, {@link MutationOutcome#FORBIDDEN} if the route was created by another user. Null on error
+     */
+    MutationOutcome deleteByAuthor(long id, String username);
+
+    /**
+     * Repair the denormalized kudos totals and category names of the routes that drifted from the kudo entries and the
+     * route to categories mappings, e.g. after writes that bypassed the DAOs
+     *
+     * @return Number of drifted columns that were repaired, counting the kudos and the categories of a route apart.
+     * -1 on error
+     */
+    int saveReconciledColumns();
+
 }
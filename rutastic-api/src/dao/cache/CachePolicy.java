@@ -0,0 +1,145 @@
+package dao.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+/**
+ * Caching policy for the DAO of a model class. It specifies which lookups are cached, for how long, how big the cache
+ * can grow and which other models get stale when an instance of this model is written
+ *
+ * @see dao.factories.DAOFactoryCached
+ */
+public class CachePolicy {
+
+    private final Set<String> cachedLookups;
+    private final Set<Class<?>> dependentModels;
+    private int maxEntries;
+    private long maxWeight;
+    private long ttlMillis;
+    private long negativeTtlMillis;
+    private ToLongFunction<Object> weigher;
+
+    public CachePolicy() {
+        // Default values
+        cachedLookups = new HashSet<>();
+        dependentModels = new HashSet<>();
+        maxEntries = 256;
+        maxWeight = 512 * 1024;
+        ttlMillis = 30 * 1000;
+        negativeTtlMillis = 5 * 1000;
+        weigher = ObjectSizeEstimator::estimate;
+    }
+
+    /**
+     * @param methodName Name of a DAO method
+     * @return Whether the DAO method mutates the data source. Every method that adds, saves or deletes instances is
+     * considered a write operation
+     */
+    public static boolean isWriteOperation(String methodName) {
+        return methodName.startsWith("add") || methodName.startsWith("save") || methodName.startsWith("delete");
+    }
+
+    /**
+     * Cache the results of the specified DAO lookup methods. Every overload of a method is cached
+     *
+     * @param methodNames Names of the lookup methods
+     * @return This policy
+     */
+    public CachePolicy cache(String... methodNames) {
+        cachedLookups.addAll(Arrays.asList(methodNames));
+        return this;
+    }
+
+    /**
+     * Invalidate the caches of other models whenever an instance of this model is written, because they depend on
+     * it (e.g. the kudos of a route depend on the kudo entries)
+     *
+     * @param modelClasses Classes of the dependent models
+     * @return This policy
+     */
+    public CachePolicy invalidates(Class<?>... modelClasses) {
+        dependentModels.addAll(Arrays.asList(modelClasses));
+        return this;
+    }
+
+    /**
+     * @param maxEntries Maximum number of cached lookups
+     * @return This policy
+     */
+    public CachePolicy maxEntries(int maxEntries) {
+        if (maxEntries > 0) this.maxEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * @param maxWeight Maximum estimated size of all cached results, in bytes
+     * @return This policy
+     */
+    public CachePolicy maxWeight(long maxWeight) {
+        if (maxWeight > 0) this.maxWeight = maxWeight;
+        return this;
+    }
+
+    /**
+     * @param ttlMillis Time a result found at the data source remains cached, in milliseconds
+     * @return This policy
+     */
+    public CachePolicy ttl(long ttlMillis) {
+        if (ttlMillis >= 0) this.ttlMillis = ttlMillis;
+        return this;
+    }
+
+    /**
+     * @param negativeTtlMillis Time a miss at the data source (null result) remains cached, in milliseconds. 0
+     *                          disables negative caching
+     * @return This policy
+     */
+    public CachePolicy negativeTtl(long negativeTtlMillis) {
+        if (negativeTtlMillis >= 0) this.negativeTtlMillis = negativeTtlMillis;
+        return this;
+    }
+
+    /**
+     * @param weigher Function estimating the size in bytes of a cached result
+     * @return This policy
+     */
+    public CachePolicy weigher(ToLongFunction<Object> weigher) {
+        if (weigher != null) this.weigher = weigher;
+        return this;
+    }
+
+    /**
+     * @param methodName Name of a DAO method
+     * @return If the results of the method are cached by this policy
+     */
+    public boolean caches(String methodName) {
+        return cachedLookups.contains(methodName);
+    }
+
+    public Set<Class<?>> getDependentModels() {
+        return Collections.unmodifiableSet(dependentModels);
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public long getNegativeTtlMillis() {
+        return negativeTtlMillis;
+    }
+
+    public long weigh(Object value) {
+        return weigher.applyAsLong(value);
+    }
+}
@@ -0,0 +1,76 @@
+package dao.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit and miss counters of a DAO cache. Negative hits (cached lookups that didn't find anything at the data source)
+ * are counted as hits too
+ */
+public class CacheStatistics {
+
+    private final AtomicLong hits;
+    private final AtomicLong negativeHits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+    private final AtomicLong invalidations;
+
+    public CacheStatistics() {
+        hits = new AtomicLong();
+        negativeHits = new AtomicLong();
+        misses = new AtomicLong();
+        evictions = new AtomicLong();
+        invalidations = new AtomicLong();
+    }
+
+    void recordHit(boolean negative) {
+        hits.incrementAndGet();
+        if (negative) negativeHits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    void recordEviction() {
+        evictions.incrementAndGet();
+    }
+
+    void recordInvalidation() {
+        invalidations.incrementAndGet();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return The fraction of lookups served from the cache, or 0 if there hasn't been any lookup yet
+     */
+    public double getHitRatio() {
+        long hits = getHits(), requests = hits + getMisses();
+
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits: %d (negative: %d) | misses: %d | hit ratio: %.2f | evictions: %d | invalidations: %d",
+                getHits(), getNegativeHits(), getMisses(), getHitRatio(), getEvictions(), getInvalidations());
+    }
+}
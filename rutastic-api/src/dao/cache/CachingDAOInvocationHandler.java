@@ -0,0 +1,117 @@
+package dao.cache;
+
+import dao.implementations.DAOImplCached;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Dynamic proxy invocation handler that decorates any DAO with a cache. Lookups enabled by the {@link CachePolicy}
+ * of the model are served from a {@link DAOCache}, write operations are forwarded to the decorated DAO and invalidate
+ * the cache of the model and of its dependent models, and every other method is forwarded as is.
+ * <p></p>
+ * Writes drop the whole cache of the model because the cache keys are built from lookup arguments, which can't be
+ * derived from the model instance being written
+ *
+ * @see dao.factories.DAOFactoryCached
+ */
+public class CachingDAOInvocationHandler implements InvocationHandler {
+
+    private static final Logger logger = Logger.getLogger(CachingDAOInvocationHandler.class.getName());
+
+    private final Object decoratedDAO;
+    private final Class<?> modelClass;
+    private final CachePolicy policy;
+    private final DAOCache cache;
+    private final Consumer<Class<?>> modelInvalidator;
+
+    /**
+     * @param decoratedDAO     DAO whose lookups are being cached
+     * @param modelClass       Model class of the decorated DAO
+     * @param policy           Caching policy of the model
+     * @param cache            Cache of the model
+     * @param modelInvalidator Callback to invalidate the cache of another model, used to invalidate dependent models
+     */
+    public CachingDAOInvocationHandler(Object decoratedDAO, Class<?> modelClass, CachePolicy policy, DAOCache cache,
+                                       Consumer<Class<?>> modelInvalidator) {
+        this.decoratedDAO = decoratedDAO;
+        this.modelClass = modelClass;
+        this.policy = policy;
+        this.cache = cache;
+        this.modelInvalidator = modelInvalidator;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String methodName = method.getName();
+
+        // Methods of the caching DAO implementation
+
+        if (method.getDeclaringClass() == DAOImplCached.class) {
+            if (methodName.equals("getCacheStatistics")) {
+                return cache.getStatistics();
+            } else {
+                cache.invalidateAll();
+                return null;
+            }
+        }
+
+        // Object methods. A proxy is only equal to itself
+
+        if (method.getDeclaringClass() == Object.class) {
+            switch (methodName) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "Cached(" + decoratedDAO + ")";
+            }
+        }
+
+        // Cached lookups
+
+        if (policy.caches(methodName)) {
+            DAOCache.Key key = new DAOCache.Key(methodName, args);
+            DAOCache.Entry cachedEntry = cache.get(key);
+
+            if (cachedEntry != null) return cachedEntry.getValue();
+
+            long generation = cache.generation();
+            Object result = forward(method, args);
+            cache.put(key, result, generation);
+
+            return result;
+        }
+
+        // Write operations. Invalidate after the write, whatever its outcome, since it may have partially succeeded
+
+        if (CachePolicy.isWriteOperation(methodName)) {
+            try {
+                return forward(method, args);
+            } finally {
+                cache.invalidateAll();
+                for (Class<?> dependentModel : policy.getDependentModels())
+                    modelInvalidator.accept(dependentModel);
+
+                logger.fine("[CACHE INVALIDATED] model: " + modelClass.getSimpleName() + " | write: " + methodName);
+            }
+        }
+
+        return forward(method, args);
+    }
+
+    /**
+     * Invoke a method on the decorated DAO, rethrowing the exception thrown by the method itself if it fails
+     */
+    private Object forward(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(decoratedDAO, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
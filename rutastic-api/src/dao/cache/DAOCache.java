@@ -0,0 +1,176 @@
+package dao.cache;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of DAO lookups of a single model class. Entries expire after the TTL set by its {@link CachePolicy},
+ * and when either the number of entries or their estimated size exceed the policy limits the least recently used
+ * entries are evicted. Null results are cached as well (negative caching) with their own TTL.
+ * <p></p>
+ * All operations are synchronized on the cache instance
+ */
+public class DAOCache {
+
+    private final CachePolicy policy;
+    private final CacheStatistics statistics;
+    private final LinkedHashMap<Key, Entry> entries;
+    private long weight;
+    private long generation; // Incremented on every invalidation
+
+    public DAOCache(CachePolicy policy) {
+        this.policy = policy;
+        this.statistics = new CacheStatistics();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true); // Access order to evict the least recently used
+        this.weight = 0;
+        this.generation = 0;
+    }
+
+    /**
+     * Look up a cached result
+     *
+     * @param key Key of the lookup
+     * @return The cached entry, whose value may be null for negative entries, or null if the lookup isn't cached
+     */
+    public synchronized Entry get(Key key) {
+        Entry entry = entries.get(key);
+
+        // Drop the entry if it has already expired
+
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            remove(key);
+            entry = null;
+        }
+
+        if (entry != null)
+            statistics.recordHit(entry.value == null);
+        else
+            statistics.recordMiss();
+
+        return entry;
+    }
+
+    /**
+     * Cache the result of a lookup. If the result is null it is only cached when the policy enables negative caching.
+     * <p></p>
+     * If the cache has been invalidated since the lookup started (the generation doesn't match) the result may be
+     * stale, so it is discarded
+     *
+     * @param key                Key of the lookup
+     * @param value              Result of the lookup
+     * @param expectedGeneration Generation of the cache when the lookup started
+     * @see #generation()
+     */
+    public synchronized void put(Key key, Object value, long expectedGeneration) {
+        if (expectedGeneration != generation) return;
+
+        long ttl = value != null ? policy.getTtlMillis() : policy.getNegativeTtlMillis();
+
+        if (ttl <= 0) return;
+
+        long entryWeight = policy.weigh(value);
+
+        // Results that would take the whole cache by themselves aren't worth caching
+
+        if (entryWeight > policy.getMaxWeight()) return;
+
+        remove(key);
+        entries.put(key, new Entry(value, entryWeight, System.currentTimeMillis() + ttl));
+        weight += entryWeight;
+
+        // Evict the least recently used entries until the cache fits the policy limits again
+
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext() && (entries.size() > policy.getMaxEntries() || weight > policy.getMaxWeight())) {
+            weight -= it.next().getValue().weight;
+            it.remove();
+            statistics.recordEviction();
+        }
+    }
+
+    /**
+     * Drop every cached result
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        weight = 0;
+        generation++;
+        statistics.recordInvalidation();
+    }
+
+    /**
+     * @return Current generation of the cache. It changes every time the cache is invalidated
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) weight -= removed.weight;
+    }
+
+    /**
+     * Key of a cached lookup, made of the name of the lookup method and its arguments
+     */
+    public static class Key {
+
+        private final String methodName;
+        private final Object[] args;
+        private final int hash;
+
+        public Key(String methodName, Object[] args) {
+            this.methodName = methodName;
+            this.args = args != null ? args.clone() : new Object[0];
+            this.hash = 31 * methodName.hashCode() + Arrays.deepHashCode(this.args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            return methodName.equals(key.methodName) && Arrays.deepEquals(args, key.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Cached result of a lookup
+     */
+    public static class Entry {
+
+        private final Object value;
+        private final long weight;
+        private final long expiresAt;
+
+        private Entry(Object value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+    }
+}
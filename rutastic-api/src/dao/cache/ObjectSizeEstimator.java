@@ -0,0 +1,88 @@
+package dao.cache;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rough estimator of the heap footprint of the values stored by DAO caches. It isn't meant to be exact, only to
+ * weigh model instances against each other so caches can be bounded by size and not only by number of entries
+ */
+public class ObjectSizeEstimator {
+
+    private static final long OBJECT_OVERHEAD = 16;
+    private static final long REFERENCE_SIZE = 8;
+
+    private static final Map<Class<?>, List<Field>> fieldsByClass = new ConcurrentHashMap<>();
+
+    private ObjectSizeEstimator() {
+    }
+
+    /**
+     * @param object Object being weighed. Model beans are weighed by their attributes, collections and maps by their
+     *               elements
+     * @return Estimated size of the object in bytes
+     */
+    public static long estimate(Object object) {
+        if (object == null) return REFERENCE_SIZE;
+
+        if (object instanceof String)
+            return OBJECT_OVERHEAD + 24 + 2L * ((String) object).length();
+        if (object instanceof Number || object instanceof Boolean || object instanceof Character)
+            return OBJECT_OVERHEAD + 8;
+        if (object instanceof Collection) {
+            long size = OBJECT_OVERHEAD + 24;
+            for (Object element : (Collection<?>) object)
+                size += REFERENCE_SIZE + estimate(element);
+            return size;
+        }
+        if (object instanceof Map) {
+            long size = OBJECT_OVERHEAD + 48;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet())
+                size += 32 + estimate(entry.getKey()) + estimate(entry.getValue());
+            return size;
+        }
+
+        // Model bean. Add up the size of its attributes
+
+        long size = OBJECT_OVERHEAD;
+        for (Field field : fieldsOf(object.getClass())) {
+            if (field.getType().isPrimitive()) {
+                size += 8;
+            } else {
+                try {
+                    size += REFERENCE_SIZE + estimate(field.get(object));
+                } catch (IllegalAccessException e) {
+                    size += REFERENCE_SIZE;
+                }
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * @param clazz Class being inspected
+     * @return All non static attributes declared by the class and its superclasses
+     */
+    private static List<Field> fieldsOf(Class<?> clazz) {
+        return fieldsByClass.computeIfAbsent(clazz, c -> {
+            List<Field> fields = new ArrayList<>();
+
+            for (Class<?> current = c; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+
+            return fields;
+        });
+    }
+}
@@ -0,0 +1,202 @@
+package dao.factories;
+
+import dao.DAO;
+import dao.cache.CachePolicy;
+import dao.cache.CacheStatistics;
+import dao.cache.CachingDAOInvocationHandler;
+import dao.cache.DAOCache;
+import dao.implementations.DAODependencyConfigurator;
+import dao.implementations.DAOImplCached;
+import model.*;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * DAOFactory decorating the DAOs of another factory with a cache. Each DAO is wrapped in a dynamic proxy that
+ * implements every interface of the decorated DAO plus {@link DAOImplCached}, so a cached DAO can be used wherever
+ * the decorated one could (e.g. a cached Route DAO can still be used as a {@code RouteDAOImplJDBC}).
+ * <p></p>
+ * Only models with a {@link CachePolicy} are decorated, the DAOs of any other model are returned as they are
+ *
+ * @see DAOFactory
+ * @see DAOImplCached
+ * @see CachePolicy
+ */
+public class DAOFactoryCached implements DAOFactory<DAOImplCached> {
+
+    private final DAOFactory<?> decoratedFactory;
+    private final Map<Class<?>, CachePolicy> policies;
+    private final Map<Class<?>, DAOCache> caches;
+    private final Map<Class<?>, DAO<?>> cachedDAOCollection;
+    private DAODependencyConfigurator<DAOImplCached> dependencyConfigurator;
+
+    /**
+     * @param decoratedFactory Factory of the DAOs being decorated
+     * @param policies         Caching policy for each model class
+     */
+    public DAOFactoryCached(DAOFactory<?> decoratedFactory, Map<Class<?>, CachePolicy> policies) {
+        this.decoratedFactory = decoratedFactory;
+        this.policies = Collections.unmodifiableMap(new HashMap<>(policies));
+        this.caches = new ConcurrentHashMap<>();
+        this.cachedDAOCollection = new ConcurrentHashMap<>();
+
+        for (Map.Entry<Class<?>, CachePolicy> policy : this.policies.entrySet())
+            caches.put(policy.getKey(), new DAOCache(policy.getValue()));
+    }
+
+    /**
+     * Decorate a factory with the default caching policies. Users, route categories and kudo entries are cached
+     * together with route lookups by ID. Since the kudos and categories of a route are computed from the kudo entries
+     * and the route to categories mappings, writing any of them invalidates the cached routes
+     *
+     * @param decoratedFactory Factory of the DAOs being decorated
+     * @return The caching factory
+     */
+    public static DAOFactoryCached withDefaultPolicies(DAOFactory<?> decoratedFactory) {
+        Map<Class<?>, CachePolicy> policies = new HashMap<>();
+
+        policies.put(Route.class, new CachePolicy()
+                .cache("getById", "getByIds")
+                .invalidates(RouteToCategoriesMapping.class)
+                .maxEntries(512)
+                .maxWeight(2 * 1024 * 1024)
+                .ttl(30 * 1000)
+                .negativeTtl(5 * 1000));
+        policies.put(User.class, new CachePolicy()
+                .cache("getByUsername")
+                .maxEntries(1024)
+                .maxWeight(256 * 1024)
+                .ttl(5 * 60 * 1000)
+                .negativeTtl(10 * 1000));
+        policies.put(KudoEntry.class, new CachePolicy()
+                .cache("getByPKey")
+                .invalidates(Route.class)
+                .maxEntries(2048)
+                .maxWeight(512 * 1024)
+                .ttl(30 * 1000)
+                .negativeTtl(10 * 1000));
+        policies.put(RouteCategory.class, new CachePolicy()
+                .cache("getAll", "getById", "getByName")
+                .invalidates(Route.class)
+                .maxEntries(64)
+                .maxWeight(64 * 1024)
+                .ttl(10 * 60 * 1000)
+                .negativeTtl(60 * 1000));
+        policies.put(RouteToCategoriesMapping.class, new CachePolicy()
+                .cache("getAllByRoute")
+                .invalidates(Route.class)
+                .maxEntries(512)
+                .maxWeight(256 * 1024)
+                .ttl(30 * 1000)
+                .negativeTtl(5 * 1000));
+
+        return new DAOFactoryCached(decoratedFactory, policies);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <U, V extends DAO<U>> V forModel(Class<U> modelClass) {
+
+        // Models without a caching policy aren't decorated
+
+        if (!policies.containsKey(modelClass))
+            return decoratedFactory.forModel(modelClass);
+
+        return (V) cachedDAOCollection.computeIfAbsent(modelClass, this::decorate);
+    }
+
+    /**
+     * Wrap the DAO of the decorated factory for a model class in a caching proxy
+     *
+     * @param modelClass Model class whose DAO is being decorated
+     * @return The caching DAO, or null if the decorated factory doesn't have a DAO for the model
+     */
+    private DAO<?> decorate(Class<?> modelClass) {
+        DAO<?> decoratedDAO = decoratedFactory.forModel(modelClass);
+
+        if (decoratedDAO == null) return null;
+
+        // Gather every interface of the decorated DAO so the proxy can replace it
+
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        for (Class<?> current = decoratedDAO.getClass(); current != null; current = current.getSuperclass())
+            interfaces.addAll(Arrays.asList(current.getInterfaces()));
+        interfaces.add(DAOImplCached.class);
+
+        CachingDAOInvocationHandler invocationHandler = new CachingDAOInvocationHandler(decoratedDAO, modelClass,
+                policies.get(modelClass), caches.get(modelClass), this::invalidate);
+
+        return (DAO<?>) Proxy.newProxyInstance(decoratedDAO.getClass().getClassLoader(),
+                interfaces.toArray(new Class<?>[0]), invocationHandler);
+    }
+
+    /**
+     * Drop every cached lookup of a model
+     *
+     * @param modelClass Model class whose cache is being invalidated
+     */
+    public void invalidate(Class<?> modelClass) {
+        DAOCache cache = caches.get(modelClass);
+        if (cache != null) cache.invalidateAll();
+    }
+
+    /**
+     * @return The cache statistics of each cached model, including its hit ratio
+     */
+    public Map<Class<?>, CacheStatistics> getCacheStatistics() {
+        Map<Class<?>, CacheStatistics> statistics = new HashMap<>();
+
+        for (Map.Entry<Class<?>, DAOCache> cache : caches.entrySet())
+            statistics.put(cache.getKey(), cache.getValue().getStatistics());
+
+        return statistics;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p></p>
+     * The decorated factory configures the dependencies of the decorated DAOs, so this only applies the dependency
+     * configurator of this factory to the caching DAOs
+     */
+    @Override
+    public void configureAllDAODependencies(Object... additionalDependencies) {
+        if (dependencyConfigurator != null) {
+            for (DAO<?> dao : cachedDAOCollection.values())
+                dependencyConfigurator.dependenciesConfigurationStrategy((DAOImplCached) dao, additionalDependencies);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DAODependencyConfigurator<DAOImplCached> getDAODependencyConfigurator() {
+        return dependencyConfigurator;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDAODependencyConfigurator(DAODependencyConfigurator<DAOImplCached> dependencyConfigurator) {
+        this.dependencyConfigurator = dependencyConfigurator;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Class<DAOImplCached> getDAOImplementation() {
+        return DAOImplCached.class;
+    }
+}
@@ -30,12 +30,16 @@ public class DAOFactoryJDBC implements DAOFactory<DAOImplJDBC> {
         JDBCRouteCategoryDAO jdbcRouteCategoryDAO = new JDBCRouteCategoryDAO();
         JDBCKudoEntryDAO jdbcKudoEntryDAO = new JDBCKudoEntryDAO();
         JDBCRouteToCategoriesMappingDAO jdbcRouteToCategoriesMappingDAO = new JDBCRouteToCategoriesMappingDAO();
+        JDBCDataVersionDAO jdbcDataVersionDAO = new JDBCDataVersionDAO();
+        JDBCRouteChangeDAO jdbcRouteChangeDAO = new JDBCRouteChangeDAO();
 
         modifiableFactory.put(User.class, jdbcUserDAO);
         modifiableFactory.put(Route.class, jdbcRouteDAO);
         modifiableFactory.put(RouteCategory.class, jdbcRouteCategoryDAO);
         modifiableFactory.put(KudoEntry.class, jdbcKudoEntryDAO);
         modifiableFactory.put(RouteToCategoriesMapping.class, jdbcRouteToCategoriesMappingDAO);
+        modifiableFactory.put(DataVersion.class, jdbcDataVersionDAO);
+        modifiableFactory.put(RouteChange.class, jdbcRouteChangeDAO);
 
         jdbcDAOCollection = Collections.unmodifiableMap(modifiableFactory);
     }
@@ -0,0 +1,24 @@
+package dao.implementations;
+
+import dao.cache.CacheStatistics;
+
+/**
+ * Caching DAO Implementation. DAOs of this implementation don't operate a data source by themselves, they decorate
+ * the DAOs of another DAO implementation and serve repeated lookups from memory
+ *
+ * @see DAOImplementation
+ * @see dao.factories.DAOFactoryCached
+ */
+public interface DAOImplCached extends DAOImplementation {
+
+    /**
+     * @return The hit / miss counters of the cache of this DAO
+     */
+    CacheStatistics getCacheStatistics();
+
+    /**
+     * Drop every cached lookup of this DAO. The following lookups will be served by the decorated DAO
+     */
+    void invalidateCache();
+
+}
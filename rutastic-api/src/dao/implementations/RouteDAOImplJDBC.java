@@ -18,4 +18,15 @@ public interface RouteDAOImplJDBC extends DAOImplJDBC {
      */
     List<Route> executeFilter(SQLRouteFilter sqlRouteFilter);
 
+    /**
+     * Execute the specified route filter to retrieve a filtered route collection, with a version stamp already read
+     * for the request
+     *
+     * @param sqlRouteFilter The SQL route filter
+     * @param versionStamp   Version stamp of the filtered tables (see {@link routefilter.FilterResultCache}), or null
+     *                       if it couldn't be read, in which case the result isn't cached
+     * @return A list with only the route instances that satisfy the route filter
+     */
+    List<Route> executeFilter(SQLRouteFilter sqlRouteFilter, String versionStamp);
+
 }
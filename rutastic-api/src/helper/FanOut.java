@@ -0,0 +1,244 @@
+package helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Runs independent lookups concurrently under a shared deadline. Branches are forked with {@link #fork} and then
+ * joined all at once with {@link #join()}. If any branch fails, or the deadline is reached, the fan-out gives up: the
+ * branches that haven't started yet never run, and the ones already running are waited for.
+ * <p></p>
+ * Running branches can't be cancelled, since a JDBC call doesn't stop when its thread is interrupted. All the DAOs
+ * share a single database connection, so an abandoned branch would still have a statement in flight on it once the
+ * caller moved on to the next request. The deadline then bounds when a fan-out gives up, while {@link #join()} returns
+ * once every running branch has finished, however long its lookup takes.
+ * <p></p>
+ * Only lookups served from memory (snapshots, indexes) should be forked, while the caller runs its database reads
+ * before joining. JDBC calls over the shared connection are serialized by the driver, so forking a database read only
+ * adds a thread hop, and concurrent writes would share the transaction of the connection.
+ * <p></p>
+ * Each join logs the wall time of the fan-out next to the sum of the times of its branches, which is how long the
+ * same lookups would have taken one after another
+ */
+public class FanOut {
+
+    private static final Logger logger = Logger.getLogger(FanOut.class.getName());
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "fan-out-" + threadCount.incrementAndGet());
+        thread.setDaemon(true); // Never keep the runtime alive because of an idle thread
+        return thread;
+    });
+
+    private final long deadline;
+    private final long startTime;
+    private final List<Branch<?>> branches;
+    private final BlockingQueue<Branch<?>> completedBranches;
+    private boolean joined;
+
+    private FanOut(long timeoutMillis) {
+        this.startTime = System.nanoTime();
+        this.deadline = startTime + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.branches = new ArrayList<>();
+        this.completedBranches = new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * Start a new fan-out
+     *
+     * @param timeoutMillis Time the branches have to complete, in milliseconds from now
+     * @return The new fan-out
+     */
+    public static FanOut withDeadline(long timeoutMillis) {
+        return new FanOut(timeoutMillis);
+    }
+
+    /**
+     * Start running a branch
+     *
+     * @param name Name of the branch, for logging purposes
+     * @param task Lookup to run
+     * @param <T>  Result type of the lookup
+     * @return The branch, whose result is available after joining the fan-out
+     * @throws IllegalStateException If the fan-out was already joined
+     */
+    public <T> Branch<T> fork(String name, Callable<T> task) {
+        if (joined) throw new IllegalStateException("Can't fork a branch after joining the fan-out");
+
+        Branch<T> branch = new Branch<>(name);
+        branch.future = executor.submit(() -> {
+            if (!branch.state.compareAndSet(Branch.PENDING, Branch.RUNNING)) return null; // Given up before starting
+
+            long branchStart = System.nanoTime();
+            try {
+                return task.call();
+            } finally {
+                branch.elapsedNanos = System.nanoTime() - branchStart;
+                branch.finished.countDown();
+                completedBranches.add(branch);
+            }
+        });
+        branches.add(branch);
+
+        return branch;
+    }
+
+    /**
+     * Wait for every branch to complete. If a branch fails, or the deadline is reached before every branch completes,
+     * the branches that haven't started are cancelled and the running ones are waited for
+     *
+     * @return If every branch completed successfully before the deadline
+     */
+    public boolean join() {
+        joined = true;
+        String cancellationReason = null;
+
+        // Collect the branches in completion order, so a failure is noticed as soon as it happens
+
+        for (int pending = branches.size(); pending > 0 && cancellationReason == null; pending--) {
+            try {
+                Branch<?> branch = completedBranches.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                if (branch == null) {
+                    cancellationReason = "the deadline was reached";
+                } else if (!branch.complete()) {
+                    logger.warning(String.format("Fan-out branch (%s) failed: %s", branch.name, branch.failure));
+                    cancellationReason = "a sibling branch failed";
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancellationReason = "the caller was interrupted";
+            }
+        }
+
+        if (cancellationReason != null) {
+            for (Branch<?> branch : branches)
+                branch.cancel(cancellationReason);
+        }
+
+        logTimings();
+
+        return cancellationReason == null;
+    }
+
+    private void logTimings() {
+        long branchesNanos = 0;
+        StringBuilder branchTimes = new StringBuilder();
+
+        for (Branch<?> branch : branches) {
+            branchesNanos += branch.elapsedNanos;
+            branchTimes.append(String.format(" %s=%d ms", branch.name,
+                    TimeUnit.NANOSECONDS.toMillis(branch.elapsedNanos)));
+        }
+
+        logger.info(String.format("Fan-out of %d branches took %d ms (%d ms one after another):%s",
+                branches.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+                TimeUnit.NANOSECONDS.toMillis(branchesNanos),
+                branchTimes));
+    }
+
+    /**
+     * Lookup forked from a fan-out
+     *
+     * @param <T> Result type of the lookup
+     */
+    public static class Branch<T> {
+
+        // States of a branch
+        private static final int PENDING = 0;
+        private static final int RUNNING = 1;
+        private static final int CANCELLED = 2;
+
+        private final String name;
+        private final AtomicInteger state;
+        private final CountDownLatch finished;
+        private Future<T> future;
+        private T result;
+        private Throwable failure;
+        private volatile long elapsedNanos;
+
+        private Branch(String name) {
+            this.name = name;
+            this.state = new AtomicInteger(PENDING);
+            this.finished = new CountDownLatch(1);
+        }
+
+        /**
+         * Collect the outcome of a branch that has already completed
+         *
+         * @return If the branch completed successfully
+         */
+        private boolean complete() {
+            try {
+                result = future.get();
+            } catch (ExecutionException e) {
+                failure = e.getCause();
+            } catch (InterruptedException | CancellationException e) {
+                failure = e;
+            }
+
+            return failure == null;
+        }
+
+        /**
+         * Cancel a branch unless it has already completed, in which case its outcome is collected. A branch that is
+         * already running is waited for instead, and its outcome discarded
+         */
+        private void cancel(String reason) {
+            if (future.isDone()) {
+                complete();
+                return;
+            }
+
+            if (!state.compareAndSet(PENDING, CANCELLED)) awaitFinish();
+
+            failure = new CancellationException("Branch (" + name + ") cancelled because " + reason);
+            logger.warning(failure.getMessage());
+        }
+
+        /**
+         * Wait for a running branch to finish. Interrupts don't stop the wait, since the lookup would go on anyway,
+         * but they're restored afterwards
+         */
+        private void awaitFinish() {
+            boolean interrupted = false;
+
+            while (finished.getCount() > 0) {
+                try {
+                    finished.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+
+        /**
+         * @return The result of the lookup, or null if it failed or was cancelled
+         */
+        public T get() {
+            return result;
+        }
+
+        /**
+         * @return Why the lookup failed or was cancelled, or null if it completed successfully
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+    }
+}
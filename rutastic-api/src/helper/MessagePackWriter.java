@@ -0,0 +1,171 @@
+package helper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal MessagePack writer. Every value is written with its smallest MessagePack representation, so small integers
+ * take a single byte and short strings a single byte plus their UTF-8 bytes.
+ * <p></p>
+ * Maps and arrays are written as a header with their number of elements followed by the elements, so the caller must
+ * know how many it will write beforehand
+ *
+ * @see <a href="https://github.com/msgpack/msgpack/blob/master/spec.md">MessagePack specification</a>
+ */
+public class MessagePackWriter {
+
+    private final ByteArrayOutputStream output;
+
+    public MessagePackWriter() {
+        output = new ByteArrayOutputStream(256);
+    }
+
+    /**
+     * @return This writer
+     */
+    public MessagePackWriter writeNil() {
+        output.write(0xc0);
+        return this;
+    }
+
+    /**
+     * @param value Boolean value
+     * @return This writer
+     */
+    public MessagePackWriter writeBoolean(boolean value) {
+        output.write(value ? 0xc3 : 0xc2);
+        return this;
+    }
+
+    /**
+     * @param value Integer value
+     * @return This writer
+     */
+    public MessagePackWriter writeLong(long value) {
+        if (value >= 0) {
+            if (value < 0x80) { // Positive fixint
+                output.write((int) value);
+            } else if (value <= 0xff) {
+                output.write(0xcc);
+                output.write((int) value);
+            } else if (value <= 0xffff) {
+                output.write(0xcd);
+                writeBigEndian(value, 2);
+            } else if (value <= 0xffffffffL) {
+                output.write(0xce);
+                writeBigEndian(value, 4);
+            } else {
+                output.write(0xcf);
+                writeBigEndian(value, 8);
+            }
+        } else {
+            if (value >= -32) { // Negative fixint
+                output.write((int) value);
+            } else if (value >= Byte.MIN_VALUE) {
+                output.write(0xd0);
+                output.write((int) value);
+            } else if (value >= Short.MIN_VALUE) {
+                output.write(0xd1);
+                writeBigEndian(value, 2);
+            } else if (value >= Integer.MIN_VALUE) {
+                output.write(0xd2);
+                writeBigEndian(value, 4);
+            } else {
+                output.write(0xd3);
+                writeBigEndian(value, 8);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @param value Single precision value
+     * @return This writer
+     */
+    public MessagePackWriter writeFloat(float value) {
+        output.write(0xca);
+        writeBigEndian(Float.floatToIntBits(value), 4);
+        return this;
+    }
+
+    /**
+     * @param value Double precision value
+     * @return This writer
+     */
+    public MessagePackWriter writeDouble(double value) {
+        output.write(0xcb);
+        writeBigEndian(Double.doubleToLongBits(value), 8);
+        return this;
+    }
+
+    /**
+     * @param value String value. Null values are written as nil
+     * @return This writer
+     */
+    public MessagePackWriter writeString(String value) {
+        if (value == null) return writeNil();
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        if (bytes.length < 32) { // Fixstr
+            output.write(0xa0 | bytes.length);
+        } else if (bytes.length <= 0xff) {
+            output.write(0xd9);
+            output.write(bytes.length);
+        } else if (bytes.length <= 0xffff) {
+            output.write(0xda);
+            writeBigEndian(bytes.length, 2);
+        } else {
+            output.write(0xdb);
+            writeBigEndian(bytes.length, 4);
+        }
+        output.write(bytes, 0, bytes.length);
+        return this;
+    }
+
+    /**
+     * @param size Number of elements of the array
+     * @return This writer
+     */
+    public MessagePackWriter writeArrayHeader(int size) {
+        if (size < 16) { // Fixarray
+            output.write(0x90 | size);
+        } else if (size <= 0xffff) {
+            output.write(0xdc);
+            writeBigEndian(size, 2);
+        } else {
+            output.write(0xdd);
+            writeBigEndian(size, 4);
+        }
+        return this;
+    }
+
+    /**
+     * @param size Number of key-value pairs of the map
+     * @return This writer
+     */
+    public MessagePackWriter writeMapHeader(int size) {
+        if (size < 16) { // Fixmap
+            output.write(0x80 | size);
+        } else if (size <= 0xffff) {
+            output.write(0xde);
+            writeBigEndian(size, 2);
+        } else {
+            output.write(0xdf);
+            writeBigEndian(size, 4);
+        }
+        return this;
+    }
+
+    /**
+     * @return The bytes written so far
+     */
+    public byte[] toByteArray() {
+        return output.toByteArray();
+    }
+
+    private void writeBigEndian(long value, int bytes) {
+        for (int shift = 8 * (bytes - 1); shift >= 0; shift -= 8)
+            output.write((int) (value >>> shift));
+    }
+}
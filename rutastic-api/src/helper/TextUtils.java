@@ -0,0 +1,28 @@
+package helper;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Text utility class
+ */
+public class TextUtils {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    /**
+     * Fold a text to compare it the same way the case and accent insensitive collation of the database does
+     *
+     * @param text Text to fold
+     * @return The lowercase text without accents or diacritics, or an empty string if the text is null
+     */
+    public static String fold(String text) {
+        if (text == null) return "";
+
+        String decomposed = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+
+        return DIACRITICS.matcher(decomposed).replaceAll("");
+    }
+
+}
@@ -4,10 +4,15 @@ import helper.DateTimeUtils;
 import model.Route;
 
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 public class RouteModelMapper implements ModelMapper<Route> {
 
@@ -63,62 +68,80 @@ public class RouteModelMapper implements ModelMapper<Route> {
         }
 
         Route route = new Route();
+        Set<String> columns = columnsOf(rs);
 
-        // Try parsing route attributes, except route categories
+        // Parse only the queried route attributes, so a projection leaves the rest unset without failed reads
 
         try {
-            route.setId(rs.getLong("id"));
-        } catch (SQLException ignored) {
-        }
-        try {
-            route.setCreatedByUser(rs.getString("created_by_user"));
-        } catch (SQLException ignored) {
-        }
-        try {
-            route.setTitle(rs.getString("title"));
-        } catch (SQLException ignored) {
-        }
-        try {
-            route.setDescription(rs.getString("description"));
-        } catch (SQLException ignored) {
-        }
-        try {
-            route.setDistance(rs.getInt("distance"));
-        } catch (SQLException ignored) {
-        }
-        try {
-            route.setDuration(rs.getInt("duration"));
-        } catch (SQLException ignored) {
-        }
-        try {
-            route.setElevation(rs.getInt("elevation"));
-        } catch (SQLException ignored) {
-        }
-        try {
-            route.setCreationDate(DateTimeUtils
-                    .formatEpochTime(rs.getLong("creation_date"), DateTimeUtils.TimeResolution.SECONDS));
-        } catch (SQLException ignored) {
-        }
-        try {
-            route.setSkillLevel(rs.getString("skill_level"));
-        } catch (SQLException ignored) {
-        }
-        try {
-            route.setKudos(rs.getInt("kudos"));
-        } catch (SQLException ignored) {
+            if (columns.contains("id"))
+                route.setId(rs.getLong("id"));
+            if (columns.contains("created_by_user"))
+                route.setCreatedByUser(rs.getString("created_by_user"));
+            if (columns.contains("title"))
+                route.setTitle(rs.getString("title"));
+            if (columns.contains("description"))
+                route.setDescription(rs.getString("description"));
+            if (columns.contains("distance"))
+                route.setDistance(rs.getInt("distance"));
+            if (columns.contains("duration"))
+                route.setDuration(rs.getInt("duration"));
+            if (columns.contains("elevation"))
+                route.setElevation(rs.getInt("elevation"));
+            if (columns.contains("creation_date"))
+                route.setCreationDate(parseCreationDate(rs));
+            if (columns.contains("skill_level"))
+                route.setSkillLevel(rs.getString("skill_level"));
+            if (columns.contains("kudos"))
+                route.setKudos(rs.getInt("kudos"));
+            if (columns.contains("blocked"))
+                route.setBlocked(rs.getInt("blocked") == 1);
+            if (columns.contains("categories") && rs.getString("categories") != null)
+                // Isolate each category name and rejoin the categories string with the separator specified in Route model
+                route.setCategories(String.join(Route.CATEGORY_SEPARATOR,
+                        rs.getString("categories").split(DB_CATEGORY_SEPARATOR)));
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
         }
-        try {
-            route.setBlocked(rs.getInt("blocked") == 1);
-        } catch (SQLException ignored) {
+
+        return route;
+    }
+
+    /**
+     * Format the creation date of a route. Views return it as a UNIX timestamp in seconds, while the routes table
+     * returns it as a date
+     *
+     * @param rs Result set containing the creation_date column
+     * @return The formatted creation date
+     * @throws SQLException On error reading the column
+     */
+    private String parseCreationDate(ResultSet rs) throws SQLException {
+        int type = rs.getMetaData().getColumnType(rs.findColumn("creation_date"));
+
+        if (type == Types.TIMESTAMP || type == Types.DATE || type == Types.TIMESTAMP_WITH_TIMEZONE) {
+            Timestamp creationDate = rs.getTimestamp("creation_date");
+            return DateTimeUtils.formatEpochTime(creationDate != null ? creationDate.getTime() : 0,
+                    DateTimeUtils.TimeResolution.MILLISECONDS);
         }
+
+        return DateTimeUtils.formatEpochTime(rs.getLong("creation_date"), DateTimeUtils.TimeResolution.SECONDS);
+    }
+
+    /**
+     * @param rs Result set containing queried columns from a database
+     * @return Lowercase labels of the queried columns. Empty if they couldn't be read
+     */
+    private Set<String> columnsOf(ResultSet rs) {
+        Set<String> columns = new HashSet<>();
+
         try {
-            // Isolate each category name and rejoin the categories string with the separator specified in Route model
-            route.setCategories(String.join(Route.CATEGORY_SEPARATOR,
-                    rs.getString("categories").split(DB_CATEGORY_SEPARATOR)));
-        } catch (SQLException ignored) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int column = 1; column <= metaData.getColumnCount(); column++)
+                columns.add(metaData.getColumnLabel(column).toLowerCase());
+        } catch (SQLException throwables) {
+            throwables.printStackTrace();
         }
 
-        return route;
+        return columns;
     }
 
     /**
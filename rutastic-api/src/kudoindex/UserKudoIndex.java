@@ -0,0 +1,152 @@
+package kudoindex;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Compact, immutable index of the kudos given by one user. Route IDs are kept in a sorted {@code long} array next to a
+ * parallel {@code byte} array with the modifier given to each route, so looking up a route is a binary search and
+ * each kudo takes 9 bytes instead of a boxed {@code KudoEntry} per route.
+ * <p></p>
+ * Updates don't modify an index, they return a new one, so an index can be shared by concurrent readers
+ */
+public class UserKudoIndex {
+
+    private final long[] routeIds;
+    private final byte[] modifiers;
+    private final long loadedAt;
+
+    private UserKudoIndex(long[] routeIds, byte[] modifiers, long loadedAt) {
+        this.routeIds = routeIds;
+        this.modifiers = modifiers;
+        this.loadedAt = loadedAt;
+    }
+
+    /**
+     * @param routeId Route ID
+     * @return The modifier the user gave to the route (1 or -1), or 0 if the user never gave a kudo to it
+     */
+    public int modifierOf(long routeId) {
+        int position = Arrays.binarySearch(routeIds, routeId);
+
+        return position >= 0 ? modifiers[position] : 0;
+    }
+
+    /**
+     * Get a copy of this index with the kudo the user gave to a route changed
+     *
+     * @param routeId  Route ID
+     * @param modifier New modifier of the kudo. 0 removes the kudo
+     * @return The updated index. Its load time is the one of this index
+     */
+    public UserKudoIndex withModifier(long routeId, int modifier) {
+        int position = Arrays.binarySearch(routeIds, routeId);
+
+        if (position >= 0) {
+            if (modifier != 0) { // Change an existing kudo
+                byte[] newModifiers = modifiers.clone();
+                newModifiers[position] = (byte) modifier;
+                return new UserKudoIndex(routeIds, newModifiers, loadedAt);
+            }
+
+            // Remove an existing kudo
+
+            long[] newRouteIds = new long[routeIds.length - 1];
+            byte[] newModifiers = new byte[modifiers.length - 1];
+            System.arraycopy(routeIds, 0, newRouteIds, 0, position);
+            System.arraycopy(modifiers, 0, newModifiers, 0, position);
+            System.arraycopy(routeIds, position + 1, newRouteIds, position, routeIds.length - position - 1);
+            System.arraycopy(modifiers, position + 1, newModifiers, position, modifiers.length - position - 1);
+            return new UserKudoIndex(newRouteIds, newModifiers, loadedAt);
+        }
+
+        if (modifier == 0) return this; // Nothing to remove
+
+        // Insert a new kudo at its sorted position
+
+        int insertion = -position - 1;
+        long[] newRouteIds = new long[routeIds.length + 1];
+        byte[] newModifiers = new byte[modifiers.length + 1];
+        System.arraycopy(routeIds, 0, newRouteIds, 0, insertion);
+        System.arraycopy(modifiers, 0, newModifiers, 0, insertion);
+        newRouteIds[insertion] = routeId;
+        newModifiers[insertion] = (byte) modifier;
+        System.arraycopy(routeIds, insertion, newRouteIds, insertion + 1, routeIds.length - insertion);
+        System.arraycopy(modifiers, insertion, newModifiers, insertion + 1, modifiers.length - insertion);
+        return new UserKudoIndex(newRouteIds, newModifiers, loadedAt);
+    }
+
+    /**
+     * @return Number of kudos given by the user
+     */
+    public int size() {
+        return routeIds.length;
+    }
+
+    /**
+     * @return When the kudos of this index were loaded, in milliseconds since the epoch
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * Builder of user kudo indexes. Kudos can be added in any order
+     */
+    public static class Builder {
+
+        private long[] routeIds = new long[16];
+        private byte[] modifiers = new byte[16];
+        private int size;
+        private boolean sorted = true;
+
+        /**
+         * @param routeId  Route ID
+         * @param modifier Modifier the user gave to the route
+         * @return This builder
+         */
+        public Builder add(long routeId, int modifier) {
+            if (size == routeIds.length) {
+                routeIds = Arrays.copyOf(routeIds, size * 2);
+                modifiers = Arrays.copyOf(modifiers, size * 2);
+            }
+
+            if (size > 0 && routeId <= routeIds[size - 1]) sorted = false;
+
+            routeIds[size] = routeId;
+            modifiers[size] = (byte) modifier;
+            size++;
+
+            return this;
+        }
+
+        /**
+         * @param loadedAt When the kudos were loaded, in milliseconds since the epoch
+         * @return The built index. If a route was added more than once, its last modifier is kept
+         */
+        public UserKudoIndex build(long loadedAt) {
+            if (sorted)
+                return new UserKudoIndex(Arrays.copyOf(routeIds, size), Arrays.copyOf(modifiers, size), loadedAt);
+
+            // Kudos arrived out of order, sort them by route ID. Later kudos of a repeated route win
+
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++)
+                order[i] = i;
+            Arrays.sort(order, Comparator.comparingLong(i -> routeIds[i])); // Stable, keeps the insertion order of ties
+
+            long[] sortedRouteIds = new long[size];
+            byte[] sortedModifiers = new byte[size];
+            int distinct = 0;
+            for (int i : order) {
+                if (distinct > 0 && sortedRouteIds[distinct - 1] == routeIds[i]) distinct--;
+                sortedRouteIds[distinct] = routeIds[i];
+                sortedModifiers[distinct] = modifiers[i];
+                distinct++;
+            }
+
+            return new UserKudoIndex(Arrays.copyOf(sortedRouteIds, distinct), Arrays.copyOf(sortedModifiers, distinct),
+                    loadedAt);
+        }
+    }
+}
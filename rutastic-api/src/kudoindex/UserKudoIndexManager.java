@@ -0,0 +1,107 @@
+package kudoindex;
+
+import dao.KudoEntryDAO;
+import dao.factories.DAOAbstractFactory;
+import dao.factories.DAOFactory;
+import dao.implementations.DAOImplJDBC;
+import model.KudoEntry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the kudo indexes of the most recently active users. Implemented through a Singleton instance, which you can get
+ * calling {@link #get()}.
+ * <p></p>
+ * Indexes are loaded lazily from the JDBC DAO and evicted in least recently used order once there are more than
+ * {@value #MAX_USERS}. Kudos written through {@link #kudoWritten(String, long, int)} update the index of their user in
+ * place, but since kudos could also be written by another instance, an index is reloaded once it's older than the
+ * maximum age, which is read from the environment variable {@value #MAX_AGE_ENV} (in seconds)
+ */
+public class UserKudoIndexManager {
+
+    public static final String MAX_AGE_ENV = "USER_KUDO_INDEX_MAX_AGE";
+    private static final long DEFAULT_MAX_AGE = 30 * 1000;
+    private static final int MAX_USERS = 1024;
+
+    private final Map<String, UserKudoIndex> indexes;
+    private final long maxAge;
+
+    private UserKudoIndexManager() {
+        indexes = new LinkedHashMap<String, UserKudoIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserKudoIndex> eldest) {
+                return size() > MAX_USERS;
+            }
+        };
+        maxAge = parseMaxAge(System.getenv(MAX_AGE_ENV));
+    }
+
+    /**
+     * @return The Singleton instance of the user kudo index manager
+     */
+    public static UserKudoIndexManager get() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * @param maxAgeSource Maximum age in seconds
+     * @return Maximum age in milliseconds, or the default maximum age if it isn't a valid number
+     */
+    private static long parseMaxAge(String maxAgeSource) {
+        if (maxAgeSource != null && maxAgeSource.trim().matches("[0-9]+"))
+            return Long.parseLong(maxAgeSource.trim()) * 1000;
+
+        return DEFAULT_MAX_AGE;
+    }
+
+    /**
+     * Get the kudo index of a user, loading it first if there isn't any or the current one is outdated
+     *
+     * @param username Username of the user
+     * @return The kudo index of the user, or null if it couldn't be loaded
+     */
+    public synchronized UserKudoIndex getIndex(String username) {
+        UserKudoIndex index = indexes.get(username);
+
+        if (index == null || System.currentTimeMillis() - index.getLoadedAt() > maxAge) {
+            DAOFactory<DAOImplJDBC> jdbcFactory = DAOAbstractFactory.get().impl(DAOImplJDBC.class);
+            KudoEntryDAO kudoEntryDAO = jdbcFactory != null ? jdbcFactory.forModel(KudoEntry.class) : null;
+            UserKudoIndex loadedIndex = kudoEntryDAO != null ? kudoEntryDAO.getKudoIndexForUser(username) : null;
+
+            if (loadedIndex != null) {
+                index = loadedIndex;
+                indexes.put(username, index);
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Update the index of a user after the kudo the user gave to a route was written. If the index of the user isn't
+     * loaded this is a no-op
+     *
+     * @param username Username of the user
+     * @param routeId  ID of the route
+     * @param modifier Current modifier of the kudo, 0 if it was removed
+     */
+    public synchronized void kudoWritten(String username, long routeId, int modifier) {
+        UserKudoIndex index = indexes.get(username);
+        if (index != null) indexes.put(username, index.withModifier(routeId, modifier));
+    }
+
+    /**
+     * Drop every loaded index, so they're loaded again before being used. Call it when kudos were written elsewhere
+     */
+    public synchronized void invalidateAll() {
+        indexes.clear();
+    }
+
+    /**
+     * Singleton holder for UserKudoIndexManager class
+     */
+    private static class SingletonHolder {
+        private static final UserKudoIndexManager INSTANCE = new UserKudoIndexManager();
+    }
+}
@@ -0,0 +1,41 @@
+package model;
+
+import java.io.Serializable;
+
+/**
+ * Definition of DataVersion model as a JavaBean. A data version is a counter attached to a table that increases with
+ * every write to the table, so two reads of the same version of a table are known to see the same data
+ */
+public class DataVersion implements Serializable {
+
+    // Names of the versioned tables
+    public static final String ROUTES = "routes";
+    public static final String KUDO_ENTRIES = "routekudosregistry";
+    public static final String USERS = "users";
+    public static final String ROUTE_CATEGORIES = "routecategories";
+    public static final String ROUTE_TO_CATEGORIES_MAPPINGS = "routetocategoriesmapping";
+
+    private static final long SerialVersionUID = 1L;
+
+    private String name;
+    private long version;
+
+    public DataVersion() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+}
@@ -27,6 +27,7 @@ public class Route implements Serializable {
     private String skillLevel;
     private int kudos;
     private boolean blocked;
+    private Integer myKudo; // Modifier of the kudo the logged user gave to this route. Only set on request
 
     public Route() {
         // Default values
@@ -98,6 +99,14 @@ public class Route implements Serializable {
         this.elevation = elevation;
     }
 
+    /**
+     * @return Average grade of the route, as a percentage: its elevation per 100 meters of distance, rounded to two
+     * decimals. 0 if the route has no distance
+     */
+    public double getGrade() {
+        return distance > 0 ? Math.round(elevation * 10000.0 / distance) / 100.0 : 0;
+    }
+
     public String getCreationDate() {
         return creationDate;
     }
@@ -138,6 +147,14 @@ public class Route implements Serializable {
         this.blocked = blocked;
     }
 
+    public Integer getMyKudo() {
+        return myKudo;
+    }
+
+    public void setMyKudo(Integer myKudo) {
+        this.myKudo = myKudo;
+    }
+
     public void changeDateFormat(SimpleDateFormat dateFormatter) {
         SimpleDateFormat currentDateFormatter = DateTimeUtils.getDateFormatter();
         String newDateFormat;
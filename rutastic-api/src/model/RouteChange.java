@@ -0,0 +1,65 @@
+package model;
+
+import java.io.Serializable;
+
+/**
+ * Definition of RouteChange model as a JavaBean. A route change is the latest change of a route, numbered with a
+ * sequence that increases with every write to the routes and their kudo entries. Each route has a change of kind
+ * route, telling if the route was created, updated, blocked or deleted, and a change of kind kudos once its kudos
+ * total changes. Writing the route again replaces its change with a new one further down the sequence
+ */
+public class RouteChange implements Serializable {
+
+    // Kinds of route changes
+    public static final String KIND_ROUTE = "route";
+    public static final String KIND_KUDOS = "kudos";
+
+    // Types of route changes
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String BLOCKED = "blocked";
+    public static final String DELETED = "deleted";
+    public static final String KUDOS = "kudos";
+
+    private static final long SerialVersionUID = 1L;
+
+    private long route;
+    private String kind;
+    private String type;
+    private long sequence;
+
+    public RouteChange() {
+    }
+
+    public long getRoute() {
+        return route;
+    }
+
+    public void setRoute(long route) {
+        this.route = route;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public void setKind(String kind) {
+        this.kind = kind;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+}
@@ -0,0 +1,60 @@
+package reconciliation;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import dao.RouteDAO;
+import dao.factories.DAOAbstractFactory;
+import dao.implementations.DAOImplJDBC;
+import model.Route;
+import resources.MySQLConnectionManager;
+
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Maintenance handler that repairs the denormalized kudos totals and category names of the routes. Meant to be invoked
+ * by a schedule (e.g. an EventBridge rule) as its own Lambda function, so the reconciliation runs on its own connection
+ * and never on the path of an API request.
+ * <p></p>
+ * The DAOs keep both columns up to date on every write, so they only drift after writes that bypass the API or
+ * cascades through foreign keys. Repairing a route bumps the data version of the routes, so the API instances notice
+ * it as any other write
+ */
+public class RouteReconciliationHandler implements RequestHandler<Map<String, Object>, String> {
+
+    private static final MySQLConnectionManager jdbcManager = MySQLConnectionManager.getInstance();
+    private static final Logger logger = Logger.getLogger(RouteReconciliationHandler.class.getName());
+    private static final RouteDAO routeDAO;
+
+    static {
+        // On cold boot set up and create a db connection
+        jdbcManager.setUpAndConnect(System.getenv("PROXY_ENDPOINT"),
+                Integer.parseInt(System.getenv("PORT")),
+                System.getenv("DB_USER"),
+                System.getenv("DB_USER_PWD"),
+                System.getenv("DB_SCHEMA"));
+
+        // Initialize DAOs
+        routeDAO = DAOAbstractFactory.get().impl(DAOImplJDBC.class).forModel(Route.class);
+    }
+
+    /**
+     * @param event   Scheduled event. Its contents are ignored
+     * @param context Lambda context
+     * @return Summary of the reconciliation
+     * @throws IllegalStateException If the routes couldn't be reconciled, so the invocation is reported as failed
+     */
+    @Override
+    public String handleRequest(Map<String, Object> event, Context context) {
+        long startedAt = System.currentTimeMillis();
+        int repaired = routeDAO.saveReconciledColumns();
+
+        if (repaired < 0) throw new IllegalStateException("Couldn't reconcile the denormalized route columns");
+
+        String summary = String.format("Reconciled the denormalized route columns in %d ms. Repaired columns: %d",
+                System.currentTimeMillis() - startedAt, repaired);
+        logger.info(summary);
+
+        return summary;
+    }
+}
@@ -1,8 +1,10 @@
 package resources;
 
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.google.gson.Gson;
 
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,6 +23,7 @@ public class APIGatewayProxyResponse<T> {
     private final Map<String, String> headers;
     private final Map<String, List<String>> multiValueHeaders;
     private T body;
+    private String serializedBody; // Body, once serialized. Base64 encoded if it's binary
 
     public APIGatewayProxyResponse() {
         headers = new HashMap<>();
@@ -62,6 +65,33 @@ public class APIGatewayProxyResponse<T> {
         return this;
     }
 
+    /**
+     * Add a request header to the ones the response varies by, keeping the ones already added
+     *
+     * @param requestHeader Name of the request header
+     * @return This response
+     */
+    public APIGatewayProxyResponse<T> addVary(String requestHeader) {
+        String vary = headers.get("Vary");
+        if (vary == null) headers.put("Vary", requestHeader);
+        else if (!vary.contains(requestHeader)) headers.put("Vary", vary + ", " + requestHeader);
+        return this;
+    }
+
+    /**
+     * Set the ETag of the response and expose it to cross-origin clients
+     *
+     * @param entityTag The ETag. If null this is a no-op
+     * @return This response
+     */
+    public APIGatewayProxyResponse<T> addETag(String entityTag) {
+        if (entityTag != null) {
+            addHeader("ETag", entityTag);
+            addHeader("Access-Control-Expose-Headers", "ETag");
+        }
+        return this;
+    }
+
     public APIGatewayProxyResponse<T> addCORS() {
         addHeader("Access-Control-Allow-Origin", "*");
         return this;
@@ -92,10 +122,71 @@ public class APIGatewayProxyResponse<T> {
     }
 
     public String getBody() {
-        return gson.toJson(body);
+        return serializedBody != null ? serializedBody : gson.toJson(body);
     }
 
     public void setBody(T body) {
         this.body = body;
+        this.serializedBody = null;
+    }
+
+    /**
+     * Serialize the body to JSON once, so following calls to {@link #getBody()} return it without serializing it again
+     *
+     * @return The JSON body
+     */
+    public String serializeBody() {
+        if (serializedBody == null) serializedBody = gson.toJson(body);
+        return serializedBody;
+    }
+
+    /**
+     * Negotiate the format of the body with the Accept header of the request. The body is written as MessagePack if
+     * the client prefers it and the body can be written as such, otherwise it stays JSON
+     *
+     * @param event API Gateway event
+     * @return This response
+     * @see MessagePackBodies
+     */
+    public APIGatewayProxyResponse<T> negotiateFormat(APIGatewayProxyRequestEvent event) {
+        if (body == null || isBase64Encoded) return this;
+
+        addVary("Accept");
+
+        if (!MessagePackBodies.isAccepted(event)) return this;
+
+        byte[] packedBody = MessagePackBodies.write(body);
+        if (packedBody != null) {
+            serializedBody = Base64.getEncoder().encodeToString(packedBody);
+            isBase64Encoded = true;
+            addHeader("Content-Type", MessagePackBodies.MEDIA_TYPE);
+        }
+
+        return this;
+    }
+
+    /**
+     * Replace the body with its compressed form
+     *
+     * @param contentEncoding Encoding the body was compressed with
+     * @param encodedBody     Compressed body, base64 encoded
+     */
+    public void setEncodedBody(String contentEncoding, String encodedBody) {
+        serializedBody = encodedBody;
+        isBase64Encoded = true;
+        addHeader("Content-Encoding", contentEncoding);
+    }
+
+    /**
+     * Build a response whose body is already serialized
+     *
+     * @param statusCode     HTTP status code
+     * @param serializedBody JSON body
+     * @return The response
+     */
+    public static APIGatewayProxyResponse<Object> withSerializedBody(int statusCode, String serializedBody) {
+        APIGatewayProxyResponse<Object> response = new APIGatewayProxyResponse<>(statusCode);
+        response.serializedBody = serializedBody;
+        return response;
     }
 }
@@ -0,0 +1,185 @@
+package resources;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static resources.HTTPStatus.NOT_MODIFIED;
+import static resources.HTTPStatus.NO_CONTENT;
+
+/**
+ * Negotiates the content encoding of responses with the Accept-Encoding header of requests. Bodies of at least the
+ * minimum size, which is read from the environment variable {@value #MIN_SIZE_ENV} (in bytes), are compressed with
+ * gzip or deflate, whichever the client prefers, and base64 encoded, since API Gateway only forwards binary bodies as
+ * base64 strings.
+ * <p></p>
+ * Each thread keeps its own {@code Deflater} for each encoding and resets it between bodies, instead of allocating
+ * (and leaving to finalization) the native compressor of a new one per response
+ */
+public class ContentEncoding {
+
+    public static final String MIN_SIZE_ENV = "RESPONSE_COMPRESSION_MIN_BYTES";
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    private static final int DEFAULT_MIN_SIZE = 1024;
+    private static final int MIN_SIZE = parseMinSize(System.getenv(MIN_SIZE_ENV));
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    // gzip wraps a raw deflate stream with its own header and trailer, deflate is a zlib stream
+    private static final ThreadLocal<Deflater> gzipDeflaters =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<Deflater> deflateDeflaters =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, false));
+    private static final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[8 * 1024]);
+
+    private ContentEncoding() {
+    }
+
+    /**
+     * @param minSizeSource Minimum body size in bytes
+     * @return Minimum body size, or the default minimum size if it isn't a valid number
+     */
+    private static int parseMinSize(String minSizeSource) {
+        if (minSizeSource != null && minSizeSource.trim().matches("[0-9]{1,9}"))
+            return Integer.parseInt(minSizeSource.trim());
+
+        return DEFAULT_MIN_SIZE;
+    }
+
+    /**
+     * Compress the body of a response if the client accepts it and the body is large enough
+     *
+     * @param event    API Gateway event
+     * @param response Response to the event
+     * @param <T>      Body content type
+     * @return The same response, with its body compressed and base64 encoded if an encoding was negotiated
+     */
+    public static <T> APIGatewayProxyResponse<T> compress(APIGatewayProxyRequestEvent event,
+                                                          APIGatewayProxyResponse<T> response) {
+        String contentEncoding = negotiate(event, response);
+
+        if (contentEncoding != null)
+            response.setEncodedBody(contentEncoding, encode(response.serializeBody(), contentEncoding));
+
+        return response;
+    }
+
+    /**
+     * Choose the encoding of a response. Responses large enough to be compressed vary by the Accept-Encoding header,
+     * so they're marked as such even if the client doesn't accept any compression
+     *
+     * @param event    API Gateway event
+     * @param response Response to the event
+     * @return {@value #GZIP}, {@value #DEFLATE}, or null if the body must be sent as is
+     */
+    public static String negotiate(APIGatewayProxyRequestEvent event, APIGatewayProxyResponse<?> response) {
+        if (response.isIsBase64Encoded() || response.getStatusCode() == NOT_MODIFIED ||
+                response.getStatusCode() == NO_CONTENT) return null;
+
+        // Chars are at least one byte once encoded as UTF-8, so the length is a lower bound of the size
+
+        if (response.serializeBody().length() < MIN_SIZE) return null;
+
+        response.addVary("Accept-Encoding");
+
+        return acceptedEncoding(event);
+    }
+
+    /**
+     * Compress a body and encode it as base64
+     *
+     * @param body            JSON body
+     * @param contentEncoding {@value #GZIP} or {@value #DEFLATE}
+     * @return The base64 encoded compressed body
+     */
+    public static String encode(String body, String contentEncoding) {
+        byte[] plainBody = body.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream compressedBody = new ByteArrayOutputStream(plainBody.length / 4 + 64);
+
+        if (GZIP.equals(contentEncoding)) {
+            CRC32 checksum = new CRC32();
+            checksum.update(plainBody, 0, plainBody.length);
+
+            compressedBody.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+            deflate(gzipDeflaters.get(), plainBody, compressedBody);
+            writeIntLE(compressedBody, (int) checksum.getValue());
+            writeIntLE(compressedBody, plainBody.length);
+        } else {
+            deflate(deflateDeflaters.get(), plainBody, compressedBody);
+        }
+
+        return Base64.getEncoder().encodeToString(compressedBody.toByteArray());
+    }
+
+    /**
+     * @param event API Gateway event
+     * @return The accepted encoding with the highest quality, gzip when tied, or null if none is accepted
+     */
+    private static String acceptedEncoding(APIGatewayProxyRequestEvent event) {
+        if (event.getHeaders() == null) return null;
+
+        // Header names are case insensitive
+
+        String acceptEncoding = null;
+        for (Map.Entry<String, String> header : event.getHeaders().entrySet())
+            if (header.getKey().equalsIgnoreCase("Accept-Encoding")) acceptEncoding = header.getValue();
+
+        if (acceptEncoding == null) return null;
+
+        double gzipQuality = -1, deflateQuality = -1, anyQuality = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase();
+            double quality = 1;
+
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0; // Ignore codings with a malformed quality
+                    }
+                }
+            }
+
+            if (name.equals(GZIP) || name.equals("x-gzip")) gzipQuality = quality;
+            else if (name.equals(DEFLATE)) deflateQuality = quality;
+            else if (name.equals("*")) anyQuality = quality;
+        }
+
+        // Codings not listed are accepted with the quality of the wildcard, if any
+
+        if (gzipQuality < 0) gzipQuality = anyQuality;
+        if (deflateQuality < 0) deflateQuality = anyQuality;
+
+        if (gzipQuality > 0 && gzipQuality >= deflateQuality) return GZIP;
+        if (deflateQuality > 0) return DEFLATE;
+
+        return null;
+    }
+
+    private static void deflate(Deflater deflater, byte[] input, ByteArrayOutputStream output) {
+        byte[] buffer = buffers.get();
+
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            output.write(buffer, 0, length);
+        }
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream output, int value) {
+        output.write(value);
+        output.write(value >>> 8);
+        output.write(value >>> 16);
+        output.write(value >>> 24);
+    }
+}
@@ -0,0 +1,165 @@
+package resources;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import dao.DataVersionDAO;
+import dao.factories.DAOAbstractFactory;
+import dao.factories.DAOFactory;
+import dao.factories.DAOFactoryCached;
+import dao.implementations.DAOImplCached;
+import dao.implementations.DAOImplJDBC;
+import kudoindex.UserKudoIndexManager;
+import model.DataVersion;
+import model.KudoEntry;
+import model.Route;
+import model.RouteCategory;
+import model.RouteToCategoriesMapping;
+import model.User;
+import routefilter.snapshot.RouteSnapshotManager;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the ETags of GET responses out of the data versions of the tables they're computed from, and checks them
+ * against the If-None-Match header of requests. An ETag only changes when one of its tables is written, so a request
+ * whose If-None-Match matches can be answered with 304 Not Modified before running any query or serializing any body.
+ * <p></p>
+ * Responses are computed from in-memory copies of the data (cached responses and lookups, the route catalog snapshot
+ * and the user kudo indexes), which don't see the writes of other instances until they expire. A response tagged with
+ * the current versions must not be computed from an outdated copy, or clients would keep it until the next write, so
+ * whenever the versions read for a tag differ from the previous ones, the copies of the written tables are dropped
+ *
+ * @see DataVersion
+ */
+public class EntityTags {
+
+    private static final Map<String, Long> lastSeenVersions = new HashMap<>();
+
+    private EntityTags() {
+    }
+
+    /**
+     * Build the ETag of a response, reading the current data versions
+     *
+     * @param variant Anything besides the tables the response depends on (e.g. the logged user or the current day),
+     *                or null if it only depends on the tables
+     * @param tables  Names of the tables the response is computed from
+     * @return The weak ETag of the response, or null if the data versions couldn't be read
+     */
+    public static String of(String variant, String... tables) {
+        return ofVersions(currentVersions(), variant, tables);
+    }
+
+    /**
+     * Read the current data versions, dropping the in-memory copies of the tables written since the last read. Read
+     * them once per request and share them with anything else stamped with the data versions (e.g. the filter result
+     * cache), so the request only takes one round trip to the database
+     *
+     * @return The current data versions by table, or null if they couldn't be read
+     */
+    public static Map<String, Long> currentVersions() {
+        DAOFactory<DAOImplJDBC> jdbcFactory = DAOAbstractFactory.get().impl(DAOImplJDBC.class);
+        DataVersionDAO dataVersionDAO = jdbcFactory != null ? jdbcFactory.forModel(DataVersion.class) : null;
+        Map<String, Long> versions = dataVersionDAO != null ? dataVersionDAO.getVersionsByTable() : null;
+
+        if (versions != null) forgetOutdatedCopies(versions);
+
+        return versions;
+    }
+
+    /**
+     * Build the ETag of a response from data versions already read
+     *
+     * @param versions Data versions read by {@link #currentVersions()}, or null if they couldn't be read
+     * @param variant  Anything besides the tables the response depends on (e.g. the logged user or the current day),
+     *                 or null if it only depends on the tables
+     * @param tables   Names of the tables the response is computed from
+     * @return The weak ETag of the response, or null if the data versions couldn't be read
+     */
+    public static String ofVersions(Map<String, Long> versions, String variant, String... tables) {
+        if (versions == null) return null;
+
+        StringBuilder entityTag = new StringBuilder("W/\"");
+        for (String table : tables) {
+            Long version = versions.get(table);
+
+            if (version == null) return null; // The table isn't versioned, its responses can't be tagged
+
+            entityTag.append(Long.toString(version, 36)).append('.');
+        }
+        entityTag.append(variant != null ? Integer.toHexString(variant.hashCode()) : "0").append('"');
+
+        return entityTag.toString();
+    }
+
+    /**
+     * Drop the in-memory copies of the tables whose versions changed since the last time they were read
+     *
+     * @param versions Current data versions
+     */
+    private static synchronized void forgetOutdatedCopies(Map<String, Long> versions) {
+        Set<String> changedTables = new HashSet<>();
+
+        for (Map.Entry<String, Long> version : versions.entrySet()) {
+            Long lastSeenVersion = lastSeenVersions.put(version.getKey(), version.getValue());
+            if (lastSeenVersion != null && !lastSeenVersion.equals(version.getValue()))
+                changedTables.add(version.getKey());
+        }
+
+        if (changedTables.isEmpty()) return;
+
+        // The kudos and categories of the routes are computed from the kudo entries and the categories mappings
+
+        boolean routesChanged = changedTables.contains(DataVersion.ROUTES) ||
+                changedTables.contains(DataVersion.KUDO_ENTRIES) ||
+                changedTables.contains(DataVersion.ROUTE_CATEGORIES) ||
+                changedTables.contains(DataVersion.ROUTE_TO_CATEGORIES_MAPPINGS);
+
+        DAOFactory<DAOImplCached> cachedFactory = DAOAbstractFactory.get().impl(DAOImplCached.class);
+        if (cachedFactory instanceof DAOFactoryCached) {
+            DAOFactoryCached cachedDAOs = (DAOFactoryCached) cachedFactory;
+
+            if (changedTables.contains(DataVersion.USERS)) cachedDAOs.invalidate(User.class);
+            if (changedTables.contains(DataVersion.KUDO_ENTRIES)) cachedDAOs.invalidate(KudoEntry.class);
+            if (changedTables.contains(DataVersion.ROUTE_CATEGORIES)) cachedDAOs.invalidate(RouteCategory.class);
+            if (changedTables.contains(DataVersion.ROUTE_TO_CATEGORIES_MAPPINGS))
+                cachedDAOs.invalidate(RouteToCategoriesMapping.class);
+            if (routesChanged) cachedDAOs.invalidate(Route.class);
+        }
+
+        if (routesChanged) RouteSnapshotManager.get().markStale();
+        if (changedTables.contains(DataVersion.KUDO_ENTRIES)) UserKudoIndexManager.get().invalidateAll();
+        ResponseCache.get().invalidate(changedTables.toArray(new String[0]));
+    }
+
+    /**
+     * @param event     API Gateway event
+     * @param entityTag Current ETag of the requested resource
+     * @return If the If-None-Match header of the request matches the ETag, so the client already has the current
+     * response. False if there's no ETag. A wildcard never matches, since the ETag is checked before knowing whether
+     * the requested resource exists, so a missing resource would be reported as not modified instead of not found
+     */
+    public static boolean isMatchedBy(APIGatewayProxyRequestEvent event, String entityTag) {
+        if (entityTag == null || event.getHeaders() == null) return false;
+
+        // Header names are case insensitive
+
+        String ifNoneMatch = null;
+        for (Map.Entry<String, String> header : event.getHeaders().entrySet())
+            if (header.getKey().equalsIgnoreCase("If-None-Match")) ifNoneMatch = header.getValue();
+
+        if (ifNoneMatch == null) return false;
+
+        // Weak comparison, so a strong ETag sent by the client still matches its weak counterpart
+
+        String opaqueTag = entityTag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals(entityTag) || candidate.equals(opaqueTag)) return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,282 @@
+package resources;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import helper.MessagePackWriter;
+import model.KudoEntry;
+import model.Route;
+import model.RouteCategory;
+import model.User;
+import model.statistic.UserStatistic;
+import resources.routes.FilteredRoutesBody;
+import resources.routes.RouteChangesBody;
+import resources.routes.RouteDetailBody;
+import routefilter.suggestion.Suggestion;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes response bodies as MessagePack for the clients that ask for it in their Accept header. Models are written by
+ * schema-aware writers, with the same keys Gson gives them in JSON and null fields left out the same way, so a client
+ * decodes the same structure in either format, but numbers take one to nine bytes instead of their decimal text.
+ * <p></p>
+ * Only bodies made of the supported models, collections, maps, strings, numbers and booleans can be written. Any
+ * other body is sent as JSON
+ */
+public class MessagePackBodies {
+
+    public static final String MEDIA_TYPE = "application/msgpack";
+
+    private MessagePackBodies() {
+    }
+
+    /**
+     * @param event API Gateway event
+     * @return If the client prefers MessagePack over JSON. Wildcards alone keep JSON, which is the default format
+     */
+    public static boolean isAccepted(APIGatewayProxyRequestEvent event) {
+        if (event.getHeaders() == null) return false;
+
+        // Header names are case insensitive
+
+        String accept = null;
+        for (Map.Entry<String, String> header : event.getHeaders().entrySet())
+            if (header.getKey().equalsIgnoreCase("Accept")) accept = header.getValue();
+
+        if (accept == null) return false;
+
+        double messagePackQuality = 0, jsonQuality = 0;
+        for (String mediaRange : accept.split(",")) {
+            String[] parameters = mediaRange.split(";");
+            String mediaType = parameters[0].trim().toLowerCase();
+            double quality = 1;
+
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0; // Ignore media ranges with a malformed quality
+                    }
+                }
+            }
+
+            if (mediaType.equals(MEDIA_TYPE) || mediaType.equals("application/x-msgpack") ||
+                    mediaType.equals("application/vnd.msgpack"))
+                messagePackQuality = Math.max(messagePackQuality, quality);
+            else if (mediaType.equals("application/json"))
+                jsonQuality = Math.max(jsonQuality, quality);
+        }
+
+        return messagePackQuality > 0 && messagePackQuality >= jsonQuality;
+    }
+
+    /**
+     * @param body Response body
+     * @return The body written as MessagePack, or null if it contains values that can't be written
+     */
+    public static byte[] write(Object body) {
+        MessagePackWriter writer = new MessagePackWriter();
+
+        try {
+            writeValue(writer, body);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException If the value can't be written
+     */
+    private static void writeValue(MessagePackWriter writer, Object value) {
+        if (value == null) {
+            writer.writeNil();
+        } else if (value instanceof Route) {
+            writeRoute(writer, (Route) value);
+        } else if (value instanceof KudoEntry) {
+            writeKudoEntry(writer, (KudoEntry) value);
+        } else if (value instanceof User) {
+            writeUser(writer, (User) value);
+        } else if (value instanceof RouteCategory) {
+            writeRouteCategory(writer, (RouteCategory) value);
+        } else if (value instanceof UserStatistic) {
+            writeUserStatistic(writer, (UserStatistic) value);
+        } else if (value instanceof RouteDetailBody) {
+            writeRouteDetail(writer, (RouteDetailBody) value);
+        } else if (value instanceof FilteredRoutesBody) {
+            writeFilteredRoutes(writer, (FilteredRoutesBody) value);
+        } else if (value instanceof RouteChangesBody) {
+            writeRouteChanges(writer, (RouteChangesBody) value);
+        } else if (value instanceof RouteChangesBody.Change) {
+            writeRouteChange(writer, (RouteChangesBody.Change) value);
+        } else if (value instanceof Suggestion) {
+            writeSuggestion(writer, (Suggestion) value);
+        } else if (value instanceof APIErrorBody) {
+            writer.writeMapHeader(nonNull(((APIErrorBody) value).getReason()));
+            writeString(writer, "reason", ((APIErrorBody) value).getReason());
+        } else if (value instanceof String) {
+            writer.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            writer.writeBoolean((Boolean) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short ||
+                value instanceof Byte) {
+            writer.writeLong(((Number) value).longValue());
+        } else if (value instanceof Float) {
+            writer.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            writer.writeDouble((Double) value);
+        } else if (value instanceof Collection) {
+            writer.writeArrayHeader(((Collection<?>) value).size());
+            for (Object element : (Collection<?>) value)
+                writeValue(writer, element);
+        } else if (value instanceof Map) {
+
+            // JSON object keys are strings, keep them as strings
+
+            writer.writeMapHeader(((Map<?, ?>) value).size());
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                writer.writeString(String.valueOf(entry.getKey()));
+                writeValue(writer, entry.getValue());
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported body type " + value.getClass().getName());
+        }
+    }
+
+    private static void writeRoute(MessagePackWriter writer, Route route) {
+        writer.writeMapHeader(6 + nonNull(route.getCreatedByUser(), route.getTitle(), route.getDescription(),
+                route.getCreationDate(), route.getCategories(), route.getSkillLevel(), route.getMyKudo()));
+
+        writer.writeString("id").writeLong(route.getId());
+        writeString(writer, "createdByUser", route.getCreatedByUser());
+        writeString(writer, "title", route.getTitle());
+        writeString(writer, "description", route.getDescription());
+        writer.writeString("distance").writeLong(route.getDistance());
+        writer.writeString("duration").writeLong(route.getDuration());
+        writer.writeString("elevation").writeLong(route.getElevation());
+        writeString(writer, "creationDate", route.getCreationDate());
+        writeString(writer, "categories", route.getCategories());
+        writeString(writer, "skillLevel", route.getSkillLevel());
+        writer.writeString("kudos").writeLong(route.getKudos());
+        writer.writeString("blocked").writeBoolean(route.isBlocked());
+        if (route.getMyKudo() != null) writer.writeString("myKudo").writeLong(route.getMyKudo());
+    }
+
+    private static void writeKudoEntry(MessagePackWriter writer, KudoEntry kudoEntry) {
+        writer.writeMapHeader(3 + nonNull(kudoEntry.getUser()));
+
+        writeString(writer, "user", kudoEntry.getUser());
+        writer.writeString("route").writeLong(kudoEntry.getRoute());
+        writer.writeString("modifier").writeLong(kudoEntry.getModifier());
+        writer.writeString("submissionDate").writeLong(kudoEntry.getSubmissionDate());
+    }
+
+    private static void writeUser(MessagePackWriter writer, User user) {
+        writer.writeMapHeader(nonNull(user.getUsername()));
+
+        writeString(writer, "username", user.getUsername());
+    }
+
+    private static void writeRouteCategory(MessagePackWriter writer, RouteCategory routeCategory) {
+        writer.writeMapHeader(1 + nonNull(routeCategory.getName(), routeCategory.getDescription()));
+
+        writer.writeString("id").writeLong(routeCategory.getId());
+        writeString(writer, "name", routeCategory.getName());
+        writeString(writer, "description", routeCategory.getDescription());
+    }
+
+    private static void writeUserStatistic(MessagePackWriter writer, UserStatistic userStatistic) {
+        writer.writeMapHeader(1 + nonNull(userStatistic.getUsername()));
+
+        writeString(writer, "username", userStatistic.getUsername());
+        writer.writeString("stat").writeFloat(userStatistic.getStat());
+    }
+
+    private static void writeRouteDetail(MessagePackWriter writer, RouteDetailBody routeDetail) {
+        writer.writeMapHeader(nonNull(routeDetail.getRoute(), routeDetail.getKudoEntry(),
+                routeDetail.getSimilarRoutes()));
+
+        if (routeDetail.getRoute() != null) {
+            writer.writeString("route");
+            writeRoute(writer, routeDetail.getRoute());
+        }
+        if (routeDetail.getKudoEntry() != null) {
+            writer.writeString("kudoEntry");
+            writeKudoEntry(writer, routeDetail.getKudoEntry());
+        }
+        if (routeDetail.getSimilarRoutes() != null) {
+            writer.writeString("similarRoutes");
+            writeValue(writer, routeDetail.getSimilarRoutes());
+        }
+    }
+
+    private static void writeFilteredRoutes(MessagePackWriter writer, FilteredRoutesBody filteredRoutes) {
+        writer.writeMapHeader(
+                nonNull(filteredRoutes.getRoutes(), filteredRoutes.getFacets(), filteredRoutes.getPlan()));
+
+        if (filteredRoutes.getRoutes() != null) {
+            writer.writeString("routes");
+            writeValue(writer, filteredRoutes.getRoutes());
+        }
+        if (filteredRoutes.getFacets() != null) {
+            writer.writeString("facets");
+            writeValue(writer, filteredRoutes.getFacets());
+        }
+        if (filteredRoutes.getPlan() != null) {
+            writer.writeString("plan");
+            writeValue(writer, filteredRoutes.getPlan());
+        }
+    }
+
+    private static void writeRouteChanges(MessagePackWriter writer, RouteChangesBody routeChanges) {
+        writer.writeMapHeader(1 + nonNull(routeChanges.getChanges(), routeChanges.getToken()));
+
+        if (routeChanges.getChanges() != null) {
+            writer.writeString("changes");
+            writeValue(writer, routeChanges.getChanges());
+        }
+        writeString(writer, "token", routeChanges.getToken());
+        writer.writeString("hasMore").writeBoolean(routeChanges.isHasMore());
+    }
+
+    private static void writeRouteChange(MessagePackWriter writer, RouteChangesBody.Change routeChange) {
+        writer.writeMapHeader(1 + nonNull(routeChange.getType(), routeChange.getRoute(), routeChange.getKudos()));
+
+        writer.writeString("routeId").writeLong(routeChange.getRouteId());
+        writeString(writer, "type", routeChange.getType());
+        if (routeChange.getRoute() != null) {
+            writer.writeString("route");
+            writeRoute(writer, routeChange.getRoute());
+        }
+        if (routeChange.getKudos() != null) writer.writeString("kudos").writeLong(routeChange.getKudos());
+    }
+
+    private static void writeSuggestion(MessagePackWriter writer, Suggestion suggestion) {
+        writer.writeMapHeader(1 + nonNull(suggestion.getType(), suggestion.getText(), suggestion.getRouteId()));
+
+        writeString(writer, "type", suggestion.getType());
+        writeString(writer, "text", suggestion.getText());
+        if (suggestion.getRouteId() != null) writer.writeString("routeId").writeLong(suggestion.getRouteId());
+        writer.writeString("score").writeLong(suggestion.getScore());
+    }
+
+    /**
+     * Write a string field, leaving it out if it's null as Gson does
+     */
+    private static void writeString(MessagePackWriter writer, String key, String value) {
+        if (value != null) writer.writeString(key).writeString(value);
+    }
+
+    /**
+     * @return How many of the values aren't null
+     */
+    private static int nonNull(Object... values) {
+        int nonNull = 0;
+        for (Object value : values)
+            if (value != null) nonNull++;
+        return nonNull;
+    }
+}
@@ -1,13 +1,17 @@
 package resources;
 
 import dao.factories.DAOAbstractFactory;
+import dao.factories.DAOFactory;
+import dao.factories.DAOFactoryCached;
 import dao.factories.DAOFactoryJDBC;
+import dao.implementations.DAOImplCached;
 import dao.implementations.DAOImplJDBC;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.function.Supplier;
 
 public class MySQLConnectionManager {
 
@@ -79,19 +83,71 @@ public class MySQLConnectionManager {
 
                 connection = tempConn;
 
-                // Register DAOFactories and configure its dependencies
+                DAOFactory<DAOImplJDBC> jdbcFactory = DAOAbstractFactory.get().impl(DAOImplJDBC.class);
 
-                DAOAbstractFactory.get().registerDAOFactory(new DAOFactoryJDBC(), (dao, dependencies) -> {
-                    HashMap<String, Object> dependenciesMap = new HashMap<>();
-                    dependenciesMap.put(DAOImplJDBC.CONNECTION_IDENTIFIER, connection);
-                    dao.configureDependencies(dependenciesMap);
-                });
+                if (jdbcFactory == null) {
+
+                    // Register DAOFactories and configure its dependencies
+
+                    DAOAbstractFactory.get().registerDAOFactory(new DAOFactoryJDBC(), (dao, dependencies) -> {
+                        HashMap<String, Object> dependenciesMap = new HashMap<>();
+                        dependenciesMap.put(DAOImplJDBC.CONNECTION_IDENTIFIER, connection);
+                        dao.configureDependencies(dependenciesMap);
+                    });
+
+                    // Decorate the JDBC DAOs with a cache. On reconfiguration any cached lookup is dropped
+
+                    DAOAbstractFactory.get().registerDAOFactory(
+                            DAOFactoryCached.withDefaultPolicies(DAOAbstractFactory.get().impl(DAOImplJDBC.class)),
+                            (dao, dependencies) -> dao.invalidateCache());
+                } else {
+
+                    // The factories outlive the connection, since registering them again is a no-op. Point the JDBC
+                    // DAOs to the new connection and reconfigure the caching DAOs, which keep wrapping the same JDBC
+                    // DAOs, so every cached lookup is dropped
+
+                    jdbcFactory.configureAllDAODependencies();
+
+                    DAOFactory<DAOImplCached> cachedFactory = DAOAbstractFactory.get().impl(DAOImplCached.class);
+                    if (cachedFactory != null) cachedFactory.configureAllDAODependencies();
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Run read-only work at READ COMMITTED isolation, so it never sees writes that could still roll back. The isolation
+     * level only applies to new transactions, so the open transaction of the connection is ended first, and the
+     * connection goes back to its usual isolation level afterwards. Any uncommitted write on the connection is rolled
+     * back, so don't call it in the middle of a write
+     *
+     * @param reads Read-only work
+     * @param <T>   Type of the result of the work
+     * @return The result of the work, or null if the isolation level couldn't be changed
+     */
+    public <T> T readCommitted(Supplier<T> reads) {
+        try {
+            connection.rollback();
+            connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        try {
+            return reads.get();
+        } finally {
+            try {
+                connection.rollback(); // End the read transaction before switching back
+                connection.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     public Connection getConnection() {
         return connection;
     }
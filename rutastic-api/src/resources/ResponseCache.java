@@ -0,0 +1,336 @@
+package resources;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import static resources.HTTPStatus.NOT_MODIFIED;
+import static resources.HTTPStatus.OK;
+
+/**
+ * Cache of serialized GET responses. Implemented through a Singleton instance, which you can get calling
+ * {@link #get()}.
+ * <p></p>
+ * Responses are keyed by the normalized request (method, resource, path, sorted query parameters and, for responses
+ * that depend on who is asking, the logged user), and stored with their status, headers and body already serialized,
+ * so a hit doesn't touch any DAO or serialize anything. If the cached response has an ETag matching the If-None-Match
+ * header of the request, a hit is answered with 304 Not Modified. Clients asking for MessagePack get responses cached
+ * apart from the JSON ones. Responses are compressed as negotiated by {@link ContentEncoding}, and their compressed
+ * bodies are cached along with the plain one.
+ * <p></p>
+ * The cache is bounded by the size of the bodies it holds, which is read from the environment variable
+ * {@value #MAX_WEIGHT_ENV} (in bytes), and by a number of entries. When full, the least frequently used response is
+ * evicted. Frequencies are halved from time to time, so responses that were popular once don't stay forever. Each
+ * response is tagged with the tables it's computed from, and dropped when any of them is written
+ */
+public class ResponseCache {
+
+    public static final String MAX_WEIGHT_ENV = "RESPONSE_CACHE_MAX_BYTES";
+    private static final long DEFAULT_MAX_WEIGHT = 4 * 1024 * 1024;
+    private static final int MAX_ENTRIES = 512;
+    private static final Logger logger = Logger.getLogger(ResponseCache.class.getName());
+
+    private final Map<String, Entry> entries;
+    private final TreeMap<Integer, LinkedHashSet<String>> keysByFrequency; // Least frequently used first
+    private final long maxWeight;
+    private long weight;
+    private long generation; // Bumped on every invalidation
+    private int accessesSinceAging;
+
+    private ResponseCache() {
+        entries = new HashMap<>();
+        keysByFrequency = new TreeMap<>();
+        maxWeight = parseMaxWeight(System.getenv(MAX_WEIGHT_ENV));
+    }
+
+    /**
+     * @return The Singleton instance of the response cache
+     */
+    public static ResponseCache get() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * @param maxWeightSource Maximum size of the cached bodies in bytes
+     * @return Maximum size in bytes, or the default maximum size if it isn't a valid number
+     */
+    private static long parseMaxWeight(String maxWeightSource) {
+        if (maxWeightSource != null && maxWeightSource.trim().matches("[0-9]+"))
+            return Long.parseLong(maxWeightSource.trim());
+
+        return DEFAULT_MAX_WEIGHT;
+    }
+
+    /**
+     * Serve a GET request from the cache, or handle it and cache its response if it's successful
+     *
+     * @param event     API Gateway event
+     * @param perUser   If the response depends on the logged user
+     * @param ttlMillis Time the response remains cached, in milliseconds. Writes made by other instances are only seen
+     *                  after it expires
+     * @param handler   Handles the request on a miss
+     * @param tables    Names of the tables the response is computed from
+     * @return The cached response, or the response of the handler
+     */
+    public APIGatewayProxyResponse<?> serve(APIGatewayProxyRequestEvent event, boolean perUser, long ttlMillis,
+                                            Supplier<APIGatewayProxyResponse<?>> handler, String... tables) {
+        String key = keyOf(event, perUser);
+        Entry entry;
+        long missGeneration;
+
+        synchronized (this) {
+            entry = entries.get(key);
+
+            if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+                remove(key);
+                entry = null;
+            }
+
+            if (entry != null) {
+                touch(key, entry);
+
+                if (EntityTags.isMatchedBy(event, entry.headers.get("ETag")))
+                    return new APIGatewayProxyResponse<>(NOT_MODIFIED).addETag(entry.headers.get("ETag"));
+            }
+
+            missGeneration = generation;
+        }
+
+        if (entry != null) return encoded(key, entry, event);
+
+        APIGatewayProxyResponse<?> response = handler.get().negotiateFormat(event);
+
+        if (response.getStatusCode() == OK) {
+            String body = response.serializeBody();
+            long entryWeight = 2L * (key.length() + body.length()); // Chars take 2 bytes
+
+            // Skip responses that would take too much of the cache by themselves
+
+            if (entryWeight <= maxWeight / 8) {
+                synchronized (this) {
+
+                    // A write could have happened while the response was computed, making it stale already
+
+                    if (missGeneration == generation) {
+                        entry = new Entry(response, body, new HashSet<>(Arrays.asList(tables)), entryWeight,
+                                System.currentTimeMillis() + ttlMillis);
+                        remove(key);
+                        put(key, entry);
+                    }
+                }
+            }
+        }
+
+        if (entry != null) return encoded(key, entry, event);
+
+        return ContentEncoding.compress(event, response);
+    }
+
+    /**
+     * Build the response of a cached entry in the encoding negotiated with the client. Each compressed body is kept
+     * next to the plain one, so a body is compressed once per encoding
+     *
+     * @param key   Key of the entry
+     * @param entry Cached entry
+     * @param event API Gateway event
+     * @return The response
+     */
+    private APIGatewayProxyResponse<?> encoded(String key, Entry entry, APIGatewayProxyRequestEvent event) {
+        APIGatewayProxyResponse<Object> response = entry.toResponse();
+        String contentEncoding = ContentEncoding.negotiate(event, response);
+
+        if (contentEncoding == null) return response;
+
+        String encodedBody;
+        synchronized (this) {
+            encodedBody = entry.encodedBodies.get(contentEncoding);
+        }
+
+        if (encodedBody == null) {
+            encodedBody = ContentEncoding.encode(entry.body, contentEncoding);
+
+            synchronized (this) {
+
+                // Only account for the compressed body if the entry is still cached
+
+                if (entries.get(key) == entry && entry.encodedBodies.put(contentEncoding, encodedBody) == null) {
+                    entry.weight += 2L * encodedBody.length();
+                    weight += 2L * encodedBody.length();
+                }
+            }
+        }
+
+        response.setEncodedBody(contentEncoding, encodedBody);
+
+        return response;
+    }
+
+    /**
+     * Drop every cached response computed from any of the given tables. Call it after writing to them
+     *
+     * @param tables Names of the written tables
+     */
+    public synchronized void invalidate(String... tables) {
+        generation++;
+
+        List<String> writtenTables = Arrays.asList(tables);
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> cached = iterator.next();
+
+            if (Collections.disjoint(cached.getValue().tables, writtenTables)) continue;
+
+            iterator.remove();
+            weight -= cached.getValue().weight;
+            removeFromFrequency(cached.getKey(), cached.getValue().frequency);
+        }
+    }
+
+    /**
+     * @param event   API Gateway event
+     * @param perUser If the logged user is part of the key
+     * @return The normalized request
+     */
+    private static String keyOf(APIGatewayProxyRequestEvent event, boolean perUser) {
+        StringBuilder key = new StringBuilder()
+                .append(event.getHttpMethod()).append(' ')
+                .append(event.getResource()).append(' ')
+                .append(event.getPathParameters() != null ? event.getPathParameters().get("proxy") : "");
+
+        // Query parameters in a stable order, so the order they were sent in doesn't matter
+
+        if (event.getQueryStringParameters() != null) {
+            char separator = '?';
+            for (Map.Entry<String, String> parameter : new TreeMap<>(event.getQueryStringParameters()).entrySet()) {
+                key.append(separator).append(parameter.getKey()).append('=').append(parameter.getValue());
+                separator = '&';
+            }
+        }
+
+        // Responses in different formats are cached apart
+
+        if (MessagePackBodies.isAccepted(event)) key.append(" ~").append(MessagePackBodies.MEDIA_TYPE);
+
+        if (perUser) key.append(" @").append(loggedUser(event));
+
+        return key.toString();
+    }
+
+    /**
+     * @param event API Gateway event
+     * @return The username of the logged user, or null if the request isn't authenticated
+     */
+    private static String loggedUser(APIGatewayProxyRequestEvent event) {
+        if (event.getRequestContext() == null || event.getRequestContext().getAuthorizer() == null)
+            return null;
+
+        Object claims = event.getRequestContext().getAuthorizer().get("claims");
+        Object user = claims instanceof Map ? ((Map<?, ?>) claims).get("cognito:username") : null;
+
+        return user instanceof String ? (String) user : null;
+    }
+
+    private void put(String key, Entry entry) {
+
+        // Make room evicting the least frequently used responses, the oldest first among equally used ones. The new
+        // response isn't a candidate, otherwise it could never replace responses that were used more than once
+
+        while (!entries.isEmpty() && (entries.size() >= MAX_ENTRIES || weight + entry.weight > maxWeight)) {
+            String evictedKey = keysByFrequency.firstEntry().getValue().iterator().next();
+            remove(evictedKey);
+            logger.fine("[RESPONSE EVICTED] " + evictedKey);
+        }
+
+        entries.put(key, entry);
+        weight += entry.weight;
+        keysByFrequency.computeIfAbsent(entry.frequency, frequency -> new LinkedHashSet<>()).add(key);
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+
+        if (entry != null) {
+            weight -= entry.weight;
+            removeFromFrequency(key, entry.frequency);
+        }
+    }
+
+    private void removeFromFrequency(String key, int frequency) {
+        LinkedHashSet<String> keys = keysByFrequency.get(frequency);
+        keys.remove(key);
+        if (keys.isEmpty()) keysByFrequency.remove(frequency);
+    }
+
+    /**
+     * Count a hit on an entry, and age every entry once there have been enough hits
+     */
+    private void touch(String key, Entry entry) {
+        removeFromFrequency(key, entry.frequency);
+        entry.frequency++;
+        keysByFrequency.computeIfAbsent(entry.frequency, frequency -> new LinkedHashSet<>()).add(key);
+
+        if (++accessesSinceAging >= 8 * MAX_ENTRIES) {
+            accessesSinceAging = 0;
+            keysByFrequency.clear();
+            for (Map.Entry<String, Entry> cached : entries.entrySet()) {
+                cached.getValue().frequency = Math.max(1, cached.getValue().frequency / 2);
+                keysByFrequency.computeIfAbsent(cached.getValue().frequency, frequency -> new LinkedHashSet<>())
+                        .add(cached.getKey());
+            }
+        }
+    }
+
+    /**
+     * Cached response
+     */
+    private static class Entry {
+        final int statusCode;
+        final boolean base64Encoded;
+        final Map<String, String> headers;
+        final Map<String, List<String>> multiValueHeaders;
+        final String body;
+        final Map<String, String> encodedBodies; // Base64 compressed bodies by content encoding
+        final Set<String> tables;
+        long weight;
+        final long expiresAt;
+        int frequency = 1;
+
+        Entry(APIGatewayProxyResponse<?> response, String body, Set<String> tables, long weight, long expiresAt) {
+            this.statusCode = response.getStatusCode();
+            this.base64Encoded = response.isIsBase64Encoded();
+            this.headers = new HashMap<>(response.getHeaders());
+            this.multiValueHeaders = new HashMap<>(response.getMultiValueHeaders());
+            this.body = body;
+            this.encodedBodies = new HashMap<>();
+            this.tables = tables;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+
+        APIGatewayProxyResponse<Object> toResponse() {
+            APIGatewayProxyResponse<Object> response = APIGatewayProxyResponse.withSerializedBody(statusCode, body);
+            response.setBase64Encoded(base64Encoded);
+            response.getHeaders().putAll(headers);
+            response.getMultiValueHeaders().putAll(multiValueHeaders);
+            return response;
+        }
+    }
+
+    /**
+     * Singleton holder for ResponseCache class
+     */
+    private static class SingletonHolder {
+        private static final ResponseCache INSTANCE = new ResponseCache();
+    }
+}
@@ -6,11 +6,15 @@ import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import dao.KudoEntryDAO;
 import dao.factories.DAOAbstractFactory;
 import dao.implementations.DAOImplJDBC;
+import kudoindex.UserKudoIndex;
+import kudoindex.UserKudoIndexManager;
 import model.KudoEntry;
 import resources.APIErrorBody;
 import resources.APIGatewayProxyResponse;
+import resources.EntityTags;
 import resources.MySQLConnectionManager;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static resources.HTTPStatus.*;
@@ -31,7 +35,8 @@ public class KudoEntriesHandler implements RequestHandler<APIGatewayProxyRequest
                 System.getenv("DB_USER_PWD"),
                 System.getenv("DB_SCHEMA"));
 
-        // Initialize DAOs
+        // Initialize DAOs. Kudo entries are read from the database directly, since clients read them back to decide
+        // what to do next (e.g. whether to give or take a kudo) and a cached copy could be outdated
         kudoEntryDAO = daoAbstractFactory.impl(DAOImplJDBC.class).forModel(KudoEntry.class);
     }
 
@@ -43,8 +48,14 @@ public class KudoEntriesHandler implements RequestHandler<APIGatewayProxyRequest
 
         // Decide how to handle the API Gateway event to return the adequate data
 
-        // Requested GET /kudos/{usuario}
+        // Requested GET /kudos/{usuario}?rutas={idRuta,...}
         if (resource.equals(THIS_RESOURCE + "/{proxy+}") && resourceProxyValue.matches("\\w+") &&
+                event.getHttpMethod().equals("GET") && event.getQueryStringParameters() != null &&
+                event.getQueryStringParameters().containsKey("rutas")) {
+            return getUserKudoModifiersForRoutes(event, context).addCORS();
+        }
+        // Requested GET /kudos/{usuario}
+        else if (resource.equals(THIS_RESOURCE + "/{proxy+}") && resourceProxyValue.matches("\\w+") &&
                 event.getHttpMethod().equals("GET")) {
             return getUserKudoEntries(event, context).addCORS();
         }
@@ -77,6 +88,47 @@ public class KudoEntriesHandler implements RequestHandler<APIGatewayProxyRequest
         }
     }
 
+    // GET /kudos/{usuario}?rutas={idRuta,...}
+    private APIGatewayProxyResponse<?> getUserKudoModifiersForRoutes(APIGatewayProxyRequestEvent event,
+                                                                     Context context) {
+
+        String username = event.getPathParameters().get("proxy");
+        String routeIdsSource = event.getQueryStringParameters().get("rutas");
+        String cognitoUser = ((Map<String, String>) event.getRequestContext().getAuthorizer().get("claims"))
+                .get("cognito:username");
+
+        // AUTHORISATION FILTER. The logged user can only retrieve his kudo entries
+
+        if (!cognitoUser.equals(username))
+            return new APIGatewayProxyResponse<>(UNAUTHORIZED,
+                    new APIErrorBody("Su usario no tiene permisos para recuperar las entradas kudo del usuario solicitado"));
+
+        // Validate the list of route IDs
+
+        if (routeIdsSource == null || !routeIdsSource.matches("\\s*[0-9]{1,18}\\s*(,\\s*[0-9]{1,18}\\s*)*"))
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (rutas) no es una lista de IDs de ruta separados por comas"));
+
+        // Read the data versions first, so the index is dropped if kudo entries were written elsewhere meanwhile
+
+        UserKudoIndex kudoIndex = EntityTags.currentVersions() != null ?
+                UserKudoIndexManager.get().getIndex(username) : null;
+
+        if (kudoIndex == null)
+            return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                    new APIErrorBody("Ocurrió un error al recuperar las entradas kudo del usuario"));
+
+        // Return the modifier of the kudo given to each requested route, 0 if the user didn't give any
+
+        Map<Long, Integer> kudoModifiers = new LinkedHashMap<>();
+        for (String routeIdSource : routeIdsSource.split(",")) {
+            long routeId = Long.parseLong(routeIdSource.trim());
+            kudoModifiers.put(routeId, kudoIndex.modifierOf(routeId));
+        }
+
+        return new APIGatewayProxyResponse<>(OK, kudoModifiers);
+    }
+
     // GET /kudos/{usuario}/{idRuta}
     private APIGatewayProxyResponse<?> getUserKudoEntriesForRoute(APIGatewayProxyRequestEvent event, Context context) {
 
@@ -5,11 +5,14 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import dao.RouteCategoryDAO;
 import dao.factories.DAOAbstractFactory;
-import dao.implementations.DAOImplJDBC;
+import dao.implementations.DAOImplCached;
+import model.DataVersion;
 import model.RouteCategory;
 import resources.APIErrorBody;
 import resources.APIGatewayProxyResponse;
+import resources.EntityTags;
 import resources.MySQLConnectionManager;
+import resources.ResponseCache;
 
 import java.util.List;
 
@@ -20,8 +23,10 @@ public class RouteCategoriesHandler implements RequestHandler<APIGatewayProxyReq
     private static final MySQLConnectionManager jdbcManager = MySQLConnectionManager.getInstance();
     private static final DAOAbstractFactory daoAbstractFactory = DAOAbstractFactory.get();
     private static final RouteCategoryDAO routeCategoryDAO;
+    private static final ResponseCache responseCache = ResponseCache.get();
 
     private static final String THIS_RESOURCE = "/categoriasruta"; // This resource on the REST API
+    private static final long RESPONSE_CACHE_TTL = 10 * 60 * 1000; // Time GET responses remain cached, in milliseconds
 
     static {
         // On cold boot set up and create a db connection
@@ -32,7 +37,7 @@ public class RouteCategoriesHandler implements RequestHandler<APIGatewayProxyReq
                 System.getenv("DB_SCHEMA"));
 
         // Initialize DAOs
-        routeCategoryDAO = daoAbstractFactory.impl(DAOImplJDBC.class).forModel(RouteCategory.class);
+        routeCategoryDAO = daoAbstractFactory.impl(DAOImplCached.class).forModel(RouteCategory.class);
     }
 
     @Override
@@ -42,7 +47,8 @@ public class RouteCategoriesHandler implements RequestHandler<APIGatewayProxyReq
 
         // Requested GET /categoriasruta
         if (resource.equals(THIS_RESOURCE) && event.getHttpMethod().equals("GET")) {
-            return getAllRouteCategories(event, context).addCORS();
+            return responseCache.serve(event, false, RESPONSE_CACHE_TTL, () -> getAllRouteCategories(event, context),
+                    DataVersion.ROUTE_CATEGORIES).addCORS();
         }
         // Unkonw requested resource
         else {
@@ -53,6 +59,12 @@ public class RouteCategoriesHandler implements RequestHandler<APIGatewayProxyReq
     // GET /categoriasruta
     private APIGatewayProxyResponse<Object> getAllRouteCategories(APIGatewayProxyRequestEvent event, Context context) {
 
+        // Check if the client already has the current version of the route categories
+
+        String entityTag = EntityTags.of(null, DataVersion.ROUTE_CATEGORIES);
+        if (EntityTags.isMatchedBy(event, entityTag))
+            return new APIGatewayProxyResponse<Object>(NOT_MODIFIED).addETag(entityTag);
+
         List<RouteCategory> allCategories = routeCategoryDAO.getAll(); // Try retrieving all route categories
 
         // Check that the DAO could complete the operation
@@ -67,7 +79,7 @@ public class RouteCategoriesHandler implements RequestHandler<APIGatewayProxyReq
             return new APIGatewayProxyResponse<>(NOT_FOUND,
                     new APIErrorBody("No se ha encontrado ninguna categoría de ruta"));
 
-        return new APIGatewayProxyResponse<>(OK, allCategories);
+        return new APIGatewayProxyResponse<Object>(OK, allCategories).addETag(entityTag);
     }
 
 }
@@ -0,0 +1,53 @@
+package resources.routes;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * POJO to return the routes found by a filter along with their facet counts and the explanation of the execution plan
+ * of the filter, when they're requested
+ */
+public class FilteredRoutesBody {
+
+    private List<?> routes;
+    private Map<String, Map<String, Integer>> facets;
+    private Map<String, Object> plan;
+
+    public FilteredRoutesBody() {
+    }
+
+    public FilteredRoutesBody(List<?> routes, Map<String, Map<String, Integer>> facets) {
+        this.routes = routes;
+        this.facets = facets;
+    }
+
+    public FilteredRoutesBody(List<?> routes, Map<String, Map<String, Integer>> facets, Map<String, Object> plan) {
+        this.routes = routes;
+        this.facets = facets;
+        this.plan = plan;
+    }
+
+    public List<?> getRoutes() {
+        return routes;
+    }
+
+    public void setRoutes(List<?> routes) {
+        this.routes = routes;
+    }
+
+    public Map<String, Map<String, Integer>> getFacets() {
+        return facets;
+    }
+
+    public void setFacets(Map<String, Map<String, Integer>> facets) {
+        this.facets = facets;
+    }
+
+    public Map<String, Object> getPlan() {
+        return plan;
+    }
+
+    public void setPlan(Map<String, Object> plan) {
+        this.plan = plan;
+    }
+}
@@ -0,0 +1,103 @@
+package resources.routes;
+
+import model.Route;
+
+import java.util.List;
+
+/**
+ * POJO to return the changes of the routes after a watermark, along with the token of the watermark to ask for the
+ * following changes and whether there are more changes already
+ */
+public class RouteChangesBody {
+
+    private List<Change> changes;
+    private String token;
+    private boolean hasMore;
+
+    public RouteChangesBody() {
+    }
+
+    public RouteChangesBody(List<Change> changes, String token, boolean hasMore) {
+        this.changes = changes;
+        this.token = token;
+        this.hasMore = hasMore;
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<Change> changes) {
+        this.changes = changes;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * POJO of the change of a route. Created, updated and blocked routes come with their current state, deleted routes
+     * only with their ID, and kudos changes with the current kudos total of the route
+     */
+    public static class Change {
+
+        private long routeId;
+        private String type;
+        private Route route;
+        private Integer kudos;
+
+        public Change() {
+        }
+
+        public Change(long routeId, String type, Route route, Integer kudos) {
+            this.routeId = routeId;
+            this.type = type;
+            this.route = route;
+            this.kudos = kudos;
+        }
+
+        public long getRouteId() {
+            return routeId;
+        }
+
+        public void setRouteId(long routeId) {
+            this.routeId = routeId;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public Route getRoute() {
+            return route;
+        }
+
+        public void setRoute(Route route) {
+            this.route = route;
+        }
+
+        public Integer getKudos() {
+            return kudos;
+        }
+
+        public void setKudos(Integer kudos) {
+            this.kudos = kudos;
+        }
+    }
+}
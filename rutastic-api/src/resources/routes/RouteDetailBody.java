@@ -0,0 +1,50 @@
+package resources.routes;
+
+import model.KudoEntry;
+import model.Route;
+
+import java.util.List;
+
+/**
+ * POJO to return everything the route details page shows in a single response: the route, the kudo entry the logged
+ * user gave to it and its most similar routes
+ */
+public class RouteDetailBody {
+
+    private Route route;
+    private KudoEntry kudoEntry;
+    private List<Route> similarRoutes;
+
+    public RouteDetailBody() {
+    }
+
+    public RouteDetailBody(Route route, KudoEntry kudoEntry, List<Route> similarRoutes) {
+        this.route = route;
+        this.kudoEntry = kudoEntry;
+        this.similarRoutes = similarRoutes;
+    }
+
+    public Route getRoute() {
+        return route;
+    }
+
+    public void setRoute(Route route) {
+        this.route = route;
+    }
+
+    public KudoEntry getKudoEntry() {
+        return kudoEntry;
+    }
+
+    public void setKudoEntry(KudoEntry kudoEntry) {
+        this.kudoEntry = kudoEntry;
+    }
+
+    public List<Route> getSimilarRoutes() {
+        return similarRoutes;
+    }
+
+    public void setSimilarRoutes(List<Route> similarRoutes) {
+        this.similarRoutes = similarRoutes;
+    }
+}
@@ -4,27 +4,65 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.google.gson.Gson;
-import dao.JDBCRouteDAO;
 import dao.KudoEntryDAO;
+import dao.MutationOutcome;
+import dao.RouteChangeDAO;
 import dao.RouteDAO;
 import dao.UserDAO;
 import dao.factories.DAOAbstractFactory;
+import dao.implementations.DAOImplCached;
 import dao.implementations.DAOImplJDBC;
 import dao.implementations.RouteDAOImplJDBC;
+import helper.FanOut;
+import kudoindex.UserKudoIndex;
+import kudoindex.UserKudoIndexManager;
+import model.DataVersion;
 import model.KudoEntry;
 import model.Route;
+import model.RouteChange;
 import model.User;
 import resources.APIErrorBody;
 import resources.APIGatewayProxyResponse;
+import resources.ContentEncoding;
+import resources.EntityTags;
 import resources.MySQLConnectionManager;
+import resources.ResponseCache;
+import routefilter.CategoryExpression;
+import routefilter.FilterResultCache;
+import routefilter.InMemoryRouteFilter;
+import routefilter.RouteFacet;
+import routefilter.RouteField;
+import routefilter.RouteFilter;
+import routefilter.RouteFilterBuilder;
 import routefilter.RouteSkillLevel;
-import routefilter.SQLRouteFilterBuilder;
-
+import routefilter.SQLRouteFilter;
+import routefilter.SortSpec;
+import routefilter.plan.PlannedRouteFilter;
+import routefilter.plan.PlannedRouteFilterBuilder;
+import routefilter.similarity.RouteSimilarityIndex;
+import routefilter.similarity.RouteSimilarityManager;
+import routefilter.similarity.SimilarityWeights;
+import routefilter.snapshot.RouteCatalogSnapshot;
+import routefilter.snapshot.RouteSnapshotManager;
+import routefilter.suggestion.Suggestion;
+import routefilter.suggestion.SuggestionIndex;
+import routefilter.suggestion.SuggestionIndexManager;
+import routefilter.text.RouteTextIndex;
+import routefilter.text.RouteTextIndexManager;
+
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static resources.HTTPStatus.*;
@@ -36,9 +74,30 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
     private static final RouteDAO routeDAO;
     private static final UserDAO userDAO;
     private static final KudoEntryDAO kudoEntryDAO;
+    private static final RouteChangeDAO routeChangeDAO;
+    private static final RouteDAO uncachedRouteDAO; // Replicas must see the routes as of their latest change
+    private static final KudoEntryDAO uncachedKudoEntryDAO; // Kudo updates must be decided from the current entry
     private static final Gson gson = new Gson();
+    private static final ResponseCache responseCache = ResponseCache.get();
+    // Whether route filters are executed against the in-memory snapshot of the route catalog instead of the database
+    private static final boolean inMemoryRouteFilters = Boolean.parseBoolean(System.getenv("IN_MEMORY_ROUTE_FILTERS"));
 
     private static final String THIS_RESOURCE = "/rutas"; // This resource on the REST API
+    private static final long FAN_OUT_DEADLINE = 5000; // Time concurrent lookups have to complete, in milliseconds
+    private static final long RESPONSE_CACHE_TTL = 30 * 1000; // Time GET responses remain cached, in milliseconds
+    private static final int MAX_ROUTES_BY_IDS = 200; // Maximum number of routes that can be requested by ID at once
+    private static final String SUGGESTIONS_RESOURCE = "/sugerencias"; // Typeahead suggestions on the REST API
+    private static final int DEFAULT_SUGGESTIONS = 8; // Suggestions returned when no limit is requested
+    private static final int MAX_SUGGESTIONS = 20; // Maximum number of suggestions that can be requested at once
+    private static final int DEFAULT_ROUTE_CHANGES = 200; // Route changes returned when no limit is requested
+    private static final int MAX_ROUTE_CHANGES = 1000; // Maximum number of route changes that can be requested at once
+    private static final String CHANGE_TOKEN_PREFIX = "cambios:"; // Encoded along with the sequence in change tokens
+    // Tables routes are computed from. Their data versions make up the ETags of the route responses
+    private static final String[] ROUTE_TABLES = {DataVersion.ROUTES, DataVersion.KUDO_ENTRIES,
+            DataVersion.ROUTE_CATEGORIES, DataVersion.ROUTE_TO_CATEGORIES_MAPPINGS};
+    // Filters can also look up users
+    private static final String[] FILTERED_ROUTE_TABLES = {DataVersion.ROUTES, DataVersion.KUDO_ENTRIES,
+            DataVersion.ROUTE_CATEGORIES, DataVersion.ROUTE_TO_CATEGORIES_MAPPINGS, DataVersion.USERS};
 
     static {
         // On cold boot set up and create a db connection
@@ -49,9 +108,12 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
                 System.getenv("DB_SCHEMA"));
 
         // Initialize DAOs
-        routeDAO = daoAbstractFactory.impl(DAOImplJDBC.class).forModel(Route.class);
-        userDAO = daoAbstractFactory.impl(DAOImplJDBC.class).forModel(User.class);
-        kudoEntryDAO = daoAbstractFactory.impl(DAOImplJDBC.class).forModel(KudoEntry.class);
+        routeDAO = daoAbstractFactory.impl(DAOImplCached.class).forModel(Route.class);
+        userDAO = daoAbstractFactory.impl(DAOImplCached.class).forModel(User.class);
+        kudoEntryDAO = daoAbstractFactory.impl(DAOImplCached.class).forModel(KudoEntry.class);
+        routeChangeDAO = daoAbstractFactory.impl(DAOImplJDBC.class).forModel(RouteChange.class);
+        uncachedRouteDAO = daoAbstractFactory.impl(DAOImplJDBC.class).forModel(Route.class);
+        uncachedKudoEntryDAO = daoAbstractFactory.impl(DAOImplJDBC.class).forModel(KudoEntry.class);
     }
 
     @Override
@@ -65,22 +127,53 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
         // Requested GET /rutas/{idRuta}
         if (resource.equals(THIS_RESOURCE + "/{proxy+}") && resourceProxyValue.matches("[0-9]+") &&
                 event.getHttpMethod().equals("GET")) {
-            return getRouteById(event, context).addCORS();
+            return responseCache.serve(event, false, RESPONSE_CACHE_TTL,
+                    () -> getRouteById(event, context), ROUTE_TABLES).addCORS();
         }
         // Requested GET /rutas/filtro?{query}
         else if (resource.equals(THIS_RESOURCE + "/{proxy+}") && resourceProxyValue.equals("filtro")
                 && event.getHttpMethod().equals("GET")) {
-            return executeRouteFilter(event, context).addCORS();
+            boolean attachMyKudo = event.getQueryStringParameters() != null &&
+                    "true".equals(event.getQueryStringParameters().get("conMiKudo"));
+            boolean explainPlan = event.getQueryStringParameters() != null &&
+                    "true".equals(event.getQueryStringParameters().get("explicar"));
+
+            // The explanation of the plan reports this very execution, so it's never cached nor revalidated
+            if (explainPlan)
+                return ContentEncoding.compress(event, executeRouteFilter(event, context).negotiateFormat(event))
+                        .addCORS();
+
+            return responseCache.serve(event, attachMyKudo, RESPONSE_CACHE_TTL,
+                    () -> executeRouteFilter(event, context), FILTERED_ROUTE_TABLES).addCORS();
         }
         // Requested GET /rutas/estadisticas?e={topRutasSemanal|topRutasMensual}
         else if (resource.equals(THIS_RESOURCE + "/{proxy+}") && resourceProxyValue.equals("estadisticas")
                 && event.getHttpMethod().equals("GET")) {
-            return routeStatisticsQueryHandler(event, context).addCORS();
+            return responseCache.serve(event, false, RESPONSE_CACHE_TTL,
+                    () -> routeStatisticsQueryHandler(event, context), ROUTE_TABLES).addCORS();
+        }
+        // Requested GET /rutas/cambios?{desde}&{limite}
+        else if (resource.equals(THIS_RESOURCE + "/{proxy+}") && resourceProxyValue.equals("cambios")
+                && event.getHttpMethod().equals("GET")) {
+            return ContentEncoding.compress(event, routeChangesHandler(event, context).negotiateFormat(event))
+                    .addCORS();
         }
         // Requested GET /rutas/{idRuta}/similares
         else if (resource.equals(THIS_RESOURCE + "/{proxy+}") && resourceProxyValue.matches("[0-9]+/similares")
                 && event.getHttpMethod().equals("GET")) {
-            return relatedRoutesHandler(event, context).addCORS();
+            return ContentEncoding.compress(event, relatedRoutesHandler(event, context).negotiateFormat(event))
+                    .addCORS();
+        }
+        // Requested GET /rutas/{idRuta}/detalle
+        else if (resource.equals(THIS_RESOURCE + "/{proxy+}") && resourceProxyValue.matches("[0-9]+/detalle")
+                && event.getHttpMethod().equals("GET")) {
+            return ContentEncoding.compress(event, routeDetailHandler(event, context).negotiateFormat(event))
+                    .addCORS();
+        }
+        // Requested GET /rutas?ids={idRuta,...}
+        else if (resource.equals(THIS_RESOURCE) && event.getHttpMethod().equals("GET")) {
+            return ContentEncoding.compress(event, getRoutesByIds(event, context).negotiateFormat(event))
+                    .addCORS();
         }
         // Requested POST /rutas
         else if (resource.equals(THIS_RESOURCE) && event.getHttpMethod().equals("POST") && !event.getBody().isEmpty()) {
@@ -104,7 +197,12 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
         // Requested DELETE /rutas/{idRuta}
         else if (resource.equals(THIS_RESOURCE + "/{proxy+}") && resourceProxyValue.matches("[0-9]+")
                 && event.getHttpMethod().equals("DELETE")) {
-            return saveRoute(event, context).addCORS();
+            return deleteRoute(event, context).addCORS();
+        }
+        // Requested GET /sugerencias?prefijo={prefijo}[&tipo={todos|rutas|usuarios}][&limite={limite}]
+        // Served here, where the route catalog snapshot and the route writes to keep the suggestions up to date are
+        else if (resource.equals(SUGGESTIONS_RESOURCE) && event.getHttpMethod().equals("GET")) {
+            return suggestionsHandler(event, context).negotiateFormat(event).addCORS();
         }
         // Unkonw requested resource
         else {
@@ -126,6 +224,12 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
         else
             return new APIGatewayProxyResponse<>(BAD_REQUEST, new APIErrorBody("ID de ruta inválido"));
 
+        // Check if the client already has the current version of the route
+
+        String entityTag = EntityTags.of(null, ROUTE_TABLES);
+        if (EntityTags.isMatchedBy(event, entityTag))
+            return new APIGatewayProxyResponse<>(NOT_MODIFIED).addETag(entityTag);
+
         Route requestedRoute = routeDAO.getById(routeId); // Try retrieving the requested route
 
         // Check that the route could be retrieved
@@ -133,7 +237,46 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
         if (requestedRoute == null)
             return new APIGatewayProxyResponse<>(NOT_FOUND, new APIErrorBody("No se encuentra la ruta solicitada"));
 
-        return new APIGatewayProxyResponse<>(OK, requestedRoute);
+        return new APIGatewayProxyResponse<>(OK, requestedRoute).addETag(entityTag);
+    }
+
+    // GET /rutas?ids={idRuta,...}
+    private APIGatewayProxyResponse<?> getRoutesByIds(APIGatewayProxyRequestEvent event, Context context) {
+
+        String routeIdsSource = event.getQueryStringParameters() != null ?
+                event.getQueryStringParameters().get("ids") : null;
+
+        // Validate the list of route IDs
+
+        if (routeIdsSource == null || !routeIdsSource.matches("\\s*[0-9]{1,18}\\s*(,\\s*[0-9]{1,18}\\s*)*"))
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (ids) no es una lista de IDs de ruta separados por comas"));
+
+        List<Long> routeIds = new ArrayList<>();
+        for (String routeIdSource : routeIdsSource.split(","))
+            routeIds.add(Long.parseLong(routeIdSource.trim()));
+
+        if (routeIds.size() > MAX_ROUTES_BY_IDS)
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("No se pueden solicitar más de " + MAX_ROUTES_BY_IDS + " rutas a la vez"));
+
+        // Validate the requested fields
+
+        Set<RouteField> fields;
+        try {
+            fields = RouteField.parseFields(event.getQueryStringParameters().get("campos"));
+        } catch (IllegalArgumentException e) {
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (campos) tiene un valor inválido"));
+        }
+
+        List<Route> routes = loadRoutes(routeIds);
+
+        if (routes == null)
+            return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                    new APIErrorBody("Ocurrió un error al recuperar las rutas solicitadas"));
+
+        return new APIGatewayProxyResponse<>(OK, RouteField.project(routes, fields));
     }
 
     // GET /rutas/filtro?{query}
@@ -141,6 +284,7 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
 
         String searchText = event.getQueryStringParameters().get("buscarTexto");
         String routeKudosOrdering = event.getQueryStringParameters().getOrDefault("ordenarPorKudos", "no-ordenar");
+        String sortSpecSource = event.getQueryStringParameters().get("ordenarPor");
         String minimumKudosSource = event.getQueryStringParameters().get("kudosMinimos");
         String hideBlockedRoutesSource = event.getQueryStringParameters().getOrDefault("ocultarRutasBloq", "false");
         String showOnlyMyRoutes = event.getQueryStringParameters().get("mostrarMisrutas");
@@ -148,6 +292,18 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
         String filterByUsername = event.getQueryStringParameters().get("filtrarUsuario");
         String minDistanceSource = event.getQueryStringParameters().getOrDefault("distanciaMinima", "-1");
         String maxDistanceSource = event.getQueryStringParameters().getOrDefault("distanciaMaxima", "-1");
+        String minDurationSource = event.getQueryStringParameters().getOrDefault("duracionMinima", "-1");
+        String maxDurationSource = event.getQueryStringParameters().getOrDefault("duracionMaxima", "-1");
+        String minElevationSource = event.getQueryStringParameters().getOrDefault("elevacionMinima", "-1");
+        String maxElevationSource = event.getQueryStringParameters().getOrDefault("elevacionMaxima", "-1");
+        String minGradeSource = event.getQueryStringParameters().getOrDefault("pendienteMinima", "-1");
+        String maxGradeSource = event.getQueryStringParameters().getOrDefault("pendienteMaxima", "-1");
+        String categoriesSource = event.getQueryStringParameters().get("categorias");
+        String attachMyKudoSource = event.getQueryStringParameters().getOrDefault("conMiKudo", "false");
+        String fieldsSource = event.getQueryStringParameters().get("campos");
+        String facetsSource = event.getQueryStringParameters().get("facetas");
+        String kudosWeightSource = event.getQueryStringParameters().getOrDefault("pesoKudos", "0");
+        String explainPlanSource = event.getQueryStringParameters().getOrDefault("explicar", "false");
 
         // Validate route order based on kudos
 
@@ -210,55 +366,357 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
                         new APIErrorBody("Parámetro (distanciaMaxima) tiene un valor inválido"));
         }
 
-        // If execution reaches this point the query is valid --> Apply all the suitable filters
-
-        SQLRouteFilterBuilder sqlRouteFilterBuilder = new SQLRouteFilterBuilder();
+        // Validate route duration, elevation and average grade ranges
 
-        if (searchText != null && !searchText.trim().isEmpty()) {
+        int minDuration = parseRangeLimit(minDurationSource);
+        if (minDuration == Integer.MIN_VALUE)
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (duracionMinima) tiene un valor inválido"));
+        int maxDuration = parseRangeLimit(maxDurationSource);
+        if (maxDuration == Integer.MIN_VALUE)
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (duracionMaxima) tiene un valor inválido"));
+        int minElevation = parseRangeLimit(minElevationSource);
+        if (minElevation == Integer.MIN_VALUE)
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (elevacionMinima) tiene un valor inválido"));
+        int maxElevation = parseRangeLimit(maxElevationSource);
+        if (maxElevation == Integer.MIN_VALUE)
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (elevacionMaxima) tiene un valor inválido"));
 
-            // Check if we're dealing with a list of keywords or a literal sentence to match
+        if (!minGradeSource.matches("-1|[0-9]{1,4}(\\.[0-9]{1,2})?"))
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (pendienteMinima) tiene un valor inválido"));
+        if (!maxGradeSource.matches("-1|[0-9]{1,4}(\\.[0-9]{1,2})?"))
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (pendienteMaxima) tiene un valor inválido"));
+        double minGrade = Double.parseDouble(minGradeSource);
+        double maxGrade = Double.parseDouble(maxGradeSource);
 
-            if (searchText.contains(";")) { // Is a list of keywords
-                List<String> keywords = Arrays.stream(searchText.split(";"))
-                        .map(keyword -> keyword = keyword.trim())
-                        .collect(Collectors.toList());
+        // Validate route categories expression
 
-                sqlRouteFilterBuilder.titleOrDescriptionContains(keywords);
-            } else { // Is a literal sentence
-                sqlRouteFilterBuilder.titleOrDescriptionLiterallyContains(searchText);
+        CategoryExpression categoryExpression = null;
+        if (categoriesSource != null && !categoriesSource.trim().isEmpty()) {
+            try {
+                categoryExpression = CategoryExpression.parse(categoriesSource);
+            } catch (IllegalArgumentException e) {
+                return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                        new APIErrorBody("Parámetro (categorias) tiene un valor inválido"));
             }
         }
-        if (!routeKudosOrdering.matches("no-ordenar"))
-            sqlRouteFilterBuilder.orderByKudos(routeKudosOrdering.matches("descendentes"));
+
+        // Validate the sort keys. Kudos break the ties, in the requested kudos order or else the most kudos first
+
+        SortSpec sortSpec;
+        try {
+            sortSpec = SortSpec.parse(sortSpecSource);
+        } catch (IllegalArgumentException e) {
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (ordenarPor) tiene un valor inválido"));
+        }
+        if (sortSpec != null)
+            sortSpec = sortSpec.thenBy(SortSpec.Key.KUDOS, !routeKudosOrdering.equals("ascendentes"));
+
+        // Validate the weight of the kudos when ranking the routes found by a text search
+
+        if (!kudosWeightSource.matches("0(\\.[0-9]+)?|1(\\.0+)?"))
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (pesoKudos) tiene un valor inválido"));
+        double kudosWeight = Double.parseDouble(kudosWeightSource);
+
+        // Validate the requested fields
+
+        Set<RouteField> fields;
+        try {
+            fields = RouteField.parseFields(fieldsSource);
+        } catch (IllegalArgumentException e) {
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (campos) tiene un valor inválido"));
+        }
+
+        // Validate the requested facets
+
+        Set<RouteFacet> facets;
+        try {
+            facets = RouteFacet.parseFacets(facetsSource);
+        } catch (IllegalArgumentException e) {
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (facetas) tiene un valor inválido"));
+        }
+
+        // Validate the request to explain the execution plan of the filter
+
+        if (!explainPlanSource.matches("true|false"))
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (explicar) tiene un valor inválido"));
+        boolean explainPlan = Boolean.parseBoolean(explainPlanSource);
+
+        // Validate the request to attach the kudo the logged user gave to each route. It requires a logged user
+
+        String cognitoUser = loggedUser(event);
+        if (!attachMyKudoSource.matches("true|false"))
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (conMiKudo) tiene un valor inválido"));
+        if (Boolean.parseBoolean(attachMyKudoSource) && cognitoUser == null)
+            return new APIGatewayProxyResponse<>(UNAUTHORIZED,
+                    new APIErrorBody("Parámetro (conMiKudo) requiere un usuario autenticado"));
+
+        // Check if the client already has the current result of the filter. It depends on the logged user if the kudos
+        // of the user are attached. The explanation of the plan reports this very execution, so it has no entity tag.
+        // The data versions are read once, for both the entity tag and the filter result cache
+
+        Map<String, Long> versions = explainPlan ? null : EntityTags.currentVersions();
+        String entityTag = explainPlan ? null : EntityTags.ofVersions(versions,
+                Boolean.parseBoolean(attachMyKudoSource) ? cognitoUser : null, FILTERED_ROUTE_TABLES);
+        if (!explainPlan && EntityTags.isMatchedBy(event, entityTag))
+            return new APIGatewayProxyResponse<>(NOT_MODIFIED).addETag(entityTag);
+
+        // If execution reaches this point the query is valid --> Look up the filtered user while the filter, the text
+        // index and the kudos of the logged user are set up from memory
+
+        FanOut fanOut = FanOut.withDeadline(FAN_OUT_DEADLINE);
+        FanOut.Branch<UserKudoIndex> kudoIndexBranch = Boolean.parseBoolean(attachMyKudoSource) ?
+                fanOut.fork("kudoIndex", () -> UserKudoIndexManager.get().getIndex(cognitoUser)) : null;
+        FanOut.Branch<PlannedRouteFilterBuilder> routeFilterBuilderBranch =
+                fanOut.fork("routeFilterBuilder", this::newRouteFilterBuilder);
+        FanOut.Branch<RouteTextIndex> textIndexBranch = searchText != null && !searchText.trim().isEmpty() ?
+                fanOut.fork("textIndex", () -> RouteTextIndexManager.get().getIndex()) : null;
+        User filteredUser = filterByUsername != null && !filterByUsername.trim().isEmpty() ?
+                userDAO.getByUsername(filterByUsername.trim()) : null;
+
+        if (!fanOut.join())
+            return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                    new APIErrorBody("Ocurrió un error al preparar el filtro de rutas"));
+
+        // Apply all the suitable filters
+
+        PlannedRouteFilterBuilder routeFilterBuilder = routeFilterBuilderBranch.get();
+
+        // The text is searched through the text index if it's available, otherwise in the title and description
+
+        if (searchText != null && !searchText.trim().isEmpty())
+            routeFilterBuilder.searchText(searchText, textIndexBranch.get());
+        if (sortSpec != null)
+            routeFilterBuilder.orderBy(sortSpec);
+        else if (!routeKudosOrdering.matches("no-ordenar"))
+            routeFilterBuilder.orderByKudos(routeKudosOrdering.matches("descendentes"));
         if (minimumKudosSource != null)
-            sqlRouteFilterBuilder.minimumKudos(minimumKudos);
+            routeFilterBuilder.minimumKudos(minimumKudos);
         if (hideBlockedRoutes)
-            sqlRouteFilterBuilder.hideBlockedRoutes();
+            routeFilterBuilder.hideBlockedRoutes();
         if (showOnlyMyRoutes != null && !showOnlyMyRoutes.trim().isEmpty())
-            sqlRouteFilterBuilder.byUser(showOnlyMyRoutes);
+            routeFilterBuilder.byUser(showOnlyMyRoutes);
         switch (skillLevel) {
             case 1:
-                sqlRouteFilterBuilder.ofSkillLevel(RouteSkillLevel.EASY);
+                routeFilterBuilder.ofSkillLevel(RouteSkillLevel.EASY);
                 break;
             case 2:
-                sqlRouteFilterBuilder.ofSkillLevel(RouteSkillLevel.MEDIUM);
+                routeFilterBuilder.ofSkillLevel(RouteSkillLevel.MEDIUM);
                 break;
             case 3:
-                sqlRouteFilterBuilder.ofSkillLevel(RouteSkillLevel.HARD);
+                routeFilterBuilder.ofSkillLevel(RouteSkillLevel.HARD);
                 break;
         }
-        if (filterByUsername != null && !filterByUsername.trim().isEmpty()) {
-            User filteredUserModel = userDAO.getByUsername(filterByUsername.trim());
-            if (filteredUserModel != null)
-                sqlRouteFilterBuilder.byUser(filteredUserModel.getUsername());
+        if (filteredUser != null)
+            routeFilterBuilder.byUser(filteredUser.getUsername());
+        routeFilterBuilder.ofDistanceRange(minDistance, maxDistance);
+        routeFilterBuilder.ofDurationRange(minDuration, maxDuration);
+        routeFilterBuilder.ofElevationRange(minElevation, maxElevation);
+        routeFilterBuilder.ofGradeRange(minGrade, maxGrade);
+        routeFilterBuilder.ofCategoryExpression(categoryExpression);
+        routeFilterBuilder.project(withFacetFields(fields, facets));
+
+        // Execute the filter and return the filtered routes, along with the kudo the logged user gave to each if requested
+
+        PlannedRouteFilter routeFilter = routeFilterBuilder.buildFilter();
+
+        if (routeFilter.getPlan().isRejected())
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (buscarTexto) tiene demasiadas palabras clave"));
+
+        List<Route> filteredRoutes = executeFilter(routeFilter, versions);
+        Map<Long, Double> textHits = routeFilter.getPlan().getTextHits();
+
+        // Routes found by text are ordered by relevance, unless they were ordered otherwise
+
+        if (textHits != null && sortSpec == null && routeKudosOrdering.equals("no-ordenar"))
+            RouteTextIndex.rankByRelevance(filteredRoutes, textHits, kudosWeight);
+
+        if (kudoIndexBranch != null) {
+            UserKudoIndex kudoIndex = kudoIndexBranch.get();
+
+            if (kudoIndex == null)
+                return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                        new APIErrorBody("Ocurrió un error al recuperar las entradas kudo del usuario"));
+
+            filteredRoutes.forEach(route -> route.setMyKudo(kudoIndex.modifierOf(route.getId())));
         }
-        sqlRouteFilterBuilder.ofDistanceRange(minDistance, maxDistance);
 
-        // Execute the filter and return the filtered routes
+        // Count the facets, if requested, over the same routes
+
+        if (explainPlan)
+            return new APIGatewayProxyResponse<>(OK, new FilteredRoutesBody(RouteField.project(filteredRoutes, fields),
+                    facets != null ? RouteFacet.count(filteredRoutes, facets) : null, routeFilter.getPlan().explain()));
+
+        if (facets != null)
+            return new APIGatewayProxyResponse<>(OK, new FilteredRoutesBody(RouteField.project(filteredRoutes, fields),
+                    RouteFacet.count(filteredRoutes, facets), null)).addETag(entityTag);
+
+        return new APIGatewayProxyResponse<>(OK, RouteField.project(filteredRoutes, fields)).addETag(entityTag);
+    }
+
+    // GET /rutas/cambios?{desde}&{limite}
+    private APIGatewayProxyResponse<?> routeChangesHandler(APIGatewayProxyRequestEvent event, Context context) {
+
+        Map<String, String> httpQuery = event.getQueryStringParameters() != null ?
+                event.getQueryStringParameters() : Collections.emptyMap();
+        String tokenSource = httpQuery.get("desde");
+        String limitSource = httpQuery.getOrDefault("limite", String.valueOf(DEFAULT_ROUTE_CHANGES));
+
+        // Validate query params. Without a token the changes are retrieved from the beginning of the log, which holds
+        // every route
+
+        long sequence = tokenSource != null ? decodeChangeToken(tokenSource) : 0;
+        if (sequence < 0)
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (desde) tiene un valor inválido"));
+
+        if (!limitSource.matches("[0-9]{1,4}") || Integer.parseInt(limitSource) < 1 ||
+                Integer.parseInt(limitSource) > MAX_ROUTE_CHANGES)
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (limite) debe ser un número entre 1 y " + MAX_ROUTE_CHANGES));
+        int limit = Integer.parseInt(limitSource);
+
+        // Changes and routes are read at READ COMMITTED, so uncommitted writes that could still roll back are never
+        // handed out
 
-        RouteDAOImplJDBC jdbcRouteDAO = (RouteDAOImplJDBC) routeDAO;
+        APIGatewayProxyResponse<?> response = jdbcManager.readCommitted(() -> readRouteChanges(sequence, limit));
 
-        return new APIGatewayProxyResponse<>(OK, jdbcRouteDAO.executeFilter(sqlRouteFilterBuilder.buildFilter()));
+        return response != null ? response : new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                new APIErrorBody("Ocurrió un error al recuperar los cambios de las rutas"));
+    }
+
+    /**
+     * Read the route changes after a watermark, along with the current state of their routes
+     *
+     * @param sequence Sequence number of the watermark
+     * @param limit    Maximum number of changes to return
+     * @return The response with the changes and the token of the new watermark
+     */
+    private APIGatewayProxyResponse<?> readRouteChanges(long sequence, int limit) {
+
+        // Only changes up to the latest committed sequence are read. Changes still in flight come after it, so the
+        // token never skips them
+
+        long committedSequence = routeChangeDAO.getCommittedSequence();
+
+        if (committedSequence < 0)
+            return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                    new APIErrorBody("Ocurrió un error al recuperar los cambios de las rutas"));
+
+        // Retrieve one change more than requested, to know if there are more changes
+
+        List<RouteChange> routeChanges = routeChangeDAO.getAfter(sequence, committedSequence, limit + 1);
+
+        if (routeChanges == null)
+            return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                    new APIErrorBody("Ocurrió un error al recuperar los cambios de las rutas"));
+
+        boolean hasMore = routeChanges.size() > limit;
+        if (hasMore) routeChanges = routeChanges.subList(0, limit);
+
+        // Load the current state of the routes that weren't deleted
+
+        List<Long> routeIds = routeChanges.stream()
+                .filter(routeChange -> !routeChange.getType().equals(RouteChange.DELETED))
+                .map(RouteChange::getRoute)
+                .collect(Collectors.toList());
+        List<Route> routes = routeIds.isEmpty() ? new ArrayList<>() : uncachedRouteDAO.getByIds(routeIds);
+
+        if (routes == null)
+            return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                    new APIErrorBody("Ocurrió un error al recuperar las rutas modificadas"));
+
+        Map<Long, Route> routesById = routes.stream().collect(Collectors.toMap(Route::getId, route -> route));
+        List<RouteChangesBody.Change> changes = new ArrayList<>();
+
+        for (RouteChange routeChange : routeChanges) {
+            Route route = routesById.get(routeChange.getRoute());
+
+            if (routeChange.getType().equals(RouteChange.DELETED)) {
+                changes.add(new RouteChangesBody.Change(routeChange.getRoute(), routeChange.getType(), null, null));
+            } else if (route == null) {
+                continue; // Deleted meanwhile, its tombstone is further down the log
+            } else if (routeChange.getKind().equals(RouteChange.KIND_KUDOS)) {
+                changes.add(new RouteChangesBody.Change(routeChange.getRoute(), routeChange.getType(), null,
+                        route.getKudos()));
+            } else {
+                changes.add(new RouteChangesBody.Change(routeChange.getRoute(), routeChange.getType(), route, null));
+            }
+        }
+
+        // The new watermark is the last change retrieved, or the latest committed sequence once every change up to it
+        // has been retrieved
+
+        long watermark = hasMore ? routeChanges.get(routeChanges.size() - 1).getSequence() :
+                Math.max(sequence, committedSequence);
+
+        return new APIGatewayProxyResponse<>(OK, new RouteChangesBody(changes, encodeChangeToken(watermark), hasMore));
+    }
+
+    /**
+     * Encode a sequence number of the route change log as an opaque token for the clients
+     *
+     * @param sequence Sequence number
+     * @return The token
+     */
+    private static String encodeChangeToken(long sequence) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((CHANGE_TOKEN_PREFIX + sequence).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a token created by {@link #encodeChangeToken(long)}
+     *
+     * @param token Token
+     * @return The sequence number of the route change log, or -1 if the token isn't valid
+     */
+    private static long decodeChangeToken(String token) {
+        try {
+            String decodedToken = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+
+            if (!decodedToken.matches(Pattern.quote(CHANGE_TOKEN_PREFIX) + "[0-9]{1,18}")) return -1;
+
+            return Long.parseLong(decodedToken.substring(CHANGE_TOKEN_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parse the limit of a range query param, which is either a positive integer or -1 to leave that end unbounded
+     *
+     * @param limitSource Value of the query param
+     * @return The limit, or {@link Integer#MIN_VALUE} if it isn't valid
+     */
+    private static int parseRangeLimit(String limitSource) {
+        return limitSource.matches("-1|[0-9]{1,9}") ? Integer.parseInt(limitSource) : Integer.MIN_VALUE;
+    }
+
+    /**
+     * @param fields Fields requested by the client, or null if every field was requested
+     * @param facets Facets requested by the client, or null if none was requested
+     * @return The fields to read so the requested fields can be returned and the requested facets counted
+     */
+    private static Set<RouteField> withFacetFields(Set<RouteField> fields, Set<RouteFacet> facets) {
+        if (fields == null || facets == null) return fields;
+
+        Set<RouteField> queriedFields = EnumSet.copyOf(fields);
+        for (RouteFacet facet : facets)
+            queriedFields.add(facet.getField());
+
+        return queriedFields;
     }
 
     // GET /rutas/estadisticas?e={topRutasSemanal|topRutasMensual}
@@ -272,6 +730,12 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
             return new APIGatewayProxyResponse<>(BAD_REQUEST,
                     new APIErrorBody("No se ha solicitado ninguna estadística de ruta"));
 
+        // Check if the client already has the current version of the stat. Route stats depend on the current date too
+
+        String entityTag = EntityTags.of(requestedStat + "@" + LocalDate.now(), ROUTE_TABLES);
+        if (EntityTags.isMatchedBy(event, entityTag))
+            return new APIGatewayProxyResponse<>(NOT_MODIFIED).addETag(entityTag);
+
         // Get the route stat being requested
 
         if (requestedStat.equals("topRutasSemanal")) { // Serve the top 5 weekly routes
@@ -290,7 +754,7 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
             top5RoutesOfTheWeek
                     .forEach(route -> route.changeDateFormat(new SimpleDateFormat("dd MMM - HH:mm")));
 
-            return new APIGatewayProxyResponse<>(OK, top5RoutesOfTheWeek);
+            return new APIGatewayProxyResponse<>(OK, top5RoutesOfTheWeek).addETag(entityTag);
 
         } else if (requestedStat.equals("topRutasMensual")) { // Serve the top 5 monthly routes
 
@@ -308,7 +772,7 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
             top5RoutesOfTheMonth
                     .forEach(route -> route.changeDateFormat(new SimpleDateFormat("dd MMM - HH:mm")));
 
-            return new APIGatewayProxyResponse<>(OK, top5RoutesOfTheMonth);
+            return new APIGatewayProxyResponse<>(OK, top5RoutesOfTheMonth).addETag(entityTag);
 
         } else { // Other unhandled route stat
             return new APIGatewayProxyResponse<>(BAD_REQUEST, "No se reconoce el parámetro (e)");
@@ -318,9 +782,6 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
     // GET /rutas/{idRuta}/similares
     private APIGatewayProxyResponse<?> relatedRoutesHandler(APIGatewayProxyRequestEvent event, Context context) {
 
-        SQLRouteFilterBuilder sqlRouteFilterBuilder = new SQLRouteFilterBuilder();
-        JDBCRouteDAO jdbcRouteDAO = (JDBCRouteDAO) routeDAO;
-
         Long routeId = Long.parseLong(event.getPathParameters().get("proxy").split("/")[0]);
         String similarity = event.getQueryStringParameters().get("por");
         String limitSource = event.getQueryStringParameters().get("limite");
@@ -342,10 +803,29 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
                     new APIErrorBody("El parámetro (limite) no es un número"));
         }
 
-        // Get the requested route and check that it exists
+        // Validate the requested fields
 
+        Set<RouteField> fields;
+        try {
+            fields = RouteField.parseFields(event.getQueryStringParameters().get("campos"));
+        } catch (IllegalArgumentException e) {
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (campos) tiene un valor inválido"));
+        }
+
+        // Get the requested route while the filter is set up, and check that it exists
+
+        FanOut fanOut = FanOut.withDeadline(FAN_OUT_DEADLINE);
+        FanOut.Branch<PlannedRouteFilterBuilder> routeFilterBuilderBranch =
+                fanOut.fork("routeFilterBuilder", this::newRouteFilterBuilder);
         Route requestedRoute = routeDAO.getById(routeId);
 
+        if (!fanOut.join())
+            return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                    new APIErrorBody("Ocurrió un error al recuperar la ruta"));
+
+        RouteFilterBuilder<?> routeFilterBuilder = routeFilterBuilderBranch.get().project(fields);
+
         if (requestedRoute == null)
             return new APIGatewayProxyResponse<>(NOT_FOUND, new APIErrorBody("No se encuentra la ruta"));
 
@@ -364,7 +844,7 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
 
                 // 3 Related routes by distance within a range given a distance delta (with more kudos)
 
-                sqlRouteFilterBuilder
+                routeFilterBuilder
                         .ofDistanceDelta(requestedRoute.getDistance(), distanceDelta)
                         .orderByKudos(true)
                         .exclude(routeId); // Exclude self
@@ -372,19 +852,20 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
                 // Validate route limit query parameter, it should be a positive integer. 0 means it's not set
 
                 if (limit > 0)
-                    sqlRouteFilterBuilder.limit(limit);
+                    routeFilterBuilder.limit(limit);
                 else if (limit < 0)
                     return new APIGatewayProxyResponse<>(BAD_REQUEST,
                             new APIErrorBody("El límite no puede ser un número negativo"));
 
 
-                return new APIGatewayProxyResponse<>(OK, jdbcRouteDAO.executeFilter(sqlRouteFilterBuilder.buildFilter()));
+                return new APIGatewayProxyResponse<>(OK,
+                        RouteField.project(executeFilter(routeFilterBuilder.buildFilter()), fields));
 
             case "dificultad":  // Similar routes by same skill level
 
                 // 3 Related routes with the same skill level (with more kudos)
 
-                sqlRouteFilterBuilder
+                routeFilterBuilder
                         .ofSkillLevel(RouteSkillLevel.parseSkillLevelFromString(requestedRoute.getSkillLevel()))
                         .orderByKudos(true)
                         .exclude(routeId); // Exclude self
@@ -392,18 +873,19 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
                 // Validate route limit query parameter, it should be a positive integer. 0 means it's not set
 
                 if (limit > 0)
-                    sqlRouteFilterBuilder.limit(limit);
+                    routeFilterBuilder.limit(limit);
                 else if (limit < 0)
                     return new APIGatewayProxyResponse<>(BAD_REQUEST,
                             new APIErrorBody("El límite no puede ser un número negativo"));
 
-                return new APIGatewayProxyResponse<>(OK, jdbcRouteDAO.executeFilter(sqlRouteFilterBuilder.buildFilter()));
+                return new APIGatewayProxyResponse<>(OK,
+                        RouteField.project(executeFilter(routeFilterBuilder.buildFilter()), fields));
 
             case "categorias":  // Similar routes by same set of categories
 
                 // 3 Related routes with shared route categories (with more kudos)
 
-                sqlRouteFilterBuilder
+                routeFilterBuilder
                         .ofCategories(requestedRoute.getCategories().split(Route.CATEGORY_SEPARATOR))
                         .orderByKudos(true)
                         .exclude(routeId); // Exclude self
@@ -411,18 +893,273 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
                 // Validate route limit query parameter, it should be a positive integer. 0 means it's not set
 
                 if (limit > 0)
-                    sqlRouteFilterBuilder.limit(limit);
+                    routeFilterBuilder.limit(limit);
                 else if (limit < 0)
                     return new APIGatewayProxyResponse<>(BAD_REQUEST,
                             new APIErrorBody("El límite no puede ser un número negativo"));
 
-                return new APIGatewayProxyResponse<>(OK, jdbcRouteDAO.executeFilter(sqlRouteFilterBuilder.buildFilter()));
+                return new APIGatewayProxyResponse<>(OK,
+                        RouteField.project(executeFilter(routeFilterBuilder.buildFilter()), fields));
+
+            case "multi":  // Similar routes by the nearest combination of features
+
+                // Related routes with the most similar distance, duration, elevation, skill level and categories
+
+                SimilarityWeights weights;
+                try {
+                    weights = SimilarityWeights.parse(event.getQueryStringParameters().get("pesos"));
+                } catch (IllegalArgumentException e) {
+                    return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                            new APIErrorBody("Parámetro (pesos) tiene un valor inválido"));
+                }
+
+                String kudosTieBreakingSource = event.getQueryStringParameters().getOrDefault("desempateKudos", "false");
+                if (!kudosTieBreakingSource.matches("true|false"))
+                    return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                            new APIErrorBody("Parámetro (desempateKudos) tiene un valor inválido"));
+
+                RouteSimilarityIndex similarityIndex = RouteSimilarityManager.get().getIndex();
+                if (similarityIndex == null)
+                    return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                            new APIErrorBody("El índice de similitud de rutas no está disponible"));
+
+                // Route limit query parameter. 0 means it's not set, so the 3 most similar routes are returned
+
+                List<Long> similarRouteIds = similarityIndex.nearest(routeId, weights, limit > 0 ? limit : 3,
+                        Boolean.parseBoolean(kudosTieBreakingSource));
+
+                List<Route> similarRoutes = loadRoutes(similarRouteIds);
+
+                if (similarRoutes == null)
+                    return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                            new APIErrorBody("Ocurrió un error al recuperar las rutas similares"));
+
+                return new APIGatewayProxyResponse<>(OK, RouteField.project(similarRoutes, fields));
 
             default:  // Unhandled similarities
                 return new APIGatewayProxyResponse<>(BAD_REQUEST, new APIErrorBody("Característica de similitud inválida"));
         }
     }
 
+    // GET /rutas/{idRuta}/detalle?{limiteSimilares}&{pesos}
+    private APIGatewayProxyResponse<?> routeDetailHandler(APIGatewayProxyRequestEvent event, Context context) {
+
+        long routeId = Long.parseLong(event.getPathParameters().get("proxy").split("/")[0]);
+        Map<String, String> queryParameters = event.getQueryStringParameters() != null ?
+                event.getQueryStringParameters() : Collections.emptyMap();
+        String similarRoutesLimitSource = queryParameters.getOrDefault("limiteSimilares", "3");
+        String cognitoUser = loggedUser(event);
+
+        // Validate the route ID
+
+        if (!Route.validateID(routeId))
+            return new APIGatewayProxyResponse<>(BAD_REQUEST, new APIErrorBody("ID de ruta inválido"));
+
+        // Validate the limit of similar routes. 0 means similar routes aren't requested
+
+        if (!similarRoutesLimitSource.matches("[0-9]+"))
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("El parámetro (limiteSimilares) no es un número"));
+
+        int similarRoutesLimit = Integer.parseInt(similarRoutesLimitSource);
+
+        // Validate the weights of the similarity features
+
+        SimilarityWeights weights;
+        try {
+            weights = SimilarityWeights.parse(queryParameters.get("pesos"));
+        } catch (IllegalArgumentException e) {
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (pesos) tiene un valor inválido"));
+        }
+
+        // Look up the route and the kudo entry of the logged user while the similar routes are found in memory
+
+        FanOut fanOut = FanOut.withDeadline(FAN_OUT_DEADLINE);
+        FanOut.Branch<List<Route>> similarRoutesBranch = similarRoutesLimit > 0 ?
+                fanOut.fork("similarRoutes", () -> {
+                    RouteSimilarityIndex similarityIndex = RouteSimilarityManager.get().getIndex();
+
+                    return similarityIndex != null ?
+                            loadRoutes(similarityIndex.nearest(routeId, weights, similarRoutesLimit, true)) :
+                            new ArrayList<>();
+                }) : null;
+        Route requestedRoute = routeDAO.getById(routeId);
+        KudoEntry kudoEntry = cognitoUser != null ? kudoEntryDAO.getByPKey(cognitoUser, routeId) : null;
+
+        if (!fanOut.join())
+            return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                    new APIErrorBody("Ocurrió un error al recuperar el detalle de la ruta"));
+
+        // Check that the route exists
+
+        if (requestedRoute == null)
+            return new APIGatewayProxyResponse<>(NOT_FOUND, new APIErrorBody("No se encuentra la ruta solicitada"));
+
+        return new APIGatewayProxyResponse<>(OK, new RouteDetailBody(requestedRoute, kudoEntry,
+                similarRoutesBranch != null ? similarRoutesBranch.get() : new ArrayList<>()));
+    }
+
+    /**
+     * @param event API Gateway event
+     * @return The username of the logged user, or null if the request isn't authenticated
+     */
+    private String loggedUser(APIGatewayProxyRequestEvent event) {
+        if (event.getRequestContext() == null || event.getRequestContext().getAuthorizer() == null)
+            return null;
+
+        Map<String, String> claims = (Map<String, String>) event.getRequestContext().getAuthorizer().get("claims");
+
+        return claims != null ? claims.get("cognito:username") : null;
+    }
+
+    /**
+     * @return A builder for the route filters executed by this handler. Filters are planned to run against the route
+     * catalog snapshot or the database, whichever is cheaper. The snapshot is only considered if in-memory route
+     * filters are enabled and it's available, otherwise filters run against the database
+     */
+    private PlannedRouteFilterBuilder newRouteFilterBuilder() {
+        return new PlannedRouteFilterBuilder(inMemoryRouteFilters ? RouteSnapshotManager.get().getSnapshot() : null);
+    }
+
+    /**
+     * Execute a route filter either against the route catalog snapshot or against the database. A planned route filter
+     * falls back to the database if the snapshot isn't available anymore, and records the outcome in its plan. Planned
+     * route filters rejected for being too expensive don't retrieve any route
+     *
+     * @param routeFilter The route filter built by a builder from {@link #newRouteFilterBuilder()}
+     * @return A list with only the routes that satisfy the route filter
+     */
+    private List<Route> executeFilter(RouteFilter<?> routeFilter) {
+        return executeFilter(routeFilter, null);
+    }
+
+    /**
+     * Execute a route filter, reusing the data versions already read for the request to check the filter result cache
+     *
+     * @param routeFilter The route filter built by a builder from {@link #newRouteFilterBuilder()}
+     * @param versions    Data versions read for the request (see {@link EntityTags#currentVersions()}), or null to
+     *                    read them only if the filter runs against the database
+     * @return A list with only the routes that satisfy the route filter
+     */
+    private List<Route> executeFilter(RouteFilter<?> routeFilter, Map<String, Long> versions) {
+        if (routeFilter instanceof PlannedRouteFilter) {
+            PlannedRouteFilter plannedRouteFilter = (PlannedRouteFilter) routeFilter;
+
+            if (plannedRouteFilter.getPlan().isRejected()) return new ArrayList<>();
+
+            long start = System.currentTimeMillis();
+            List<Route> filteredRoutes = null;
+
+            if (plannedRouteFilter.consume() instanceof InMemoryRouteFilter)
+                filteredRoutes = RouteSnapshotManager.get().execute((InMemoryRouteFilter) plannedRouteFilter.consume());
+            if (filteredRoutes == null)
+                filteredRoutes = executeFilter(plannedRouteFilter.getSQLRouteFilter(), versions);
+            plannedRouteFilter.getPlan().recordExecution(filteredRoutes.size(), System.currentTimeMillis() - start);
+
+            return filteredRoutes;
+        }
+
+        if (routeFilter instanceof InMemoryRouteFilter) {
+            List<Route> filteredRoutes = RouteSnapshotManager.get().execute((InMemoryRouteFilter) routeFilter);
+            if (filteredRoutes != null) return filteredRoutes;
+        }
+
+        if (routeFilter instanceof SQLRouteFilter && versions != null)
+            return ((RouteDAOImplJDBC) routeDAO).executeFilter((SQLRouteFilter) routeFilter,
+                    FilterResultCache.get().versionStampOf(versions));
+        if (routeFilter instanceof SQLRouteFilter)
+            return ((RouteDAOImplJDBC) routeDAO).executeFilter((SQLRouteFilter) routeFilter);
+
+        return new ArrayList<>();
+    }
+
+    /**
+     * Keep the in-memory structures of the route catalog up to date after a route is added or modified
+     *
+     * @param routeId ID of the written route
+     */
+    private void routeWritten(long routeId) {
+        responseCache.invalidate(ROUTE_TABLES);
+        RouteSnapshotManager.get().markStale();
+        RouteSimilarityManager.get().routeWritten(routeId, routeDAO::getById);
+        RouteTextIndexManager.get().routeWritten(routeId, routeDAO::getById);
+        SuggestionIndexManager.get().routeWritten(routeId, routeDAO::getById);
+    }
+
+    /**
+     * Load routes by their IDs, from the route catalog snapshot when possible. The routes missing from the snapshot are
+     * loaded from the database in a single batch
+     *
+     * @param routeIds Route IDs
+     * @return The routes in the same order as the first occurrence of their IDs. Routes that couldn't be found are
+     * skipped. Null if the database couldn't be queried
+     */
+    private List<Route> loadRoutes(List<Long> routeIds) {
+        RouteCatalogSnapshot snapshot = RouteSnapshotManager.get().getSnapshot();
+        Map<Long, Route> routesById = new LinkedHashMap<>();
+        List<Long> missingRouteIds = new ArrayList<>();
+
+        for (long routeId : routeIds) {
+            if (routesById.containsKey(routeId)) continue;
+
+            int row = snapshot != null ? snapshot.rowOf(routeId) : -1;
+            routesById.put(routeId, row >= 0 ? snapshot.hydrate(row) : null);
+            if (row < 0) missingRouteIds.add(routeId);
+        }
+
+        if (!missingRouteIds.isEmpty()) {
+            List<Route> storedRoutes = routeDAO.getByIds(missingRouteIds);
+
+            if (storedRoutes == null) return null;
+
+            for (Route storedRoute : storedRoutes)
+                routesById.put(storedRoute.getId(), storedRoute);
+        }
+
+        return routesById.values().stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    // GET /sugerencias?prefijo={prefijo}[&tipo={todos|rutas|usuarios}][&limite={limite}]
+    private APIGatewayProxyResponse<?> suggestionsHandler(APIGatewayProxyRequestEvent event, Context context) {
+
+        Map<String, String> httpQuery = event.getQueryStringParameters() != null ?
+                event.getQueryStringParameters() : Collections.emptyMap();
+        String prefix = httpQuery.get("prefijo");
+        String type = httpQuery.getOrDefault("tipo", "todos");
+        String limitSource = httpQuery.getOrDefault("limite", String.valueOf(DEFAULT_SUGGESTIONS));
+
+        // Validate query params
+
+        if (prefix == null || prefix.trim().isEmpty())
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("El prefijo de las sugerencias no puede estar vacío"));
+
+        if (!type.matches("todos|rutas|usuarios"))
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (tipo) tiene un valor inválido"));
+
+        if (!limitSource.matches("[0-9]{1,3}") || Integer.parseInt(limitSource) < 1 ||
+                Integer.parseInt(limitSource) > MAX_SUGGESTIONS)
+            return new APIGatewayProxyResponse<>(BAD_REQUEST,
+                    new APIErrorBody("Parámetro (limite) debe ser un número entre 1 y " + MAX_SUGGESTIONS));
+
+        // Look the prefix up in the suggestion index
+
+        SuggestionIndex suggestionIndex = SuggestionIndexManager.get().getIndex(userDAO::getAll);
+
+        if (suggestionIndex == null)
+            return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                    new APIErrorBody("El índice de sugerencias no está disponible"));
+
+        List<Suggestion> suggestions = suggestionIndex.suggest(prefix, Integer.parseInt(limitSource),
+                !type.equals("usuarios"), !type.equals("rutas"));
+
+        return new APIGatewayProxyResponse<>(OK, suggestions);
+    }
+
     // POST /rutas
     private APIGatewayProxyResponse<?> addRoute(APIGatewayProxyRequestEvent event, Context context) {
 
@@ -444,13 +1181,15 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
         long newRouteID = routeDAO.add(newRoute)[0];
 
         // New route created. Return code 201 (Created) and set Location header to /rutas/{idNuevaRuta}
-        if (newRouteID != -1)
+        if (newRouteID != -1) {
+            routeWritten(newRouteID);
             return new APIGatewayProxyResponse<>(CREATED)
                     .addHeader("Access-Control-Expose-Headers", "Location")
                     .addHeader("Location", THIS_RESOURCE + "/" + newRouteID);
-        else // An error occurred while creating the new route
+        } else { // An error occurred while creating the new route
             return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
                     new APIErrorBody("Ocurrió un error al crear la ruta proporcionada"));
+        }
     }
 
     // PUT /rutas/{idRuta}/estado?accion={bloquear|desbloquear}
@@ -460,7 +1199,6 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
         String action = event.getQueryStringParameters().get("accion");
         String cognitoUser = ((Map<String, String>) event.getRequestContext().getAuthorizer().get("claims"))
                 .get("cognito:username");
-        boolean validAction = false;
 
         // Validate the route ID
 
@@ -472,50 +1210,28 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
         if (action == null || action.trim().isEmpty() || !action.matches("(des)?bloquear"))
             return new APIGatewayProxyResponse<>(BAD_REQUEST, new APIErrorBody("Acción no proporcionada o inválida"));
 
-        // Check if a route can be retrieved with the requested ID
-
-        Route requestedRoute = routeDAO.getById(routeId);
-        if (requestedRoute != null) {
+        /*
+         * Try executing the requested action. Only the author of the route can block or unblock it, and only if the
+         * route is unblocked or blocked respectively. Both are checked by the update itself
+         */
 
-            // AUTHORISATION FILER. Only the author of the route can block or unblock it
-
-            if (cognitoUser.equals(requestedRoute.getCreatedByUser())) {
-
-                /*
-                 * Check the given action against the current route status. If the route is blocked and the
-                 * action tells to unblock it, or the route is unblocked and the action tells to block it, it
-                 * is considered a valid action.
-                 */
+        MutationOutcome outcome = routeDAO.saveBlockedState(routeId, cognitoUser, action.equals("bloquear"));
 
-                if (action.equals("bloquear") && !requestedRoute.isBlocked()) {
-                    requestedRoute.setBlocked(true);
-                    validAction = true;
-                } else if (action.equals("desbloquear") && requestedRoute.isBlocked()) {
-                    requestedRoute.setBlocked(false);
-                    validAction = true;
-                }
-
-                // Check action validity before committing to the execution of an action
-
-                if (validAction) {
-
-                    boolean success = routeDAO.save(requestedRoute); // Try executing the requested action
-
-                    // Error executing the requested action
-                    if (success)
-                        return new APIGatewayProxyResponse<>(NO_CONTENT); // On valid action return code 204 - No content
-                    else
-                        return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
-                                new APIErrorBody("Ocurrió un error al actualizar el estado de bloqueo de la ruta"));
-                } else {
-                    return new APIGatewayProxyResponse<>(NOT_MODIFIED); // On invalid action return code 304 - Not modified
-                }
-            } else { // Insufficient privileges
+        if (outcome == null)
+            return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                    new APIErrorBody("Ocurrió un error al actualizar el estado de bloqueo de la ruta"));
+
+        switch (outcome) {
+            case UPDATED:
+                routeWritten(routeId);
+                return new APIGatewayProxyResponse<>(NO_CONTENT); // On valid action return code 204 - No content
+            case UNCHANGED:
+                return new APIGatewayProxyResponse<>(NOT_MODIFIED); // On invalid action return code 304 - Not modified
+            case FORBIDDEN: // Insufficient privileges
                 return new APIGatewayProxyResponse<>(UNAUTHORIZED,
                         new APIErrorBody("Este usuario no tiene permiso para modificar el estado de bloqueo de esta ruta"));
-            }
-        } else { // Couldn't find the route at the backend
-            return new APIGatewayProxyResponse<>(NOT_FOUND, new APIErrorBody("No se encuentra la ruta solicitada"));
+            default: // Couldn't find the route at the backend
+                return new APIGatewayProxyResponse<>(NOT_FOUND, new APIErrorBody("No se encuentra la ruta solicitada"));
         }
     }
 
@@ -538,13 +1254,14 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
             return new APIGatewayProxyResponse<>(BAD_REQUEST, new APIErrorBody("Acción no proporcionada o inválida"));
 
         int equivalentKudoModifier = action.equals("dar") ? 1 : -1; // Equivalent kudo modifier for the requested action
+        int newKudoModifier = equivalentKudoModifier; // Modifier of the kudo entry after the update, 0 if removed
 
         // Check if a route can be retrieved with the requested ID
 
         Route requestedRoute = routeDAO.getById(routeId);
         if (requestedRoute != null) {
 
-            KudoEntry matchingKudoEntry = kudoEntryDAO.getByPKey(cognitoUser, routeId);
+            KudoEntry matchingKudoEntry = uncachedKudoEntryDAO.getByPKey(cognitoUser, routeId);
 
             // Check if the user has already given a kudo or not to the route, if not make a new kudo entry
 
@@ -561,6 +1278,7 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
 
                 if (matchingKudoEntry.getModifier() == equivalentKudoModifier) { // 1. and 4.
                     kudoUpdateSuccessful = kudoEntryDAO.deleteByPKey(true, cognitoUser, routeId);
+                    newKudoModifier = 0;
                 } else if (matchingKudoEntry.getModifier() == 1 && equivalentKudoModifier == -1) { // 2.
                     matchingKudoEntry.setModifier(-1);
                     kudoUpdateSuccessful = kudoEntryDAO.save(matchingKudoEntry);
@@ -580,11 +1298,14 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
             }
 
             // Error registering a new kudo entry / updating an existing kudo entry at the backend
-            if (kudoUpdateSuccessful)
+            if (kudoUpdateSuccessful) {
+                routeWritten(routeId);
+                UserKudoIndexManager.get().kudoWritten(cognitoUser, routeId, newKudoModifier);
                 return new APIGatewayProxyResponse<>(NO_CONTENT); // On valid kudo update return code 204 - No content
-            else
+            } else {
                 return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
                         new APIErrorBody("Ocurrió un error al crear o actualizar una entrada kudo"));
+            }
         } else { // Couldn't find the route at the backend
             return new APIGatewayProxyResponse<>(NOT_FOUND, new APIErrorBody("No se encuentra la ruta solicitada"));
         }
@@ -618,32 +1339,25 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
                     new APIErrorBody("La URI solicitada y el ID de la ruta proporcionado no coinciden"));
         }
 
-        Route storedRoute = routeDAO.getById(routeId);
-
-        // Check if the route could be found at the backend
-
-        if (storedRoute != null) {
-
-            // AUTHORISATION FILTER. Only the author of the route can update it
+        // Try updating the requested route. Only the author of the route can update it, which is checked by the
+        // update itself
 
-            if (cognitoUser.equals(storedRoute.getCreatedByUser())) {
+        MutationOutcome outcome = routeDAO.saveByAuthor(uploadedRoute, cognitoUser);
 
-                // Try updating the requested route
-
-                boolean updateSuccessful = routeDAO.save(uploadedRoute);
-
-                // An error occurred while updating the requested route
-                if (updateSuccessful)
-                    return new APIGatewayProxyResponse<>(NO_CONTENT); // Return code 204 - No content
-                else
-                    return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
-                            new APIErrorBody("Ocurrió un error al actualizar los datos de la ruta solicitada"));
-            } else { // Insufficient privileges
+        if (outcome == null)
+            return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                    new APIErrorBody("Ocurrió un error al actualizar los datos de la ruta solicitada"));
+
+        switch (outcome) {
+            case UPDATED:
+            case UNCHANGED:
+                routeWritten(routeId);
+                return new APIGatewayProxyResponse<>(NO_CONTENT); // Return code 204 - No content
+            case FORBIDDEN: // Insufficient privileges
                 return new APIGatewayProxyResponse<>(UNAUTHORIZED,
                         new APIErrorBody("Este usuario no tiene permisos para editar la ruta solicitada"));
-            }
-        } else { // Route not found at the backend
-            return new APIGatewayProxyResponse<>(NOT_FOUND, new APIErrorBody("No se encontró la ruta solicitada"));
+            default: // Route not found at the backend
+                return new APIGatewayProxyResponse<>(NOT_FOUND, new APIErrorBody("No se encontró la ruta solicitada"));
         }
     }
 
@@ -658,32 +1372,28 @@ public class RoutesHandler implements RequestHandler<APIGatewayProxyRequestEvent
         if (!Route.validateID(routeId))
             return new APIGatewayProxyResponse<>(BAD_REQUEST, new APIErrorBody("ID de ruta inválido"));
 
-        Route routeBeingDeleted = routeDAO.getById(routeId);
-
-        // Check if the route could be found at the backend
-
-        if (routeBeingDeleted != null) {
+        // Try deleting the requested route. Only the author of the route can delete it, which is checked by the
+        // deletion itself
 
-            // AUTHORISATION FILTER. Only the author of the route can delete it
+        MutationOutcome outcome = routeDAO.deleteByAuthor(routeId, cognitoUser);
 
-            if (cognitoUser.equals(routeBeingDeleted.getCreatedByUser())) {
-
-                // Try deleting the requested route
-
-                boolean deletionSuccessful = routeDAO.deleteById(routeId);
-
-                if (deletionSuccessful) {
-                    return new APIGatewayProxyResponse<>(NO_CONTENT); // Return code 204 - No content
-                } else { // An error occurred while deleting the requested route
-                    return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
-                            new APIErrorBody("Ocurrió un error al eliminar la ruta solicitada"));
-                }
-            } else { // Insufficient privileges
+        if (outcome == null)
+            return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR,
+                    new APIErrorBody("Ocurrió un error al eliminar la ruta solicitada"));
+
+        switch (outcome) {
+            case UPDATED:
+                responseCache.invalidate(ROUTE_TABLES);
+                RouteSnapshotManager.get().markStale();
+                RouteSimilarityManager.get().routeDeleted(routeId);
+                RouteTextIndexManager.get().routeDeleted(routeId);
+                SuggestionIndexManager.get().routeDeleted(routeId);
+                return new APIGatewayProxyResponse<>(NO_CONTENT); // Return code 204 - No content
+            case FORBIDDEN: // Insufficient privileges
                 return new APIGatewayProxyResponse<>(UNAUTHORIZED,
                         new APIErrorBody("Este usuario no tiene permisos para eliminar la ruta seleccionada"));
-            }
-        } else { // Route not found
-            return new APIGatewayProxyResponse<>(NOT_FOUND, "No se encontró la ruta solicitada");
+            default: // Route not found
+                return new APIGatewayProxyResponse<>(NOT_FOUND, new APIErrorBody("No se encontró la ruta solicitada"));
         }
     }
 
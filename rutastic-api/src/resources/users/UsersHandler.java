@@ -6,13 +6,19 @@ import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.google.gson.Gson;
 import dao.UserDAO;
 import dao.factories.DAOAbstractFactory;
-import dao.implementations.DAOImplJDBC;
+import dao.implementations.DAOImplCached;
+import model.DataVersion;
 import model.User;
 import model.statistic.UserStatistic;
 import resources.APIErrorBody;
 import resources.APIGatewayProxyResponse;
+import resources.ContentEncoding;
+import resources.EntityTags;
 import resources.MySQLConnectionManager;
+import resources.ResponseCache;
+import routefilter.suggestion.SuggestionIndexManager;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -25,8 +31,10 @@ public class UsersHandler implements RequestHandler<APIGatewayProxyRequestEvent,
     private static final DAOAbstractFactory daoAbstractFactory = DAOAbstractFactory.get();
     private static final UserDAO userDAO;
     private static final Gson gson = new Gson();
+    private static final ResponseCache responseCache = ResponseCache.get();
 
     private static final String THIS_RESOURCE = "/usuarios"; // This resource on the REST API
+    private static final long RESPONSE_CACHE_TTL = 60 * 1000; // Time GET responses remain cached, in milliseconds
 
     static {
         // On cold boot set up and create a db connection
@@ -37,7 +45,7 @@ public class UsersHandler implements RequestHandler<APIGatewayProxyRequestEvent,
                 System.getenv("DB_SCHEMA"));
 
         // Initialize user DAO
-        userDAO = daoAbstractFactory.impl(DAOImplJDBC.class).forModel(User.class);
+        userDAO = daoAbstractFactory.impl(DAOImplCached.class).forModel(User.class);
     }
 
     @Override
@@ -50,12 +58,13 @@ public class UsersHandler implements RequestHandler<APIGatewayProxyRequestEvent,
 
         // Requested GET /usuarios
         if (resource.equals(THIS_RESOURCE) && event.getHttpMethod().equals("GET") && httpQuery == null) {
-            return getAllUsers().addCORS();
+            return ContentEncoding.compress(event, getAllUsers().negotiateFormat(event)).addCORS();
         }
         // Requested GET /usuarios?estadistica={top5UsuariosPorTopRutas|top5UsuariosPorMediaKudos}
         else if (resource.equals(THIS_RESOURCE) && event.getHttpMethod().equals("GET")
                 && httpQuery != null && httpQuery.containsKey("estadistica")) {
-            return getUserStatistics(event, context).addCORS();
+            return responseCache.serve(event, false, RESPONSE_CACHE_TTL, () -> getUserStatistics(event, context),
+                    DataVersion.USERS, DataVersion.ROUTES, DataVersion.KUDO_ENTRIES).addCORS();
         }
         // Requested POST /usuarios { Body: User JSON }
         else if (resource.equals(THIS_RESOURCE) && event.getHttpMethod().equals("POST") && !event.getBody().isEmpty()) {
@@ -91,6 +100,13 @@ public class UsersHandler implements RequestHandler<APIGatewayProxyRequestEvent,
             return new APIGatewayProxyResponse<>(BAD_REQUEST,
                     new APIErrorBody("No se ha solicitado ninguna estadística de usuario"));
 
+        // Check if the client already has the current version of the stat. User stats depend on the current date too
+
+        String entityTag = EntityTags.of(requestedStat + "@" + LocalDate.now(),
+                DataVersion.USERS, DataVersion.ROUTES, DataVersion.KUDO_ENTRIES);
+        if (EntityTags.isMatchedBy(event, entityTag))
+            return new APIGatewayProxyResponse<>(NOT_MODIFIED).addETag(entityTag);
+
         // Get the user stat being requested
 
         if (requestedStat.equals("top5UsuariosPorTopRutas")) { // Serve top 5 users by top monthly routes
@@ -104,7 +120,7 @@ public class UsersHandler implements RequestHandler<APIGatewayProxyRequestEvent,
                     .limit(5)
                     .collect(Collectors.toList());
 
-            return new APIGatewayProxyResponse<>(OK, top5UsersByTopMonthlyRoutes);
+            return new APIGatewayProxyResponse<>(OK, top5UsersByTopMonthlyRoutes).addETag(entityTag);
 
         } else if (requestedStat.equals("top5UsuariosPorMediaKudos")) { // Serve top 5 users by average kudo ratings of their routes
 
@@ -117,7 +133,7 @@ public class UsersHandler implements RequestHandler<APIGatewayProxyRequestEvent,
                     .limit(5)
                     .collect(Collectors.toList());
 
-            return new APIGatewayProxyResponse<>(OK, top5UsersByAvgKudos);
+            return new APIGatewayProxyResponse<>(OK, top5UsersByAvgKudos).addETag(entityTag);
         } else { // Other unhandled user stats
             return new APIGatewayProxyResponse<>(NOT_FOUND, new APIErrorBody("Estadística desconocida"));
         }
@@ -138,6 +154,8 @@ public class UsersHandler implements RequestHandler<APIGatewayProxyRequestEvent,
             // Check if the new user could be registered
 
             if (newUserID != -1) {
+                responseCache.invalidate(DataVersion.USERS);
+                SuggestionIndexManager.get().userRegistered(newUser.getUsername());
                 return new APIGatewayProxyResponse<>(CREATED); // New user registered. Return code 201 (Created)
             } else { // Error registering the user at the backend
                 return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR, new APIErrorBody("Ocurrió un error registrando al nuevo usuario"));
@@ -175,6 +193,8 @@ public class UsersHandler implements RequestHandler<APIGatewayProxyRequestEvent,
                 boolean deletionSuccessful = userDAO.deleteByUsername(true, registeredUser.getUsername());
 
                 if (deletionSuccessful) {
+                    responseCache.invalidate(DataVersion.USERS, DataVersion.ROUTES, DataVersion.KUDO_ENTRIES);
+                    SuggestionIndexManager.get().userDeleted(registeredUser.getUsername());
                     return new APIGatewayProxyResponse<>(NO_CONTENT); // Return code 204 - No content
                 } else { // An error occurred while deleting the requested user
                     return new APIGatewayProxyResponse<>(INTERNAR_SERVER_ERROR, new APIErrorBody("Ocurrió un error al eliminar el usuario solicitado"));
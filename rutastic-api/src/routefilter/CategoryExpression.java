@@ -0,0 +1,409 @@
+package routefilter;
+
+import helper.TextUtils;
+import routefilter.index.CompressedBitmap;
+import routefilter.index.RouteBitmapIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Boolean expression over route category names. The textual syntax is:
+ * <ul>
+ *     <li>{@code a,b}: routes with both category a and category b</li>
+ *     <li>{@code a|b}: routes with category a, category b or both</li>
+ *     <li>{@code !a}: routes without category a</li>
+ *     <li>{@code (...)}: grouping</li>
+ * </ul>
+ * NOT binds tighter than AND, and AND binds tighter than OR, so {@code senderismo,!carrera|ciclismo} is equivalent to
+ * {@code (senderismo,(!carrera))|ciclismo}
+ */
+public abstract class CategoryExpression {
+
+    private static final String CATEGORY_NAME_PATTERN = "[\\p{L}0-9 _-]+";
+
+    /**
+     * Parse a category expression
+     *
+     * @param source Textual category expression
+     * @return The parsed expression
+     * @throws IllegalArgumentException If the expression is empty or malformed
+     */
+    public static CategoryExpression parse(String source) {
+        if (source == null || source.trim().isEmpty())
+            throw new IllegalArgumentException("Empty category expression");
+
+        Parser parser = new Parser(source);
+        CategoryExpression expression = parser.parseOr();
+
+        if (parser.hasNext())
+            throw new IllegalArgumentException("Unexpected character at position " + parser.position);
+
+        return expression;
+    }
+
+    /**
+     * @param categoryNames Route category names
+     * @return An expression matching routes with all the categories, or null if no category name was provided
+     */
+    public static CategoryExpression allOf(String... categoryNames) {
+        List<CategoryExpression> operands = new ArrayList<>();
+
+        for (String categoryName : categoryNames) {
+            if (categoryName != null && !categoryName.trim().isEmpty())
+                operands.add(new Category(categoryName.trim()));
+        }
+
+        if (operands.isEmpty()) return null;
+
+        return operands.size() == 1 ? operands.get(0) : new And(operands);
+    }
+
+    /**
+     * Evaluate this expression against a bitmap index
+     *
+     * @param index Route bitmap index
+     * @return The IDs of the routes matching this expression
+     */
+    public abstract CompressedBitmap evaluate(RouteBitmapIndex index);
+
+    /**
+     * @return An equivalent SQL condition over the routes table, matching exact category names in the comma-separated
+     * category names of the route, kept denormalized in the table
+     */
+    public abstract String toSQL();
+
+    /**
+     * Evaluate this expression against the categories of a single route
+     *
+     * @param foldedCategoryNames Category names of the route, folded (see {@link TextUtils#fold(String)})
+     * @return If the route matches this expression
+     */
+    public abstract boolean matches(Set<String> foldedCategoryNames);
+
+    /**
+     * Check if some set of categories matches this expression, trying every combination of the category names it
+     * mentions. Expressions such as {@code a,!a} can't match any route
+     *
+     * @param maxCategoryNames Maximum number of distinct category names to try the combinations of
+     * @return False if no set of categories matches this expression. True if some does or the expression mentions
+     * more category names than the maximum
+     */
+    public boolean isSatisfiable(int maxCategoryNames) {
+        Set<String> names = new LinkedHashSet<>();
+        collectFoldedNames(names);
+
+        if (names.size() > maxCategoryNames) return true;
+
+        List<String> nameList = new ArrayList<>(names);
+        for (int combination = 0; combination < 1 << nameList.size(); combination++) {
+            Set<String> categoryNames = new HashSet<>();
+            for (int i = 0; i < nameList.size(); i++)
+                if ((combination & 1 << i) != 0) categoryNames.add(nameList.get(i));
+
+            if (matches(categoryNames)) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Add the folded names of the categories this expression mentions to a set
+     */
+    abstract void collectFoldedNames(Set<String> foldedNames);
+
+    /**
+     * Single category operand
+     */
+    public static class Category extends CategoryExpression {
+
+        private final String name;
+
+        Category(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public CompressedBitmap evaluate(RouteBitmapIndex index) {
+            return index.ofCategory(name);
+        }
+
+        @Override
+        public boolean matches(Set<String> foldedCategoryNames) {
+            return foldedCategoryNames.contains(TextUtils.fold(name));
+        }
+
+        @Override
+        void collectFoldedNames(Set<String> foldedNames) {
+            foldedNames.add(TextUtils.fold(name));
+        }
+
+        @Override
+        public String toSQL() {
+            // Routes without categories keep NULL, which would make negated conditions NULL instead of true
+            return String.format("FIND_IN_SET('%s', IFNULL(categories, '')) > 0",
+                    name.replace("\\", "\\\\").replace("'", "''"));
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Routes matching every operand
+     */
+    public static class And extends CategoryExpression {
+
+        private final List<CategoryExpression> operands;
+
+        And(List<CategoryExpression> operands) {
+            this.operands = Collections.unmodifiableList(operands);
+        }
+
+        public List<CategoryExpression> getOperands() {
+            return operands;
+        }
+
+        @Override
+        public CompressedBitmap evaluate(RouteBitmapIndex index) {
+            Iterator<CategoryExpression> operandsIt = operands.iterator();
+            CompressedBitmap result = operandsIt.next().evaluate(index);
+
+            while (operandsIt.hasNext() && !result.isEmpty())
+                result = result.and(operandsIt.next().evaluate(index));
+
+            return result;
+        }
+
+        @Override
+        public boolean matches(Set<String> foldedCategoryNames) {
+            for (CategoryExpression operand : operands)
+                if (!operand.matches(foldedCategoryNames)) return false;
+
+            return true;
+        }
+
+        @Override
+        void collectFoldedNames(Set<String> foldedNames) {
+            for (CategoryExpression operand : operands)
+                operand.collectFoldedNames(foldedNames);
+        }
+
+        @Override
+        public String toSQL() {
+            return join(operands, " AND ", CategoryExpression::toSQL);
+        }
+
+        @Override
+        public String toString() {
+            return join(operands, ",", CategoryExpression::toString);
+        }
+    }
+
+    /**
+     * Routes matching any operand
+     */
+    public static class Or extends CategoryExpression {
+
+        private final List<CategoryExpression> operands;
+
+        Or(List<CategoryExpression> operands) {
+            this.operands = Collections.unmodifiableList(operands);
+        }
+
+        public List<CategoryExpression> getOperands() {
+            return operands;
+        }
+
+        @Override
+        public CompressedBitmap evaluate(RouteBitmapIndex index) {
+            CompressedBitmap result = new CompressedBitmap();
+
+            for (CategoryExpression operand : operands)
+                result = result.or(operand.evaluate(index));
+
+            return result;
+        }
+
+        @Override
+        public boolean matches(Set<String> foldedCategoryNames) {
+            for (CategoryExpression operand : operands)
+                if (operand.matches(foldedCategoryNames)) return true;
+
+            return false;
+        }
+
+        @Override
+        void collectFoldedNames(Set<String> foldedNames) {
+            for (CategoryExpression operand : operands)
+                operand.collectFoldedNames(foldedNames);
+        }
+
+        @Override
+        public String toSQL() {
+            return join(operands, " OR ", CategoryExpression::toSQL);
+        }
+
+        @Override
+        public String toString() {
+            return join(operands, "|", CategoryExpression::toString);
+        }
+    }
+
+    /**
+     * Routes not matching the operand
+     */
+    public static class Not extends CategoryExpression {
+
+        private final CategoryExpression operand;
+
+        Not(CategoryExpression operand) {
+            this.operand = operand;
+        }
+
+        public CategoryExpression getOperand() {
+            return operand;
+        }
+
+        @Override
+        public CompressedBitmap evaluate(RouteBitmapIndex index) {
+            return index.all().andNot(operand.evaluate(index));
+        }
+
+        @Override
+        public boolean matches(Set<String> foldedCategoryNames) {
+            return !operand.matches(foldedCategoryNames);
+        }
+
+        @Override
+        void collectFoldedNames(Set<String> foldedNames) {
+            operand.collectFoldedNames(foldedNames);
+        }
+
+        @Override
+        public String toSQL() {
+            return "NOT " + operand.toSQL();
+        }
+
+        @Override
+        public String toString() {
+            return "!" + operand;
+        }
+    }
+
+    /**
+     * Join the representation of the operands of a compound expression, enclosing it in parenthesis
+     */
+    private static String join(List<CategoryExpression> operands, String separator,
+                               Function<CategoryExpression, String> representation) {
+        StringBuilder joined = new StringBuilder("(");
+        Iterator<CategoryExpression> operandsIt = operands.iterator();
+
+        while (operandsIt.hasNext()) {
+            joined.append(representation.apply(operandsIt.next()));
+            if (operandsIt.hasNext())
+                joined.append(separator);
+        }
+
+        return joined.append(")").toString();
+    }
+
+    /**
+     * Recursive descent parser of textual category expressions
+     */
+    private static class Parser {
+
+        private final String source;
+        private int position;
+
+        Parser(String source) {
+            this.source = source;
+            this.position = 0;
+        }
+
+        boolean hasNext() {
+            skipWhitespace();
+            return position < source.length();
+        }
+
+        // or := and ('|' and)*
+        CategoryExpression parseOr() {
+            List<CategoryExpression> operands = new ArrayList<>();
+            operands.add(parseAnd());
+
+            while (accept('|'))
+                operands.add(parseAnd());
+
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        // and := not (',' not)*
+        CategoryExpression parseAnd() {
+            List<CategoryExpression> operands = new ArrayList<>();
+            operands.add(parseNot());
+
+            while (accept(','))
+                operands.add(parseNot());
+
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+
+        // not := '!' not | '(' or ')' | name
+        CategoryExpression parseNot() {
+            if (accept('!'))
+                return new Not(parseNot());
+
+            if (accept('(')) {
+                CategoryExpression expression = parseOr();
+                if (!accept(')'))
+                    throw new IllegalArgumentException("Missing closing parenthesis at position " + position);
+                return expression;
+            }
+
+            return parseCategory();
+        }
+
+        CategoryExpression parseCategory() {
+            skipWhitespace();
+            int start = position;
+
+            while (position < source.length() && "|,!()".indexOf(source.charAt(position)) < 0)
+                position++;
+
+            String name = source.substring(start, position).trim();
+
+            if (!name.matches(CATEGORY_NAME_PATTERN))
+                throw new IllegalArgumentException("Invalid category name at position " + start);
+
+            return new Category(name);
+        }
+
+        boolean accept(char symbol) {
+            skipWhitespace();
+
+            if (position < source.length() && source.charAt(position) == symbol) {
+                position++;
+                return true;
+            }
+
+            return false;
+        }
+
+        void skipWhitespace() {
+            while (position < source.length() && Character.isWhitespace(source.charAt(position)))
+                position++;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package routefilter;
+
+import dao.DataVersionDAO;
+import dao.factories.DAOAbstractFactory;
+import dao.factories.DAOFactory;
+import dao.implementations.DAOImplJDBC;
+import model.DataVersion;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the IDs of the routes retrieved by SQL route filters. Implemented through a Singleton instance, which you
+ * can get calling {@link #get()}.
+ * <p></p>
+ * Results are keyed by the fingerprint of the filter, so the same search is only run once no matter the order of its
+ * clauses, and only the IDs are kept, so a hit costs loading the routes by their primary key. Each result is stamped
+ * with the data versions of the tables filters are run against, and a result whose stamp differs from the current one
+ * is dropped, so writes made by any instance are seen right away.
+ * <p></p>
+ * The cache holds at most {@value #MAX_ENTRIES} results and {@value #MAX_IDS} IDs among all of them. When full, the
+ * least recently used results are evicted
+ *
+ * @see SQLRouteFilter#getFingerprint()
+ * @see DataVersion
+ */
+public class FilterResultCache {
+
+    private static final int MAX_ENTRIES = 256;
+    private static final int MAX_IDS = 64 * 1024;
+    // Filters read the kudos and categories of the routes, which are kept up to date from these tables
+    private static final String[] FILTERED_TABLES = {DataVersion.ROUTES, DataVersion.KUDO_ENTRIES,
+            DataVersion.ROUTE_CATEGORIES, DataVersion.ROUTE_TO_CATEGORIES_MAPPINGS};
+
+    private final LinkedHashMap<String, Entry> entries;
+    private int cachedIds;
+
+    private FilterResultCache() {
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return The Singleton instance of the filter result cache
+     */
+    public static FilterResultCache get() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Read the current data versions of the filtered tables. Read it before running a filter, so a write made
+     * meanwhile makes the result outdated instead of being missed
+     *
+     * @return Stamp to check and store results with, or null if the data versions couldn't be read
+     */
+    public String currentVersionStamp() {
+        DAOFactory<DAOImplJDBC> jdbcFactory = DAOAbstractFactory.get().impl(DAOImplJDBC.class);
+        DataVersionDAO dataVersionDAO = jdbcFactory != null ? jdbcFactory.forModel(DataVersion.class) : null;
+
+        return versionStampOf(dataVersionDAO != null ? dataVersionDAO.getVersionsByTable() : null);
+    }
+
+    /**
+     * Build the stamp of data versions already read for the request, so the request doesn't read them twice
+     *
+     * @param versions Data versions by table, or null if they couldn't be read
+     * @return Stamp to check and store results with, or null if the data versions couldn't be read
+     */
+    public String versionStampOf(Map<String, Long> versions) {
+        if (versions == null) return null;
+
+        StringBuilder versionStamp = new StringBuilder();
+        for (String table : FILTERED_TABLES) {
+            Long version = versions.get(table);
+
+            if (version == null) return null; // The table isn't versioned, writes to it couldn't be noticed
+
+            versionStamp.append(version).append('.');
+        }
+
+        return versionStamp.toString();
+    }
+
+    /**
+     * Get the cached result of a filter
+     *
+     * @param fingerprint  Fingerprint of the filter
+     * @param versionStamp Current version stamp
+     * @return The IDs of the retrieved routes in order, or null if there's no result for the filter computed with
+     * the current data
+     */
+    public synchronized long[] getIds(String fingerprint, String versionStamp) {
+        if (fingerprint == null || versionStamp == null) return null;
+
+        Entry entry = entries.get(fingerprint);
+
+        if (entry == null) return null;
+
+        if (!entry.versionStamp.equals(versionStamp)) {
+            remove(fingerprint);
+            return null;
+        }
+
+        return entry.routeIds;
+    }
+
+    /**
+     * Cache the result of a filter. Results larger than a fraction of the cache aren't cached
+     *
+     * @param fingerprint  Fingerprint of the filter
+     * @param versionStamp Version stamp read before the filter was run
+     * @param routeIds     IDs of the retrieved routes in order
+     */
+    public synchronized void putIds(String fingerprint, String versionStamp, long[] routeIds) {
+        if (fingerprint == null || versionStamp == null || routeIds.length > MAX_IDS / 8) return;
+
+        remove(fingerprint);
+
+        // Make room evicting the least recently used results
+
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && (entries.size() >= MAX_ENTRIES || cachedIds + routeIds.length > MAX_IDS)) {
+            cachedIds -= iterator.next().getValue().routeIds.length;
+            iterator.remove();
+        }
+
+        entries.put(fingerprint, new Entry(versionStamp, routeIds));
+        cachedIds += routeIds.length;
+    }
+
+    private void remove(String fingerprint) {
+        Entry entry = entries.remove(fingerprint);
+        if (entry != null) cachedIds -= entry.routeIds.length;
+    }
+
+    /**
+     * Cached filter result
+     */
+    private static class Entry {
+        final String versionStamp;
+        final long[] routeIds;
+
+        Entry(String versionStamp, long[] routeIds) {
+            this.versionStamp = versionStamp;
+            this.routeIds = routeIds;
+        }
+    }
+
+    /**
+     * Singleton holder for FilterResultCache class
+     */
+    private static class SingletonHolder {
+        private static final FilterResultCache INSTANCE = new FilterResultCache();
+    }
+}
@@ -0,0 +1,48 @@
+package routefilter;
+
+/**
+ * Route filter that operates on the in-memory snapshot of the route catalog. The internal representation of the
+ * filter is the set of criteria to be evaluated against the columns of the snapshot
+ *
+ * @see RouteFilter
+ * @see routefilter.snapshot.RouteCatalogSnapshot
+ */
+public class InMemoryRouteFilter implements RouteFilter<InMemoryRouteQuery> {
+
+    InMemoryRouteQuery query; // Stores the criteria of the filter
+
+    /**
+     * Get an in-memory route filter based on the specified query
+     *
+     * @param query Criteria that represent the filter
+     */
+    public InMemoryRouteFilter(InMemoryRouteQuery query) {
+        this.query = query;
+    }
+
+    /**
+     * @return The criteria of the filter
+     */
+    @Override
+    public InMemoryRouteQuery consume() {
+        return query;
+    }
+
+    /**
+     * Update the criteria representing this route filter
+     *
+     * @param newRepresentation New filter criteria
+     */
+    @Override
+    public void updateUnderlyingRepresentation(InMemoryRouteQuery newRepresentation) {
+        query = newRepresentation;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isValid() {
+        return query != null;
+    }
+}
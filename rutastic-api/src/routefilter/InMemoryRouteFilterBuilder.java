@@ -0,0 +1,345 @@
+package routefilter;
+
+import model.Route;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builder of in-memory route filters. To obtain the built filter call {@link #buildFilter}. The criteria are the same
+ * typed predicates of {@link SQLRouteFilterBuilder}, but text and usernames are compared case and accent insensitive in
+ * the same way the database collation does
+ *
+ * @see InMemoryRouteFilter
+ * @see RouteFilterBuilder
+ */
+public class InMemoryRouteFilterBuilder implements RouteFilterBuilder<InMemoryRouteFilter> {
+
+    List<RoutePredicate> predicates;
+    SortSpec sortSpec; // Null for route ID order
+    int limit;
+
+    public InMemoryRouteFilterBuilder() {
+        predicates = new ArrayList<>();
+        limit = InMemoryRouteQuery.UNBOUNDED;
+    }
+
+    /**
+     * Search for routes matching a literal sentence in the title or description
+     *
+     * @param literalString Literal search string to match
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder titleOrDescriptionLiterallyContains(String literalString) {
+        // Check that the search string contains some text
+        if (literalString == null || literalString.trim().isEmpty()) return this;
+
+        addPredicate(RoutePredicate.text(Collections.singletonList(literalString)));
+
+        return this;
+    }
+
+    /**
+     * Search for routes which contain, at least, one of the many keywords provided
+     *
+     * @param keywords List of keywords to match
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder titleOrDescriptionContains(List<String> keywords) {
+
+        // Check at least one keyword was provided
+
+        if (keywords == null || keywords.size() == 0) return this;
+
+        addPredicate(RoutePredicate.text(keywords));
+
+        return this;
+    }
+
+    /**
+     * Search for routes within a distance range defined by a delta value. This range is calculated as the interval
+     * [baseline - delta, baseline + delta], both ends included.
+     * <p>
+     * The baseline must be above 0. Else this operation will have no effect on the filter.
+     * Only the absolute value of the the difference will be used
+     *
+     * @param baseline Base distance measure. Greater than 0
+     * @param delta    Value to be subtracted and added to the baseline to create a searchable distance range
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder ofDistanceDelta(int baseline, int delta) {
+
+        // Check that the baseline is above 0
+
+        if (baseline > 0) {
+            predicates.add(RoutePredicate.between(RoutePredicate.Attribute.DISTANCE,
+                    baseline - Math.abs(delta), baseline + Math.abs(delta)));
+        }
+
+        return this;
+    }
+
+    /**
+     * Searches for routes withing the distance range given by [lowerLimit, upperLimit], both ends included.
+     * Both limits should be positive integers, but if a value of -1 is supplied to a limit then that end is unbounded,
+     * as in (-inf, upperLimit) or (lowerLimit, +inf)
+     *
+     * @param lowerLimit Lower distance limit. -1 to make it unbound
+     * @param upperLimit Upper distance limit. -1 to make it unbound
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder ofDistanceRange(int lowerLimit, int upperLimit) {
+        addPredicate(RoutePredicate.range(RoutePredicate.Attribute.DISTANCE, lowerLimit, upperLimit));
+        return this;
+    }
+
+    /**
+     * Searches for routes withing the duration range given by [lowerLimit, upperLimit], both ends included.
+     * Both limits should be positive integers, but if a value of -1 is supplied to a limit then that end is unbounded
+     *
+     * @param lowerLimit Lower duration limit, in minutes. -1 to make it unbound
+     * @param upperLimit Upper duration limit, in minutes. -1 to make it unbound
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder ofDurationRange(int lowerLimit, int upperLimit) {
+        addPredicate(RoutePredicate.range(RoutePredicate.Attribute.DURATION, lowerLimit, upperLimit));
+        return this;
+    }
+
+    /**
+     * Searches for routes withing the elevation range given by [lowerLimit, upperLimit], both ends included.
+     * Both limits should be positive integers, but if a value of -1 is supplied to a limit then that end is unbounded
+     *
+     * @param lowerLimit Lower elevation limit, in meters. -1 to make it unbound
+     * @param upperLimit Upper elevation limit, in meters. -1 to make it unbound
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder ofElevationRange(int lowerLimit, int upperLimit) {
+        addPredicate(RoutePredicate.range(RoutePredicate.Attribute.ELEVATION, lowerLimit, upperLimit));
+        return this;
+    }
+
+    /**
+     * Searches for routes withing the average grade range given by [lowerLimit, upperLimit], both ends included.
+     * Both limits should be positive numbers, but if a value of -1 is supplied to a limit then that end is unbounded.
+     * Grades are compared in hundredths of a percent, the precision they're rounded to
+     *
+     * @param lowerLimit Lower average grade limit, as a percentage. -1 to make it unbound
+     * @param upperLimit Upper average grade limit, as a percentage. -1 to make it unbound
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder ofGradeRange(double lowerLimit, double upperLimit) {
+        addPredicate(RoutePredicate.range(RoutePredicate.Attribute.GRADE,
+                lowerLimit > 0 ? (int) Math.round(lowerLimit * 100) : -1,
+                upperLimit > 0 ? (int) Math.round(upperLimit * 100) : -1));
+        return this;
+    }
+
+    /**
+     * Add a predicate to the conjunction of the filter
+     *
+     * @param predicate Predicate. If null the criteria didn't constrain anything and it's ignored
+     */
+    private void addPredicate(RoutePredicate predicate) {
+        if (predicate != null) predicates.add(predicate);
+    }
+
+    /**
+     * Search for routes with a specific skill level
+     *
+     * @param skillLevel Desired skill level
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder ofSkillLevel(RouteSkillLevel skillLevel) {
+
+        addPredicate(RoutePredicate.skillLevel(skillLevel));
+
+        return this;
+    }
+
+    /**
+     * Search for routes that fit all the provided categories, it's an exclusive operation.
+     *
+     * @param routeCategories Route category names
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder ofCategories(String... routeCategories) {
+        return ofCategoryExpression(CategoryExpression.allOf(routeCategories));
+    }
+
+    /**
+     * Search for routes whose categories match a category expression
+     *
+     * @param categoryExpression Category expression
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder ofCategoryExpression(CategoryExpression categoryExpression) {
+
+        addPredicate(RoutePredicate.categories(categoryExpression));
+
+        return this;
+    }
+
+    /**
+     * Set the ordering of the routes by number of kudos either by ascending or descending order
+     *
+     * @param descending A true value indicates descending order, and a false value ascending order
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder orderByKudos(boolean descending) {
+        return orderBy(SortSpec.by(SortSpec.Key.KUDOS, descending));
+    }
+
+    /**
+     * Set the ordering of the routes by several keys, each one breaking the ties of the previous ones. It replaces any
+     * previous ordering
+     *
+     * @param sortSpec Sort specification
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder orderBy(SortSpec sortSpec) {
+        this.sortSpec = sortSpec;
+        return this;
+    }
+
+    /**
+     * Search for routes with a minimum number of kudos and above
+     *
+     * @param minimumKudos Minimum number of kudos
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder minimumKudos(int minimumKudos) {
+        predicates.add(RoutePredicate.between(RoutePredicate.Attribute.KUDOS, minimumKudos, Integer.MAX_VALUE));
+        return this;
+    }
+
+    /**
+     * Filter out blocked routes
+     *
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder hideBlockedRoutes() {
+        predicates.add(RoutePredicate.notBlocked());
+        return this;
+    }
+
+    /**
+     * Search only for routes that were created by a specific user identifies by his username
+     *
+     * @param username The username of the user
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder byUser(String username) {
+
+        predicates.add(RoutePredicate.author(username));
+
+        return this;
+    }
+
+    /**
+     * Exclude routes from any result the equivalent filter would retrieve
+     *
+     * @param routeIds A variable number route IDs, which will exclude those routes from any result
+     * @return This filter
+     */
+    @Override
+    public InMemoryRouteFilterBuilder exclude(long... routeIds) {
+
+        List<Long> excludedRoutes = new ArrayList<>();
+
+        for (Long routeId : routeIds) {
+
+            // If the route is valid add it to the exclusion set
+
+            if (Route.validateID(routeId))
+                excludedRoutes.add(routeId);
+        }
+
+        if (!excludedRoutes.isEmpty())
+            predicates.add(RoutePredicate.excluding(excludedRoutes));
+
+        return this;
+    }
+
+    /**
+     * Search only among some routes, such as the ones found by a text search. Repeated calls search among the routes
+     * of every call
+     *
+     * @param routeIds IDs of the routes that can be retrieved. If empty no route can be retrieved
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder ofIds(Collection<Long> routeIds) {
+
+        predicates.add(RoutePredicate.ids(routeIds));
+
+        return this;
+    }
+
+    /**
+     * Limit the number of routes this filter will retrieve at most
+     *
+     * @param limit Maximum number of routes
+     * @return This builder
+     */
+    @Override
+    public InMemoryRouteFilterBuilder limit(int limit) {
+
+        if (limit > 0) this.limit = limit;
+
+        return this;
+    }
+
+    /**
+     * Routes in the snapshot are already in memory, so every field is retrieved anyway. Leaving out the fields that
+     * weren't requested is up to the serialization of the routes
+     *
+     * @param fields Fields to retrieve
+     * @return This builder
+     * @see RouteField#project(List, Set)
+     */
+    @Override
+    public InMemoryRouteFilterBuilder project(Set<RouteField> fields) {
+        return this;
+    }
+
+    /**
+     * Build the filter from the optimized conjunction of its criteria. If the criteria contradict each other the
+     * snapshot answers the filter without looking at any route
+     *
+     * @return The in-memory filter
+     */
+    @Override
+    public InMemoryRouteFilter buildFilter() {
+        return new InMemoryRouteFilter(
+                InMemoryRouteQuery.compile(RoutePredicate.and(predicates).optimize(), sortSpec, limit));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        predicates.clear();
+        sortSpec = null;
+        limit = InMemoryRouteQuery.UNBOUNDED;
+    }
+}
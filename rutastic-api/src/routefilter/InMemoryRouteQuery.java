@@ -0,0 +1,279 @@
+package routefilter;
+
+import helper.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Internal representation of an in-memory route filter. It's compiled from the optimized predicate of the filter (see
+ * {@link RoutePredicate#optimize()}), so it holds the criteria already merged: repeated constraints over the same
+ * attribute behave like the equivalent SQL conjunction would (e.g. two distance ranges become their intersection)
+ *
+ * @see InMemoryRouteFilter
+ * @see InMemoryRouteFilterBuilder
+ */
+public class InMemoryRouteQuery {
+
+    public static final int UNBOUNDED = -1;
+
+    final List<List<String>> textClauses;
+    int minDistance;
+    int maxDistance;
+    int minDuration;
+    int maxDuration;
+    int minElevation;
+    int maxElevation;
+    int minGrade; // Hundredths of a percent
+    int maxGrade; // Hundredths of a percent
+    final Set<RouteSkillLevel> skillLevels;
+    final List<CategoryExpression> categoryExpressions;
+    int minimumKudos;
+    int maximumKudos;
+    boolean hideBlocked;
+    final Set<String> users;
+    final Set<Long> excludedRoutes;
+    Set<Long> includedRoutes; // Null if any route can be retrieved
+    SortSpec sortSpec; // Null for route ID order
+    int limit;
+    boolean unsatisfiable; // If the predicate was optimized to FALSE
+
+    InMemoryRouteQuery() {
+        textClauses = new ArrayList<>();
+        skillLevels = EnumSet.noneOf(RouteSkillLevel.class);
+        categoryExpressions = new ArrayList<>();
+        users = new HashSet<>();
+        excludedRoutes = new HashSet<>();
+        minDistance = Integer.MIN_VALUE;
+        maxDistance = Integer.MAX_VALUE;
+        minDuration = Integer.MIN_VALUE;
+        maxDuration = Integer.MAX_VALUE;
+        minElevation = Integer.MIN_VALUE;
+        maxElevation = Integer.MAX_VALUE;
+        minGrade = Integer.MIN_VALUE;
+        maxGrade = Integer.MAX_VALUE;
+        minimumKudos = Integer.MIN_VALUE;
+        maximumKudos = Integer.MAX_VALUE;
+        limit = UNBOUNDED;
+    }
+
+    /**
+     * Compile an optimized predicate into the criteria the route catalog snapshot evaluates
+     *
+     * @param predicate Optimized predicate (see {@link RoutePredicate#optimize()})
+     * @param sortSpec  Sort specification, or null for route ID order
+     * @param limit     Maximum number of routes to retrieve or {@link #UNBOUNDED}
+     * @return The equivalent query
+     */
+    static InMemoryRouteQuery compile(RoutePredicate predicate, SortSpec sortSpec, int limit) {
+        InMemoryRouteQuery query = new InMemoryRouteQuery();
+
+        if (predicate instanceof RoutePredicate.And) {
+            for (RoutePredicate operand : ((RoutePredicate.And) predicate).getOperands())
+                query.add(operand);
+        } else {
+            query.add(predicate);
+        }
+
+        query.sortSpec = sortSpec;
+        query.limit = limit;
+
+        return query;
+    }
+
+    /**
+     * Add the criteria of a single predicate, which isn't a conjunction, to this query
+     */
+    private void add(RoutePredicate predicate) {
+        if (predicate == RoutePredicate.FALSE) {
+            unsatisfiable = true;
+        } else if (predicate instanceof RoutePredicate.Text) {
+            List<String> foldedTerms = new ArrayList<>();
+            for (String term : ((RoutePredicate.Text) predicate).getTerms())
+                foldedTerms.add(TextUtils.fold(term));
+            textClauses.add(foldedTerms);
+        } else if (predicate instanceof RoutePredicate.Range) {
+            RoutePredicate.Range range = (RoutePredicate.Range) predicate;
+            switch (range.getAttribute()) {
+                case DISTANCE:
+                    minDistance = Math.max(minDistance, range.getMin());
+                    maxDistance = Math.min(maxDistance, range.getMax());
+                    break;
+                case DURATION:
+                    minDuration = Math.max(minDuration, range.getMin());
+                    maxDuration = Math.min(maxDuration, range.getMax());
+                    break;
+                case ELEVATION:
+                    minElevation = Math.max(minElevation, range.getMin());
+                    maxElevation = Math.min(maxElevation, range.getMax());
+                    break;
+                case GRADE:
+                    minGrade = Math.max(minGrade, range.getMin());
+                    maxGrade = Math.min(maxGrade, range.getMax());
+                    break;
+                case KUDOS:
+                    minimumKudos = Math.max(minimumKudos, range.getMin());
+                    maximumKudos = Math.min(maximumKudos, range.getMax());
+                    break;
+            }
+        } else if (predicate instanceof RoutePredicate.SkillLevel) {
+            skillLevels.add(((RoutePredicate.SkillLevel) predicate).getSkillLevel());
+        } else if (predicate instanceof RoutePredicate.Categories) {
+            categoryExpressions.add(((RoutePredicate.Categories) predicate).getCategoryExpression());
+        } else if (predicate instanceof RoutePredicate.NotBlocked) {
+            hideBlocked = true;
+        } else if (predicate instanceof RoutePredicate.Author) {
+            users.add(((RoutePredicate.Author) predicate).getFoldedUsername());
+        } else if (predicate instanceof RoutePredicate.Ids) {
+            RoutePredicate.Ids ids = (RoutePredicate.Ids) predicate;
+            if (ids.isExcluded()) {
+                excludedRoutes.addAll(ids.getRouteIds());
+            } else if (includedRoutes == null) {
+                includedRoutes = new HashSet<>(ids.getRouteIds());
+            } else {
+                includedRoutes.retainAll(ids.getRouteIds());
+            }
+        }
+    }
+
+    /**
+     * @return Text clauses, already folded. A route matches a clause if its title or its description contains any of
+     * the terms of the clause, and it must match every clause
+     */
+    public List<List<String>> getTextClauses() {
+        return Collections.unmodifiableList(textClauses);
+    }
+
+    /**
+     * @return Minimum distance, included
+     */
+    public int getMinDistance() {
+        return minDistance;
+    }
+
+    /**
+     * @return Maximum distance, included
+     */
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * @return Minimum duration, included
+     */
+    public int getMinDuration() {
+        return minDuration;
+    }
+
+    /**
+     * @return Maximum duration, included
+     */
+    public int getMaxDuration() {
+        return maxDuration;
+    }
+
+    /**
+     * @return Minimum elevation, included
+     */
+    public int getMinElevation() {
+        return minElevation;
+    }
+
+    /**
+     * @return Maximum elevation, included
+     */
+    public int getMaxElevation() {
+        return maxElevation;
+    }
+
+    /**
+     * @return Minimum average grade in hundredths of a percent, included
+     */
+    public int getMinGrade() {
+        return minGrade;
+    }
+
+    /**
+     * @return Maximum average grade in hundredths of a percent, included
+     */
+    public int getMaxGrade() {
+        return maxGrade;
+    }
+
+    /**
+     * @return Required skill levels. If there's more than one no route can match the query
+     */
+    public Set<RouteSkillLevel> getSkillLevels() {
+        return Collections.unmodifiableSet(skillLevels);
+    }
+
+    /**
+     * @return Category expressions every matching route must match
+     */
+    public List<CategoryExpression> getCategoryExpressions() {
+        return Collections.unmodifiableList(categoryExpressions);
+    }
+
+    /**
+     * @return Minimum number of kudos, included
+     */
+    public int getMinimumKudos() {
+        return minimumKudos;
+    }
+
+    /**
+     * @return Maximum number of kudos, included
+     */
+    public int getMaximumKudos() {
+        return maximumKudos;
+    }
+
+    public boolean isHideBlocked() {
+        return hideBlocked;
+    }
+
+    /**
+     * @return Usernames of the required author, already folded. If there's more than one no route can match the query
+     */
+    public Set<String> getUsers() {
+        return Collections.unmodifiableSet(users);
+    }
+
+    public Set<Long> getExcludedRoutes() {
+        return Collections.unmodifiableSet(excludedRoutes);
+    }
+
+    /**
+     * @return IDs of the only routes that can be retrieved, or null if any route can be retrieved
+     */
+    public Set<Long> getIncludedRoutes() {
+        return includedRoutes != null ? Collections.unmodifiableSet(includedRoutes) : null;
+    }
+
+    /**
+     * @return Sort specification, or null if the routes are retrieved in route ID order
+     */
+    public SortSpec getSortSpec() {
+        return sortSpec;
+    }
+
+    /**
+     * @return Maximum number of routes to retrieve or {@link #UNBOUNDED}
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return If the criteria contradict each other, so no route can match the query without looking at the catalog
+     */
+    public boolean isUnsatisfiable() {
+        return unsatisfiable || minDistance > maxDistance || minDuration > maxDuration ||
+                minElevation > maxElevation || minGrade > maxGrade || minimumKudos > maximumKudos ||
+                skillLevels.size() > 1 || users.size() > 1;
+    }
+}
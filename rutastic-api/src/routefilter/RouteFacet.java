@@ -0,0 +1,153 @@
+package routefilter;
+
+import model.Route;
+
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Enumeration of the facets the routes found by a filter can be counted by. Each facet knows its name in the API and
+ * the route field it's counted from.
+ * <p></p>
+ * Skill levels and categories are counted by value. Distances and kudos are counted by buckets, labeled with their
+ * inclusive bounds ("5000-9999"), by their value if they hold a single one ("0"), or as "<0" and "50+" when they're open
+ * ended. Every skill level and bucket is returned even if no route falls in it, so the counts can be shown next to each
+ * option of the query form
+ */
+public enum RouteFacet {
+    SKILL_LEVEL("dificultad", RouteField.SKILL_LEVEL),
+    CATEGORIES("categorias", RouteField.CATEGORIES),
+    DISTANCE("distancia", RouteField.DISTANCE),
+    KUDOS("kudos", RouteField.KUDOS);
+
+    private static final String[] SKILL_LEVELS = {"facil", "media", "dificil"};
+    private static final int[] DISTANCE_BUCKETS = {0, 5000, 10000, 20000, 50000}; // Lower bounds, in meters
+    private static final int[] KUDOS_BUCKETS = {Integer.MIN_VALUE, 0, 1, 10, 50}; // Lower bounds
+
+    private final String apiName;
+    private final RouteField field;
+
+    RouteFacet(String apiName, RouteField field) {
+        this.apiName = apiName;
+        this.field = field;
+    }
+
+    /**
+     * @return Route field this facet is counted from
+     */
+    public RouteField getField() {
+        return field;
+    }
+
+    /**
+     * Parse a comma separated list of facet names, as in {@code facetas=dificultad,kudos}
+     *
+     * @param facetsSource Comma separated facet names
+     * @return The requested facets, or null if no facet was requested
+     * @throws IllegalArgumentException If a facet name isn't known
+     */
+    public static Set<RouteFacet> parseFacets(String facetsSource) {
+        if (facetsSource == null || facetsSource.trim().isEmpty()) return null;
+
+        Set<RouteFacet> facets = EnumSet.noneOf(RouteFacet.class);
+        for (String facetName : facetsSource.split(",")) {
+            RouteFacet facet = null;
+            for (RouteFacet candidate : values())
+                if (candidate.apiName.equals(facetName.trim())) facet = candidate;
+
+            if (facet == null) throw new IllegalArgumentException("Unknown route facet " + facetName.trim());
+
+            facets.add(facet);
+        }
+
+        return facets;
+    }
+
+    /**
+     * Count the routes found by a filter by some facets, in a single pass over the routes
+     *
+     * @param routes Routes found by the filter. They must hold the fields of the facets
+     * @param facets Facets to count
+     * @return The counts of each facet by its API name, each one by value or bucket label
+     */
+    public static Map<String, Map<String, Integer>> count(List<Route> routes, Set<RouteFacet> facets) {
+        boolean bySkillLevel = facets.contains(SKILL_LEVEL);
+        boolean byCategories = facets.contains(CATEGORIES);
+        boolean byDistance = facets.contains(DISTANCE);
+        boolean byKudos = facets.contains(KUDOS);
+
+        int[] skillLevelCounts = new int[SKILL_LEVELS.length];
+        Map<String, Integer> categoryCounts = new LinkedHashMap<>();
+        int[] distanceCounts = new int[DISTANCE_BUCKETS.length];
+        int[] kudosCounts = new int[KUDOS_BUCKETS.length];
+
+        for (Route route : routes) {
+            if (bySkillLevel) {
+                RouteSkillLevel skillLevel = RouteSkillLevel.parseSkillLevelFromString(route.getSkillLevel());
+                if (skillLevel != RouteSkillLevel.UNDEFINED) skillLevelCounts[skillLevel.ordinal() - 1]++;
+            }
+            if (byCategories && route.getCategories() != null) {
+                for (String category : route.getCategories().split(Route.CATEGORY_SEPARATOR))
+                    if (!category.trim().isEmpty()) categoryCounts.merge(category.trim(), 1, Integer::sum);
+            }
+            if (byDistance) distanceCounts[bucketOf(DISTANCE_BUCKETS, route.getDistance())]++;
+            if (byKudos) kudosCounts[bucketOf(KUDOS_BUCKETS, route.getKudos())]++;
+        }
+
+        Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+
+        for (RouteFacet facet : facets) {
+            switch (facet) {
+                case SKILL_LEVEL:
+                    Map<String, Integer> bySkillLevelCounts = new LinkedHashMap<>();
+                    for (int i = 0; i < SKILL_LEVELS.length; i++)
+                        bySkillLevelCounts.put(SKILL_LEVELS[i], skillLevelCounts[i]);
+                    counts.put(facet.apiName, bySkillLevelCounts);
+                    break;
+                case CATEGORIES:
+                    counts.put(facet.apiName, categoryCounts);
+                    break;
+                case DISTANCE:
+                    counts.put(facet.apiName, bucketCounts(DISTANCE_BUCKETS, distanceCounts));
+                    break;
+                case KUDOS:
+                    counts.put(facet.apiName, bucketCounts(KUDOS_BUCKETS, kudosCounts));
+                    break;
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * @return Index of the bucket a value falls in, given the ascending lower bounds of the buckets
+     */
+    private static int bucketOf(int[] lowerBounds, int value) {
+        int bucket = 0;
+        while (bucket + 1 < lowerBounds.length && value >= lowerBounds[bucket + 1])
+            bucket++;
+        return bucket;
+    }
+
+    /**
+     * @return The counts of each bucket by its label
+     */
+    private static Map<String, Integer> bucketCounts(int[] lowerBounds, int[] counts) {
+        Map<String, Integer> bucketCounts = new LinkedHashMap<>();
+
+        for (int i = 0; i < lowerBounds.length; i++) {
+            String label;
+            if (lowerBounds[i] == Integer.MIN_VALUE) label = "<" + lowerBounds[i + 1];
+            else if (i + 1 == lowerBounds.length) label = lowerBounds[i] + "+";
+            else if (lowerBounds[i] == lowerBounds[i + 1] - 1) label = String.valueOf(lowerBounds[i]);
+            else label = lowerBounds[i] + "-" + (lowerBounds[i + 1] - 1);
+
+            bucketCounts.put(label, counts[i]);
+        }
+
+        return bucketCounts;
+    }
+}
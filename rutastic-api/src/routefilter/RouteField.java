@@ -0,0 +1,102 @@
+package routefilter;
+
+import model.Route;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Enumeration of the fields of a route that can be requested on their own (sparse fieldsets). Each field knows its
+ * name in the API, the column it's read from, and its key and getter in the route model
+ */
+public enum RouteField {
+    ID("id", "id", "id", Route::getId),
+    CREATED_BY_USER("autor", "created_by_user", "createdByUser", Route::getCreatedByUser),
+    TITLE("titulo", "title", "title", Route::getTitle),
+    DESCRIPTION("descripcion", "description", "description", Route::getDescription),
+    DISTANCE("distancia", "distance", "distance", Route::getDistance),
+    DURATION("duracion", "duration", "duration", Route::getDuration),
+    ELEVATION("elevacion", "elevation", "elevation", Route::getElevation),
+    CREATION_DATE("fechaCreacion", "creation_date", "creationDate", Route::getCreationDate),
+    CATEGORIES("categorias", "categories", "categories", Route::getCategories),
+    SKILL_LEVEL("dificultad", "skill_level", "skillLevel", Route::getSkillLevel),
+    KUDOS("kudos", "kudos", "kudos", Route::getKudos),
+    BLOCKED("bloqueada", "blocked", "blocked", Route::isBlocked);
+
+    private final String apiName;
+    private final String column;
+    private final String propertyName; // Key Gson gives the field
+    private final Function<Route, Object> getter;
+
+    RouteField(String apiName, String column, String propertyName, Function<Route, Object> getter) {
+        this.apiName = apiName;
+        this.column = column;
+        this.propertyName = propertyName;
+        this.getter = getter;
+    }
+
+    /**
+     * @return Name of the column of the routes view holding this field
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Parse a comma separated list of field names, as in {@code campos=titulo,distancia,kudos}. The ID is always
+     * included, since routes can't be told apart without it
+     *
+     * @param fieldsSource Comma separated field names
+     * @return The requested fields, or null if no field was requested
+     * @throws IllegalArgumentException If a field name isn't known
+     */
+    public static Set<RouteField> parseFields(String fieldsSource) {
+        if (fieldsSource == null || fieldsSource.trim().isEmpty()) return null;
+
+        Set<RouteField> fields = EnumSet.of(ID);
+        for (String fieldName : fieldsSource.split(",")) {
+            RouteField field = null;
+            for (RouteField candidate : values())
+                if (candidate.apiName.equals(fieldName.trim())) field = candidate;
+
+            if (field == null) throw new IllegalArgumentException("Unknown route field " + fieldName.trim());
+
+            fields.add(field);
+        }
+
+        return fields;
+    }
+
+    /**
+     * Keep only some fields of the routes, so the rest are left out when serialized. The kudo of the logged user is
+     * kept when it's set, as it's only set on request
+     *
+     * @param routes Routes to project
+     * @param fields Fields to keep. If null the routes are returned as they are
+     * @return A list with one object per route, holding the same keys as the JSON of a route but only the requested
+     * ones
+     */
+    public static List<?> project(List<Route> routes, Set<RouteField> fields) {
+        if (fields == null) return routes;
+
+        List<Map<String, Object>> projectedRoutes = new ArrayList<>(routes.size());
+        for (Route route : routes) {
+            Map<String, Object> projectedRoute = new LinkedHashMap<>();
+
+            for (RouteField field : fields) {
+                Object value = field.getter.apply(route);
+                if (value != null) projectedRoute.put(field.propertyName, value);
+            }
+            if (route.getMyKudo() != null) projectedRoute.put("myKudo", route.getMyKudo());
+
+            projectedRoutes.add(projectedRoute);
+        }
+
+        return projectedRoutes;
+    }
+}
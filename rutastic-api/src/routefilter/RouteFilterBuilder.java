@@ -1,5 +1,11 @@
 package routefilter;
 
+import model.Route;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
 /**
  * Builder of route filter. To obtain the built filter call {@link #buildFilter}
  *
@@ -8,6 +14,171 @@ package routefilter;
  */
 public interface RouteFilterBuilder<T extends RouteFilter<?>> {
 
+    /**
+     * Search for routes matching a literal sentence in the title or description
+     *
+     * @param literalString Literal search string to match
+     * @return This builder
+     */
+    RouteFilterBuilder<T> titleOrDescriptionLiterallyContains(String literalString);
+
+    /**
+     * Search for routes which contain, at least, one of the many keywords provided
+     *
+     * @param keywords List of keywords to match
+     * @return This builder
+     */
+    RouteFilterBuilder<T> titleOrDescriptionContains(List<String> keywords);
+
+    /**
+     * Search for routes within a distance range defined by a delta value. This range is calculated as the interval
+     * [baseline - delta, baseline + delta], both ends included
+     *
+     * @param baseline Base distance measure. Greater than 0
+     * @param delta    Value to be subtracted and added to the baseline to create a searchable distance range
+     * @return This builder
+     */
+    RouteFilterBuilder<T> ofDistanceDelta(int baseline, int delta);
+
+    /**
+     * Searches for routes withing the distance range given by [lowerLimit, upperLimit], both ends included. A value
+     * of -1 makes that end unbounded
+     *
+     * @param lowerLimit Lower distance limit. -1 to make it unbound
+     * @param upperLimit Upper distance limit. -1 to make it unbound
+     * @return This builder
+     */
+    RouteFilterBuilder<T> ofDistanceRange(int lowerLimit, int upperLimit);
+
+    /**
+     * Searches for routes withing the duration range given by [lowerLimit, upperLimit], both ends included. A value
+     * of -1 makes that end unbounded
+     *
+     * @param lowerLimit Lower duration limit, in minutes. -1 to make it unbound
+     * @param upperLimit Upper duration limit, in minutes. -1 to make it unbound
+     * @return This builder
+     */
+    RouteFilterBuilder<T> ofDurationRange(int lowerLimit, int upperLimit);
+
+    /**
+     * Searches for routes withing the elevation range given by [lowerLimit, upperLimit], both ends included. A value
+     * of -1 makes that end unbounded
+     *
+     * @param lowerLimit Lower elevation limit, in meters. -1 to make it unbound
+     * @param upperLimit Upper elevation limit, in meters. -1 to make it unbound
+     * @return This builder
+     */
+    RouteFilterBuilder<T> ofElevationRange(int lowerLimit, int upperLimit);
+
+    /**
+     * Searches for routes withing the average grade range given by [lowerLimit, upperLimit], both ends included. The
+     * average grade of a route is its elevation per 100 meters of distance, rounded to two decimals. A value of -1
+     * makes that end unbounded
+     *
+     * @param lowerLimit Lower average grade limit, as a percentage. -1 to make it unbound
+     * @param upperLimit Upper average grade limit, as a percentage. -1 to make it unbound
+     * @return This builder
+     * @see Route#getGrade()
+     */
+    RouteFilterBuilder<T> ofGradeRange(double lowerLimit, double upperLimit);
+
+    /**
+     * Search for routes with a specific skill level
+     *
+     * @param skillLevel Desired skill level
+     * @return This builder
+     */
+    RouteFilterBuilder<T> ofSkillLevel(RouteSkillLevel skillLevel);
+
+    /**
+     * Search for routes that fit all the provided categories, it's an exclusive operation
+     *
+     * @param routeCategories Route category names
+     * @return This builder
+     */
+    RouteFilterBuilder<T> ofCategories(String... routeCategories);
+
+    /**
+     * Search for routes whose categories match a category expression
+     *
+     * @param categoryExpression Category expression
+     * @return This builder
+     * @see CategoryExpression
+     */
+    RouteFilterBuilder<T> ofCategoryExpression(CategoryExpression categoryExpression);
+
+    /**
+     * Set the ordering of the routes by number of kudos either by ascending or descending order
+     *
+     * @param descending A true value indicates descending order, and a false value ascending order
+     * @return This builder
+     */
+    RouteFilterBuilder<T> orderByKudos(boolean descending);
+
+    /**
+     * Set the ordering of the routes by several keys, each one breaking the ties of the previous ones. It replaces any
+     * previous ordering
+     *
+     * @param sortSpec Sort specification
+     * @return This builder
+     */
+    RouteFilterBuilder<T> orderBy(SortSpec sortSpec);
+
+    /**
+     * Search for routes with a minimum number of kudos and above
+     *
+     * @param minimumKudos Minimum number of kudos
+     * @return This builder
+     */
+    RouteFilterBuilder<T> minimumKudos(int minimumKudos);
+
+    /**
+     * Filter out blocked routes
+     *
+     * @return This builder
+     */
+    RouteFilterBuilder<T> hideBlockedRoutes();
+
+    /**
+     * Search only for routes that were created by a specific user identifies by his username
+     *
+     * @param username The username of the user
+     * @return This builder
+     */
+    RouteFilterBuilder<T> byUser(String username);
+
+    /**
+     * Exclude routes from any result the equivalent filter would retrieve
+     *
+     * @param routeIds A variable number route IDs, which will exclude those routes from any result
+     * @return This builder
+     */
+    RouteFilterBuilder<T> exclude(long... routeIds);
+
+    /**
+     * Search only among some routes, such as the ones found by a text search
+     *
+     * @param routeIds IDs of the routes that can be retrieved. If empty no route can be retrieved
+     * @return This builder
+     */
+    RouteFilterBuilder<T> ofIds(Collection<Long> routeIds);
+
+    /**
+     * Limit the number of routes this filter will retrieve at most
+     *
+     * @param limit Maximum number of routes
+     * @return This builder
+     */
+    RouteFilterBuilder<T> limit(int limit);
+
+    /**
+     * Retrieve only some fields of the routes. The rest may be left unset
+     *
+     * @param fields Fields to retrieve. If null or empty every field is retrieved
+     * @return This builder
+     */
+    RouteFilterBuilder<T> project(Set<RouteField> fields);
+
     /**
      * @return The built route filter
      */
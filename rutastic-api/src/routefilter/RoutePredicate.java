@@ -0,0 +1,630 @@
+package routefilter;
+
+import helper.TextUtils;
+import model.Route;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Typed predicate over the routes of the catalog. Route filter builders accumulate their criteria as a conjunction of
+ * predicates and {@link #optimize()} it before compiling it: ranges over the same attribute are folded into their
+ * intersection, repeated predicates are removed and contradicting predicates turn the whole conjunction into
+ * {@link #FALSE}, so the filter can be answered without any I/O.
+ * <p></p>
+ * A predicate compiles to a SQL condition over the routes table ({@link #toSQL()}), to a check of a single route
+ * ({@link #matches(Route)}) and to a canonical key ({@link #toString()}). An optimized conjunction sorts its
+ * operands, so equivalent filters have the same key regardless of the order their criteria were added in
+ */
+public abstract class RoutePredicate {
+
+    // Category expressions with more distinct names than this aren't checked for contradictions
+    private static final int MAX_CHECKED_CATEGORY_NAMES = 16;
+
+    /**
+     * Predicate every route matches
+     */
+    public static final RoutePredicate TRUE = new Constant(true);
+
+    /**
+     * Predicate no route matches
+     */
+    public static final RoutePredicate FALSE = new Constant(false);
+
+    private static final RoutePredicate NOT_BLOCKED = new NotBlocked();
+
+    /**
+     * Enumeration of the numeric route attributes ranges can be defined over
+     */
+    public enum Attribute {
+        DISTANCE("distance"),
+        DURATION("duration"),
+        ELEVATION("elevation"),
+        // In hundredths of a percent, the precision grades are rounded to. The indexed generated column of the routes
+        // table computes the average grade as Route#getGrade() does
+        GRADE("grade"),
+        KUDOS("kudos");
+
+        private final String column;
+
+        Attribute(String column) {
+            this.column = column;
+        }
+
+        /**
+         * @param route Route
+         * @return Value of this attribute for the route
+         */
+        public int of(Route route) {
+            switch (this) {
+                case DISTANCE:
+                    return route.getDistance();
+                case DURATION:
+                    return route.getDuration();
+                case ELEVATION:
+                    return route.getElevation();
+                case GRADE:
+                    return (int) Math.round(route.getGrade() * 100);
+                default:
+                    return route.getKudos();
+            }
+        }
+
+        /**
+         * @return SQL literal of a value of this attribute
+         */
+        private String literal(int value) {
+            return this == GRADE ? String.format(Locale.ROOT, "%.2f", value / 100.0) : String.valueOf(value);
+        }
+    }
+
+    /**
+     * @param terms Terms to search for in the title or the description
+     * @return A predicate matching routes whose title or description contains any of the terms, or null if there's no
+     * term
+     */
+    public static RoutePredicate text(Collection<String> terms) {
+        if (terms == null) return null;
+
+        Set<String> nonEmptyTerms = new TreeSet<>();
+        for (String term : terms)
+            if (term != null && !term.trim().isEmpty()) nonEmptyTerms.add(term);
+
+        return nonEmptyTerms.isEmpty() ? null : new Text(nonEmptyTerms);
+    }
+
+    /**
+     * Range with the limits of the builders. Both limits should be positive, but if a value of -1 is supplied to a
+     * limit then that end is unbounded, as in (-inf, upperLimit) or (lowerLimit, +inf)
+     *
+     * @param attribute  Attribute
+     * @param lowerLimit Lower limit. -1 to make it unbound
+     * @param upperLimit Upper limit. -1 to make it unbound
+     * @return A predicate matching routes within the range, both ends included, or null if the range doesn't constrain
+     * anything
+     */
+    public static RoutePredicate range(Attribute attribute, int lowerLimit, int upperLimit) {
+
+        // Check whether the range is bounded or unbounded, and from which bound
+
+        if (lowerLimit > 0 && lowerLimit <= upperLimit) { // Range filter
+            return new Range(attribute, lowerLimit, upperLimit);
+        } else if (lowerLimit > 0 && upperLimit <= 0) { // Unbounded at the upper limit
+            return new Range(attribute, lowerLimit, Integer.MAX_VALUE);
+        } else if (lowerLimit <= 0 && upperLimit > 0) { // Unbounded at the lower limit
+            return new Range(attribute, Integer.MIN_VALUE, upperLimit);
+        }
+
+        return null;
+    }
+
+    /**
+     * @param attribute Attribute
+     * @param min       Minimum value, included. It may be negative
+     * @param max       Maximum value, included. It may be lower than the minimum, so no route matches
+     * @return A predicate matching routes within the range
+     */
+    public static RoutePredicate between(Attribute attribute, int min, int max) {
+        return new Range(attribute, min, max);
+    }
+
+    /**
+     * @param skillLevel Skill level
+     * @return A predicate matching routes of the skill level, or null if it's undefined
+     */
+    public static RoutePredicate skillLevel(RouteSkillLevel skillLevel) {
+        return skillLevel == null || skillLevel == RouteSkillLevel.UNDEFINED ? null : new SkillLevel(skillLevel);
+    }
+
+    /**
+     * @param categoryExpression Category expression
+     * @return A predicate matching routes whose categories match the expression, or null if there's no expression
+     */
+    public static RoutePredicate categories(CategoryExpression categoryExpression) {
+        return categoryExpression == null ? null : new Categories(categoryExpression);
+    }
+
+    /**
+     * @return A predicate matching routes that aren't blocked
+     */
+    public static RoutePredicate notBlocked() {
+        return NOT_BLOCKED;
+    }
+
+    /**
+     * @param username Username
+     * @return A predicate matching routes created by the user, comparing usernames case and accent insensitive like
+     * the database collation does
+     */
+    public static RoutePredicate author(String username) {
+        return new Author(username != null ? username : "");
+    }
+
+    /**
+     * @param routeIds Route IDs
+     * @return A predicate matching only the routes with those IDs. No route matches if there's none
+     */
+    public static RoutePredicate ids(Collection<Long> routeIds) {
+        return new Ids(routeIds, false);
+    }
+
+    /**
+     * @param routeIds Route IDs
+     * @return A predicate matching every route but the ones with those IDs
+     */
+    public static RoutePredicate excluding(Collection<Long> routeIds) {
+        return new Ids(routeIds, true);
+    }
+
+    /**
+     * @param operands Operands
+     * @return The conjunction of the operands as they are. Call {@link #optimize()} to simplify it
+     */
+    public static RoutePredicate and(Collection<RoutePredicate> operands) {
+        return new And(new ArrayList<>(operands));
+    }
+
+    /**
+     * Rewrite this predicate into an equivalent one which is as simple as possible: ranges over the same attribute are
+     * intersected, the ID sets are merged, repeated predicates are removed and, if any predicates contradict each
+     * other, the result is {@link #FALSE}. The operands of the result are sorted by their canonical keys
+     *
+     * @return The equivalent optimized predicate
+     */
+    public RoutePredicate optimize() {
+        return new And(Collections.singletonList(this)).optimize();
+    }
+
+    /**
+     * @param route Route
+     * @return If the route matches this predicate
+     */
+    public abstract boolean matches(Route route);
+
+    /**
+     * @return An equivalent SQL condition over the routes table
+     */
+    public abstract String toSQL();
+
+    /**
+     * @return The canonical key of this predicate. It's its SQL condition, which is deterministic for every predicate
+     */
+    @Override
+    public String toString() {
+        return toSQL();
+    }
+
+    /**
+     * Constant predicate
+     */
+    public static class Constant extends RoutePredicate {
+
+        private final boolean value;
+
+        private Constant(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean matches(Route route) {
+            return value;
+        }
+
+        @Override
+        public String toSQL() {
+            return value ? "TRUE" : "FALSE";
+        }
+    }
+
+    /**
+     * Routes whose title or description contains any of the terms
+     */
+    public static class Text extends RoutePredicate {
+
+        private final List<String> terms; // Sorted and without duplicates
+
+        private Text(Set<String> terms) {
+            this.terms = Collections.unmodifiableList(new ArrayList<>(terms));
+        }
+
+        public List<String> getTerms() {
+            return terms;
+        }
+
+        @Override
+        public boolean matches(Route route) {
+            String foldedTitle = TextUtils.fold(route.getTitle());
+            String foldedDescription = TextUtils.fold(route.getDescription());
+
+            for (String term : terms) {
+                String foldedTerm = TextUtils.fold(term);
+                if (foldedTitle.contains(foldedTerm) || foldedDescription.contains(foldedTerm)) return true;
+            }
+
+            return false;
+        }
+
+        @Override
+        public String toSQL() {
+            return terms.stream()
+                    .map(RoutePredicate::quote)
+                    .map(term -> String.format("instr(title, %s) OR instr(description, %s)", term, term))
+                    .collect(Collectors.joining(" OR ", "(", ")"));
+        }
+    }
+
+    /**
+     * Routes whose attribute is within [min, max]. Either end may be unbounded
+     */
+    public static class Range extends RoutePredicate {
+
+        private final Attribute attribute;
+        private final int min;
+        private final int max;
+
+        private Range(Attribute attribute, int min, int max) {
+            this.attribute = attribute;
+            this.min = min;
+            this.max = max;
+        }
+
+        public Attribute getAttribute() {
+            return attribute;
+        }
+
+        /**
+         * @return Minimum value, included. {@link Integer#MIN_VALUE} if unbounded
+         */
+        public int getMin() {
+            return min;
+        }
+
+        /**
+         * @return Maximum value, included. {@link Integer#MAX_VALUE} if unbounded
+         */
+        public int getMax() {
+            return max;
+        }
+
+        @Override
+        public boolean matches(Route route) {
+            int value = attribute.of(route);
+            return value >= min && value <= max;
+        }
+
+        @Override
+        public String toSQL() {
+            if (min > max) return "FALSE";
+            if (min == Integer.MIN_VALUE && max == Integer.MAX_VALUE) return "TRUE";
+            if (min == Integer.MIN_VALUE) return attribute.column + " <= " + attribute.literal(max);
+            if (max == Integer.MAX_VALUE) return attribute.column + " >= " + attribute.literal(min);
+
+            return attribute.column + " BETWEEN " + attribute.literal(min) + " AND " + attribute.literal(max);
+        }
+    }
+
+    /**
+     * Routes of a skill level
+     */
+    public static class SkillLevel extends RoutePredicate {
+
+        private final RouteSkillLevel skillLevel;
+
+        private SkillLevel(RouteSkillLevel skillLevel) {
+            this.skillLevel = skillLevel;
+        }
+
+        public RouteSkillLevel getSkillLevel() {
+            return skillLevel;
+        }
+
+        @Override
+        public boolean matches(Route route) {
+            return RouteSkillLevel.parseSkillLevelFromString(route.getSkillLevel()) == skillLevel;
+        }
+
+        @Override
+        public String toSQL() {
+            switch (skillLevel) {
+                case EASY:
+                    return "skill_level = 'facil'";
+                case MEDIUM:
+                    return "skill_level = 'media'";
+                default:
+                    return "skill_level = 'dificil'";
+            }
+        }
+    }
+
+    /**
+     * Routes whose categories match a category expression
+     */
+    public static class Categories extends RoutePredicate {
+
+        private final CategoryExpression categoryExpression;
+
+        private Categories(CategoryExpression categoryExpression) {
+            this.categoryExpression = categoryExpression;
+        }
+
+        public CategoryExpression getCategoryExpression() {
+            return categoryExpression;
+        }
+
+        @Override
+        public boolean matches(Route route) {
+            Set<String> foldedCategoryNames = new HashSet<>();
+
+            if (route.getCategories() != null)
+                for (String categoryName : route.getCategories().split(Route.CATEGORY_SEPARATOR.trim()))
+                    foldedCategoryNames.add(TextUtils.fold(categoryName.trim()));
+
+            return categoryExpression.matches(foldedCategoryNames);
+        }
+
+        @Override
+        public String toSQL() {
+            return categoryExpression.toSQL();
+        }
+    }
+
+    /**
+     * Routes that aren't blocked
+     */
+    public static class NotBlocked extends RoutePredicate {
+
+        private NotBlocked() {
+        }
+
+        @Override
+        public boolean matches(Route route) {
+            return !route.isBlocked();
+        }
+
+        @Override
+        public String toSQL() {
+            return "blocked = 0";
+        }
+    }
+
+    /**
+     * Routes created by a user
+     */
+    public static class Author extends RoutePredicate {
+
+        private final String username;
+        private final String foldedUsername;
+
+        private Author(String username) {
+            this.username = username;
+            this.foldedUsername = TextUtils.fold(username);
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        /**
+         * @return The username, folded as the database collation compares it
+         */
+        public String getFoldedUsername() {
+            return foldedUsername;
+        }
+
+        @Override
+        public boolean matches(Route route) {
+            return foldedUsername.equals(TextUtils.fold(route.getCreatedByUser()));
+        }
+
+        @Override
+        public String toSQL() {
+            return "created_by_user = " + quote(username);
+        }
+    }
+
+    /**
+     * Routes with some IDs, or every route but them
+     */
+    public static class Ids extends RoutePredicate {
+
+        private final Set<Long> routeIds; // Sorted
+        private final boolean excluded;
+
+        private Ids(Collection<Long> routeIds, boolean excluded) {
+            this.routeIds = Collections.unmodifiableSet(new TreeSet<>(routeIds));
+            this.excluded = excluded;
+        }
+
+        public Set<Long> getRouteIds() {
+            return routeIds;
+        }
+
+        /**
+         * @return If the routes with these IDs are the only ones that don't match, instead of the only ones that do
+         */
+        public boolean isExcluded() {
+            return excluded;
+        }
+
+        @Override
+        public boolean matches(Route route) {
+            return routeIds.contains(route.getId()) != excluded;
+        }
+
+        @Override
+        public String toSQL() {
+            if (routeIds.isEmpty()) return excluded ? "TRUE" : "FALSE";
+
+            return routeIds.stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(", ", excluded ? "id NOT IN (" : "id IN (", ")"));
+        }
+    }
+
+    /**
+     * Routes matching every operand
+     */
+    public static class And extends RoutePredicate {
+
+        private final List<RoutePredicate> operands;
+
+        private And(List<RoutePredicate> operands) {
+            this.operands = Collections.unmodifiableList(operands);
+        }
+
+        public List<RoutePredicate> getOperands() {
+            return operands;
+        }
+
+        @Override
+        public boolean matches(Route route) {
+            for (RoutePredicate operand : operands)
+                if (!operand.matches(route)) return false;
+
+            return true;
+        }
+
+        @Override
+        public String toSQL() {
+            if (operands.isEmpty()) return "TRUE";
+
+            return operands.stream().map(RoutePredicate::toSQL).collect(Collectors.joining(" AND "));
+        }
+
+        @Override
+        public RoutePredicate optimize() {
+            Map<Attribute, int[]> ranges = new EnumMap<>(Attribute.class);
+            SkillLevel skillLevel = null;
+            Author author = null;
+            Map<String, CategoryExpression> categoryExpressions = new LinkedHashMap<>();
+            boolean notBlocked = false;
+            Set<Long> includedRoutes = null;
+            Set<Long> excludedRoutes = new TreeSet<>();
+            Map<String, RoutePredicate> texts = new LinkedHashMap<>();
+
+            // Merge the operands by kind, looking for contradictions along the way
+
+            for (RoutePredicate operand : flatten(operands)) {
+                if (operand == FALSE) {
+                    return FALSE;
+                } else if (operand instanceof Range) {
+                    Range range = (Range) operand;
+                    int[] limits = ranges.computeIfAbsent(range.attribute,
+                            attribute -> new int[]{Integer.MIN_VALUE, Integer.MAX_VALUE});
+                    limits[0] = Math.max(limits[0], range.min);
+                    limits[1] = Math.min(limits[1], range.max);
+                    if (limits[0] > limits[1]) return FALSE;
+                } else if (operand instanceof SkillLevel) {
+                    if (skillLevel != null && skillLevel.skillLevel != ((SkillLevel) operand).skillLevel) return FALSE;
+                    skillLevel = (SkillLevel) operand;
+                } else if (operand instanceof Author) {
+                    if (author != null && !author.foldedUsername.equals(((Author) operand).foldedUsername))
+                        return FALSE;
+                    author = (Author) operand;
+                } else if (operand instanceof Categories) {
+                    CategoryExpression categoryExpression = ((Categories) operand).categoryExpression;
+                    categoryExpressions.put(categoryExpression.toString(), categoryExpression);
+                } else if (operand instanceof NotBlocked) {
+                    notBlocked = true;
+                } else if (operand instanceof Ids) {
+                    Ids ids = (Ids) operand;
+                    if (ids.excluded) {
+                        excludedRoutes.addAll(ids.routeIds);
+                    } else if (includedRoutes == null) {
+                        includedRoutes = new TreeSet<>(ids.routeIds);
+                    } else {
+                        includedRoutes.retainAll(ids.routeIds);
+                    }
+                } else if (operand != TRUE) {
+                    texts.put(operand.toString(), operand);
+                }
+            }
+
+            if (!categoryExpressions.isEmpty() && !new CategoryExpression.And(
+                    new ArrayList<>(categoryExpressions.values())).isSatisfiable(MAX_CHECKED_CATEGORY_NAMES))
+                return FALSE;
+
+            // Build the optimized conjunction. Excluded routes are redundant once only some routes can match
+
+            List<RoutePredicate> optimized = new ArrayList<>(texts.values());
+
+            for (Map.Entry<Attribute, int[]> range : ranges.entrySet())
+                if (range.getValue()[0] != Integer.MIN_VALUE || range.getValue()[1] != Integer.MAX_VALUE)
+                    optimized.add(new Range(range.getKey(), range.getValue()[0], range.getValue()[1]));
+            if (skillLevel != null) optimized.add(skillLevel);
+            if (author != null) optimized.add(author);
+            for (CategoryExpression categoryExpression : categoryExpressions.values())
+                optimized.add(new Categories(categoryExpression));
+            if (notBlocked) optimized.add(NOT_BLOCKED);
+
+            if (includedRoutes != null) {
+                includedRoutes.removeAll(excludedRoutes);
+                if (includedRoutes.isEmpty()) return FALSE;
+                optimized.add(new Ids(includedRoutes, false));
+            } else if (!excludedRoutes.isEmpty()) {
+                optimized.add(new Ids(excludedRoutes, true));
+            }
+
+            if (optimized.isEmpty()) return TRUE;
+            if (optimized.size() == 1) return optimized.get(0);
+
+            optimized.sort(Comparator.comparing(RoutePredicate::toString));
+
+            return new And(optimized);
+        }
+
+        /**
+         * @return The operands of this conjunction and of any nested conjunction
+         */
+        private static List<RoutePredicate> flatten(List<RoutePredicate> operands) {
+            List<RoutePredicate> flattened = new ArrayList<>();
+
+            for (RoutePredicate operand : operands) {
+                if (operand instanceof And)
+                    flattened.addAll(flatten(((And) operand).operands));
+                else if (operand != null)
+                    flattened.add(operand);
+            }
+
+            return flattened;
+        }
+    }
+
+    /**
+     * @return A SQL string literal of a text
+     */
+    private static String quote(String text) {
+        return "'" + text.replace("\\", "\\\\").replace("'", "''") + "'";
+    }
+}
@@ -9,14 +9,56 @@ package routefilter;
 public class SQLRouteFilter implements RouteFilter<String> {
 
     String query; // Stores the equivalent SQL query
+    String fingerprint; // Identifies the filter regardless of the order its clauses were added in
+    String columns = "*"; // Columns retrieved by the query
+    boolean unsatisfiable; // If the criteria of the filter contradict each other, so it can't retrieve any route
 
     /**
-     * Get a SQL route filter based of the specified sql query
+     * Get a SQL route filter based of the specified sql query. Its fingerprint will be the query itself
      *
      * @param query SQL query that represents the filter
      */
     public SQLRouteFilter(String query) {
+        this(query, query);
+    }
+
+    /**
+     * Get a SQL route filter based of the specified sql query, identified by a canonical fingerprint
+     *
+     * @param query       SQL query that represents the filter
+     * @param fingerprint Canonical form of the filter. Filters retrieving the same routes in the same order should
+     *                    have the same fingerprint
+     */
+    public SQLRouteFilter(String query, String fingerprint) {
         this.query = query;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Get a SQL route filter based of the specified sql query, identified by a canonical fingerprint, which retrieves
+     * only some columns
+     *
+     * @param query       SQL query that represents the filter
+     * @param fingerprint Canonical form of the filter. It doesn't depend on the retrieved columns
+     * @param columns     Comma separated columns retrieved by the query
+     */
+    public SQLRouteFilter(String query, String fingerprint, String columns) {
+        this(query, fingerprint);
+        this.columns = columns;
+    }
+
+    /**
+     * Get a SQL route filter based of the specified sql query, identified by a canonical fingerprint, which retrieves
+     * only some columns and may be known to retrieve no route at all
+     *
+     * @param query         SQL query that represents the filter
+     * @param fingerprint   Canonical form of the filter. It doesn't depend on the retrieved columns
+     * @param columns       Comma separated columns retrieved by the query
+     * @param unsatisfiable If the criteria of the filter contradict each other, so it can't retrieve any route
+     */
+    public SQLRouteFilter(String query, String fingerprint, String columns, boolean unsatisfiable) {
+        this(query, fingerprint, columns);
+        this.unsatisfiable = unsatisfiable;
     }
 
     /**
@@ -35,6 +77,31 @@ public class SQLRouteFilter implements RouteFilter<String> {
     @Override
     public void updateUnderlyingRepresentation(String newRepresentation) {
         query = newRepresentation;
+        fingerprint = newRepresentation;
+        unsatisfiable = false;
+    }
+
+    /**
+     * @return The canonical fingerprint of the filter, which doesn't depend on the order of its clauses. Suitable to
+     * identify the results of the filter
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return Comma separated columns retrieved by the query, or {@code *} if it retrieves all of them
+     */
+    public String getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return If the criteria of the filter contradict each other, so there's no need to execute the query to know it
+     * retrieves no route
+     */
+    public boolean isUnsatisfiable() {
+        return unsatisfiable;
     }
 
     /**
@@ -2,28 +2,31 @@ package routefilter;
 
 import model.Route;
 
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Stream;
+import java.util.stream.Collectors;
 
 /**
- * Builder of SQL route filters. To obtain the built SQL filter call {@link #buildFilter}
+ * Builder of SQL route filters. To obtain the built SQL filter call {@link #buildFilter}. The criteria are accumulated
+ * as a conjunction of typed predicates, which is optimized before being compiled to SQL, so a filter whose criteria
+ * contradict each other is known to retrieve no route without querying the database
  *
  * @see SQLRouteFilter
  * @see RouteFilterBuilder
  */
 public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter> {
 
-    Set<String> whereConstraints;
-    Set<Long> excludedRoutes;
+    List<RoutePredicate> predicates;
     String orderConstraint;
     int limitConstraint;
+    Set<RouteField> projection; // Null to retrieve every column
 
     public SQLRouteFilterBuilder() {
-        whereConstraints = new HashSet<>();
-        excludedRoutes = new HashSet<>();
+        predicates = new ArrayList<>();
         limitConstraint = -1; // No constraint
     }
 
@@ -33,12 +36,12 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
      * @param literalString Literal search string to match
      * @return This builder
      */
+    @Override
     public SQLRouteFilterBuilder titleOrDescriptionLiterallyContains(String literalString) {
         // Check that the search string contains some text
         if (literalString == null || literalString.trim().isEmpty()) return this;
 
-        whereConstraints.add(String.format(
-                "instr(title, '%s') OR instr(description, '%s')", literalString, literalString));
+        addPredicate(RoutePredicate.text(Collections.singletonList(literalString)));
 
         return this;
     }
@@ -49,29 +52,14 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
      * @param keywords List of keywords to match
      * @return This builder
      */
+    @Override
     public SQLRouteFilterBuilder titleOrDescriptionContains(List<String> keywords) {
 
         // Check at least one keyword was provided
 
         if (keywords == null || keywords.size() == 0) return this;
 
-        StringBuilder partialQuery = new StringBuilder();
-        Iterator<String> keywordsIt = keywords.iterator();
-        String currentKeyword;
-
-        // Add clause to search for each keyword either in the title, in the description or both
-
-        partialQuery.append("(");
-        while (keywordsIt.hasNext()) {
-            currentKeyword = keywordsIt.next();
-            partialQuery.append(String.format("instr(title, '%s') OR instr(description, '%s')", currentKeyword, currentKeyword));
-
-            if (keywordsIt.hasNext())
-                partialQuery.append(" OR ");
-        }
-        partialQuery.append(")");
-
-        whereConstraints.add(partialQuery.toString());
+        addPredicate(RoutePredicate.text(keywords));
 
         return this;
     }
@@ -87,14 +75,14 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
      * @param delta    Value to be subtracted and added to the baseline to create a searchable distance range
      * @return This builder
      */
+    @Override
     public SQLRouteFilterBuilder ofDistanceDelta(int baseline, int delta) {
 
         // Check that the baseline is above 0
 
         if (baseline > 0) {
-            whereConstraints.add(
-                    String.format("distance BETWEEN %d - %d AND %d + %d",
-                            baseline, Math.abs(delta), baseline, Math.abs(delta)));
+            predicates.add(RoutePredicate.between(RoutePredicate.Attribute.DISTANCE,
+                    baseline - Math.abs(delta), baseline + Math.abs(delta)));
         }
 
         return this;
@@ -109,40 +97,75 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
      * @param upperLimit Upper distance limit. -1 to make it unbound
      * @return This builder
      */
+    @Override
     public SQLRouteFilterBuilder ofDistanceRange(int lowerLimit, int upperLimit) {
+        addPredicate(RoutePredicate.range(RoutePredicate.Attribute.DISTANCE, lowerLimit, upperLimit));
+        return this;
+    }
 
-        // Check whether the range is bounded or unbounded, and from which bound
+    /**
+     * Searches for routes withing the duration range given by [lowerLimit, upperLimit], both ends included.
+     * Both limits should be positive integers, but if a value of -1 is supplied to a limit then that end is unbounded
+     *
+     * @param lowerLimit Lower duration limit, in minutes. -1 to make it unbound
+     * @param upperLimit Upper duration limit, in minutes. -1 to make it unbound
+     * @return This builder
+     */
+    @Override
+    public SQLRouteFilterBuilder ofDurationRange(int lowerLimit, int upperLimit) {
+        addPredicate(RoutePredicate.range(RoutePredicate.Attribute.DURATION, lowerLimit, upperLimit));
+        return this;
+    }
 
-        if (lowerLimit > 0 && lowerLimit <= upperLimit) { // Range filter
-            whereConstraints.add(String.format("distance BETWEEN %d AND %d", lowerLimit, upperLimit));
-        } else if (lowerLimit > 0 && upperLimit <= 0) { // Unbounded at the upper limit
-            whereConstraints.add(String.format("distance >= %d", lowerLimit));
-        } else if (lowerLimit <= 0 && upperLimit > 0) { // Unbounded at the lower limit
-            whereConstraints.add(String.format("distance <= %d", upperLimit));
-        }
+    /**
+     * Searches for routes withing the elevation range given by [lowerLimit, upperLimit], both ends included.
+     * Both limits should be positive integers, but if a value of -1 is supplied to a limit then that end is unbounded
+     *
+     * @param lowerLimit Lower elevation limit, in meters. -1 to make it unbound
+     * @param upperLimit Upper elevation limit, in meters. -1 to make it unbound
+     * @return This builder
+     */
+    @Override
+    public SQLRouteFilterBuilder ofElevationRange(int lowerLimit, int upperLimit) {
+        addPredicate(RoutePredicate.range(RoutePredicate.Attribute.ELEVATION, lowerLimit, upperLimit));
+        return this;
+    }
 
+    /**
+     * Searches for routes withing the average grade range given by [lowerLimit, upperLimit], both ends included.
+     * Both limits should be positive numbers, but if a value of -1 is supplied to a limit then that end is unbounded
+     *
+     * @param lowerLimit Lower average grade limit, as a percentage. -1 to make it unbound
+     * @param upperLimit Upper average grade limit, as a percentage. -1 to make it unbound
+     * @return This builder
+     */
+    @Override
+    public SQLRouteFilterBuilder ofGradeRange(double lowerLimit, double upperLimit) {
+        addPredicate(RoutePredicate.range(RoutePredicate.Attribute.GRADE,
+                lowerLimit > 0 ? (int) Math.round(lowerLimit * 100) : -1,
+                upperLimit > 0 ? (int) Math.round(upperLimit * 100) : -1));
         return this;
     }
 
+    /**
+     * Add a predicate to the conjunction of the filter
+     *
+     * @param predicate Predicate. If null the criteria didn't constrain anything and it's ignored
+     */
+    private void addPredicate(RoutePredicate predicate) {
+        if (predicate != null) predicates.add(predicate);
+    }
+
     /**
      * Search for routes with a specific skill level
      *
      * @param skillLevel Desired skill level
      * @return This builder
      */
+    @Override
     public SQLRouteFilterBuilder ofSkillLevel(RouteSkillLevel skillLevel) {
 
-        switch (skillLevel) {
-            case EASY:
-                whereConstraints.add("skill_level = 'facil'");
-                break;
-            case MEDIUM:
-                whereConstraints.add("skill_level = 'media'");
-                break;
-            case HARD:
-                whereConstraints.add("skill_level = 'dificil'");
-                break;
-        }
+        addPredicate(RoutePredicate.skillLevel(skillLevel));
 
         return this;
     }
@@ -153,19 +176,22 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
      * @param routeCategories Route category names
      * @return This builder
      */
+    @Override
     public SQLRouteFilterBuilder ofCategories(String... routeCategories) {
-        StringBuilder clause = new StringBuilder();
-        Iterator<String> categoriesIt = Stream.of(routeCategories).iterator();
-
-        // Build WHERE clause based on the number of route categories provided
+        return ofCategoryExpression(CategoryExpression.allOf(routeCategories));
+    }
 
-        while (categoriesIt.hasNext()) {
-            clause.append("categories LIKE '%").append(categoriesIt.next()).append("%'");
-            if (categoriesIt.hasNext())
-                clause.append(" AND ");
-        }
+    /**
+     * Search for routes whose categories match a category expression. Category names are matched exactly against the
+     * comma-separated category names kept denormalized in the routes table (see {@link CategoryExpression#toSQL()})
+     *
+     * @param categoryExpression Category expression
+     * @return This builder
+     */
+    @Override
+    public SQLRouteFilterBuilder ofCategoryExpression(CategoryExpression categoryExpression) {
 
-        if (clause.length() > 0) whereConstraints.add(clause.toString());
+        addPredicate(RoutePredicate.categories(categoryExpression));
 
         return this;
     }
@@ -176,8 +202,21 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
      * @param descending A true value indicates descending order, and a false value ascending order
      * @return This builder
      */
+    @Override
     public SQLRouteFilterBuilder orderByKudos(boolean descending) {
-        orderConstraint = "kudos " + (descending ? "DESC" : "");
+        return orderBy(SortSpec.by(SortSpec.Key.KUDOS, descending));
+    }
+
+    /**
+     * Set the ordering of the routes by several keys, each one breaking the ties of the previous ones. It replaces any
+     * previous ordering
+     *
+     * @param sortSpec Sort specification
+     * @return This builder
+     */
+    @Override
+    public SQLRouteFilterBuilder orderBy(SortSpec sortSpec) {
+        orderConstraint = sortSpec.toOrderBy();
         return this;
     }
 
@@ -187,8 +226,9 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
      * @param minimumKudos Minimum number of kudos
      * @return This builder
      */
+    @Override
     public SQLRouteFilterBuilder minimumKudos(int minimumKudos) {
-        whereConstraints.add("kudos >= " + minimumKudos);
+        predicates.add(RoutePredicate.between(RoutePredicate.Attribute.KUDOS, minimumKudos, Integer.MAX_VALUE));
         return this;
     }
 
@@ -197,8 +237,9 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
      *
      * @return This builder
      */
+    @Override
     public SQLRouteFilterBuilder hideBlockedRoutes() {
-        whereConstraints.add("blocked = 0");
+        predicates.add(RoutePredicate.notBlocked());
         return this;
     }
 
@@ -208,9 +249,10 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
      * @param username The username of the user
      * @return This builder
      */
+    @Override
     public SQLRouteFilterBuilder byUser(String username) {
 
-        whereConstraints.add("created_by_user = '" + username + "'");
+        predicates.add(RoutePredicate.author(username));
 
         return this;
     }
@@ -221,9 +263,10 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
      * @param routeIds A variable number route IDs, which will exclude those routes from any result
      * @return This filter
      */
+    @Override
     public SQLRouteFilterBuilder exclude(long... routeIds) {
 
-        // Add all ids to the exclusion set
+        List<Long> excludedRoutes = new ArrayList<>();
 
         for (Long routeId : routeIds) {
 
@@ -233,6 +276,24 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
                 excludedRoutes.add(routeId);
         }
 
+        if (!excludedRoutes.isEmpty())
+            predicates.add(RoutePredicate.excluding(excludedRoutes));
+
+        return this;
+    }
+
+    /**
+     * Search only among some routes, such as the ones found by a text search. Repeated calls search among the routes
+     * of every call. The IDs are sorted, so the same set of routes always gives the same constraint
+     *
+     * @param routeIds IDs of the routes that can be retrieved. If empty no route can be retrieved
+     * @return This builder
+     */
+    @Override
+    public SQLRouteFilterBuilder ofIds(Collection<Long> routeIds) {
+
+        predicates.add(RoutePredicate.ids(routeIds));
+
         return this;
     }
 
@@ -242,6 +303,7 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
      * @param limit Maximum number of routes
      * @return This builder
      */
+    @Override
     public SQLRouteFilterBuilder limit(int limit) {
 
         if (limit > 0) limitConstraint = limit;
@@ -250,40 +312,49 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
     }
 
     /**
-     * {@inheritDoc}
+     * Retrieve only the columns of some fields, so the database doesn't read (and send) the rest. The ID is always
+     * retrieved
+     *
+     * @param fields Fields to retrieve. If null or empty every column is retrieved
+     * @return This builder
      */
     @Override
-    public SQLRouteFilter buildFilter() {
-        StringBuilder sqlQuery = new StringBuilder("SELECT * FROM routes_expandedinfo");
-
-        Iterator<String> whereConstraintsIt = this.whereConstraints.iterator();
-        Iterator<Long> excludedRoutesIt = this.excludedRoutes.iterator();
-
-        // Add WHERE clauses
-
-        if (whereConstraintsIt.hasNext())
-            sqlQuery.append(" WHERE ");
+    public SQLRouteFilterBuilder project(Set<RouteField> fields) {
 
-        while (whereConstraintsIt.hasNext()) {
-            sqlQuery.append(whereConstraintsIt.next());
-            if (whereConstraintsIt.hasNext())
-                sqlQuery.append(" AND ");
+        if (fields == null || fields.isEmpty()) {
+            projection = null;
+        } else {
+            projection = EnumSet.copyOf(fields);
+            projection.add(RouteField.ID);
         }
 
-        // Exclude routes
+        return this;
+    }
 
-        if (excludedRoutes.size() > 0) {
-            // Add WHERE clause if there wasn't any previous one
-            sqlQuery.append(whereConstraints.size() == 0 ? " WHERE " : " AND ").append("id NOT IN (");
+    /**
+     * @return The optimized conjunction of the criteria added so far (see {@link RoutePredicate#optimize()})
+     */
+    public RoutePredicate getPredicate() {
+        return RoutePredicate.and(predicates).optimize();
+    }
 
-            while (excludedRoutesIt.hasNext()) {
-                sqlQuery.append(excludedRoutesIt.next());
-                if (excludedRoutesIt.hasNext())
-                    sqlQuery.append(", ");
-            }
+    /**
+     * Build the filter from the optimized conjunction of its criteria. If the criteria contradict each other the
+     * filter is flagged as unsatisfiable, so it's answered without querying the database
+     *
+     * @return The SQL filter
+     */
+    @Override
+    public SQLRouteFilter buildFilter() {
+        RoutePredicate predicate = getPredicate();
+        String columns = projection == null ? "*" :
+                projection.stream().map(RouteField::getColumn).collect(Collectors.joining(", "));
+        StringBuilder sqlQuery = new StringBuilder("SELECT " + columns + " FROM routes");
 
-            sqlQuery.append(")");
-        }
+        // Add WHERE clause
+
+        if (predicate != RoutePredicate.TRUE)
+            sqlQuery.append(" WHERE ").append(predicate.toSQL());
 
         // Add ORDER BY clause
 
@@ -297,7 +368,23 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
 
         // Return the built query
 
-        return new SQLRouteFilter(sqlQuery.toString() + ";");
+        return new SQLRouteFilter(sqlQuery.toString() + ";", fingerprint(predicate), columns,
+                predicate == RoutePredicate.FALSE);
+    }
+
+    /**
+     * Build the canonical fingerprint of the current filter. The key of the optimized predicate doesn't depend on the
+     * order the criteria were added in, and equivalent criteria (e.g. two minimum kudos, of which only the greatest
+     * one constrains anything) give the same key. The projection isn't part of it, as it doesn't change which routes
+     * are retrieved
+     *
+     * @param predicate Optimized predicate of the filter
+     * @return The fingerprint of the filter
+     */
+    private String fingerprint(RoutePredicate predicate) {
+        return "WHERE " + predicate +
+                " | ORDER BY " + (orderConstraint != null ? orderConstraint.trim() : "") +
+                " | LIMIT " + limitConstraint;
     }
 
     /**
@@ -305,9 +392,9 @@ public class SQLRouteFilterBuilder implements RouteFilterBuilder<SQLRouteFilter>
      */
     @Override
     public void clear() {
-        whereConstraints.clear();
-        excludedRoutes.clear();
+        predicates.clear();
         orderConstraint = "";
         limitConstraint = -1;
+        projection = null;
     }
 }
@@ -0,0 +1,161 @@
+package routefilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Typed multi-key sort specification of a route filter, such as "newest first, then most kudos". Keys are applied in
+ * order, each one breaking the ties of the previous ones. Every key is a plain column of the routes table, so the
+ * equivalent ORDER BY clause has no expressions the database would have to compute before sorting. Routes still tied
+ * after the last key are ordered by ascending route ID, both in the database and in memory.
+ * <p></p>
+ * Sort specifications are immutable, {@link #thenBy(Key, boolean)} returns a new one
+ */
+public final class SortSpec {
+
+    /**
+     * Enumeration of the route attributes routes can be sorted by. Each key knows its name in the API and its column.
+     * <p></p>
+     * Routes are sorted by creation date through their IDs: creation dates are set by the database when a route is
+     * inserted and never updated, so the auto-increment ID order is the creation date order. Unlike the creation
+     * dates, IDs never tie and are sorted the same way in the database and in the snapshots, whose rows are ordered
+     * by ID
+     */
+    public enum Key {
+        CREATION_DATE("fechaCreacion", ID_COLUMN),
+        DISTANCE("distancia", "distance"),
+        DURATION("duracion", "duration"),
+        ELEVATION("elevacion", "elevation"),
+        KUDOS("kudos", "kudos");
+
+        private final String apiName;
+        private final String column;
+
+        Key(String apiName, String column) {
+            this.apiName = apiName;
+            this.column = column;
+        }
+
+        /**
+         * @return Name of the column of the routes table this attribute is sorted by
+         */
+        public String getColumn() {
+            return column;
+        }
+    }
+
+    /**
+     * A key of a sort specification along with its direction
+     */
+    public static final class Order {
+        private final Key key;
+        private final boolean descending;
+
+        private Order(Key key, boolean descending) {
+            this.key = key;
+            this.descending = descending;
+        }
+
+        public Key getKey() {
+            return key;
+        }
+
+        public boolean isDescending() {
+            return descending;
+        }
+
+        @Override
+        public String toString() {
+            return key.column + (descending ? " DESC" : "");
+        }
+    }
+
+    private static final String ID_COLUMN = "id"; // Column of the route IDs, the last key of every ORDER BY clause
+
+    private final List<Order> orders;
+
+    private SortSpec(List<Order> orders) {
+        this.orders = Collections.unmodifiableList(orders);
+    }
+
+    /**
+     * @param key        First sort key
+     * @param descending A true value indicates descending order, and a false value ascending order
+     * @return A sort specification with a single key
+     */
+    public static SortSpec by(Key key, boolean descending) {
+        List<Order> orders = new ArrayList<>();
+        orders.add(new Order(key, descending));
+        return new SortSpec(orders);
+    }
+
+    /**
+     * @param key        Next sort key, to break the ties of the previous ones
+     * @param descending A true value indicates descending order, and a false value ascending order
+     * @return A copy of this specification with the key added at the end. If the key is already in this specification
+     * it can't break any tie, so this same specification is returned
+     */
+    public SortSpec thenBy(Key key, boolean descending) {
+        for (Order order : orders)
+            if (order.key == key) return this;
+
+        List<Order> newOrders = new ArrayList<>(orders);
+        newOrders.add(new Order(key, descending));
+        return new SortSpec(newOrders);
+    }
+
+    /**
+     * Parse a comma separated list of sort keys, each one prefixed by a minus sign to sort in descending order, as in
+     * {@code ordenarPor=-fechaCreacion,distancia}
+     *
+     * @param sortSpecSource Comma separated sort keys
+     * @return The sort specification, or null if no key was requested
+     * @throws IllegalArgumentException If a key isn't known
+     */
+    public static SortSpec parse(String sortSpecSource) {
+        if (sortSpecSource == null || sortSpecSource.trim().isEmpty()) return null;
+
+        SortSpec sortSpec = null;
+        for (String orderSource : sortSpecSource.split(",")) {
+            boolean descending = orderSource.trim().startsWith("-");
+            String keyName = descending ? orderSource.trim().substring(1) : orderSource.trim();
+
+            Key key = null;
+            for (Key candidate : Key.values())
+                if (candidate.apiName.equals(keyName)) key = candidate;
+
+            if (key == null) throw new IllegalArgumentException("Unknown sort key " + keyName);
+
+            sortSpec = sortSpec == null ? by(key, descending) : sortSpec.thenBy(key, descending);
+        }
+
+        return sortSpec;
+    }
+
+    /**
+     * @return The keys of this specification along with their directions, from the first to the last one
+     */
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    /**
+     * @return The equivalent ORDER BY clause, without the ORDER BY keywords, as in {@code kudos DESC, distance, id}.
+     * Unless some key already sorts by route ID, the route ID is added as the last key to break the remaining ties
+     */
+    public String toOrderBy() {
+        String orderBy = orders.stream().map(Order::toString).collect(Collectors.joining(", "));
+
+        for (Order order : orders)
+            if (order.key.column.equals(ID_COLUMN)) return orderBy;
+
+        return orderBy + ", " + ID_COLUMN;
+    }
+
+    @Override
+    public String toString() {
+        return toOrderBy();
+    }
+}
@@ -0,0 +1,491 @@
+package routefilter.index;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed bitmap of non-negative integers. The integers are split in chunks of 65536 values by their 16 highest
+ * bits, and each chunk is stored in the most compact container for its content: a sorted array of the 16 lowest bits
+ * while the chunk is sparse (up to {@value #ARRAY_CONTAINER_MAX} values), or a plain 65536 bit bitmap once it's dense.
+ * <p></p>
+ * Set operations ({@link #and}, {@link #or} and {@link #andNot}) work chunk by chunk and return a new bitmap, leaving
+ * both operands untouched
+ */
+public class CompressedBitmap {
+
+    static final int ARRAY_CONTAINER_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private char[] keys; // 16 highest bits of the values of each container, sorted
+    private Container[] containers;
+    private int size; // Number of containers in use
+
+    public CompressedBitmap() {
+        keys = new char[4];
+        containers = new Container[4];
+        size = 0;
+    }
+
+    /**
+     * @param values Values of the bitmap. All of them must be non-negative
+     * @return A new bitmap with the given values
+     */
+    public static CompressedBitmap of(int... values) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+
+        for (int value : values)
+            bitmap.add(value);
+
+        return bitmap;
+    }
+
+    /**
+     * Add a value to this bitmap
+     *
+     * @param value Value to add. It must be non-negative
+     * @throws IllegalArgumentException If the value is negative
+     */
+    public void add(int value) {
+        if (value < 0) throw new IllegalArgumentException("Compressed bitmaps only hold non-negative values");
+
+        char key = (char) (value >>> 16);
+        int position = Arrays.binarySearch(keys, 0, size, key);
+
+        if (position >= 0) {
+            containers[position] = containers[position].add((char) value);
+        } else {
+            insertContainer(-position - 1, key, new ArrayContainer().add((char) value));
+        }
+    }
+
+    /**
+     * @param value Value to look for
+     * @return If the bitmap contains the value
+     */
+    public boolean contains(int value) {
+        if (value < 0) return false;
+
+        int position = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+
+        return position >= 0 && containers[position].contains((char) value);
+    }
+
+    /**
+     * @return Number of values in this bitmap
+     */
+    public int cardinality() {
+        int cardinality = 0;
+
+        for (int i = 0; i < size; i++)
+            cardinality += containers[i].cardinality();
+
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param other Another bitmap
+     * @return A new bitmap with the values contained by both bitmaps
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) result.appendContainer(keys[i], container);
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param other Another bitmap
+     * @return A new bitmap with the values contained by any of the bitmaps
+     */
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+
+        while (i < size || j < other.size) {
+            if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+                result.appendContainer(keys[i], containers[i].copy());
+                i++;
+            } else if (i >= size || keys[i] > other.keys[j]) {
+                result.appendContainer(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.appendContainer(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param other Another bitmap
+     * @return A new bitmap with the values of this bitmap that aren't contained by the other one
+     */
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i])
+                j++;
+
+            if (j < other.size && other.keys[j] == keys[i]) {
+                Container container = containers[i].andNot(other.containers[j]);
+                if (container.cardinality() > 0) result.appendContainer(keys[i], container);
+            } else {
+                result.appendContainer(keys[i], containers[i].copy());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Apply an action to each value of this bitmap, in ascending order
+     *
+     * @param action Action to apply
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++)
+            containers[i].forEach(keys[i] << 16, action);
+    }
+
+    /**
+     * @return The values of this bitmap in ascending order
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int[] position = {0};
+
+        forEach(value -> values[position[0]++] = value);
+
+        return values;
+    }
+
+    private void insertContainer(int position, char key, Container container) {
+        ensureCapacity();
+
+        System.arraycopy(keys, position, keys, position + 1, size - position);
+        System.arraycopy(containers, position, containers, position + 1, size - position);
+        keys[position] = key;
+        containers[position] = container;
+        size++;
+    }
+
+    private void appendContainer(char key, Container container) {
+        ensureCapacity();
+
+        keys[size] = key;
+        containers[size] = container;
+        size++;
+    }
+
+    private void ensureCapacity() {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CompressedBitmap)) return false;
+
+        return Arrays.equals(toArray(), ((CompressedBitmap) o).toArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    /**
+     * Container of the 16 lowest bits of the values of a chunk
+     */
+    private interface Container {
+
+        Container add(char value);
+
+        boolean contains(char value);
+
+        int cardinality();
+
+        Container and(Container other);
+
+        Container or(Container other);
+
+        Container andNot(Container other);
+
+        Container copy();
+
+        void forEach(int base, IntConsumer action);
+    }
+
+    /**
+     * Container for sparse chunks, a sorted array of values
+     */
+    private static class ArrayContainer implements Container {
+
+        char[] values;
+        int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public Container add(char value) {
+            int position = Arrays.binarySearch(values, 0, cardinality, value);
+            if (position >= 0) return this;
+
+            // Switch to a bitmap container once the chunk is too dense to be stored efficiently as an array
+
+            if (cardinality == ARRAY_CONTAINER_MAX)
+                return toBitmapContainer().add(value);
+
+            position = -position - 1;
+            if (cardinality == values.length)
+                values = Arrays.copyOf(values, Math.max(4, Math.min(cardinality * 2, ARRAY_CONTAINER_MAX)));
+            System.arraycopy(values, position, values, position + 1, cardinality - position);
+            values[position] = value;
+            cardinality++;
+
+            return this;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public Container and(Container other) {
+            char[] result = new char[cardinality];
+            int resultCardinality = 0;
+
+            for (int i = 0; i < cardinality; i++)
+                if (other.contains(values[i])) result[resultCardinality++] = values[i];
+
+            return new ArrayContainer(result, resultCardinality);
+        }
+
+        @Override
+        public Container or(Container other) {
+            if (other instanceof BitmapContainer) return other.or(this);
+
+            ArrayContainer otherArray = (ArrayContainer) other;
+            char[] result = new char[cardinality + otherArray.cardinality];
+            int resultCardinality = 0;
+            int i = 0;
+            int j = 0;
+
+            // Merge both sorted arrays
+
+            while (i < cardinality || j < otherArray.cardinality) {
+                if (j >= otherArray.cardinality || (i < cardinality && values[i] < otherArray.values[j])) {
+                    result[resultCardinality++] = values[i++];
+                } else if (i >= cardinality || values[i] > otherArray.values[j]) {
+                    result[resultCardinality++] = otherArray.values[j++];
+                } else {
+                    result[resultCardinality++] = values[i++];
+                    j++;
+                }
+            }
+
+            ArrayContainer merged = new ArrayContainer(result, resultCardinality);
+
+            return resultCardinality > ARRAY_CONTAINER_MAX ? merged.toBitmapContainer() : merged;
+        }
+
+        @Override
+        public Container andNot(Container other) {
+            char[] result = new char[cardinality];
+            int resultCardinality = 0;
+
+            for (int i = 0; i < cardinality; i++)
+                if (!other.contains(values[i])) result[resultCardinality++] = values[i];
+
+            return new ArrayContainer(result, resultCardinality);
+        }
+
+        @Override
+        public Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+        }
+
+        @Override
+        public void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++)
+                action.accept(base | values[i]);
+        }
+
+        BitmapContainer toBitmapContainer() {
+            BitmapContainer bitmap = new BitmapContainer(new long[BITMAP_WORDS], 0);
+
+            for (int i = 0; i < cardinality; i++)
+                bitmap.add(values[i]);
+
+            return bitmap;
+        }
+    }
+
+    /**
+     * Container for dense chunks, a bitmap of 65536 bits
+     */
+    private static class BitmapContainer implements Container {
+
+        final long[] words;
+        int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public Container add(char value) {
+            long mask = 1L << value;
+
+            if ((words[value >>> 6] & mask) == 0) {
+                words[value >>> 6] |= mask;
+                cardinality++;
+            }
+
+            return this;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public Container and(Container other) {
+            if (other instanceof ArrayContainer) return other.and(this);
+
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[BITMAP_WORDS];
+            for (int i = 0; i < BITMAP_WORDS; i++)
+                result[i] = words[i] & otherWords[i];
+
+            return fromWords(result);
+        }
+
+        @Override
+        public Container or(Container other) {
+            long[] result = Arrays.copyOf(words, BITMAP_WORDS);
+
+            if (other instanceof ArrayContainer) {
+                ArrayContainer otherArray = (ArrayContainer) other;
+                for (int i = 0; i < otherArray.cardinality; i++)
+                    result[otherArray.values[i] >>> 6] |= 1L << otherArray.values[i];
+            } else {
+                long[] otherWords = ((BitmapContainer) other).words;
+                for (int i = 0; i < BITMAP_WORDS; i++)
+                    result[i] |= otherWords[i];
+            }
+
+            return new BitmapContainer(result, countBits(result));
+        }
+
+        @Override
+        public Container andNot(Container other) {
+            long[] result = Arrays.copyOf(words, BITMAP_WORDS);
+
+            if (other instanceof ArrayContainer) {
+                ArrayContainer otherArray = (ArrayContainer) other;
+                for (int i = 0; i < otherArray.cardinality; i++)
+                    result[otherArray.values[i] >>> 6] &= ~(1L << otherArray.values[i]);
+            } else {
+                long[] otherWords = ((BitmapContainer) other).words;
+                for (int i = 0; i < BITMAP_WORDS; i++)
+                    result[i] &= ~otherWords[i];
+            }
+
+            return fromWords(result);
+        }
+
+        @Override
+        public Container copy() {
+            return new BitmapContainer(Arrays.copyOf(words, BITMAP_WORDS), cardinality);
+        }
+
+        @Override
+        public void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(base | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        /**
+         * @return A container with the given bits, switching back to an array container if they are sparse
+         */
+        private static Container fromWords(long[] words) {
+            int cardinality = countBits(words);
+
+            if (cardinality > ARRAY_CONTAINER_MAX)
+                return new BitmapContainer(words, cardinality);
+
+            char[] values = new char[cardinality];
+            int position = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[position++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+
+            return new ArrayContainer(values, cardinality);
+        }
+
+        private static int countBits(long[] words) {
+            int count = 0;
+
+            for (long word : words)
+                count += Long.bitCount(word);
+
+            return count;
+        }
+    }
+}
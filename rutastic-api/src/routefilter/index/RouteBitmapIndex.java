@@ -0,0 +1,123 @@
+package routefilter.index;
+
+import model.Route;
+import model.RouteCategory;
+import model.RouteToCategoriesMapping;
+import routefilter.RouteSkillLevel;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable bitmap index of the route catalog. It holds a compressed bitmap of route IDs for each route category,
+ * built from the route to categories mappings, for each skill level and for the blocked routes. Filters over these
+ * attributes are answered by intersecting, joining and subtracting bitmaps. The bitmaps returned by this index are
+ * shared, so they must not be modified
+ *
+ * @see CompressedBitmap
+ * @see routefilter.CategoryExpression
+ */
+public class RouteBitmapIndex {
+
+    private final CompressedBitmap all;
+    private final CompressedBitmap blocked;
+    private final Map<String, CompressedBitmap> byCategory;
+    private final Map<RouteSkillLevel, CompressedBitmap> bySkillLevel;
+
+    private RouteBitmapIndex(CompressedBitmap all, CompressedBitmap blocked, Map<String, CompressedBitmap> byCategory,
+                             Map<RouteSkillLevel, CompressedBitmap> bySkillLevel) {
+        this.all = all;
+        this.blocked = blocked;
+        this.byCategory = Collections.unmodifiableMap(byCategory);
+        this.bySkillLevel = Collections.unmodifiableMap(bySkillLevel);
+    }
+
+    /**
+     * Build a bitmap index
+     *
+     * @param routes     Routes of the catalog
+     * @param mappings   Route to categories mappings
+     * @param categories Route categories, to resolve the category names of the mappings
+     * @return The built index
+     * @throws IllegalArgumentException If a route ID doesn't fit in a bitmap
+     */
+    public static RouteBitmapIndex build(List<Route> routes, List<RouteToCategoriesMapping> mappings,
+                                         List<RouteCategory> categories) {
+        CompressedBitmap all = new CompressedBitmap();
+        CompressedBitmap blocked = new CompressedBitmap();
+        Map<String, CompressedBitmap> byCategory = new HashMap<>();
+        Map<RouteSkillLevel, CompressedBitmap> bySkillLevel = new EnumMap<>(RouteSkillLevel.class);
+        Map<Long, String> categoryNames = new HashMap<>();
+
+        for (Route route : routes) {
+            int routeKey = toKey(route.getId());
+
+            all.add(routeKey);
+            if (route.isBlocked()) blocked.add(routeKey);
+            bySkillLevel.computeIfAbsent(RouteSkillLevel.parseSkillLevelFromString(route.getSkillLevel()),
+                    skillLevel -> new CompressedBitmap()).add(routeKey);
+        }
+
+        for (RouteCategory category : categories) {
+            categoryNames.put(category.getId(), category.getName());
+            byCategory.put(category.getName(), new CompressedBitmap());
+        }
+
+        // Only index mappings of known routes and categories, so NOT expressions stay within the catalog
+
+        for (RouteToCategoriesMapping mapping : mappings) {
+            String categoryName = categoryNames.get(mapping.getCategory());
+
+            if (categoryName != null && Route.validateID(mapping.getRoute()) && mapping.getRoute() <= Integer.MAX_VALUE
+                    && all.contains((int) mapping.getRoute()))
+                byCategory.get(categoryName).add((int) mapping.getRoute());
+        }
+
+        return new RouteBitmapIndex(all, blocked, byCategory, bySkillLevel);
+    }
+
+    /**
+     * @param routeId Route ID
+     * @return Bitmap key of the route
+     * @throws IllegalArgumentException If the route ID doesn't fit in a bitmap
+     */
+    private static int toKey(long routeId) {
+        if (routeId < 0 || routeId > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Route ID (" + routeId + ") out of the range of the bitmap index");
+
+        return (int) routeId;
+    }
+
+    /**
+     * @return IDs of every route of the catalog
+     */
+    public CompressedBitmap all() {
+        return all;
+    }
+
+    /**
+     * @return IDs of the blocked routes
+     */
+    public CompressedBitmap blocked() {
+        return blocked;
+    }
+
+    /**
+     * @param categoryName Route category name
+     * @return IDs of the routes of the category. Empty if the category doesn't exist
+     */
+    public CompressedBitmap ofCategory(String categoryName) {
+        return byCategory.getOrDefault(categoryName, new CompressedBitmap());
+    }
+
+    /**
+     * @param skillLevel Route skill level
+     * @return IDs of the routes of the skill level
+     */
+    public CompressedBitmap ofSkillLevel(RouteSkillLevel skillLevel) {
+        return bySkillLevel.getOrDefault(skillLevel, new CompressedBitmap());
+    }
+}
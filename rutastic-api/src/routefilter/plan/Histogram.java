@@ -0,0 +1,67 @@
+package routefilter.plan;
+
+/**
+ * Equi-depth histogram of the values of a numeric route attribute. Each bucket holds about the same number of routes,
+ * so ranges over crowded values are estimated with finer buckets than ranges over sparse ones. Values are assumed to be
+ * spread evenly within a bucket
+ */
+class Histogram {
+
+    private final int[] lowerBounds; // Lowest value of each bucket
+    private final int[] upperBounds; // Highest value of each bucket
+    private final int[] counts; // Number of values of each bucket
+    private final int size;
+
+    /**
+     * Build the histogram of some values
+     *
+     * @param sortedValues Values, in ascending order
+     * @param maxBuckets   Maximum number of buckets
+     */
+    Histogram(int[] sortedValues, int maxBuckets) {
+        int buckets = Math.min(maxBuckets, sortedValues.length);
+
+        this.size = sortedValues.length;
+        this.lowerBounds = new int[buckets];
+        this.upperBounds = new int[buckets];
+        this.counts = new int[buckets];
+
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int start = (int) ((long) bucket * size / buckets);
+            int end = (int) ((long) (bucket + 1) * size / buckets);
+
+            lowerBounds[bucket] = sortedValues[start];
+            upperBounds[bucket] = sortedValues[end - 1];
+            counts[bucket] = end - start;
+        }
+    }
+
+    /**
+     * Estimate the fraction of the values within a range
+     *
+     * @param min Minimum value, included. {@link Integer#MIN_VALUE} if unbounded
+     * @param max Maximum value, included. {@link Integer#MAX_VALUE} if unbounded
+     * @return Estimated fraction of the values within the range, from 0 to 1
+     */
+    double selectivity(int min, int max) {
+        if (size == 0 || min > max) return 0;
+
+        double matching = 0;
+
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            int lowerBound = lowerBounds[bucket];
+            int upperBound = upperBounds[bucket];
+
+            if (max < lowerBound || min > upperBound) continue;
+
+            if (min <= lowerBound && upperBound <= max) {
+                matching += counts[bucket];
+            } else { // The range covers part of the bucket
+                double covered = (double) Math.min(max, upperBound) - Math.max(min, lowerBound) + 1;
+                matching += counts[bucket] * covered / ((double) upperBound - lowerBound + 1);
+            }
+        }
+
+        return matching / size;
+    }
+}
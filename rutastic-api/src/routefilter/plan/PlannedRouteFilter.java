@@ -0,0 +1,73 @@
+package routefilter.plan;
+
+import routefilter.RouteFilter;
+import routefilter.SQLRouteFilter;
+
+/**
+ * Route filter along with its execution plan. The internal representation of the filter is the filter of the backend
+ * chosen by the plan, either an in-memory or a SQL route filter. The equivalent SQL route filter is kept as well, to
+ * fall back to the database if the route catalog snapshot stops being available. Filters rejected by
+ * {@link RouteFilterGuard} have neither
+ *
+ * @see RouteFilterPlan
+ * @see PlannedRouteFilterBuilder
+ */
+public class PlannedRouteFilter implements RouteFilter<RouteFilter<?>> {
+
+    RouteFilter<?> routeFilter; // Filter of the chosen backend
+    final RouteFilterPlan plan;
+    final SQLRouteFilter sqlRouteFilter;
+
+    /**
+     * Get a planned route filter
+     *
+     * @param routeFilter    Filter of the backend chosen by the plan
+     * @param plan           Execution plan
+     * @param sqlRouteFilter Equivalent SQL route filter
+     */
+    public PlannedRouteFilter(RouteFilter<?> routeFilter, RouteFilterPlan plan, SQLRouteFilter sqlRouteFilter) {
+        this.routeFilter = routeFilter;
+        this.plan = plan;
+        this.sqlRouteFilter = sqlRouteFilter;
+    }
+
+    /**
+     * @return The filter of the backend chosen by the plan
+     */
+    @Override
+    public RouteFilter<?> consume() {
+        return routeFilter;
+    }
+
+    /**
+     * Update the filter of the chosen backend
+     *
+     * @param newRepresentation New route filter
+     */
+    @Override
+    public void updateUnderlyingRepresentation(RouteFilter<?> newRepresentation) {
+        routeFilter = newRepresentation;
+    }
+
+    /**
+     * @return Execution plan of the filter
+     */
+    public RouteFilterPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * @return The equivalent SQL route filter, whichever backend the plan chose
+     */
+    public SQLRouteFilter getSQLRouteFilter() {
+        return sqlRouteFilter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isValid() {
+        return routeFilter != null && routeFilter.isValid();
+    }
+}
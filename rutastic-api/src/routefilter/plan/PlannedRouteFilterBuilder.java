@@ -0,0 +1,284 @@
+package routefilter.plan;
+
+import routefilter.CategoryExpression;
+import routefilter.InMemoryRouteFilterBuilder;
+import routefilter.RouteField;
+import routefilter.RouteFilter;
+import routefilter.RouteFilterBuilder;
+import routefilter.RoutePredicate;
+import routefilter.RouteSkillLevel;
+import routefilter.SQLRouteFilter;
+import routefilter.SQLRouteFilterBuilder;
+import routefilter.SortSpec;
+import routefilter.snapshot.RouteCatalogSnapshot;
+import routefilter.text.RouteTextIndex;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Builder of planned route filters. To obtain the built filter call {@link #buildFilter}. The criteria are added both
+ * to a SQL and, if there's a route catalog snapshot, to an in-memory route filter builder. When the filter is built
+ * the {@link RouteFilterPlanner} chooses the cheapest backend, and the filter of that backend is the one built
+ *
+ * @see PlannedRouteFilter
+ * @see RouteFilterBuilder
+ */
+public class PlannedRouteFilterBuilder implements RouteFilterBuilder<PlannedRouteFilter> {
+
+    private static final Logger logger = Logger.getLogger(PlannedRouteFilterBuilder.class.getName());
+
+    private final RouteCatalogSnapshot snapshot;
+    private final SQLRouteFilterBuilder sqlRouteFilterBuilder;
+    private final InMemoryRouteFilterBuilder inMemoryRouteFilterBuilder; // Null if there's no snapshot
+    private String searchText;
+    private RouteTextIndex textIndex;
+    private int limit;
+
+    /**
+     * Get a builder of planned route filters
+     *
+     * @param snapshot Route catalog snapshot the filters can run against, or null if they can only run against the
+     *                 database
+     */
+    public PlannedRouteFilterBuilder(RouteCatalogSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.sqlRouteFilterBuilder = new SQLRouteFilterBuilder();
+        this.inMemoryRouteFilterBuilder = snapshot != null ? new InMemoryRouteFilterBuilder() : null;
+        this.limit = -1;
+    }
+
+    /**
+     * Search routes by text. A list of keywords separated by semicolons matches routes with any of the keywords, any
+     * other text matches routes with every one of its words. The search goes through the text index if it's available,
+     * and then the routes found are in {@link RouteFilterPlan#getTextHits()} along with their relevance scores.
+     * Otherwise the keywords, or the text as a literal sentence, are searched in the title and description
+     *
+     * @param searchText Text to search
+     * @param textIndex  Text index, or null if it isn't available
+     * @return This builder
+     */
+    public PlannedRouteFilterBuilder searchText(String searchText, RouteTextIndex textIndex) {
+        if (searchText == null || searchText.trim().isEmpty()) return this;
+
+        this.searchText = searchText;
+        this.textIndex = textIndex;
+
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder titleOrDescriptionLiterallyContains(String literalString) {
+        sqlRouteFilterBuilder.titleOrDescriptionLiterallyContains(literalString);
+        if (inMemoryRouteFilterBuilder != null)
+            inMemoryRouteFilterBuilder.titleOrDescriptionLiterallyContains(literalString);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder titleOrDescriptionContains(List<String> keywords) {
+        sqlRouteFilterBuilder.titleOrDescriptionContains(keywords);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.titleOrDescriptionContains(keywords);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder ofDistanceDelta(int baseline, int delta) {
+        sqlRouteFilterBuilder.ofDistanceDelta(baseline, delta);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.ofDistanceDelta(baseline, delta);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder ofDistanceRange(int lowerLimit, int upperLimit) {
+        sqlRouteFilterBuilder.ofDistanceRange(lowerLimit, upperLimit);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.ofDistanceRange(lowerLimit, upperLimit);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder ofDurationRange(int lowerLimit, int upperLimit) {
+        sqlRouteFilterBuilder.ofDurationRange(lowerLimit, upperLimit);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.ofDurationRange(lowerLimit, upperLimit);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder ofElevationRange(int lowerLimit, int upperLimit) {
+        sqlRouteFilterBuilder.ofElevationRange(lowerLimit, upperLimit);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.ofElevationRange(lowerLimit, upperLimit);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder ofGradeRange(double lowerLimit, double upperLimit) {
+        sqlRouteFilterBuilder.ofGradeRange(lowerLimit, upperLimit);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.ofGradeRange(lowerLimit, upperLimit);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder ofSkillLevel(RouteSkillLevel skillLevel) {
+        sqlRouteFilterBuilder.ofSkillLevel(skillLevel);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.ofSkillLevel(skillLevel);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder ofCategories(String... routeCategories) {
+        sqlRouteFilterBuilder.ofCategories(routeCategories);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.ofCategories(routeCategories);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder ofCategoryExpression(CategoryExpression categoryExpression) {
+        sqlRouteFilterBuilder.ofCategoryExpression(categoryExpression);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.ofCategoryExpression(categoryExpression);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder orderByKudos(boolean descending) {
+        sqlRouteFilterBuilder.orderByKudos(descending);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.orderByKudos(descending);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder orderBy(SortSpec sortSpec) {
+        sqlRouteFilterBuilder.orderBy(sortSpec);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.orderBy(sortSpec);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder minimumKudos(int minimumKudos) {
+        sqlRouteFilterBuilder.minimumKudos(minimumKudos);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.minimumKudos(minimumKudos);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder hideBlockedRoutes() {
+        sqlRouteFilterBuilder.hideBlockedRoutes();
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.hideBlockedRoutes();
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder byUser(String username) {
+        sqlRouteFilterBuilder.byUser(username);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.byUser(username);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder exclude(long... routeIds) {
+        sqlRouteFilterBuilder.exclude(routeIds);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.exclude(routeIds);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder ofIds(Collection<Long> routeIds) {
+        sqlRouteFilterBuilder.ofIds(routeIds);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.ofIds(routeIds);
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder limit(int limit) {
+        sqlRouteFilterBuilder.limit(limit);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.limit(limit);
+        if (limit > 0) this.limit = limit;
+        return this;
+    }
+
+    @Override
+    public PlannedRouteFilterBuilder project(Set<RouteField> fields) {
+        sqlRouteFilterBuilder.project(fields);
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.project(fields);
+        return this;
+    }
+
+    /**
+     * Review, plan and build the filter of the chosen backend. The filter is first reviewed by
+     * {@link RouteFilterGuard}, which may search fewer keywords, force a limit or reject the filter altogether.
+     * Rejected filters aren't built.
+     * The text search, if any, is resolved as the plan says: the routes found by the text index are added as the only
+     * routes that can be retrieved, or else the text is added as a criteria of the filter
+     *
+     * @return The planned route filter
+     */
+    @Override
+    public PlannedRouteFilter buildFilter() {
+        RoutePredicate predicate = sqlRouteFilterBuilder.getPredicate();
+
+        // Let the guard downgrade the filter if it's too expensive: search fewer keywords or force a limit
+
+        boolean keywordList = searchText != null && searchText.contains(";");
+        List<String> keywords = searchText == null ? Collections.emptyList() :
+                keywordList ? Arrays.asList(searchText.split(";")) : Collections.singletonList(searchText);
+        RouteFilterGuard.Review review = RouteFilterGuard.get().review(keywords, textIndex != null, predicate, limit);
+
+        if (keywordList) // Keep the trailing semicolon so a single keyword is still a list of keywords
+            searchText = review.getKeywords().isEmpty() ? null : String.join(";", review.getKeywords()) + ";";
+        if (review.getForcedLimit() > 0)
+            limit(review.getForcedLimit());
+
+        RouteFilterPlan plan = RouteFilterPlanner.get().plan(predicate, searchText, limit, snapshot, textIndex);
+        plan.setReview(review);
+
+        if (review.isRejected()) {
+            logger.info("Rejected route filter (" + plan + ")");
+            return new PlannedRouteFilter(null, plan, null);
+        }
+
+        if (plan.getTextAccess() == RouteFilterPlan.TextAccess.TEXT_INDEX) {
+            Map<Long, Double> textHits = searchText.contains(";") ?
+                    textIndex.search(searchText.replace(';', ' '), false) :
+                    textIndex.search(searchText, true);
+
+            plan.setTextHits(textHits);
+            ofIds(textHits.keySet());
+        } else if (plan.getTextAccess() == RouteFilterPlan.TextAccess.SCAN) {
+
+            // Check if we're dealing with a list of keywords or a literal sentence to match
+
+            if (searchText.contains(";")) {
+                titleOrDescriptionContains(Arrays.stream(searchText.split(";"))
+                        .map(String::trim)
+                        .collect(Collectors.toList()));
+            } else {
+                titleOrDescriptionLiterallyContains(searchText);
+            }
+        }
+
+        SQLRouteFilter sqlRouteFilter = sqlRouteFilterBuilder.buildFilter();
+        RouteFilter<?> routeFilter = plan.getBackend() == RouteFilterPlan.Backend.SNAPSHOT ?
+                inMemoryRouteFilterBuilder.buildFilter() : sqlRouteFilter;
+
+        logger.info("Planned route filter (" + plan + ")");
+
+        return new PlannedRouteFilter(routeFilter, plan, sqlRouteFilter);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        sqlRouteFilterBuilder.clear();
+        if (inMemoryRouteFilterBuilder != null) inMemoryRouteFilterBuilder.clear();
+        searchText = null;
+        textIndex = null;
+        limit = -1;
+    }
+}
@@ -0,0 +1,321 @@
+package routefilter.plan;
+
+import helper.TextUtils;
+import routefilter.RoutePredicate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Guards the database, and the in-memory structures, from route filters too expensive to run. Implemented through a
+ * Singleton instance, which you can get calling {@link #get()}.
+ * <p></p>
+ * A filter is priced in full scan equivalents: checking every row of the catalog once costs 1. Each keyword searched
+ * without the text index means looking for a pattern with a leading wildcard in the title and description of every
+ * candidate row, so it adds to the cost of each row. Without selective predicates (route IDs, an author or a range
+ * over an indexed attribute) every row is a candidate, and without a limit every candidate is read. Filters whose
+ * cost is over the budget, read from the environment variable {@value #COST_BUDGET_ENV}, are downgraded: keywords
+ * are always deduplicated, and truncated to the maximum number of keywords, read from the environment variable
+ * {@value #MAX_KEYWORDS_ENV}. Then a limit is forced, and if that isn't enough keywords are truncated until the cost
+ * fits. Keyword searches that still don't fit, or whose number of keywords is way beyond the maximum, are rejected.
+ * Every decision is counted
+ */
+public class RouteFilterGuard {
+
+    public static final String COST_BUDGET_ENV = "ROUTE_FILTER_COST_BUDGET";
+    public static final String MAX_KEYWORDS_ENV = "ROUTE_FILTER_MAX_KEYWORDS";
+    private static final double DEFAULT_COST_BUDGET = 24;
+    private static final int DEFAULT_MAX_KEYWORDS = 32;
+    private static final int REJECTED_KEYWORDS_FACTOR = 8; // Searches with this many times the maximum are rejected
+    private static final double SCANNED_KEYWORD_ROW = 2; // Two patterns (title and description) per row
+    private static final double INDEXED_KEYWORD = 0.05; // Reading the postings of a keyword from the text index
+    private static final double SELECTIVE_ROWS = 0.1; // Fraction of the rows left by a selective predicate
+    private static final double LIMITED_ROWS = 0.25; // Fraction of the candidates read when there's a limit
+    private static final int FORCED_LIMIT = 100;
+    private static final Logger logger = Logger.getLogger(RouteFilterGuard.class.getName());
+
+    /**
+     * Enumeration of the decisions the guard makes about a filter
+     */
+    public enum Decision {
+        ACCEPTED("aceptado"), // The filter runs as it is
+        DEDUPLICATED("deduplicado"), // Repeated or empty keywords were removed
+        TRUNCATED("truncado"), // Only the first keywords are searched
+        LIMITED("limitado"), // A limit was forced
+        REJECTED("rechazado"); // The filter mustn't run
+
+        private final String apiName;
+
+        Decision(String apiName) {
+            this.apiName = apiName;
+        }
+
+        public String getApiName() {
+            return apiName;
+        }
+    }
+
+    private final double costBudget;
+    private final int maxKeywords;
+    private final Map<Decision, AtomicLong> decisionCounts;
+
+    private RouteFilterGuard() {
+        costBudget = parseCostBudget(System.getenv(COST_BUDGET_ENV));
+        maxKeywords = parseMaxKeywords(System.getenv(MAX_KEYWORDS_ENV));
+        decisionCounts = new EnumMap<>(Decision.class);
+
+        for (Decision decision : Decision.values())
+            decisionCounts.put(decision, new AtomicLong());
+    }
+
+    /**
+     * @return The Singleton instance of the route filter guard
+     */
+    public static RouteFilterGuard get() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * @param costBudgetSource Cost budget in full scan equivalents
+     * @return Cost budget, or the default cost budget if it isn't a valid number
+     */
+    private static double parseCostBudget(String costBudgetSource) {
+        if (costBudgetSource != null && costBudgetSource.trim().matches("[0-9]+(\\.[0-9]+)?"))
+            return Double.parseDouble(costBudgetSource.trim());
+
+        return DEFAULT_COST_BUDGET;
+    }
+
+    /**
+     * @param maxKeywordsSource Maximum number of keywords
+     * @return Maximum number of keywords, or the default maximum if it isn't a valid positive number
+     */
+    private static int parseMaxKeywords(String maxKeywordsSource) {
+        if (maxKeywordsSource != null && maxKeywordsSource.trim().matches("0*[1-9][0-9]{0,5}"))
+            return Integer.parseInt(maxKeywordsSource.trim());
+
+        return DEFAULT_MAX_KEYWORDS;
+    }
+
+    /**
+     * Review a filter before it's planned
+     *
+     * @param keywords  Keywords to search, or an empty list if there's no text search. A literal sentence is a single
+     *                  keyword
+     * @param textIndex If the keywords are searched through the text index
+     * @param predicate Optimized predicate of the rest of the criteria
+     * @param limit     Maximum number of routes to retrieve, or a non-positive number if there's no limit
+     * @return The review of the filter, with the keywords and limit it should run with
+     */
+    public Review review(List<String> keywords, boolean textIndex, RoutePredicate predicate, int limit) {
+        Set<Decision> decisions = EnumSet.noneOf(Decision.class);
+        List<String> keptKeywords = deduplicate(keywords);
+        boolean selective = isSelective(predicate);
+        int forcedLimit = -1;
+
+        if (keptKeywords.size() < keywords.size())
+            decisions.add(Decision.DEDUPLICATED);
+
+        if (keptKeywords.size() > maxKeywords * REJECTED_KEYWORDS_FACTOR)
+            return record(new Review(keptKeywords, -1, cost(keptKeywords.size(), textIndex, selective, limit > 0),
+                    decisions, true));
+
+        if (keptKeywords.size() > maxKeywords) {
+            keptKeywords = keptKeywords.subList(0, maxKeywords);
+            decisions.add(Decision.TRUNCATED);
+        }
+
+        if (limit <= 0 && cost(keptKeywords.size(), textIndex, selective, false) > costBudget) {
+            forcedLimit = FORCED_LIMIT;
+            decisions.add(Decision.LIMITED);
+        }
+
+        boolean limited = limit > 0 || forcedLimit > 0;
+        int fittingKeywords = keptKeywords.size();
+
+        while (fittingKeywords > 1 && cost(fittingKeywords, textIndex, selective, limited) > costBudget)
+            fittingKeywords--;
+        if (fittingKeywords < keptKeywords.size()) {
+            keptKeywords = keptKeywords.subList(0, fittingKeywords);
+            decisions.add(Decision.TRUNCATED);
+        }
+
+        double cost = cost(keptKeywords.size(), textIndex, selective, limited);
+
+        // Only keyword searches are rejected, any other filter is at most as expensive as reading the whole catalog
+
+        return record(new Review(keptKeywords, forcedLimit, cost, decisions,
+                !keptKeywords.isEmpty() && cost > costBudget));
+    }
+
+    /**
+     * Price a filter
+     *
+     * @param keywords  Number of keywords to search
+     * @param textIndex If the keywords are searched through the text index
+     * @param selective If the filter has some selective predicate
+     * @param limited   If the filter has a limit
+     * @return Cost of the filter, in full scan equivalents
+     */
+    private double cost(int keywords, boolean textIndex, boolean selective, boolean limited) {
+        double rowCost = 1 + (textIndex ? 0 : keywords * SCANNED_KEYWORD_ROW);
+        double rows = (selective ? SELECTIVE_ROWS : 1) * (limited ? LIMITED_ROWS : 1);
+
+        return rows * rowCost + (textIndex ? keywords * INDEXED_KEYWORD : 0);
+    }
+
+    /**
+     * Trim the keywords and remove the empty ones and those repeated, comparing them case and accent insensitive as
+     * MySQL does
+     *
+     * @param keywords Keywords
+     * @return The distinct keywords, in their original order
+     */
+    private static List<String> deduplicate(List<String> keywords) {
+        List<String> distinctKeywords = new ArrayList<>();
+        Set<String> foldedKeywords = new HashSet<>();
+
+        for (String keyword : keywords) {
+            if (keyword == null || keyword.trim().isEmpty()) continue;
+            if (foldedKeywords.add(TextUtils.fold(keyword.trim()))) distinctKeywords.add(keyword.trim());
+        }
+
+        return distinctKeywords;
+    }
+
+    /**
+     * @param predicate Optimized predicate
+     * @return If the predicate narrows down the rows to check without reading the whole catalog: route IDs, an author
+     * or a range over an indexed attribute (duration, elevation and average grade)
+     */
+    private static boolean isSelective(RoutePredicate predicate) {
+        List<RoutePredicate> operands = predicate instanceof RoutePredicate.And ?
+                ((RoutePredicate.And) predicate).getOperands() : Collections.singletonList(predicate);
+
+        for (RoutePredicate operand : operands) {
+            if (operand == RoutePredicate.FALSE || operand instanceof RoutePredicate.Author ||
+                    (operand instanceof RoutePredicate.Ids && !((RoutePredicate.Ids) operand).isExcluded()))
+                return true;
+            if (operand instanceof RoutePredicate.Range &&
+                    ((RoutePredicate.Range) operand).getAttribute() != RoutePredicate.Attribute.DISTANCE &&
+                    ((RoutePredicate.Range) operand).getAttribute() != RoutePredicate.Attribute.KUDOS)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Count the decisions of a review and log them if the filter didn't run as it was
+     *
+     * @param review Review
+     * @return The same review
+     */
+    private Review record(Review review) {
+        for (Decision decision : review.getDecisions())
+            decisionCounts.get(decision).incrementAndGet();
+
+        if (!review.getDecisions().contains(Decision.ACCEPTED))
+            logger.warning("Guarded route filter (" + review + ") | " + this);
+
+        return review;
+    }
+
+    /**
+     * @param decision Decision
+     * @return Number of filters the guard has made that decision about
+     */
+    public long getCount(Decision decision) {
+        return decisionCounts.get(decision).get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+
+        for (Decision decision : Decision.values()) {
+            if (description.length() > 0) description.append(" | ");
+            description.append(decision.apiName).append(": ").append(getCount(decision));
+        }
+
+        return description.toString();
+    }
+
+    /**
+     * Outcome of the review of a filter
+     */
+    public static class Review {
+
+        private final List<String> keywords;
+        private final int forcedLimit;
+        private final double cost;
+        private final Set<Decision> decisions;
+
+        private Review(List<String> keywords, int forcedLimit, double cost, Set<Decision> decisions,
+                       boolean rejected) {
+            this.keywords = Collections.unmodifiableList(new ArrayList<>(keywords));
+            this.forcedLimit = forcedLimit;
+            this.cost = cost;
+            this.decisions = EnumSet.noneOf(Decision.class);
+            this.decisions.addAll(decisions);
+
+            if (rejected) this.decisions.add(Decision.REJECTED);
+            if (this.decisions.isEmpty()) this.decisions.add(Decision.ACCEPTED);
+        }
+
+        /**
+         * @return Keywords to search, deduplicated and truncated
+         */
+        public List<String> getKeywords() {
+            return keywords;
+        }
+
+        /**
+         * @return Limit forced on the filter, or -1 if the filter keeps its own limit
+         */
+        public int getForcedLimit() {
+            return forcedLimit;
+        }
+
+        /**
+         * @return Cost of the filter as it should run, in full scan equivalents
+         */
+        public double getCost() {
+            return cost;
+        }
+
+        public Set<Decision> getDecisions() {
+            return decisions;
+        }
+
+        public boolean isRejected() {
+            return decisions.contains(Decision.REJECTED);
+        }
+
+        @Override
+        public String toString() {
+            List<String> decisionNames = new ArrayList<>();
+            for (Decision decision : decisions)
+                decisionNames.add(decision.apiName);
+
+            return String.format(Locale.ROOT, "%s, %d keywords, cost %.2f%s", String.join(", ", decisionNames),
+                    keywords.size(), cost, forcedLimit > 0 ? ", limit " + forcedLimit : "");
+        }
+    }
+
+    /**
+     * Singleton holder for RouteFilterGuard class
+     */
+    private static class SingletonHolder {
+        private static final RouteFilterGuard INSTANCE = new RouteFilterGuard();
+    }
+}
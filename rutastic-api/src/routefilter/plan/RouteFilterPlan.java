@@ -0,0 +1,189 @@
+package routefilter.plan;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Execution plan of a route filter, as chosen by {@link RouteFilterPlanner}: the backend the filter runs against, how
+ * its text search is resolved, and the estimates the choice was based on. Once the filter is executed the plan also
+ * records the actual number of routes and the time it took, so estimates can be compared with the outcome
+ */
+public class RouteFilterPlan {
+
+    /**
+     * Enumeration of the backends a route filter can run against
+     */
+    public enum Backend {
+        SNAPSHOT("instantanea"), // Route catalog snapshot, in memory
+        MYSQL("mysql");
+
+        private final String apiName;
+
+        Backend(String apiName) {
+            this.apiName = apiName;
+        }
+
+        public String getApiName() {
+            return apiName;
+        }
+    }
+
+    /**
+     * Enumeration of the ways the text search of a route filter can be resolved
+     */
+    public enum TextAccess {
+        NONE("ninguno"), // The filter has no text search
+        TEXT_INDEX("indiceTexto"), // The text index finds the routes, and the backend only looks them up by ID
+        SCAN("recorrido"); // The backend checks the title and description of every candidate route
+
+        private final String apiName;
+
+        TextAccess(String apiName) {
+            this.apiName = apiName;
+        }
+
+        public String getApiName() {
+            return apiName;
+        }
+    }
+
+    private final Backend backend;
+    private final TextAccess textAccess;
+    private final double estimatedRows; // Negative if there were no statistics to estimate it
+    private final Map<Backend, Double> estimatedCosts;
+    private Map<Long, Double> textHits;
+    private RouteFilterGuard.Review review;
+    private long actualRows = -1;
+    private long executionMillis = -1;
+
+    RouteFilterPlan(Backend backend, TextAccess textAccess, double estimatedRows, Map<Backend, Double> estimatedCosts) {
+        this.backend = backend;
+        this.textAccess = textAccess;
+        this.estimatedRows = estimatedRows;
+        this.estimatedCosts = new EnumMap<>(Backend.class);
+        this.estimatedCosts.putAll(estimatedCosts);
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    public TextAccess getTextAccess() {
+        return textAccess;
+    }
+
+    /**
+     * @return Estimated number of routes the filter retrieves, or a negative number if it couldn't be estimated
+     */
+    public double getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    /**
+     * @return Estimated cost of running the filter against each available backend, in milliseconds
+     */
+    public Map<Backend, Double> getEstimatedCosts() {
+        return estimatedCosts;
+    }
+
+    /**
+     * @return The routes found by the text index with their relevance scores, or null if the text index wasn't used
+     */
+    public Map<Long, Double> getTextHits() {
+        return textHits;
+    }
+
+    void setTextHits(Map<Long, Double> textHits) {
+        this.textHits = textHits;
+    }
+
+    /**
+     * @return The review of the filter by {@link RouteFilterGuard}, or null if it wasn't reviewed
+     */
+    public RouteFilterGuard.Review getReview() {
+        return review;
+    }
+
+    void setReview(RouteFilterGuard.Review review) {
+        this.review = review;
+    }
+
+    /**
+     * @return If the filter was rejected for being too expensive, and so it mustn't be executed
+     */
+    public boolean isRejected() {
+        return review != null && review.isRejected();
+    }
+
+    /**
+     * Record the outcome of the execution of the filter
+     *
+     * @param actualRows      Number of routes retrieved
+     * @param executionMillis Time the execution took, in milliseconds
+     */
+    public void recordExecution(long actualRows, long executionMillis) {
+        this.actualRows = actualRows;
+        this.executionMillis = executionMillis;
+    }
+
+    /**
+     * @return Number of routes retrieved, or -1 if the filter wasn't executed yet
+     */
+    public long getActualRows() {
+        return actualRows;
+    }
+
+    /**
+     * @return Time the execution took in milliseconds, or -1 if the filter wasn't executed yet
+     */
+    public long getExecutionMillis() {
+        return executionMillis;
+    }
+
+    /**
+     * @return The plan as a map of plain values, suitable as a response body. Unknown values are left out
+     */
+    public Map<String, Object> explain() {
+        Map<String, Object> explanation = new LinkedHashMap<>();
+
+        explanation.put("backend", backend.apiName);
+        explanation.put("textAccess", textAccess.apiName);
+        if (textHits != null) explanation.put("textHits", textHits.size());
+        if (estimatedRows >= 0) explanation.put("estimatedRows", Math.round(estimatedRows));
+        if (actualRows >= 0) explanation.put("actualRows", actualRows);
+        if (executionMillis >= 0) explanation.put("executionMillis", executionMillis);
+
+        Map<String, Double> costs = new LinkedHashMap<>();
+        for (Map.Entry<Backend, Double> estimatedCost : estimatedCosts.entrySet())
+            costs.put(estimatedCost.getKey().apiName, Math.round(estimatedCost.getValue() * 1000) / 1000.0);
+        explanation.put("estimatedCosts", costs);
+
+        if (review != null) {
+            List<String> decisions = new ArrayList<>();
+            for (RouteFilterGuard.Decision decision : review.getDecisions())
+                decisions.add(decision.getApiName());
+
+            explanation.put("guardCost", Math.round(review.getCost() * 1000) / 1000.0);
+            explanation.put("guardDecisions", decisions);
+        }
+
+        return explanation;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder(backend.apiName).append(", text ").append(textAccess.apiName);
+
+        if (estimatedRows >= 0) description.append(String.format(Locale.ROOT, ", ~%.0f rows", estimatedRows));
+        for (Map.Entry<Backend, Double> estimatedCost : estimatedCosts.entrySet())
+            description.append(String.format(Locale.ROOT, ", %s %.3f ms",
+                    estimatedCost.getKey().apiName, estimatedCost.getValue()));
+        if (review != null) description.append(", guard ").append(review);
+
+        return description.toString();
+    }
+}
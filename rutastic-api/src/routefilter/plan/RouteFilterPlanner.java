@@ -0,0 +1,295 @@
+package routefilter.plan;
+
+import routefilter.CategoryExpression;
+import routefilter.RoutePredicate;
+import routefilter.snapshot.RouteCatalogSnapshot;
+import routefilter.text.RouteTextIndex;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cost based planner of route filters. Implemented through a Singleton instance, which you can get calling
+ * {@link #get()}.
+ * <p></p>
+ * The planner estimates how many routes each criteria of a filter lets through, from the statistics of the route
+ * catalog snapshot (see {@link RouteStatistics}) and the document frequencies of the text index, assuming the criteria
+ * are independent. From those estimates it prices running the filter against each available backend with a simple
+ * cost model, in estimated milliseconds, and picks the cheapest one. Without a snapshot there are no statistics, and
+ * filters run against MySQL.
+ * <p></p>
+ * Text searches go through the text index whenever it's available, since only the index ranks the routes it finds by
+ * relevance and matches stems and typos. Otherwise the backend scans the title and description of its candidates
+ */
+public class RouteFilterPlanner {
+
+    // Cost model, in estimated milliseconds
+
+    private static final double MYSQL_ROUND_TRIP = 1.0; // Fixed cost of a query
+    private static final double MYSQL_ROW_EXAMINED = 0.001; // Reading a row from an index or the table
+    private static final double MYSQL_TEXT_ROW = 0.004; // Looking for the text in the title and description of a row
+    private static final double MYSQL_CATEGORY_ROW = 0.0005; // Looking for a category name in the categories of a row
+    private static final double MYSQL_ROW_RETURNED = 0.01; // Sending a route and mapping it to a model instance
+    private static final double SNAPSHOT_BITMAP_ROUTE = 0.00001; // A route of a bitmap operation
+    private static final double SNAPSHOT_ROW_CHECKED = 0.0001; // Checking the columns of a row
+    private static final double SNAPSHOT_TEXT_ROW = 0.002; // Looking for the text in the folded columns of a row
+    private static final double SNAPSHOT_ROW_RETURNED = 0.002; // Building a route model instance from a row
+    private static final double TEXT_POSTING_READ = 0.0002; // Reading a posting of the text index
+
+    // Fraction of routes a text scan lets through, when there's no text index to tell
+    private static final double DEFAULT_TEXT_SELECTIVITY = 0.1;
+
+    private final AtomicReference<RouteStatistics> currentStatistics;
+
+    private RouteFilterPlanner() {
+        currentStatistics = new AtomicReference<>();
+    }
+
+    /**
+     * @return The Singleton instance of the route filter planner
+     */
+    public static RouteFilterPlanner get() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Choose the execution plan of a route filter
+     *
+     * @param predicate  Optimized predicate of the filter, without its text search
+     * @param searchText Text search of the filter, or null if it has none
+     * @param limit      Maximum number of routes to retrieve, or a non positive number if there's no limit
+     * @param snapshot   Route catalog snapshot the filter can run against, or null if it isn't available
+     * @param textIndex  Text index, or null if it isn't available
+     * @return The cheapest plan
+     */
+    public RouteFilterPlan plan(RoutePredicate predicate, String searchText, int limit, RouteCatalogSnapshot snapshot,
+                                RouteTextIndex textIndex) {
+        RouteFilterPlan.TextAccess textAccess = searchText == null ? RouteFilterPlan.TextAccess.NONE :
+                textIndex != null ? RouteFilterPlan.TextAccess.TEXT_INDEX : RouteFilterPlan.TextAccess.SCAN;
+
+        if (snapshot == null)
+            return new RouteFilterPlan(RouteFilterPlan.Backend.MYSQL, textAccess, -1, Collections.emptyMap());
+
+        RouteStatistics statistics = statisticsOf(snapshot);
+        List<RoutePredicate> operands = predicate instanceof RoutePredicate.And ?
+                ((RoutePredicate.And) predicate).getOperands() : Collections.singletonList(predicate);
+        int routes = statistics.routes();
+
+        // Estimate the routes let through by the text search and by the whole filter
+
+        double textSelectivity = 1;
+        double postingsRead = 0;
+
+        if (textAccess == RouteFilterPlan.TextAccess.TEXT_INDEX) {
+            boolean matchAll = !searchText.contains(";");
+            List<Integer> documentFrequencies = textIndex.documentFrequencies(searchText.replace(';', ' '));
+            double noneMatched = 1;
+
+            textSelectivity = matchAll ? 1 : 0;
+            for (int documentFrequency : documentFrequencies) {
+                double termSelectivity = routes > 0 ? Math.min(1, (double) documentFrequency / routes) : 0;
+                if (matchAll) textSelectivity *= termSelectivity;
+                else noneMatched *= 1 - termSelectivity;
+                postingsRead += documentFrequency;
+            }
+            if (!matchAll) textSelectivity = 1 - noneMatched;
+            if (documentFrequencies.isEmpty()) textSelectivity = 0;
+        } else if (textAccess == RouteFilterPlan.TextAccess.SCAN) {
+            textSelectivity = DEFAULT_TEXT_SELECTIVITY;
+        }
+
+        double estimatedRows = routes * textSelectivity * selectivity(predicate, statistics);
+        double returnedRows = limit > 0 ? Math.min(estimatedRows, limit) : estimatedRows;
+        double textIndexCost = postingsRead * TEXT_POSTING_READ;
+
+        Map<RouteFilterPlan.Backend, Double> estimatedCosts = new EnumMap<>(RouteFilterPlan.Backend.class);
+
+        if (predicate == RoutePredicate.FALSE) { // Answered without looking at any route
+            estimatedCosts.put(RouteFilterPlan.Backend.SNAPSHOT, 0.0);
+            estimatedCosts.put(RouteFilterPlan.Backend.MYSQL, 0.0);
+        } else {
+            estimatedCosts.put(RouteFilterPlan.Backend.SNAPSHOT, textIndexCost +
+                    snapshotCost(operands, statistics, textAccess, textSelectivity, returnedRows));
+            estimatedCosts.put(RouteFilterPlan.Backend.MYSQL, textIndexCost +
+                    mysqlCost(operands, statistics, textAccess, textSelectivity, returnedRows));
+        }
+
+        boolean snapshotIsCheaper = estimatedCosts.get(RouteFilterPlan.Backend.SNAPSHOT) <=
+                estimatedCosts.get(RouteFilterPlan.Backend.MYSQL);
+        RouteFilterPlan.Backend backend = snapshotIsCheaper ?
+                RouteFilterPlan.Backend.SNAPSHOT : RouteFilterPlan.Backend.MYSQL;
+
+        return new RouteFilterPlan(backend, textAccess, estimatedRows, estimatedCosts);
+    }
+
+    /**
+     * Price a filter against the route catalog snapshot. Categories, skill levels and the blocked flag are resolved
+     * with bitmap operations over every route, the narrowest range through its sorted index, and the rest of the
+     * criteria row by row over the remaining candidates
+     */
+    private double snapshotCost(List<RoutePredicate> operands, RouteStatistics statistics,
+                                RouteFilterPlan.TextAccess textAccess, double textSelectivity, double returnedRows) {
+        int routes = statistics.routes();
+        double narrowestRange = Double.NaN;
+        double candidateSelectivity = textAccess == RouteFilterPlan.TextAccess.TEXT_INDEX ? textSelectivity : 1;
+        int bitmapOperations = 0;
+
+        for (RoutePredicate operand : operands) {
+            if (operand instanceof RoutePredicate.SkillLevel || operand instanceof RoutePredicate.Categories ||
+                    operand instanceof RoutePredicate.NotBlocked) {
+                bitmapOperations++;
+                candidateSelectivity *= selectivity(operand, statistics);
+            } else if (operand instanceof RoutePredicate.Range) {
+                double rangeSelectivity = selectivity(operand, statistics);
+                narrowestRange = Double.isNaN(narrowestRange) ? rangeSelectivity :
+                        Math.min(narrowestRange, rangeSelectivity);
+                candidateSelectivity *= rangeSelectivity;
+            } else if (operand instanceof RoutePredicate.Ids) {
+                candidateSelectivity *= selectivity(operand, statistics);
+            }
+        }
+
+        double cost = bitmapOperations * routes * SNAPSHOT_BITMAP_ROUTE;
+        if (!Double.isNaN(narrowestRange)) cost += routes * narrowestRange * SNAPSHOT_ROW_CHECKED;
+
+        double candidates = routes * candidateSelectivity;
+        cost += candidates * (SNAPSHOT_ROW_CHECKED +
+                (textAccess == RouteFilterPlan.TextAccess.SCAN ? SNAPSHOT_TEXT_ROW : 0));
+
+        return cost + returnedRows * SNAPSHOT_ROW_RETURNED;
+    }
+
+    /**
+     * Price a filter against MySQL. Only the routes found by the text index, route IDs and the indexed ranges (over
+     * duration, elevation and average grade) narrow down the rows MySQL examines. Otherwise it reads the whole table
+     */
+    private double mysqlCost(List<RoutePredicate> operands, RouteStatistics statistics,
+                             RouteFilterPlan.TextAccess textAccess, double textSelectivity, double returnedRows) {
+        int routes = statistics.routes();
+        double examinedRows = textAccess == RouteFilterPlan.TextAccess.TEXT_INDEX ? routes * textSelectivity : routes;
+        int categoryLookups = 0;
+
+        for (RoutePredicate operand : operands) {
+            if (operand instanceof RoutePredicate.Ids && !((RoutePredicate.Ids) operand).isExcluded()) {
+                examinedRows = Math.min(examinedRows, ((RoutePredicate.Ids) operand).getRouteIds().size());
+            } else if (operand instanceof RoutePredicate.Range &&
+                    ((RoutePredicate.Range) operand).getAttribute() != RoutePredicate.Attribute.DISTANCE) {
+                examinedRows = Math.min(examinedRows, routes * selectivity(operand, statistics));
+            } else if (operand instanceof RoutePredicate.Categories) {
+                categoryLookups += categoriesOf(((RoutePredicate.Categories) operand).getCategoryExpression());
+            }
+        }
+
+        double rowCost = MYSQL_ROW_EXAMINED + categoryLookups * MYSQL_CATEGORY_ROW +
+                (textAccess == RouteFilterPlan.TextAccess.SCAN ? MYSQL_TEXT_ROW : 0);
+
+        return MYSQL_ROUND_TRIP + examinedRows * rowCost + returnedRows * MYSQL_ROW_RETURNED;
+    }
+
+    /**
+     * Estimate the fraction of the routes a predicate lets through
+     *
+     * @param predicate  Predicate
+     * @param statistics Statistics of the catalog
+     * @return Estimated selectivity, from 0 to 1
+     */
+    private double selectivity(RoutePredicate predicate, RouteStatistics statistics) {
+        double routes = statistics.routes();
+
+        if (routes == 0 || predicate == RoutePredicate.FALSE) return 0;
+
+        if (predicate instanceof RoutePredicate.And) {
+            double selectivity = 1;
+            for (RoutePredicate operand : ((RoutePredicate.And) predicate).getOperands())
+                selectivity *= selectivity(operand, statistics);
+            return selectivity;
+        } else if (predicate instanceof RoutePredicate.Range) {
+            RoutePredicate.Range range = (RoutePredicate.Range) predicate;
+            return statistics.histogramOf(range.getAttribute()).selectivity(range.getMin(), range.getMax());
+        } else if (predicate instanceof RoutePredicate.SkillLevel) {
+            return statistics.routesOfSkillLevel(((RoutePredicate.SkillLevel) predicate).getSkillLevel()) / routes;
+        } else if (predicate instanceof RoutePredicate.Author) {
+            return statistics.routesOfAuthor(((RoutePredicate.Author) predicate).getUsername()) / routes;
+        } else if (predicate instanceof RoutePredicate.Categories) {
+            return selectivity(((RoutePredicate.Categories) predicate).getCategoryExpression(), statistics);
+        } else if (predicate instanceof RoutePredicate.NotBlocked) {
+            return 1 - statistics.blockedRoutes() / routes;
+        } else if (predicate instanceof RoutePredicate.Ids) {
+            RoutePredicate.Ids ids = (RoutePredicate.Ids) predicate;
+            double idsSelectivity = Math.min(1, ids.getRouteIds().size() / routes);
+            return ids.isExcluded() ? 1 - idsSelectivity : idsSelectivity;
+        } else if (predicate instanceof RoutePredicate.Text) {
+            return DEFAULT_TEXT_SELECTIVITY;
+        }
+
+        return 1;
+    }
+
+    /**
+     * Estimate the fraction of the routes a category expression lets through, from the number of routes of each
+     * category
+     */
+    private double selectivity(CategoryExpression categoryExpression, RouteStatistics statistics) {
+        if (categoryExpression instanceof CategoryExpression.Category) {
+            String name = ((CategoryExpression.Category) categoryExpression).getName();
+            return (double) statistics.routesOfCategory(name) / statistics.routes();
+        } else if (categoryExpression instanceof CategoryExpression.And) {
+            double selectivity = 1;
+            for (CategoryExpression operand : ((CategoryExpression.And) categoryExpression).getOperands())
+                selectivity *= selectivity(operand, statistics);
+            return selectivity;
+        } else if (categoryExpression instanceof CategoryExpression.Or) {
+            double noneMatched = 1;
+            for (CategoryExpression operand : ((CategoryExpression.Or) categoryExpression).getOperands())
+                noneMatched *= 1 - selectivity(operand, statistics);
+            return 1 - noneMatched;
+        } else {
+            return 1 - selectivity(((CategoryExpression.Not) categoryExpression).getOperand(), statistics);
+        }
+    }
+
+    /**
+     * @return Number of category operands of a category expression, each one a subquery in SQL
+     */
+    private static int categoriesOf(CategoryExpression categoryExpression) {
+        if (categoryExpression instanceof CategoryExpression.Category) return 1;
+        if (categoryExpression instanceof CategoryExpression.Not)
+            return categoriesOf(((CategoryExpression.Not) categoryExpression).getOperand());
+
+        List<CategoryExpression> operands = categoryExpression instanceof CategoryExpression.And ?
+                ((CategoryExpression.And) categoryExpression).getOperands() :
+                ((CategoryExpression.Or) categoryExpression).getOperands();
+
+        int categories = 0;
+        for (CategoryExpression operand : operands)
+            categories += categoriesOf(operand);
+        return categories;
+    }
+
+    /**
+     * Get the statistics of a snapshot, gathering them if the current ones are of another snapshot
+     *
+     * @param snapshot Route catalog snapshot
+     * @return Statistics of the snapshot
+     */
+    private RouteStatistics statisticsOf(RouteCatalogSnapshot snapshot) {
+        RouteStatistics statistics = currentStatistics.get();
+
+        if (statistics == null || !statistics.isOf(snapshot)) {
+            statistics = new RouteStatistics(snapshot);
+            currentStatistics.set(statistics);
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Singleton holder for RouteFilterPlanner class
+     */
+    private static class SingletonHolder {
+        private static final RouteFilterPlanner INSTANCE = new RouteFilterPlanner();
+    }
+}
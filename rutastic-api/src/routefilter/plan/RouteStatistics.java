@@ -0,0 +1,109 @@
+package routefilter.plan;
+
+import helper.TextUtils;
+import routefilter.RoutePredicate;
+import routefilter.RouteSkillLevel;
+import routefilter.index.RouteBitmapIndex;
+import routefilter.snapshot.RouteCatalogSnapshot;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Selectivity statistics of the route catalog, gathered from a route catalog snapshot: a histogram of each numeric
+ * attribute, the number of routes of each skill level and author, the number of blocked routes and, looked up as
+ * they're needed, the number of routes of each category
+ */
+class RouteStatistics {
+
+    private static final int HISTOGRAM_BUCKETS = 32;
+
+    private final RouteCatalogSnapshot snapshot;
+    private final int routes;
+    private final Map<RoutePredicate.Attribute, Histogram> histograms;
+    private final Map<RouteSkillLevel, Integer> routesBySkillLevel;
+    private final Map<String, Integer> routesByAuthor;
+    private final Map<String, Integer> routesByCategory;
+    private final int blockedRoutes;
+
+    /**
+     * Gather the statistics of a snapshot
+     *
+     * @param snapshot Route catalog snapshot
+     */
+    RouteStatistics(RouteCatalogSnapshot snapshot) {
+        RouteBitmapIndex bitmapIndex = snapshot.getBitmapIndex();
+
+        this.snapshot = snapshot;
+        this.routes = snapshot.size();
+        this.histograms = new EnumMap<>(RoutePredicate.Attribute.class);
+        this.routesBySkillLevel = new EnumMap<>(RouteSkillLevel.class);
+        this.routesByAuthor = new HashMap<>();
+        this.routesByCategory = new ConcurrentHashMap<>();
+        this.blockedRoutes = bitmapIndex.blocked().cardinality();
+
+        for (RoutePredicate.Attribute attribute : RoutePredicate.Attribute.values())
+            histograms.put(attribute, new Histogram(snapshot.sortedValuesOf(attribute), HISTOGRAM_BUCKETS));
+        for (RouteSkillLevel skillLevel : RouteSkillLevel.values())
+            routesBySkillLevel.put(skillLevel, bitmapIndex.ofSkillLevel(skillLevel).cardinality());
+        for (int row = 0; row < routes; row++)
+            routesByAuthor.merge(snapshot.foldedAuthorOf(row), 1, Integer::sum);
+    }
+
+    /**
+     * @param snapshot Route catalog snapshot
+     * @return If these statistics were gathered from that same snapshot
+     */
+    boolean isOf(RouteCatalogSnapshot snapshot) {
+        return this.snapshot == snapshot;
+    }
+
+    /**
+     * @return Number of routes of the catalog
+     */
+    int routes() {
+        return routes;
+    }
+
+    /**
+     * @param attribute Numeric attribute
+     * @return Histogram of the values of the attribute
+     */
+    Histogram histogramOf(RoutePredicate.Attribute attribute) {
+        return histograms.get(attribute);
+    }
+
+    /**
+     * @param skillLevel Skill level
+     * @return Number of routes of the skill level
+     */
+    int routesOfSkillLevel(RouteSkillLevel skillLevel) {
+        return routesBySkillLevel.getOrDefault(skillLevel, 0);
+    }
+
+    /**
+     * @param username Username of the author, compared case and accent insensitive
+     * @return Number of routes created by the user
+     */
+    int routesOfAuthor(String username) {
+        return routesByAuthor.getOrDefault(TextUtils.fold(username), 0);
+    }
+
+    /**
+     * @param categoryName Route category name
+     * @return Number of routes of the category
+     */
+    int routesOfCategory(String categoryName) {
+        return routesByCategory.computeIfAbsent(categoryName,
+                name -> snapshot.getBitmapIndex().ofCategory(name).cardinality());
+    }
+
+    /**
+     * @return Number of blocked routes
+     */
+    int blockedRoutes() {
+        return blockedRoutes;
+    }
+}
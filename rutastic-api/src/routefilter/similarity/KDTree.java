@@ -0,0 +1,252 @@
+package routefilter.similarity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.LongPredicate;
+import java.util.function.LongToIntFunction;
+
+/**
+ * K-d tree of route feature vectors, answering weighted k-nearest-neighbour queries. The distance between two vectors
+ * is the weighted euclidean distance, sqrt(sum(weight[d] * (a[d] - b[d])^2)), so the weights of a query can change
+ * without rebuilding the tree.
+ * <p></p>
+ * The tree is built balanced, and afterwards supports insertions and deletions. Deleted points are only marked as
+ * such, so the tree keeps track of how many of them it holds and of its depth, to let its owner decide when a full
+ * rebuild pays off (see {@link #needsRebuild()})
+ */
+public class KDTree {
+
+    private final int dimensions;
+    private Node root;
+    private int size;
+    private int deleted;
+    private int depth;
+
+    /**
+     * Build a balanced tree
+     *
+     * @param dimensions Number of dimensions of the points
+     * @param ids        ID of each point
+     * @param points     Points of the tree
+     */
+    public KDTree(int dimensions, long[] ids, double[][] points) {
+        this.dimensions = dimensions;
+
+        List<Node> nodes = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++)
+            nodes.add(new Node(ids[i], points[i]));
+
+        root = build(nodes, 0, nodes.size(), 0);
+        size = ids.length;
+    }
+
+    private Node build(List<Node> nodes, int from, int to, int level) {
+        if (from >= to) return null;
+
+        depth = Math.max(depth, level + 1);
+
+        int axis = level % dimensions;
+        int middle = (from + to) >>> 1;
+
+        // Sorting the range is simpler than a selection algorithm and the tree is rarely rebuilt
+
+        Collections.sort(nodes.subList(from, to), Comparator.comparingDouble(node -> node.point[axis]));
+
+        Node median = nodes.get(middle);
+        median.axis = axis;
+        median.left = build(nodes, from, middle, level + 1);
+        median.right = build(nodes, middle + 1, to, level + 1);
+
+        return median;
+    }
+
+    /**
+     * Insert a point
+     *
+     * @param id    ID of the point
+     * @param point The point
+     */
+    public void insert(long id, double[] point) {
+        Node newNode = new Node(id, point);
+        size++;
+
+        if (root == null) {
+            newNode.axis = 0;
+            root = newNode;
+            depth = Math.max(depth, 1);
+            return;
+        }
+
+        Node current = root;
+        int level = 1;
+        while (true) {
+            level++;
+            if (point[current.axis] < current.point[current.axis]) {
+                if (current.left == null) {
+                    current.left = newNode;
+                    break;
+                }
+                current = current.left;
+            } else {
+                if (current.right == null) {
+                    current.right = newNode;
+                    break;
+                }
+                current = current.right;
+            }
+        }
+
+        newNode.axis = (current.axis + 1) % dimensions;
+        depth = Math.max(depth, level);
+    }
+
+    /**
+     * Delete a point
+     *
+     * @param id    ID of the point
+     * @param point The point, used to find it
+     * @return If the point was found and deleted
+     */
+    public boolean delete(long id, double[] point) {
+        Node node = find(root, id, point);
+
+        if (node == null) return false;
+
+        node.deleted = true;
+        deleted++;
+
+        return true;
+    }
+
+    private Node find(Node node, long id, double[] point) {
+        if (node == null) return null;
+        if (!node.deleted && node.id == id) return node;
+
+        // Equal coordinates go to the right on insertion, but balanced builds may place them on both sides
+
+        if (point[node.axis] < node.point[node.axis])
+            return find(node.left, id, point);
+        if (point[node.axis] > node.point[node.axis])
+            return find(node.right, id, point);
+
+        Node found = find(node.right, id, point);
+        return found != null ? found : find(node.left, id, point);
+    }
+
+    /**
+     * Find the nearest points to a query point
+     *
+     * @param query     Query point
+     * @param weights   Weight of each dimension
+     * @param k         Maximum number of points to find
+     * @param excluded  Points to skip, by ID
+     * @param tieBreaks Tie-breaking rank of a point by ID, higher ranks go first among equally distant points. Null to
+     *                  break ties by ID only
+     * @return The IDs of the nearest points, from the nearest to the farthest
+     */
+    public List<Long> nearest(double[] query, double[] weights, int k, LongPredicate excluded,
+                              LongToIntFunction tieBreaks) {
+        Comparator<Neighbour> nearestFirst = Comparator.<Neighbour>comparingDouble(neighbour -> neighbour.distance)
+                .thenComparing(Comparator.comparingInt((Neighbour neighbour) -> neighbour.rank).reversed())
+                .thenComparingLong(neighbour -> neighbour.id);
+        PriorityQueue<Neighbour> best = new PriorityQueue<>(k + 1, nearestFirst.reversed()); // Farthest on top
+
+        if (k > 0) search(root, query, weights, k, excluded, tieBreaks, best);
+
+        List<Neighbour> sorted = new ArrayList<>(best);
+        sorted.sort(nearestFirst);
+
+        List<Long> ids = new ArrayList<>(sorted.size());
+        for (Neighbour neighbour : sorted)
+            ids.add(neighbour.id);
+
+        return ids;
+    }
+
+    private void search(Node node, double[] query, double[] weights, int k, LongPredicate excluded,
+                        LongToIntFunction tieBreaks, PriorityQueue<Neighbour> best) {
+        if (node == null) return;
+
+        if (!node.deleted && !excluded.test(node.id)) {
+            Neighbour candidate = new Neighbour(node.id, distance(query, node.point, weights),
+                    tieBreaks != null ? tieBreaks.applyAsInt(node.id) : 0);
+
+            if (best.size() < k) {
+                best.add(candidate);
+            } else if (best.comparator().compare(candidate, best.peek()) > 0) { // Candidate is nearer
+                best.poll();
+                best.add(candidate);
+            }
+        }
+
+        double difference = query[node.axis] - node.point[node.axis];
+        Node nearSide = difference < 0 ? node.left : node.right;
+        Node farSide = difference < 0 ? node.right : node.left;
+
+        search(nearSide, query, weights, k, excluded, tieBreaks, best);
+
+        // Only visit the far side if the splitting plane is closer than the farthest neighbour found. Points at the
+        // same distance are visited too, since they could win a tie-break
+
+        if (best.size() < k || weights[node.axis] * difference * difference <= square(best.peek().distance))
+            search(farSide, query, weights, k, excluded, tieBreaks, best);
+    }
+
+    private static double distance(double[] a, double[] b, double[] weights) {
+        double sum = 0;
+
+        for (int dimension = 0; dimension < a.length; dimension++)
+            sum += weights[dimension] * square(a[dimension] - b[dimension]);
+
+        return Math.sqrt(sum);
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    /**
+     * @return Number of points of the tree, not counting deleted points
+     */
+    public int size() {
+        return size - deleted;
+    }
+
+    /**
+     * @return If the tree has become unbalanced or full of deleted points, so queries would be faster on a new tree
+     */
+    public boolean needsRebuild() {
+        int balancedDepth = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1));
+
+        return deleted > size / 2 || depth > 3 * balancedDepth + 8;
+    }
+
+    private static class Node {
+        final long id;
+        final double[] point;
+        int axis;
+        boolean deleted;
+        Node left;
+        Node right;
+
+        Node(long id, double[] point) {
+            this.id = id;
+            this.point = point;
+        }
+    }
+
+    private static class Neighbour {
+        final long id;
+        final double distance;
+        final int rank;
+
+        Neighbour(long id, double distance, int rank) {
+            this.id = id;
+            this.distance = distance;
+            this.rank = rank;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package routefilter.similarity;
+
+import model.Route;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Similarity index of the route catalog. Routes are turned into feature vectors by a {@link RouteVectorizer} and stored
+ * in a {@link KDTree}, which answers weighted k-nearest-neighbour queries. The index is updated route by route as the
+ * catalog changes, and rebuilt from scratch only when the tree degrades
+ */
+public class RouteSimilarityIndex {
+
+    private final long builtAt;
+    private final RouteVectorizer vectorizer;
+    private final Map<Long, double[]> vectors;
+    private final Map<Long, Integer> kudos;
+    private KDTree tree;
+
+    /**
+     * Build the index of a catalog of routes
+     *
+     * @param routes  Routes of the catalog
+     * @param builtAt When the routes were loaded, in milliseconds since the epoch
+     */
+    public RouteSimilarityIndex(List<Route> routes, long builtAt) {
+        this.builtAt = builtAt;
+        this.vectorizer = new RouteVectorizer(routes);
+        this.vectors = new HashMap<>();
+        this.kudos = new HashMap<>();
+
+        for (Route route : routes) {
+            vectors.put(route.getId(), vectorizer.vectorize(route));
+            kudos.put(route.getId(), route.getKudos());
+        }
+
+        rebuildTree();
+    }
+
+    private void rebuildTree() {
+        long[] ids = new long[vectors.size()];
+        double[][] points = new double[vectors.size()][];
+        int i = 0;
+
+        for (Map.Entry<Long, double[]> vector : vectors.entrySet()) {
+            ids[i] = vector.getKey();
+            points[i] = vector.getValue();
+            i++;
+        }
+
+        tree = new KDTree(vectorizer.dimensions(), ids, points);
+    }
+
+    /**
+     * Find the routes most similar to a given route
+     *
+     * @param routeId         ID of the reference route, which is never part of the result
+     * @param weights         Weight of each feature
+     * @param k               Maximum number of similar routes
+     * @param kudosTieBreaking If routes equally similar to the reference route should be ordered by their kudos
+     * @return The IDs of the most similar routes, from the most to the least similar. Empty if the reference route isn't
+     * indexed
+     */
+    public synchronized List<Long> nearest(long routeId, SimilarityWeights weights, int k, boolean kudosTieBreaking) {
+        double[] query = vectors.get(routeId);
+
+        if (query == null) return Collections.emptyList();
+
+        return tree.nearest(query, vectorizer.dimensionWeights(weights), k, id -> id == routeId,
+                kudosTieBreaking ? id -> kudos.getOrDefault(id, 0) : null);
+    }
+
+    /**
+     * Add or update a route
+     *
+     * @param route The route as it's currently stored
+     */
+    public synchronized void upsert(Route route) {
+        double[] oldVector = vectors.get(route.getId());
+        double[] newVector = vectorizer.vectorize(route);
+
+        kudos.put(route.getId(), route.getKudos());
+        vectors.put(route.getId(), newVector);
+
+        if (oldVector != null) tree.delete(route.getId(), oldVector);
+        tree.insert(route.getId(), newVector);
+
+        if (tree.needsRebuild()) rebuildTree();
+    }
+
+    /**
+     * Remove a route
+     *
+     * @param routeId ID of the route
+     */
+    public synchronized void remove(long routeId) {
+        double[] oldVector = vectors.remove(routeId);
+        kudos.remove(routeId);
+
+        if (oldVector != null) tree.delete(routeId, oldVector);
+
+        if (tree.needsRebuild()) rebuildTree();
+    }
+
+    /**
+     * @return When the routes of this index were loaded, in milliseconds since the epoch
+     */
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * @return Number of indexed routes
+     */
+    public synchronized int size() {
+        return vectors.size();
+    }
+}
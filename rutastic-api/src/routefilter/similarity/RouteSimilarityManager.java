@@ -0,0 +1,88 @@
+package routefilter.similarity;
+
+import model.Route;
+import routefilter.snapshot.RouteCatalogSnapshot;
+import routefilter.snapshot.RouteSnapshotManager;
+
+import java.util.function.LongFunction;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the similarity index of the route catalog. Implemented through a Singleton instance, which you can get calling
+ * {@link #get()}.
+ * <p></p>
+ * The index is built lazily from the route catalog snapshot, and then kept up to date route by route as routes are
+ * written through {@link #routeWritten(long, LongFunction)} and {@link #routeDeleted(long)}. Since writes could also
+ * happen elsewhere, the index is built again whenever the snapshot it was built from is replaced (see
+ * {@link RouteSnapshotManager#getSnapshotToRebuildFrom(long)})
+ *
+ * @see RouteSnapshotManager
+ */
+public class RouteSimilarityManager {
+
+    private static final Logger logger = Logger.getLogger(RouteSimilarityManager.class.getName());
+
+    private volatile RouteSimilarityIndex currentIndex;
+
+    private RouteSimilarityManager() {
+    }
+
+    /**
+     * @return The Singleton instance of the route similarity manager
+     */
+    public static RouteSimilarityManager get() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Get the current similarity index, building a new one first if there isn't any or the current one is outdated
+     *
+     * @return The current similarity index, or null if the route catalog snapshot isn't available
+     */
+    public synchronized RouteSimilarityIndex getIndex() {
+        RouteCatalogSnapshot snapshot = RouteSnapshotManager.get()
+                .getSnapshotToRebuildFrom(currentIndex != null ? currentIndex.getBuiltAt() : -1);
+
+        if (snapshot != null) {
+            long startTime = System.currentTimeMillis();
+            currentIndex = new RouteSimilarityIndex(snapshot.routes(), snapshot.getLoadedAt());
+
+            logger.info(String.format("Built route similarity index with %d routes in %d ms",
+                    currentIndex.size(), System.currentTimeMillis() - startTime));
+        }
+
+        return currentIndex;
+    }
+
+    /**
+     * Update the index with a route that was just added or modified. If there isn't any index yet this is a no-op
+     *
+     * @param routeId     ID of the written route
+     * @param routeLoader Loads the route as it's currently stored. Only called if there's an index to update
+     */
+    public void routeWritten(long routeId, LongFunction<Route> routeLoader) {
+        RouteSimilarityIndex index = currentIndex;
+
+        if (index != null) {
+            Route route = routeLoader.apply(routeId);
+            if (route != null) index.upsert(route);
+        }
+    }
+
+    /**
+     * Remove a route that was just deleted from the index. If there isn't any index yet this is a no-op
+     *
+     * @param routeId ID of the deleted route
+     */
+    public void routeDeleted(long routeId) {
+        RouteSimilarityIndex index = currentIndex;
+        if (index != null) index.remove(routeId);
+    }
+
+    /**
+     * Singleton holder for RouteSimilarityManager class
+     */
+    private static class SingletonHolder {
+        private static final RouteSimilarityManager INSTANCE = new RouteSimilarityManager();
+    }
+}
@@ -0,0 +1,127 @@
+package routefilter.similarity;
+
+import model.Route;
+import routefilter.RouteSkillLevel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns routes into feature vectors. The vector has one dimension for each numeric feature (distance, duration and
+ * elevation), one for the skill level and one for each route category. Numeric features are log-scaled, since they're
+ * heavily skewed, and standardized with the statistics of the catalog the vectorizer was fitted with, so every
+ * feature has a comparable spread. The skill level is scaled to [0, 1], and categories are encoded as 0 or 1
+ */
+public class RouteVectorizer {
+
+    static final int DISTANCE = 0;
+    static final int DURATION = 1;
+    static final int ELEVATION = 2;
+    static final int SKILL_LEVEL = 3;
+    static final int FIRST_CATEGORY = 4;
+
+    private final double[] means;
+    private final double[] standardDeviations;
+    private final Map<String, Integer> categoryDimensions;
+
+    /**
+     * Fit a vectorizer to a catalog of routes
+     *
+     * @param routes Routes of the catalog
+     */
+    public RouteVectorizer(List<Route> routes) {
+        means = new double[FIRST_CATEGORY];
+        standardDeviations = new double[FIRST_CATEGORY];
+        categoryDimensions = new LinkedHashMap<>();
+
+        // Compute the mean and standard deviation of each log-scaled numeric feature
+
+        for (Route route : routes) {
+            means[DISTANCE] += Math.log1p(route.getDistance());
+            means[DURATION] += Math.log1p(route.getDuration());
+            means[ELEVATION] += Math.log1p(route.getElevation());
+
+            for (String category : categoriesOf(route))
+                categoryDimensions.putIfAbsent(category, FIRST_CATEGORY + categoryDimensions.size());
+        }
+        for (int dimension = DISTANCE; dimension <= ELEVATION; dimension++)
+            means[dimension] /= Math.max(routes.size(), 1);
+
+        for (Route route : routes) {
+            standardDeviations[DISTANCE] += square(Math.log1p(route.getDistance()) - means[DISTANCE]);
+            standardDeviations[DURATION] += square(Math.log1p(route.getDuration()) - means[DURATION]);
+            standardDeviations[ELEVATION] += square(Math.log1p(route.getElevation()) - means[ELEVATION]);
+        }
+        for (int dimension = DISTANCE; dimension <= ELEVATION; dimension++) {
+            standardDeviations[dimension] = Math.sqrt(standardDeviations[dimension] / Math.max(routes.size(), 1));
+            if (standardDeviations[dimension] == 0) standardDeviations[dimension] = 1; // Constant feature
+        }
+    }
+
+    /**
+     * @param route Route to vectorize
+     * @return The feature vector of the route. Categories unknown to this vectorizer are ignored
+     */
+    public double[] vectorize(Route route) {
+        double[] vector = new double[dimensions()];
+
+        vector[DISTANCE] = (Math.log1p(route.getDistance()) - means[DISTANCE]) / standardDeviations[DISTANCE];
+        vector[DURATION] = (Math.log1p(route.getDuration()) - means[DURATION]) / standardDeviations[DURATION];
+        vector[ELEVATION] = (Math.log1p(route.getElevation()) - means[ELEVATION]) / standardDeviations[ELEVATION];
+
+        RouteSkillLevel skillLevel = RouteSkillLevel.parseSkillLevelFromString(route.getSkillLevel());
+        vector[SKILL_LEVEL] = skillLevel == RouteSkillLevel.UNDEFINED ?
+                0.5 : (skillLevel.ordinal() - RouteSkillLevel.EASY.ordinal()) / 2.0;
+
+        for (String category : categoriesOf(route)) {
+            Integer dimension = categoryDimensions.get(category);
+            if (dimension != null) vector[dimension] = 1;
+        }
+
+        return vector;
+    }
+
+    /**
+     * Get the weight of each dimension of the feature vectors. The weight of the categories is split among the category
+     * dimensions, so it doesn't grow with the number of categories
+     *
+     * @param weights Weight of each feature
+     * @return Weight of each dimension
+     */
+    public double[] dimensionWeights(SimilarityWeights weights) {
+        double[] dimensionWeights = new double[dimensions()];
+
+        dimensionWeights[DISTANCE] = weights.getDistance();
+        dimensionWeights[DURATION] = weights.getDuration();
+        dimensionWeights[ELEVATION] = weights.getElevation();
+        dimensionWeights[SKILL_LEVEL] = weights.getSkillLevel();
+        for (int dimension = FIRST_CATEGORY; dimension < dimensionWeights.length; dimension++)
+            dimensionWeights[dimension] = weights.getCategories() / categoryDimensions.size();
+
+        return dimensionWeights;
+    }
+
+    /**
+     * @return Number of dimensions of the feature vectors
+     */
+    public int dimensions() {
+        return FIRST_CATEGORY + categoryDimensions.size();
+    }
+
+    private static List<String> categoriesOf(Route route) {
+        if (route.getCategories() == null || route.getCategories().trim().isEmpty()) return Collections.emptyList();
+
+        List<String> categories = new ArrayList<>();
+        for (String category : route.getCategories().split(Route.CATEGORY_SEPARATOR))
+            if (!category.trim().isEmpty()) categories.add(category.trim());
+
+        return categories;
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+}
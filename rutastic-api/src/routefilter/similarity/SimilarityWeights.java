@@ -0,0 +1,115 @@
+package routefilter.similarity;
+
+/**
+ * Relative weight of each route feature when measuring how similar two routes are. A weight of 0 ignores the feature
+ */
+public class SimilarityWeights {
+
+    private double distance;
+    private double duration;
+    private double elevation;
+    private double skillLevel;
+    private double categories;
+
+    /**
+     * Get weights giving the same importance to every feature
+     */
+    public SimilarityWeights() {
+        distance = 1;
+        duration = 1;
+        elevation = 1;
+        skillLevel = 1;
+        categories = 1;
+    }
+
+    /**
+     * Parse weights from a list of {@code feature:weight} pairs separated by commas, e.g.
+     * {@code distancia:2,categorias:0.5}. Features are named distancia, duracion, elevacion, dificultad and categorias,
+     * and any feature not listed keeps a weight of 1
+     *
+     * @param source Weights list
+     * @return The parsed weights
+     * @throws IllegalArgumentException If a feature is unknown or a weight isn't a non-negative number
+     */
+    public static SimilarityWeights parse(String source) {
+        SimilarityWeights weights = new SimilarityWeights();
+
+        if (source == null || source.trim().isEmpty()) return weights;
+
+        for (String pair : source.split(",")) {
+            String[] featureAndWeight = pair.split(":");
+
+            if (featureAndWeight.length != 2 || !featureAndWeight[1].trim().matches("[0-9]+(\\.[0-9]+)?"))
+                throw new IllegalArgumentException("Malformed feature weight (" + pair + ")");
+
+            double weight = Double.parseDouble(featureAndWeight[1].trim());
+
+            switch (featureAndWeight[0].trim()) {
+                case "distancia":
+                    weights.distance(weight);
+                    break;
+                case "duracion":
+                    weights.duration(weight);
+                    break;
+                case "elevacion":
+                    weights.elevation(weight);
+                    break;
+                case "dificultad":
+                    weights.skillLevel(weight);
+                    break;
+                case "categorias":
+                    weights.categories(weight);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown feature (" + featureAndWeight[0].trim() + ")");
+            }
+        }
+
+        return weights;
+    }
+
+    public SimilarityWeights distance(double weight) {
+        distance = weight;
+        return this;
+    }
+
+    public SimilarityWeights duration(double weight) {
+        duration = weight;
+        return this;
+    }
+
+    public SimilarityWeights elevation(double weight) {
+        elevation = weight;
+        return this;
+    }
+
+    public SimilarityWeights skillLevel(double weight) {
+        skillLevel = weight;
+        return this;
+    }
+
+    public SimilarityWeights categories(double weight) {
+        categories = weight;
+        return this;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public double getDuration() {
+        return duration;
+    }
+
+    public double getElevation() {
+        return elevation;
+    }
+
+    public double getSkillLevel() {
+        return skillLevel;
+    }
+
+    public double getCategories() {
+        return categories;
+    }
+}
@@ -0,0 +1,642 @@
+package routefilter.snapshot;
+
+import helper.TextUtils;
+import model.Route;
+import routefilter.CategoryExpression;
+import routefilter.InMemoryRouteFilter;
+import routefilter.InMemoryRouteQuery;
+import routefilter.RoutePredicate;
+import routefilter.RouteSkillLevel;
+import routefilter.SortSpec;
+import routefilter.index.CompressedBitmap;
+import routefilter.index.RouteBitmapIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable columnar snapshot of the route catalog. Each route is a row, and each attribute is stored in its own
+ * column, using primitive arrays for the numeric attributes and coded skill levels. Rows are ordered by route ID, and
+ * the numeric attributes used by range predicates have an additional index with the rows sorted by value, so a range
+ * is resolved with a binary search. When a query has several ranges only the rows of the narrowest one are visited,
+ * checking the rest of the ranges against their columns. Categories, skill levels and the blocked flag are resolved through the bitmap index
+ * built along with the snapshot.
+ * <p></p>
+ * A snapshot never changes once built. To reflect changes in the catalog a new snapshot is built and swapped
+ * (see {@link RouteSnapshotManager})
+ */
+public class RouteCatalogSnapshot {
+
+    private final long loadedAt;
+    private final int size;
+
+    // Columns
+
+    private final long[] ids;
+    private final String[] createdByUser;
+    private final String[] titles;
+    private final String[] descriptions;
+    private final int[] distances;
+    private final int[] durations;
+    private final int[] elevations;
+    private final int[] grades; // Average grades, in hundredths of a percent
+    private final String[] creationDates;
+    private final String[] categories;
+    private final byte[] skillLevels;
+    private final int[] kudos;
+    private final BitSet blocked;
+    private final RouteBitmapIndex bitmapIndex;
+
+    // Folded text columns, for case and accent insensitive matching
+
+    private final String[] foldedCreatedByUser;
+    private final String[] foldedTitles;
+    private final String[] foldedDescriptions;
+
+    // Sorted indexes. Row numbers ordered by the value of a column (ties broken by route ID)
+
+    private final int[] byDistance;
+    private final int[] byDuration;
+    private final int[] byElevation;
+    private final int[] byGrade;
+    private final int[] byKudos;
+
+    /**
+     * Build a snapshot from a collection of routes
+     *
+     * @param routes      Routes of the catalog
+     * @param bitmapIndex Bitmap index of the same routes
+     * @param loadedAt    When the routes were loaded, in milliseconds since the epoch
+     */
+    public RouteCatalogSnapshot(List<Route> routes, RouteBitmapIndex bitmapIndex, long loadedAt) {
+        List<Route> sortedRoutes = new ArrayList<>(routes);
+        sortedRoutes.sort(Comparator.comparingLong(Route::getId));
+
+        this.bitmapIndex = bitmapIndex;
+        this.loadedAt = loadedAt;
+        this.size = sortedRoutes.size();
+
+        ids = new long[size];
+        createdByUser = new String[size];
+        titles = new String[size];
+        descriptions = new String[size];
+        distances = new int[size];
+        durations = new int[size];
+        elevations = new int[size];
+        grades = new int[size];
+        creationDates = new String[size];
+        categories = new String[size];
+        skillLevels = new byte[size];
+        kudos = new int[size];
+        blocked = new BitSet(size);
+        foldedCreatedByUser = new String[size];
+        foldedTitles = new String[size];
+        foldedDescriptions = new String[size];
+
+        // Fill the columns
+
+        for (int row = 0; row < size; row++) {
+            Route route = sortedRoutes.get(row);
+
+            ids[row] = route.getId();
+            createdByUser[row] = route.getCreatedByUser();
+            titles[row] = route.getTitle();
+            descriptions[row] = route.getDescription();
+            distances[row] = route.getDistance();
+            durations[row] = route.getDuration();
+            elevations[row] = route.getElevation();
+            grades[row] = (int) Math.round(route.getGrade() * 100);
+            creationDates[row] = route.getCreationDate();
+            categories[row] = route.getCategories();
+            skillLevels[row] = (byte) RouteSkillLevel.parseSkillLevelFromString(route.getSkillLevel()).ordinal();
+            kudos[row] = route.getKudos();
+            blocked.set(row, route.isBlocked());
+
+            foldedCreatedByUser[row] = TextUtils.fold(route.getCreatedByUser());
+            foldedTitles[row] = TextUtils.fold(route.getTitle());
+            foldedDescriptions[row] = TextUtils.fold(route.getDescription());
+        }
+
+        // Build the sorted indexes
+
+        byDistance = sortedIndex(distances);
+        byDuration = sortedIndex(durations);
+        byElevation = sortedIndex(elevations);
+        byGrade = sortedIndex(grades);
+        byKudos = sortedIndex(kudos);
+    }
+
+    /**
+     * Sort the rows by the values of a column. Since rows are ordered by route ID, a stable sort breaks ties by ID
+     *
+     * @param column Values of the column
+     * @return Row numbers sorted by the value of the column
+     */
+    private static int[] sortedIndex(int[] column) {
+        Integer[] rows = new Integer[column.length];
+        for (int row = 0; row < rows.length; row++)
+            rows[row] = row;
+
+        Arrays.sort(rows, Comparator.comparingInt(row -> column[row]));
+
+        int[] index = new int[rows.length];
+        for (int i = 0; i < rows.length; i++)
+            index[i] = rows[i];
+
+        return index;
+    }
+
+    /**
+     * Find the rows whose values are within every range of a query. The rows within the narrowest range are found
+     * through its sorted index, and only those rows are checked against the rest of the ranges
+     *
+     * @param ranges Ranges of the query. Unbounded ranges are ignored
+     * @return Rows within every range, or null if no range is bounded
+     */
+    private BitSet rangesOf(ColumnRange... ranges) {
+        ColumnRange narrowest = null;
+        List<ColumnRange> bounded = new ArrayList<>();
+
+        for (ColumnRange range : ranges) {
+            if (range.min == Integer.MIN_VALUE && range.max == Integer.MAX_VALUE) continue;
+
+            // Positions of the range in its sorted index, found with two binary searches
+
+            range.start = lowerBound(range.index, range.column, range.min);
+            range.end = range.max == Integer.MAX_VALUE ? size : lowerBound(range.index, range.column, range.max + 1);
+
+            bounded.add(range);
+            if (narrowest == null || range.end - range.start < narrowest.end - narrowest.start) narrowest = range;
+        }
+
+        if (narrowest == null) return null;
+
+        bounded.remove(narrowest);
+
+        BitSet rows = new BitSet(size);
+        nextRow:
+        for (int i = narrowest.start; i < narrowest.end; i++) {
+            int row = narrowest.index[i];
+
+            for (ColumnRange range : bounded)
+                if (range.column[row] < range.min || range.column[row] > range.max) continue nextRow;
+
+            rows.set(row);
+        }
+
+        return rows;
+    }
+
+    /**
+     * @return Position of the first entry of a sorted index whose value is greater or equal than the given value
+     */
+    private int lowerBound(int[] index, int[] column, int value) {
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (column[index[middle]] < value)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+
+        return low;
+    }
+
+    /**
+     * Find the row of a route
+     *
+     * @param routeId Route ID
+     * @return Row of the route or a negative number if the route isn't in this snapshot
+     */
+    public int rowOf(long routeId) {
+        return Arrays.binarySearch(ids, routeId);
+    }
+
+    /**
+     * Evaluate the criteria of a query against the columns of this snapshot
+     *
+     * @param query In-memory route query
+     * @return The rows that match every criteria of the query
+     */
+    public BitSet match(InMemoryRouteQuery query) {
+        BitSet candidates = new BitSet(size);
+
+        if (query.isUnsatisfiable()) return candidates;
+
+        candidates.set(0, size);
+
+        // Start with the predicates resolved by the bitmap index
+
+        CompressedBitmap indexedRoutes = bitmapIndex.all();
+        boolean indexUsed = false;
+
+        for (CategoryExpression categoryExpression : query.getCategoryExpressions()) {
+            indexedRoutes = indexedRoutes.and(categoryExpression.evaluate(bitmapIndex));
+            indexUsed = true;
+        }
+        for (RouteSkillLevel skillLevel : query.getSkillLevels()) {
+            indexedRoutes = indexedRoutes.and(bitmapIndex.ofSkillLevel(skillLevel));
+            indexUsed = true;
+        }
+        if (query.isHideBlocked()) {
+            indexedRoutes = indexedRoutes.andNot(bitmapIndex.blocked());
+            indexUsed = true;
+        }
+
+        if (indexUsed) {
+            BitSet indexedRows = new BitSet(size);
+            indexedRoutes.forEach(routeId -> {
+                int row = rowOf(routeId);
+                if (row >= 0) indexedRows.set(row);
+            });
+            candidates.and(indexedRows);
+        }
+
+        // Then the range predicates, resolved through the sorted indexes
+
+        BitSet rangeRows = rangesOf(
+                new ColumnRange(byDistance, distances, query.getMinDistance(), query.getMaxDistance()),
+                new ColumnRange(byDuration, durations, query.getMinDuration(), query.getMaxDuration()),
+                new ColumnRange(byElevation, elevations, query.getMinElevation(), query.getMaxElevation()),
+                new ColumnRange(byGrade, grades, query.getMinGrade(), query.getMaxGrade()),
+                new ColumnRange(byKudos, kudos, query.getMinimumKudos(), query.getMaximumKudos()));
+
+        if (rangeRows != null) candidates.and(rangeRows);
+
+        if (query.getIncludedRoutes() != null) {
+            BitSet includedRows = new BitSet(size);
+            for (long includedRoute : query.getIncludedRoutes()) {
+                int row = rowOf(includedRoute);
+                if (row >= 0) includedRows.set(row);
+            }
+            candidates.and(includedRows);
+        }
+
+        for (long excludedRoute : query.getExcludedRoutes()) {
+            int row = rowOf(excludedRoute);
+            if (row >= 0) candidates.clear(row);
+        }
+
+        // Finally check the remaining predicates row by row
+
+        String user = query.getUsers().isEmpty() ? null : query.getUsers().iterator().next();
+
+        for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+            if ((user != null && !user.equals(foldedCreatedByUser[row])) ||
+                    !matchesText(row, query.getTextClauses()))
+                candidates.clear(row);
+        }
+
+        return candidates;
+    }
+
+    /**
+     * @return New route model instances of every route of this snapshot, ordered by route ID
+     */
+    public List<Route> routes() {
+        List<Route> routes = new ArrayList<>(size);
+
+        for (int row = 0; row < size; row++)
+            routes.add(hydrate(row));
+
+        return routes;
+    }
+
+    /**
+     * @return If the title or description of a row contain any term of each text clause
+     */
+    private boolean matchesText(int row, List<List<String>> textClauses) {
+        for (List<String> textClause : textClauses) {
+            boolean clauseMatched = false;
+
+            for (String term : textClause) {
+                if (foldedTitles[row].contains(term) || foldedDescriptions[row].contains(term)) {
+                    clauseMatched = true;
+                    break;
+                }
+            }
+
+            if (!clauseMatched) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Execute an in-memory route filter
+     *
+     * @param filter The in-memory route filter
+     * @return A list with only the routes that satisfy the route filter, in the requested order and up to the
+     * requested limit. An empty list if the filter isn't valid
+     */
+    public List<Route> execute(InMemoryRouteFilter filter) {
+        if (!filter.isValid()) return Collections.emptyList();
+
+        InMemoryRouteQuery query = filter.consume();
+        BitSet matchingRows = match(query);
+        int limit = query.getLimit() > 0 ? query.getLimit() : Integer.MAX_VALUE;
+        List<Route> filteredRoutes = new ArrayList<>(Math.min(limit, matchingRows.cardinality()));
+        SortSpec sortSpec = query.getSortSpec();
+
+        if (sortSpec == null || (sortSpec.getOrders().size() == 1 &&
+                sortSpec.getOrders().get(0).getKey() == SortSpec.Key.CREATION_DATE)) {
+
+            // Route ID order, which is also the creation date order (see SortSpec.Key)
+
+            if (sortSpec == null || !sortSpec.getOrders().get(0).isDescending()) {
+                for (int row = matchingRows.nextSetBit(0); row >= 0 && filteredRoutes.size() < limit;
+                     row = matchingRows.nextSetBit(row + 1))
+                    filteredRoutes.add(hydrate(row));
+            } else {
+                for (int row = matchingRows.previousSetBit(size - 1); row >= 0 && filteredRoutes.size() < limit;
+                     row = matchingRows.previousSetBit(row - 1))
+                    filteredRoutes.add(hydrate(row));
+            }
+        } else if (sortSpec.getOrders().size() == 1) { // A single key. Scan its sorted index in the requested direction
+            int[] index = sortedIndexOf(sortSpec.getOrders().get(0).getKey());
+            int[] column = columnOf(sortSpec.getOrders().get(0).getKey());
+
+            if (sortSpec.getOrders().get(0).isDescending()) {
+
+                // Scan the runs of equal values backwards, but each run forwards, so ties remain in route ID order
+
+                for (int end = size - 1; end >= 0 && filteredRoutes.size() < limit; ) {
+                    int start = end;
+                    while (start > 0 && column[index[start - 1]] == column[index[end]])
+                        start--;
+
+                    for (int i = start; i <= end && filteredRoutes.size() < limit; i++)
+                        if (matchingRows.get(index[i])) filteredRoutes.add(hydrate(index[i]));
+
+                    end = start - 1;
+                }
+            } else {
+                for (int i = 0; i < size && filteredRoutes.size() < limit; i++)
+                    if (matchingRows.get(index[i])) filteredRoutes.add(hydrate(index[i]));
+            }
+        } else { // Several keys. Select the first rows with a bounded heap instead of sorting every matching row
+            for (int row : topRows(matchingRows, comparatorOf(sortSpec), limit))
+                filteredRoutes.add(hydrate(row));
+        }
+
+        return filteredRoutes;
+    }
+
+    /**
+     * @return Sorted index of the column of a sort key. Creation dates are sorted by row, the route ID order
+     */
+    private int[] sortedIndexOf(SortSpec.Key key) {
+        switch (key) {
+            case DISTANCE:
+                return byDistance;
+            case DURATION:
+                return byDuration;
+            case ELEVATION:
+                return byElevation;
+            case KUDOS:
+                return byKudos;
+            default:
+                throw new IllegalArgumentException("No sorted index for " + key);
+        }
+    }
+
+    /**
+     * @return Comparator of rows by the keys of a sort specification. Rows still tied are ordered by route ID
+     */
+    private RowComparator comparatorOf(SortSpec sortSpec) {
+        List<SortSpec.Order> orders = sortSpec.getOrders();
+        int[][] columns = new int[orders.size()][];
+        boolean[] descending = new boolean[orders.size()];
+
+        for (int i = 0; i < orders.size(); i++) {
+            SortSpec.Key key = orders.get(i).getKey();
+            columns[i] = key == SortSpec.Key.CREATION_DATE ? null : columnOf(key); // Null to compare rows
+            descending[i] = orders.get(i).isDescending();
+        }
+
+        return (a, b) -> {
+            for (int i = 0; i < columns.length; i++) {
+                int comparison = columns[i] == null ? Integer.compare(a, b) :
+                        Integer.compare(columns[i][a], columns[i][b]);
+                if (comparison != 0) return descending[i] ? -comparison : comparison;
+            }
+            return Integer.compare(a, b);
+        };
+    }
+
+    /**
+     * @return Column of a sort key other than the creation date
+     */
+    private int[] columnOf(SortSpec.Key key) {
+        switch (key) {
+            case DISTANCE:
+                return distances;
+            case DURATION:
+                return durations;
+            case ELEVATION:
+                return elevations;
+            case KUDOS:
+                return kudos;
+            default:
+                throw new IllegalArgumentException("No column for " + key);
+        }
+    }
+
+    /**
+     * Select the first rows of a set in the order of a comparator. A max-heap keeps the best {@code limit} rows seen
+     * so far, with the worst of them at the top, so each row costs O(log limit) and the rows are never fully sorted
+     * unless there's no limit
+     *
+     * @param rows       Rows to select from
+     * @param comparator Order of the rows
+     * @param limit      Maximum number of rows to select
+     * @return The selected rows, in order
+     */
+    private static int[] topRows(BitSet rows, RowComparator comparator, int limit) {
+        int[] heap = new int[Math.min(limit, rows.cardinality())];
+        int heapSize = 0;
+
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            if (heapSize < heap.length) { // Not full yet. Sift the row up
+                int position = heapSize++;
+                while (position > 0 && comparator.compare(heap[(position - 1) / 2], row) < 0) {
+                    heap[position] = heap[(position - 1) / 2];
+                    position = (position - 1) / 2;
+                }
+                heap[position] = row;
+            } else if (heapSize > 0 && comparator.compare(row, heap[0]) < 0) { // Better than the worst kept row
+                siftDown(heap, heapSize, row, comparator);
+            }
+        }
+
+        // Pop the worst row each time into the end of the heap, leaving the rows in order
+
+        for (int last = heapSize - 1; last > 0; last--) {
+            int worst = heap[0];
+            siftDown(heap, last, heap[last], comparator);
+            heap[last] = worst;
+        }
+
+        return heap;
+    }
+
+    /**
+     * Place a row at the top of a max-heap and sift it down to its position
+     */
+    private static void siftDown(int[] heap, int heapSize, int row, RowComparator comparator) {
+        int position = 0;
+
+        while (2 * position + 1 < heapSize) {
+            int child = 2 * position + 1;
+            if (child + 1 < heapSize && comparator.compare(heap[child + 1], heap[child]) > 0) child++;
+            if (comparator.compare(heap[child], row) <= 0) break;
+
+            heap[position] = heap[child];
+            position = child;
+        }
+
+        heap[position] = row;
+    }
+
+    /**
+     * Build a new route model instance from a row. Callers are free to modify it
+     *
+     * @param row Row of the route
+     * @return The route
+     */
+    public Route hydrate(int row) {
+        Route route = new Route();
+
+        route.setId(ids[row]);
+        route.setCreatedByUser(createdByUser[row]);
+        route.setTitle(titles[row]);
+        route.setDescription(descriptions[row]);
+        route.setDistance(distances[row]);
+        route.setDuration(durations[row]);
+        route.setElevation(elevations[row]);
+        route.setCreationDate(creationDates[row]);
+        route.setCategories(categories[row]);
+        route.setSkillLevel(skillLevelName(skillLevels[row]));
+        route.setKudos(kudos[row]);
+        route.setBlocked(blocked.get(row));
+
+        return route;
+    }
+
+    /**
+     * @return Name of a coded skill level, or null if it's undefined
+     */
+    private static String skillLevelName(byte skillLevel) {
+        switch (RouteSkillLevel.values()[skillLevel]) {
+            case EASY:
+                return "facil";
+            case MEDIUM:
+                return "media";
+            case HARD:
+                return "dificil";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param attribute Numeric attribute
+     * @return The values of the attribute for every route, in ascending order. It's a copy, read from the sorted index
+     * of the attribute
+     */
+    public int[] sortedValuesOf(RoutePredicate.Attribute attribute) {
+        int[] index;
+        int[] column;
+
+        switch (attribute) {
+            case DISTANCE:
+                index = byDistance;
+                column = distances;
+                break;
+            case DURATION:
+                index = byDuration;
+                column = durations;
+                break;
+            case ELEVATION:
+                index = byElevation;
+                column = elevations;
+                break;
+            case GRADE:
+                index = byGrade;
+                column = grades;
+                break;
+            default:
+                index = byKudos;
+                column = kudos;
+                break;
+        }
+
+        int[] values = new int[size];
+        for (int i = 0; i < size; i++)
+            values[i] = column[index[i]];
+
+        return values;
+    }
+
+    /**
+     * @param row Row of the route
+     * @return Username of the author of the route, folded (see {@link TextUtils#fold(String)})
+     */
+    public String foldedAuthorOf(int row) {
+        return foldedCreatedByUser[row];
+    }
+
+    /**
+     * @return Bitmap index of the routes of this snapshot
+     */
+    public RouteBitmapIndex getBitmapIndex() {
+        return bitmapIndex;
+    }
+
+    /**
+     * @return When the routes of this snapshot were loaded, in milliseconds since the epoch
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * @return Number of routes in this snapshot
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Range predicate over a column with a sorted index
+     */
+    private static class ColumnRange {
+        final int[] index;
+        final int[] column;
+        final int min; // Included
+        final int max; // Included
+        int start; // First position of the range in the sorted index
+        int end; // Position after the last one of the range in the sorted index
+
+        ColumnRange(int[] index, int[] column, int min, int max) {
+            this.index = index;
+            this.column = column;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    /**
+     * Comparator of rows, without boxing them
+     */
+    private interface RowComparator {
+        int compare(int a, int b);
+    }
+}
@@ -0,0 +1,174 @@
+package routefilter.snapshot;
+
+import dao.RouteCategoryDAO;
+import dao.RouteDAO;
+import dao.RouteToCategoriesMappingDAO;
+import dao.factories.DAOAbstractFactory;
+import dao.factories.DAOFactory;
+import dao.implementations.DAOImplJDBC;
+import model.Route;
+import model.RouteCategory;
+import model.RouteToCategoriesMapping;
+import routefilter.InMemoryRouteFilter;
+import routefilter.index.RouteBitmapIndex;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the current snapshot of the route catalog. Implemented through a Singleton instance, which you can get calling
+ * {@link #get()}.
+ * <p></p>
+ * Snapshots, along with their bitmap index, are loaded lazily from the JDBC DAOs and replaced atomically, so a filter always runs against one
+ * consistent snapshot even if another one is being loaded meanwhile. A snapshot is reloaded once it's older than the
+ * maximum age, which is read from the environment variable {@value #MAX_AGE_ENV} (in seconds), or once it has been
+ * marked as stale after a write to the catalog
+ */
+public class RouteSnapshotManager {
+
+    public static final String MAX_AGE_ENV = "ROUTE_SNAPSHOT_MAX_AGE";
+    private static final long DEFAULT_MAX_AGE = 60 * 1000;
+    private static final Logger logger = Logger.getLogger(RouteSnapshotManager.class.getName());
+
+    private final AtomicReference<RouteCatalogSnapshot> currentSnapshot;
+    private final AtomicBoolean stale;
+    private final long maxAge;
+
+    private RouteSnapshotManager() {
+        currentSnapshot = new AtomicReference<>();
+        stale = new AtomicBoolean(false);
+        maxAge = parseMaxAge(System.getenv(MAX_AGE_ENV));
+    }
+
+    /**
+     * @return The Singleton instance of the route snapshot manager
+     */
+    public static RouteSnapshotManager get() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * @param maxAgeSource Maximum age in seconds
+     * @return Maximum age in milliseconds, or the default maximum age if it isn't a valid number
+     */
+    private static long parseMaxAge(String maxAgeSource) {
+        if (maxAgeSource != null && maxAgeSource.trim().matches("[0-9]+"))
+            return Long.parseLong(maxAgeSource.trim()) * 1000;
+
+        return DEFAULT_MAX_AGE;
+    }
+
+    /**
+     * Get the current snapshot, loading a new one first if there isn't any or the current one is outdated
+     *
+     * @return The current snapshot, or null if it couldn't be loaded
+     */
+    public RouteCatalogSnapshot getSnapshot() {
+        RouteCatalogSnapshot snapshot = currentSnapshot.get();
+
+        if (snapshot == null || stale.get() || System.currentTimeMillis() - snapshot.getLoadedAt() > maxAge)
+            snapshot = refresh();
+
+        return snapshot;
+    }
+
+    /**
+     * Load a new snapshot from the database and swap it with the current one. If the routes can't be loaded the
+     * current snapshot is kept
+     *
+     * @return The current snapshot after the refresh, or null if there isn't any
+     */
+    public synchronized RouteCatalogSnapshot refresh() {
+        RouteCatalogSnapshot snapshot = currentSnapshot.get();
+
+        // Another caller could have refreshed the snapshot while this one was waiting
+
+        if (snapshot != null && !stale.get() && System.currentTimeMillis() - snapshot.getLoadedAt() <= maxAge)
+            return snapshot;
+
+        DAOFactory<DAOImplJDBC> jdbcFactory = DAOAbstractFactory.get().impl(DAOImplJDBC.class);
+        boolean wasStale = stale.getAndSet(false);
+        long loadedAt = System.currentTimeMillis();
+        List<Route> routes = null;
+        List<RouteToCategoriesMapping> mappings = null;
+        List<RouteCategory> categories = null;
+
+        if (jdbcFactory != null) {
+            RouteDAO routeDAO = jdbcFactory.forModel(Route.class);
+            RouteToCategoriesMappingDAO mappingDAO = jdbcFactory.forModel(RouteToCategoriesMapping.class);
+            RouteCategoryDAO categoryDAO = jdbcFactory.forModel(RouteCategory.class);
+
+            routes = routeDAO.getAll();
+            mappings = mappingDAO.getAll();
+            categories = categoryDAO.getAll();
+        }
+
+        if (routes == null || mappings == null || categories == null) {
+            logger.warning("Couldn't load the routes for a new route catalog snapshot");
+            if (wasStale) stale.set(true);
+            return snapshot;
+        }
+
+        snapshot = new RouteCatalogSnapshot(routes, RouteBitmapIndex.build(routes, mappings, categories), loadedAt);
+        currentSnapshot.set(snapshot);
+
+        logger.info(String.format("Loaded route catalog snapshot with %d routes in %d ms",
+                snapshot.size(), System.currentTimeMillis() - loadedAt));
+
+        return snapshot;
+    }
+
+    /**
+     * Get the current snapshot if a structure built from another snapshot must be built again. Structures derived from
+     * the snapshot (e.g. the text index) call it on every read, so they're rebuilt as soon as the snapshot they were
+     * built from is replaced, either because it got too old or because it was marked as stale after a write
+     *
+     * @param builtFrom Load time of the snapshot the structure was built from (see
+     *                  {@link RouteCatalogSnapshot#getLoadedAt()}), or -1 if there isn't any structure yet
+     * @return The current snapshot to build the structure from, or null if the structure is up to date or there isn't
+     * any snapshot available
+     */
+    public RouteCatalogSnapshot getSnapshotToRebuildFrom(long builtFrom) {
+        RouteCatalogSnapshot snapshot = getSnapshot();
+
+        return snapshot != null && snapshot.getLoadedAt() != builtFrom ? snapshot : null;
+    }
+
+    /**
+     * Mark the current snapshot as outdated, so it's reloaded before being used again. Call it after any write to the
+     * route catalog
+     */
+    public void markStale() {
+        stale.set(true);
+    }
+
+    /**
+     * @return Maximum age of a snapshot, in milliseconds
+     */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Execute an in-memory route filter against the current snapshot
+     *
+     * @param filter The in-memory route filter
+     * @return A list with only the routes that satisfy the route filter, or null if there isn't any snapshot available
+     */
+    public List<Route> execute(InMemoryRouteFilter filter) {
+        RouteCatalogSnapshot snapshot = getSnapshot();
+
+        if (snapshot == null) return null;
+
+        return snapshot.execute(filter);
+    }
+
+    /**
+     * Singleton holder for RouteSnapshotManager class
+     */
+    private static class SingletonHolder {
+        private static final RouteSnapshotManager INSTANCE = new RouteSnapshotManager();
+    }
+}
@@ -0,0 +1,69 @@
+package routefilter.suggestion;
+
+/**
+ * POJO of a typeahead suggestion: a route title or a username matching what the user is typing
+ */
+public class Suggestion {
+
+    public static final String ROUTE = "ruta";
+    public static final String USER = "usuario";
+
+    private String type;
+    private String text;
+    private Long routeId;
+    private long score;
+
+    public Suggestion() {
+    }
+
+    public Suggestion(String type, String text, Long routeId, long score) {
+        this.type = type;
+        this.text = text;
+        this.routeId = routeId;
+        this.score = score;
+    }
+
+    /**
+     * @return What is being suggested, {@value #ROUTE} or {@value #USER}
+     */
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * @return Title of the route or username, as it's stored
+     */
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @return ID of the suggested route. Null for users
+     */
+    public Long getRouteId() {
+        return routeId;
+    }
+
+    public void setRouteId(Long routeId) {
+        this.routeId = routeId;
+    }
+
+    /**
+     * @return Rank of the suggestion: the kudos of a route, or the number of routes of a user
+     */
+    public long getScore() {
+        return score;
+    }
+
+    public void setScore(long score) {
+        this.score = score;
+    }
+}
@@ -0,0 +1,228 @@
+package routefilter.suggestion;
+
+import helper.TextUtils;
+import model.Route;
+import model.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typeahead index of the route titles and usernames of the catalog. Texts are normalized (folded, see
+ * {@link TextUtils#fold(String)}, and with any run of symbols turned into a single space) and stored in a
+ * {@link SuggestionTrie} under each word start, so "montaña" suggests "Ruta por la Montaña" as well as "Montañas
+ * nevadas".
+ * <p></p>
+ * Routes are ranked by their kudos and users by their activity, the number of routes they created. Blocked routes
+ * aren't suggested. The index is updated route by route and user by user as the catalog changes
+ */
+public class SuggestionIndex {
+
+    private static final int MAX_KEYS_PER_TEXT = 8; // Word starts of a text a suggestion is stored under
+
+    private final long builtAt;
+    private final SuggestionTrie routeTrie;
+    private final SuggestionTrie userTrie;
+    private final Map<Long, Suggestion> routeSuggestions;
+    private final Map<Long, String> routeAuthors;
+    private final Map<String, Suggestion> userSuggestions;
+
+    /**
+     * Build the index of a catalog
+     *
+     * @param routes  Routes of the catalog
+     * @param users   Registered users
+     * @param builtAt When the catalog was loaded, in milliseconds since the epoch
+     */
+    public SuggestionIndex(List<Route> routes, List<User> users, long builtAt) {
+        this.builtAt = builtAt;
+        this.routeTrie = new SuggestionTrie();
+        this.userTrie = new SuggestionTrie();
+        this.routeSuggestions = new HashMap<>();
+        this.routeAuthors = new HashMap<>();
+        this.userSuggestions = new HashMap<>();
+
+        // Count the routes of each user before adding them, so each user is only stored once
+
+        Map<String, Long> routeCounts = new HashMap<>();
+        for (User user : users)
+            if (user.getUsername() != null) routeCounts.put(user.getUsername(), 0L);
+        for (Route route : routes)
+            if (!route.isBlocked() && route.getTitle() != null && route.getCreatedByUser() != null)
+                routeCounts.merge(route.getCreatedByUser(), 1L, Long::sum);
+
+        for (Map.Entry<String, Long> routeCount : routeCounts.entrySet())
+            putUser(routeCount.getKey(), routeCount.getValue());
+        for (Route route : routes)
+            putRoute(route);
+    }
+
+    /**
+     * Suggest route titles and usernames for what the user is typing
+     *
+     * @param prefix        Text typed so far. It's normalized the same way as the indexed texts
+     * @param limit         Maximum number of suggestions
+     * @param includeRoutes If route titles are suggested
+     * @param includeUsers  If usernames are suggested
+     * @return The suggestions, from the best to the worst score. Empty if the prefix has nothing to match
+     */
+    public synchronized List<Suggestion> suggest(String prefix, int limit, boolean includeRoutes, boolean includeUsers) {
+        String normalizedPrefix = normalize(prefix);
+
+        if (normalizedPrefix.isEmpty()) return Collections.emptyList();
+
+        List<Suggestion> suggestions = new ArrayList<>();
+        if (includeRoutes) suggestions.addAll(routeTrie.top(normalizedPrefix, limit));
+        if (includeUsers) suggestions.addAll(userTrie.top(normalizedPrefix, limit));
+
+        if (includeRoutes && includeUsers) {
+            suggestions.sort(Comparator.comparingLong(Suggestion::getScore).reversed());
+            if (suggestions.size() > limit) suggestions = new ArrayList<>(suggestions.subList(0, limit));
+        }
+
+        return suggestions;
+    }
+
+    /**
+     * Add or update a route
+     *
+     * @param route The route as it's currently stored
+     */
+    public synchronized void upsertRoute(Route route) {
+        removeRoute(route.getId());
+
+        if (putRoute(route) && route.getCreatedByUser() != null) addToActivity(route.getCreatedByUser(), 1);
+    }
+
+    /**
+     * Remove a route
+     *
+     * @param routeId ID of the route
+     */
+    public synchronized void removeRoute(long routeId) {
+        Suggestion suggestion = routeSuggestions.remove(routeId);
+
+        if (suggestion == null) return;
+
+        for (String key : keysOf(suggestion.getText()))
+            routeTrie.remove(key, suggestion);
+
+        String author = routeAuthors.remove(routeId);
+        if (author != null) addToActivity(author, -1);
+    }
+
+    /**
+     * Add a user, if it isn't already indexed
+     *
+     * @param username Username
+     */
+    public synchronized void upsertUser(String username) {
+        if (!userSuggestions.containsKey(username)) putUser(username, 0);
+    }
+
+    /**
+     * Remove a user
+     *
+     * @param username Username
+     */
+    public synchronized void removeUser(String username) {
+        Suggestion suggestion = userSuggestions.remove(username);
+
+        if (suggestion != null)
+            for (String key : keysOf(suggestion.getText()))
+                userTrie.remove(key, suggestion);
+    }
+
+    /**
+     * Store a route, unless it's blocked or has no title. The activity of its author isn't updated
+     *
+     * @return If the route was stored
+     */
+    private boolean putRoute(Route route) {
+        if (route.isBlocked() || route.getTitle() == null) return false;
+
+        Suggestion suggestion = new Suggestion(Suggestion.ROUTE, route.getTitle(), route.getId(), route.getKudos());
+        routeSuggestions.put(route.getId(), suggestion);
+
+        for (String key : keysOf(route.getTitle()))
+            routeTrie.insert(key, suggestion);
+
+        if (route.getCreatedByUser() != null) routeAuthors.put(route.getId(), route.getCreatedByUser());
+
+        return true;
+    }
+
+    private void putUser(String username, long routeCount) {
+        Suggestion suggestion = new Suggestion(Suggestion.USER, username, null, routeCount);
+        userSuggestions.put(username, suggestion);
+
+        for (String key : keysOf(username))
+            userTrie.insert(key, suggestion);
+    }
+
+    /**
+     * Change the number of routes of a user, storing its suggestion again with the new score. Users that aren't indexed
+     * are added when they write a route, but not brought back when their routes are removed
+     */
+    private void addToActivity(String username, long delta) {
+        Suggestion suggestion = userSuggestions.get(username);
+        if (suggestion == null && delta < 0) return;
+
+        long routeCount = Math.max(0, (suggestion != null ? suggestion.getScore() : 0) + delta);
+
+        removeUser(username);
+        putUser(username, routeCount);
+    }
+
+    /**
+     * @param text Text to store
+     * @return The normalized text from each of its first {@value #MAX_KEYS_PER_TEXT} word starts
+     */
+    private static List<String> keysOf(String text) {
+        String normalizedText = normalize(text);
+        List<String> keys = new ArrayList<>();
+
+        if (normalizedText.isEmpty()) return keys;
+
+        keys.add(normalizedText);
+        for (int i = normalizedText.indexOf(' '); i != -1 && keys.size() < MAX_KEYS_PER_TEXT;
+             i = normalizedText.indexOf(' ', i + 1))
+            keys.add(normalizedText.substring(i + 1));
+
+        return keys;
+    }
+
+    /**
+     * @param text Text to normalize
+     * @return The folded text with any run of symbols and spaces turned into a single space, and trimmed. Empty if the
+     * text is null
+     */
+    static String normalize(String text) {
+        return TextUtils.fold(text).replaceAll("[^\\p{Alnum}]+", " ").trim();
+    }
+
+    /**
+     * @return When the catalog of this index was loaded, in milliseconds since the epoch
+     */
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * @return Number of indexed routes
+     */
+    public synchronized int routes() {
+        return routeSuggestions.size();
+    }
+
+    /**
+     * @return Number of indexed users
+     */
+    public synchronized int users() {
+        return userSuggestions.size();
+    }
+}
@@ -0,0 +1,114 @@
+package routefilter.suggestion;
+
+import model.Route;
+import model.User;
+import routefilter.snapshot.RouteCatalogSnapshot;
+import routefilter.snapshot.RouteSnapshotManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the typeahead index of the route catalog. Implemented through a Singleton instance, which you can get calling
+ * {@link #get()}.
+ * <p></p>
+ * The index is built lazily from the route catalog snapshot and the registered users, and then kept up to date as
+ * routes and users are written. Since writes could also happen elsewhere, the index is built again whenever the
+ * snapshot it was built from is replaced (see {@link RouteSnapshotManager#getSnapshotToRebuildFrom(long)})
+ *
+ * @see RouteSnapshotManager
+ */
+public class SuggestionIndexManager {
+
+    private static final Logger logger = Logger.getLogger(SuggestionIndexManager.class.getName());
+
+    private volatile SuggestionIndex currentIndex;
+
+    private SuggestionIndexManager() {
+    }
+
+    /**
+     * @return The Singleton instance of the suggestion index manager
+     */
+    public static SuggestionIndexManager get() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Get the current suggestion index, building a new one first if there isn't any or the current one is outdated
+     *
+     * @param usersLoader Loads every registered user. Only called if a new index is built
+     * @return The current suggestion index, or null if the route catalog snapshot isn't available
+     */
+    public synchronized SuggestionIndex getIndex(Supplier<List<User>> usersLoader) {
+        RouteCatalogSnapshot snapshot = RouteSnapshotManager.get()
+                .getSnapshotToRebuildFrom(currentIndex != null ? currentIndex.getBuiltAt() : -1);
+
+        if (snapshot != null) {
+            long startTime = System.currentTimeMillis();
+            List<User> users = usersLoader.get();
+            currentIndex = new SuggestionIndex(snapshot.routes(),
+                    users != null ? users : Collections.emptyList(), snapshot.getLoadedAt());
+
+            logger.info(String.format("Built suggestion index with %d routes and %d users in %d ms",
+                    currentIndex.routes(), currentIndex.users(), System.currentTimeMillis() - startTime));
+        }
+
+        return currentIndex;
+    }
+
+    /**
+     * Update the index with a route that was just added or modified. If there isn't any index yet this is a no-op
+     *
+     * @param routeId     ID of the written route
+     * @param routeLoader Loads the route as it's currently stored. Only called if there's an index to update
+     */
+    public void routeWritten(long routeId, LongFunction<Route> routeLoader) {
+        SuggestionIndex index = currentIndex;
+
+        if (index != null) {
+            Route route = routeLoader.apply(routeId);
+            if (route != null) index.upsertRoute(route);
+        }
+    }
+
+    /**
+     * Remove a route that was just deleted from the index. If there isn't any index yet this is a no-op
+     *
+     * @param routeId ID of the deleted route
+     */
+    public void routeDeleted(long routeId) {
+        SuggestionIndex index = currentIndex;
+        if (index != null) index.removeRoute(routeId);
+    }
+
+    /**
+     * Add a user that was just registered to the index. If there isn't any index yet this is a no-op
+     *
+     * @param username Username of the registered user
+     */
+    public void userRegistered(String username) {
+        SuggestionIndex index = currentIndex;
+        if (index != null) index.upsertUser(username);
+    }
+
+    /**
+     * Remove a user that was just deleted from the index. If there isn't any index yet this is a no-op
+     *
+     * @param username Username of the deleted user
+     */
+    public void userDeleted(String username) {
+        SuggestionIndex index = currentIndex;
+        if (index != null) index.removeUser(username);
+    }
+
+    /**
+     * Singleton holder for SuggestionIndexManager class
+     */
+    private static class SingletonHolder {
+        private static final SuggestionIndexManager INSTANCE = new SuggestionIndexManager();
+    }
+}
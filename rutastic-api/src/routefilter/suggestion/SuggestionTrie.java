@@ -0,0 +1,267 @@
+package routefilter.suggestion;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Radix trie of suggestions by their normalized keys. Each edge holds a whole run of characters instead of a single
+ * one, so a key takes a handful of nodes, and each node keeps the best score of its subtree, so the top suggestions
+ * for a prefix are found best first, only visiting the nodes that can hold them instead of the whole subtree of the
+ * prefix.
+ * <p></p>
+ * A suggestion can be stored under several keys. It's returned once, and it's told apart from other suggestions by
+ * identity
+ */
+class SuggestionTrie {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node root = new Node("");
+
+    /**
+     * Store a suggestion under a key
+     *
+     * @param key        Normalized key
+     * @param suggestion Suggestion
+     */
+    void insert(String key, Suggestion suggestion) {
+        Node node = root;
+        int position = 0;
+
+        node.best = Math.max(node.best, suggestion.getScore());
+
+        while (position < key.length()) {
+            int childIndex = node.childIndex(key.charAt(position));
+
+            if (childIndex < 0) { // No edge starts with the next character. Add a leaf with the rest of the key
+                Node leaf = new Node(key.substring(position));
+                node.addChild(-childIndex - 1, leaf);
+                node = leaf;
+                position = key.length();
+            } else {
+                Node child = node.children[childIndex];
+                int common = commonPrefix(child.label, key, position);
+
+                if (common < child.label.length()) { // The key leaves the edge halfway. Split it
+                    Node middle = new Node(child.label.substring(0, common));
+                    child.label = child.label.substring(common);
+                    middle.children = new Node[]{child};
+                    middle.best = child.best;
+                    node.children[childIndex] = middle;
+                    child = middle;
+                }
+
+                node = child;
+                position += common;
+            }
+
+            node.best = Math.max(node.best, suggestion.getScore());
+        }
+
+        if (node.suggestions == null) node.suggestions = new ArrayList<>(1);
+        node.suggestions.add(suggestion);
+    }
+
+    /**
+     * Remove a suggestion from a key. Nodes left empty are removed, and nodes left with a single child are merged with
+     * it, so the trie stays as compact as if the suggestion had never been added
+     *
+     * @param key        Normalized key the suggestion was stored under
+     * @param suggestion Suggestion
+     */
+    void remove(String key, Suggestion suggestion) {
+        Deque<Node> path = new ArrayDeque<>();
+        Node node = root;
+        int position = 0;
+
+        while (position < key.length()) {
+            int childIndex = node.childIndex(key.charAt(position));
+            if (childIndex < 0 || !key.startsWith(node.children[childIndex].label, position)) return; // Not stored
+
+            path.push(node);
+            node = node.children[childIndex];
+            position += node.label.length();
+        }
+
+        if (node.suggestions == null || !removeByIdentity(node.suggestions, suggestion)) return; // Not stored
+        if (node.suggestions.isEmpty()) node.suggestions = null;
+
+        // Compact the nodes of the path and recompute their best scores, from the deepest one up to the root
+
+        while (true) {
+            Node parent = path.poll();
+
+            if (parent != null && node.suggestions == null && node.children.length == 0) {
+                parent.removeChild(node);
+            } else {
+                if (parent != null && node.suggestions == null && node.children.length == 1) {
+                    Node child = node.children[0];
+                    node.label = node.label + child.label;
+                    node.suggestions = child.suggestions;
+                    node.children = child.children;
+                }
+                node.updateBest();
+            }
+
+            if (parent == null) break;
+            node = parent;
+        }
+    }
+
+    /**
+     * Find the best suggestions stored under keys starting with a prefix
+     *
+     * @param prefix Normalized prefix
+     * @param limit  Maximum number of suggestions
+     * @return The suggestions, from the best to the worst score
+     */
+    List<Suggestion> top(String prefix, int limit) {
+        Node node = root;
+        int position = 0;
+
+        // Find the node of the subtree holding every key starting with the prefix
+
+        while (position < prefix.length()) {
+            int childIndex = node.childIndex(prefix.charAt(position));
+            if (childIndex < 0) return Collections.emptyList();
+
+            Node child = node.children[childIndex];
+            int common = commonPrefix(child.label, prefix, position);
+
+            if (position + common < prefix.length() && common < child.label.length())
+                return Collections.emptyList(); // The prefix leaves the edge halfway
+
+            node = child;
+            position += common;
+        }
+
+        // Visit the subtree best first. A node is only expanded once its best score is the highest left
+
+        List<Suggestion> top = new ArrayList<>(limit);
+        Set<Suggestion> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+
+        if (node.best != Long.MIN_VALUE) candidates.add(new Candidate(node.best, node, null));
+
+        while (top.size() < limit && !candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+
+            if (candidate.suggestion != null) {
+                if (found.add(candidate.suggestion)) top.add(candidate.suggestion);
+            } else {
+                if (candidate.node.suggestions != null)
+                    for (Suggestion suggestion : candidate.node.suggestions)
+                        candidates.add(new Candidate(suggestion.getScore(), null, suggestion));
+                for (Node child : candidate.node.children)
+                    candidates.add(new Candidate(child.best, child, null));
+            }
+        }
+
+        return top;
+    }
+
+    /**
+     * @return Length of the common prefix of an edge label and a key from a position
+     */
+    private static int commonPrefix(String label, String key, int position) {
+        int common = 0;
+        while (common < label.length() && position + common < key.length() &&
+                label.charAt(common) == key.charAt(position + common))
+            common++;
+        return common;
+    }
+
+    private static boolean removeByIdentity(List<Suggestion> suggestions, Suggestion suggestion) {
+        for (int i = 0; i < suggestions.size(); i++) {
+            if (suggestions.get(i) == suggestion) {
+                suggestions.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Node of the trie
+     */
+    private static class Node {
+        String label; // Characters of the edge from the parent
+        Node[] children = NO_CHILDREN; // Sorted by the first character of their labels
+        List<Suggestion> suggestions; // Suggestions stored under the key ending here. Null if there isn't any
+        long best = Long.MIN_VALUE; // Best score of the subtree
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return Index of the child whose label starts with a character, or (-(insertion point) - 1) if there's none
+         */
+        int childIndex(char c) {
+            int low = 0, high = children.length - 1;
+
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char middleChar = children[middle].label.charAt(0);
+
+                if (middleChar < c) low = middle + 1;
+                else if (middleChar > c) high = middle - 1;
+                else return middle;
+            }
+
+            return -(low + 1);
+        }
+
+        void addChild(int index, Node child) {
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newChildren[index] = child;
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            children = newChildren;
+        }
+
+        void removeChild(Node child) {
+            int index = childIndex(child.label.charAt(0));
+            Node[] newChildren = Arrays.copyOf(children, children.length - 1);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            children = newChildren.length == 0 ? NO_CHILDREN : newChildren;
+        }
+
+        void updateBest() {
+            best = Long.MIN_VALUE;
+            if (suggestions != null)
+                for (Suggestion suggestion : suggestions)
+                    best = Math.max(best, suggestion.getScore());
+            for (Node child : children)
+                best = Math.max(best, child.best);
+        }
+    }
+
+    /**
+     * Node or suggestion waiting to be visited. Higher scores go first, and suggestions before nodes of the same score
+     */
+    private static class Candidate implements Comparable<Candidate> {
+        final long score;
+        final Node node;
+        final Suggestion suggestion;
+
+        Candidate(long score, Node node, Suggestion suggestion) {
+            this.score = score;
+            this.node = node;
+            this.suggestion = suggestion;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            if (score != other.score) return Long.compare(other.score, score);
+            return Boolean.compare(suggestion == null, other.suggestion == null);
+        }
+    }
+}
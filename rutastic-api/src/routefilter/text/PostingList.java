@@ -0,0 +1,159 @@
+package routefilter.text;
+
+import java.util.Arrays;
+
+/**
+ * Immutable, compressed posting list of a term: the routes containing the term and how many times each one does.
+ * Postings are sorted by route ID and stored as variable length integers, each route ID as the gap from the previous
+ * one followed by its term frequency, so most postings take two or three bytes instead of the twelve of a
+ * {@code long} and an {@code int}.
+ * <p></p>
+ * Updates don't modify a list, they return a new one
+ */
+class PostingList {
+
+    static final PostingList EMPTY = new PostingList(new byte[0], 0);
+
+    private final byte[] data;
+    private final int size;
+
+    private PostingList(byte[] data, int size) {
+        this.data = data;
+        this.size = size;
+    }
+
+    /**
+     * Encode a posting list
+     *
+     * @param routeIds    Route IDs, sorted in ascending order and without repetitions
+     * @param frequencies Frequency of the term in each route
+     * @param size        Number of postings to encode
+     * @return The encoded list
+     */
+    static PostingList of(long[] routeIds, int[] frequencies, int size) {
+        byte[] data = new byte[size * 3];
+        int position = 0;
+        long previousRouteId = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (data.length - position < 20) data = Arrays.copyOf(data, data.length * 2 + 20); // Room for two longs
+
+            position = writeVarLong(data, position, routeIds[i] - previousRouteId);
+            position = writeVarLong(data, position, frequencies[i]);
+            previousRouteId = routeIds[i];
+        }
+
+        return new PostingList(Arrays.copyOf(data, position), size);
+    }
+
+    /**
+     * Consumer of the postings of a list
+     */
+    interface PostingConsumer {
+        void accept(long routeId, int frequency);
+    }
+
+    /**
+     * Decode every posting in route ID order
+     *
+     * @param consumer Consumer of each posting
+     */
+    void forEach(PostingConsumer consumer) {
+        int position = 0;
+        long routeId = 0;
+
+        while (position < data.length) {
+            long gap = 0, frequency = 0;
+            int shift = 0;
+            byte b;
+
+            do {
+                b = data[position++];
+                gap |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            shift = 0;
+            do {
+                b = data[position++];
+                frequency |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            routeId += gap;
+            consumer.accept(routeId, (int) frequency);
+        }
+    }
+
+    /**
+     * @param routeId   Route ID
+     * @param frequency Frequency of the term in the route
+     * @return A copy of this list with the posting of the route added or replaced
+     */
+    PostingList with(long routeId, int frequency) {
+        long[] routeIds = new long[size + 1];
+        int[] frequencies = new int[size + 1];
+        int[] count = {0};
+        boolean[] added = {false};
+
+        forEach((postingRouteId, postingFrequency) -> {
+            if (!added[0] && postingRouteId >= routeId) {
+                routeIds[count[0]] = routeId;
+                frequencies[count[0]++] = frequency;
+                added[0] = true;
+                if (postingRouteId == routeId) return; // Replaced
+            }
+            routeIds[count[0]] = postingRouteId;
+            frequencies[count[0]++] = postingFrequency;
+        });
+
+        if (!added[0]) {
+            routeIds[count[0]] = routeId;
+            frequencies[count[0]++] = frequency;
+        }
+
+        return of(routeIds, frequencies, count[0]);
+    }
+
+    /**
+     * @param routeId Route ID
+     * @return A copy of this list without the posting of the route
+     */
+    PostingList without(long routeId) {
+        long[] routeIds = new long[size];
+        int[] frequencies = new int[size];
+        int[] count = {0};
+
+        forEach((postingRouteId, postingFrequency) -> {
+            if (postingRouteId != routeId) {
+                routeIds[count[0]] = postingRouteId;
+                frequencies[count[0]++] = postingFrequency;
+            }
+        });
+
+        return count[0] == size ? this : of(routeIds, frequencies, count[0]);
+    }
+
+    /**
+     * @return Number of routes containing the term (its document frequency)
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Size of the encoded postings, in bytes
+     */
+    int encodedSize() {
+        return data.length;
+    }
+
+    private static int writeVarLong(byte[] data, int position, long value) {
+        while ((value & ~0x7fL) != 0) {
+            data[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        data[position++] = (byte) value;
+        return position;
+    }
+}
@@ -0,0 +1,336 @@
+package routefilter.text;
+
+import model.Route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index of the titles and descriptions of the route catalog. Both are analyzed by the
+ * {@link SpanishAnalyzer}, and each term points to the compressed {@link PostingList} of the routes containing it, so a
+ * search only reads the postings of its terms instead of scanning every route.
+ * <p></p>
+ * Matches are ranked with BM25, counting each title occurrence of a term as {@value #TITLE_WEIGHT} occurrences, since
+ * titles are short and to the point. Query terms that aren't in the index are matched, with a lower weight, against
+ * the indexed terms one typo away from them. The index is updated route by route as the catalog changes
+ */
+public class RouteTextIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int TITLE_WEIGHT = 2;
+    private static final double TYPO_WEIGHT = 0.5;
+    private static final int MIN_TYPO_TERM_LENGTH = 4;
+    private static final int MAX_QUERY_TERMS = 64;
+
+    private final long builtAt;
+    private final Map<String, PostingList> postings;
+    private final Map<Long, Document> documents;
+    private long totalLength;
+
+    /**
+     * Build the index of a catalog of routes
+     *
+     * @param routes  Routes of the catalog
+     * @param builtAt When the routes were loaded, in milliseconds since the epoch
+     */
+    public RouteTextIndex(List<Route> routes, long builtAt) {
+        this.builtAt = builtAt;
+        this.postings = new HashMap<>();
+        this.documents = new HashMap<>();
+
+        List<Route> sortedRoutes = new ArrayList<>(routes);
+        sortedRoutes.sort(Comparator.comparingLong(Route::getId));
+
+        // Gather the postings of each term in route ID order, then compress them
+
+        Map<String, long[]> routeIdsByTerm = new HashMap<>();
+        Map<String, int[]> frequenciesByTerm = new HashMap<>();
+        Map<String, Integer> sizesByTerm = new HashMap<>();
+
+        for (Route route : sortedRoutes) {
+            Map<String, Integer> frequencies = addDocument(route);
+
+            for (Map.Entry<String, Integer> frequency : frequencies.entrySet()) {
+                String term = frequency.getKey();
+                int size = sizesByTerm.getOrDefault(term, 0);
+                long[] routeIds = routeIdsByTerm.computeIfAbsent(term, t -> new long[4]);
+                int[] termFrequencies = frequenciesByTerm.computeIfAbsent(term, t -> new int[4]);
+
+                if (size == routeIds.length) {
+                    routeIds = Arrays.copyOf(routeIds, size * 2);
+                    termFrequencies = Arrays.copyOf(termFrequencies, size * 2);
+                    routeIdsByTerm.put(term, routeIds);
+                    frequenciesByTerm.put(term, termFrequencies);
+                }
+
+                routeIds[size] = route.getId();
+                termFrequencies[size] = frequency.getValue();
+                sizesByTerm.put(term, size + 1);
+            }
+        }
+
+        for (Map.Entry<String, Integer> size : sizesByTerm.entrySet())
+            postings.put(size.getKey(), PostingList.of(routeIdsByTerm.get(size.getKey()),
+                    frequenciesByTerm.get(size.getKey()), size.getValue()));
+    }
+
+    /**
+     * Analyze a route and register it as a document
+     *
+     * @param route Route
+     * @return Weighted frequency of each term of the route
+     */
+    private Map<String, Integer> addDocument(Route route) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length = 0;
+
+        for (String term : SpanishAnalyzer.analyze(route.getTitle())) {
+            frequencies.merge(term, TITLE_WEIGHT, Integer::sum);
+            length += TITLE_WEIGHT;
+        }
+        for (String term : SpanishAnalyzer.analyze(route.getDescription())) {
+            frequencies.merge(term, 1, Integer::sum);
+            length++;
+        }
+
+        documents.put(route.getId(), new Document(length, frequencies.keySet().toArray(new String[0])));
+        totalLength += length;
+
+        return frequencies;
+    }
+
+    /**
+     * Search routes by text
+     *
+     * @param text     Text to search
+     * @param matchAll If routes must match every term of the text. Otherwise they must match any of them
+     * @return The IDs of the matching routes with their BM25 scores, from the most to the least relevant (ties by
+     * route ID). Empty if the text has no searchable terms
+     */
+    public synchronized Map<Long, Double> search(String text, boolean matchAll) {
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(SpanishAnalyzer.analyze(text)));
+        if (queryTerms.size() > MAX_QUERY_TERMS) queryTerms = queryTerms.subList(0, MAX_QUERY_TERMS);
+
+        Map<Long, Double> scores = new HashMap<>();
+        Map<Long, Long> matchedTerms = new HashMap<>(); // Bitmask of the query terms matched by each route
+        double averageLength = documents.isEmpty() ? 1 : Math.max(1, (double) totalLength / documents.size());
+
+        for (int i = 0; i < queryTerms.size(); i++) {
+            String queryTerm = queryTerms.get(i);
+            long termBit = 1L << i;
+            Map<String, Double> expansions = expand(queryTerm);
+
+            if (expansions.isEmpty() && matchAll) return new LinkedHashMap<>(); // No route can match every term
+
+            for (Map.Entry<String, Double> expansion : expansions.entrySet()) {
+                PostingList postingList = postings.get(expansion.getKey());
+                double weight = expansion.getValue() * idf(postingList.size());
+
+                postingList.forEach((routeId, frequency) -> {
+                    double normalizedLength = 1 - B + B * documents.get(routeId).length / averageLength;
+                    scores.merge(routeId, weight * frequency * (K1 + 1) / (frequency + K1 * normalizedLength),
+                            Double::sum);
+                    matchedTerms.merge(routeId, termBit, (a, b) -> a | b);
+                });
+            }
+        }
+
+        long allTerms = queryTerms.size() == 64 ? -1L : (1L << queryTerms.size()) - 1;
+
+        List<Map.Entry<Long, Double>> hits = new ArrayList<>();
+        for (Map.Entry<Long, Double> score : scores.entrySet())
+            if (!matchAll || matchedTerms.get(score.getKey()) == allTerms) hits.add(score);
+
+        hits.sort(Map.Entry.<Long, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+
+        Map<Long, Double> rankedHits = new LinkedHashMap<>();
+        for (Map.Entry<Long, Double> hit : hits)
+            rankedHits.put(hit.getKey(), hit.getValue());
+
+        return rankedHits;
+    }
+
+    /**
+     * Look up how many routes contain each term of a text, without searching it. Terms that aren't indexed count as
+     * contained by no route, even if a search would match them with a typo
+     *
+     * @param text Text to search
+     * @return The number of routes containing each distinct searchable term of the text
+     */
+    public synchronized List<Integer> documentFrequencies(String text) {
+        List<Integer> documentFrequencies = new ArrayList<>();
+
+        for (String term : new LinkedHashSet<>(SpanishAnalyzer.analyze(text))) {
+            PostingList postingList = postings.get(term);
+            documentFrequencies.add(postingList != null ? postingList.size() : 0);
+        }
+
+        return documentFrequencies;
+    }
+
+    /**
+     * @param documentFrequency Number of routes containing a term
+     * @return Inverse document frequency of the term
+     */
+    private double idf(int documentFrequency) {
+        return Math.log(1 + (documents.size() - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    /**
+     * Find the indexed terms a query term stands for: the term itself if it's indexed, or else the indexed terms one
+     * typo (an insertion, deletion, substitution or transposition) away from it
+     *
+     * @param queryTerm Analyzed query term
+     * @return The indexed terms with the weight of their matches
+     */
+    private Map<String, Double> expand(String queryTerm) {
+        Map<String, Double> expansions = new HashMap<>();
+
+        if (postings.containsKey(queryTerm)) {
+            expansions.put(queryTerm, 1.0);
+        } else if (queryTerm.length() >= MIN_TYPO_TERM_LENGTH) {
+            for (String term : postings.keySet())
+                if (isOneTypoAway(queryTerm, term)) expansions.put(term, TYPO_WEIGHT);
+        }
+
+        return expansions;
+    }
+
+    /**
+     * @return If two different terms are one insertion, deletion, substitution or transposition of adjacent letters
+     * away from each other
+     */
+    static boolean isOneTypoAway(String a, String b) {
+        if (Math.abs(a.length() - b.length()) > 1 || a.equals(b)) return false;
+
+        int prefix = 0;
+        while (prefix < a.length() && prefix < b.length() && a.charAt(prefix) == b.charAt(prefix))
+            prefix++;
+
+        if (a.length() == b.length()) {
+            if (a.substring(prefix + 1).equals(b.substring(prefix + 1))) return true; // Substitution
+
+            return prefix + 1 < a.length() && a.charAt(prefix) == b.charAt(prefix + 1) &&
+                    a.charAt(prefix + 1) == b.charAt(prefix) &&
+                    a.substring(prefix + 2).equals(b.substring(prefix + 2)); // Transposition
+        }
+
+        // Insertion or deletion
+
+        String longer = a.length() > b.length() ? a : b;
+        String shorter = a.length() > b.length() ? b : a;
+        return longer.substring(prefix + 1).equals(shorter.substring(prefix));
+    }
+
+    /**
+     * Add or update a route
+     *
+     * @param route The route as it's currently stored
+     */
+    public synchronized void upsert(Route route) {
+        remove(route.getId());
+
+        for (Map.Entry<String, Integer> frequency : addDocument(route).entrySet())
+            postings.put(frequency.getKey(), postings.getOrDefault(frequency.getKey(), PostingList.EMPTY)
+                    .with(route.getId(), frequency.getValue()));
+    }
+
+    /**
+     * Remove a route
+     *
+     * @param routeId ID of the route
+     */
+    public synchronized void remove(long routeId) {
+        Document document = documents.remove(routeId);
+
+        if (document == null) return;
+
+        totalLength -= document.length;
+
+        for (String term : document.terms) {
+            PostingList postingList = postings.get(term).without(routeId);
+
+            if (postingList.size() == 0) postings.remove(term);
+            else postings.put(term, postingList);
+        }
+    }
+
+    /**
+     * Order routes by their relevance for a search, optionally blended with their kudos. Both the score and the kudos
+     * are scaled by their maximum among the routes, so the weight of the kudos doesn't depend on the size of either
+     *
+     * @param routes      Routes found by a search. They're sorted in place
+     * @param scores      Scores of the routes, as returned by {@link #search(String, boolean)}
+     * @param kudosWeight Weight of the kudos, from 0 (only relevance) to 1 (only kudos)
+     */
+    public static void rankByRelevance(List<Route> routes, Map<Long, Double> scores, double kudosWeight) {
+        double maxScore = 0;
+        int maxKudos = 0;
+
+        for (Route route : routes) {
+            maxScore = Math.max(maxScore, scores.getOrDefault(route.getId(), 0.0));
+            maxKudos = Math.max(maxKudos, route.getKudos());
+        }
+
+        Map<Long, Double> rank = new HashMap<>();
+        for (Route route : routes) {
+            double relevance = maxScore > 0 ? scores.getOrDefault(route.getId(), 0.0) / maxScore : 0;
+            double popularity = maxKudos > 0 ? Math.max(0, route.getKudos()) / (double) maxKudos : 0;
+            rank.put(route.getId(), (1 - kudosWeight) * relevance + kudosWeight * popularity);
+        }
+
+        routes.sort(Comparator.<Route>comparingDouble(route -> rank.get(route.getId())).reversed()
+                .thenComparingLong(Route::getId));
+    }
+
+    /**
+     * @return When the routes of this index were loaded, in milliseconds since the epoch
+     */
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * @return Number of indexed routes
+     */
+    public synchronized int size() {
+        return documents.size();
+    }
+
+    /**
+     * @return Number of indexed terms
+     */
+    public synchronized int terms() {
+        return postings.size();
+    }
+
+    /**
+     * @return Size of every posting list once compressed, in bytes
+     */
+    public synchronized long encodedSize() {
+        long encodedSize = 0;
+        for (PostingList postingList : postings.values())
+            encodedSize += postingList.encodedSize();
+        return encodedSize;
+    }
+
+    /**
+     * Indexed route
+     */
+    private static class Document {
+        final int length; // Weighted number of terms
+        final String[] terms; // Distinct terms, to find its postings when it's removed
+
+        Document(int length, String[] terms) {
+            this.length = length;
+            this.terms = terms;
+        }
+    }
+}
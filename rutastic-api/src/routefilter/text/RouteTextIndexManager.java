@@ -0,0 +1,90 @@
+package routefilter.text;
+
+import model.Route;
+import routefilter.snapshot.RouteCatalogSnapshot;
+import routefilter.snapshot.RouteSnapshotManager;
+
+import java.util.function.LongFunction;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the text index of the route catalog. Implemented through a Singleton instance, which you can get calling
+ * {@link #get()}.
+ * <p></p>
+ * The index is built lazily from the route catalog snapshot, and then kept up to date route by route as routes are
+ * written through {@link #routeWritten(long, LongFunction)} and {@link #routeDeleted(long)}. Since writes could also
+ * happen elsewhere, the index is built again whenever the snapshot it was built from is replaced (see
+ * {@link RouteSnapshotManager#getSnapshotToRebuildFrom(long)})
+ *
+ * @see RouteSnapshotManager
+ */
+public class RouteTextIndexManager {
+
+    private static final Logger logger = Logger.getLogger(RouteTextIndexManager.class.getName());
+
+    private volatile RouteTextIndex currentIndex;
+
+    private RouteTextIndexManager() {
+    }
+
+    /**
+     * @return The Singleton instance of the route text index manager
+     */
+    public static RouteTextIndexManager get() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Get the current text index, building a new one first if there isn't any or the current one is outdated
+     *
+     * @return The current text index, or null if the route catalog snapshot isn't available
+     */
+    public synchronized RouteTextIndex getIndex() {
+        RouteCatalogSnapshot snapshot = RouteSnapshotManager.get()
+                .getSnapshotToRebuildFrom(currentIndex != null ? currentIndex.getBuiltAt() : -1);
+
+        if (snapshot != null) {
+            long startTime = System.currentTimeMillis();
+            currentIndex = new RouteTextIndex(snapshot.routes(), snapshot.getLoadedAt());
+
+            logger.info(String.format(
+                    "Built route text index with %d routes and %d terms (%d bytes of postings) in %d ms",
+                    currentIndex.size(), currentIndex.terms(), currentIndex.encodedSize(),
+                    System.currentTimeMillis() - startTime));
+        }
+
+        return currentIndex;
+    }
+
+    /**
+     * Update the index with a route that was just added or modified. If there isn't any index yet this is a no-op
+     *
+     * @param routeId     ID of the written route
+     * @param routeLoader Loads the route as it's currently stored. Only called if there's an index to update
+     */
+    public void routeWritten(long routeId, LongFunction<Route> routeLoader) {
+        RouteTextIndex index = currentIndex;
+
+        if (index != null) {
+            Route route = routeLoader.apply(routeId);
+            if (route != null) index.upsert(route);
+        }
+    }
+
+    /**
+     * Remove a route that was just deleted from the index. If there isn't any index yet this is a no-op
+     *
+     * @param routeId ID of the deleted route
+     */
+    public void routeDeleted(long routeId) {
+        RouteTextIndex index = currentIndex;
+        if (index != null) index.remove(routeId);
+    }
+
+    /**
+     * Singleton holder for RouteTextIndexManager class
+     */
+    private static class SingletonHolder {
+        private static final RouteTextIndexManager INSTANCE = new RouteTextIndexManager();
+    }
+}
@@ -0,0 +1,70 @@
+package routefilter.text;
+
+import helper.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns Spanish text into the terms of the route text index. Text is folded (lowercase and without accents, see
+ * {@link TextUtils#fold(String)}), split into words, stripped of stop words and stemmed with a light stemmer that only
+ * removes gender and number suffixes, so "Rutas", "ruta" and "rutás" are the same term, but words with different
+ * meanings aren't merged as an aggressive stemmer would do
+ */
+public class SpanishAnalyzer {
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "al", "como", "con", "de", "del", "e", "el", "en", "entre", "es", "hasta", "la", "las", "lo", "los",
+            "mas", "muy", "ni", "o", "para", "pero", "por", "que", "se", "sin", "sobre", "su", "sus", "u", "un", "una",
+            "unas", "uno", "unos", "y"));
+
+    private SpanishAnalyzer() {
+    }
+
+    /**
+     * @param text Text to analyze
+     * @return Its terms, in order of appearance and with repetitions. Empty if the text is null
+     */
+    public static List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+
+        for (String word : TextUtils.fold(text).split("[^\\p{Alnum}]+")) {
+            if (word.isEmpty() || STOP_WORDS.contains(word)) continue;
+
+            terms.add(stem(word));
+        }
+
+        return terms;
+    }
+
+    /**
+     * Remove the plural and gender suffixes of a folded word, so singular and plural, masculine and feminine forms share
+     * the same stem. Words shorter than 4 letters are kept as they are
+     *
+     * @param word Folded word
+     * @return The stem of the word
+     */
+    static String stem(String word) {
+        if (word.length() < 4) return word;
+
+        // Plurals of words ending in a consonant, or in z (luz -> luces)
+
+        if (word.endsWith("eses")) return word.substring(0, word.length() - 2);
+        if (word.endsWith("ces")) return word.substring(0, word.length() - 3) + "z";
+
+        // Plurals of words ending in a vowel, then the gender vowel
+
+        if (word.endsWith("s") && isVowel(word.charAt(word.length() - 2))) word = word.substring(0, word.length() - 1);
+        if (word.length() >= 4 && (word.endsWith("a") || word.endsWith("e") || word.endsWith("o")))
+            word = word.substring(0, word.length() - 1);
+
+        return word;
+    }
+
+    private static boolean isVowel(char c) {
+        return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+    }
+}